@@ -6,12 +6,12 @@ CREATE TABLE IF NOT EXISTS Users (
     id INT AUTO_INCREMENT NOT NULL PRIMARY KEY,
     name VARCHAR(50) NOT NULL,
     email VARCHAR(100) NOT NULL,
-    password VARCHAR(100) NOT NULL,
+    password VARCHAR(100) NOT NULL, -- pbkdf2$iterations$salt$hash, see PasswordHasher
     role VARCHAR(20) NOT NULL DEFAULT 'VISITOR',
     is_deleted BOOLEAN DEFAULT 0
 )  ENGINE=INNODB;
 
--- default admin user
+-- default admin user, the plain text password is replaced by a hash on its first login
 INSERT INTO Users VALUES (1, "John Doe", "administrador@pingu.com.co", "contraseniasegura123456", "ADMINISTRATOR", 0);
 
 CREATE TABLE IF NOT EXISTS Books (
@@ -44,6 +44,7 @@ CREATE TABLE IF NOT EXISTS Borrowings (
     requested_date DATE NOT NULL,
     returned_date DATE NOT NULL,
     status VARCHAR(20) NOT NULL DEFAULT 'REQUESTED',
+    finalized_date DATE NULL, -- set with the FINALIZED status, the loans rollup is rebuilt from it
     is_deleted BOOLEAN DEFAULT 0,
     FOREIGN KEY (user_id)
         REFERENCES Users (id)
@@ -68,3 +69,82 @@ CREATE TABLE IF NOT EXISTS borrowings_novels (
     FOREIGN KEY (novel_id)
         REFERENCES Novels (id)
 )  ENGINE=INNODB;
+
+-- Indexes for the borrowing lookups, so they cost the size of the result, not of the table
+CREATE INDEX idx_users_email ON Users (email);
+CREATE INDEX idx_borrowings_user_id ON Borrowings (user_id);
+CREATE INDEX idx_borrowings_status ON Borrowings (status);
+CREATE INDEX idx_borrowings_returned_date ON Borrowings (returned_date);
+-- The overdue scan: BORROWED borrowings by return date
+CREATE INDEX idx_borrowings_status_returned_date ON Borrowings (status, returned_date);
+
+-- Last line of each import file committed to the catalog, imports resume after it
+CREATE TABLE IF NOT EXISTS import_checkpoints (
+    source VARCHAR(500) PRIMARY KEY NOT NULL,
+    line_offset BIGINT NOT NULL,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+)  ENGINE=INNODB;
+
+-- Audit trail of the borrowings, written in batches by AuditLog. No foreign keys, the events of
+-- deleted borrowings stay.
+CREATE TABLE IF NOT EXISTS borrowings_audit (
+    id BIGINT PRIMARY KEY AUTO_INCREMENT NOT NULL,
+    borrowing_id INT NOT NULL,
+    action VARCHAR(20) NOT NULL,
+    user_id INT NOT NULL,
+    happened_at TIMESTAMP NOT NULL
+)  ENGINE=INNODB;
+CREATE INDEX idx_borrowings_audit_borrowing_id ON borrowings_audit (borrowing_id);
+
+-- Circulation rollups, updated in the transactions that create and finalize borrowings so the
+-- reports read a few rows whatever the size of the history. CirculationDAO.rebuildRollups
+-- computes them again from the borrowings.
+CREATE TABLE IF NOT EXISTS circulation_titles (
+    item_type VARCHAR(10) NOT NULL, -- BOOK or NOVEL
+    item_id INT NOT NULL,
+    borrowings INT NOT NULL,
+    PRIMARY KEY (item_type, item_id)
+)  ENGINE=INNODB;
+CREATE INDEX idx_circulation_titles_borrowings ON circulation_titles (borrowings);
+
+CREATE TABLE IF NOT EXISTS circulation_groups (
+    dimension VARCHAR(10) NOT NULL, -- AUTHOR, GENRE or FIELD
+    name VARCHAR(100) NOT NULL,
+    borrowings INT NOT NULL,
+    PRIMARY KEY (dimension, name)
+)  ENGINE=INNODB;
+CREATE INDEX idx_circulation_groups_borrowings ON circulation_groups (dimension, borrowings);
+
+-- A single row (id 1): finalized borrowings and the sum of their days on loan
+CREATE TABLE IF NOT EXISTS circulation_loans (
+    id INT PRIMARY KEY NOT NULL,
+    loans BIGINT NOT NULL,
+    loan_days BIGINT NOT NULL
+)  ENGINE=INNODB;
+
+-- Patrons waiting for a copy, first come first served per item. A READY hold has a copy set
+-- aside for it (still counted in copies_borrowed) until ready_until. The open holds (WAITING
+-- and READY) are loaded at startup and kept in memory by HoldsService.
+CREATE TABLE IF NOT EXISTS holds (
+    id INT PRIMARY KEY AUTO_INCREMENT NOT NULL,
+    item_type VARCHAR(10) NOT NULL, -- BOOK or NOVEL
+    item_id INT NOT NULL,
+    user_id INT NOT NULL,
+    status VARCHAR(20) NOT NULL DEFAULT 'WAITING',
+    requested_at TIMESTAMP NOT NULL,
+    ready_until TIMESTAMP NULL,
+    -- TRUE while WAITING or READY, NULL once closed so closed holds don't collide in the index
+    open_hold BOOLEAN GENERATED ALWAYS AS (CASE WHEN status IN ('WAITING', 'READY') THEN TRUE END),
+    FOREIGN KEY (user_id)
+        REFERENCES Users (id)
+)  ENGINE=INNODB;
+CREATE INDEX idx_holds_status ON holds (status);
+-- A user has one open hold per item, concurrent placements of the same hold can't both insert
+CREATE UNIQUE INDEX idx_holds_open ON holds (user_id, item_type, item_id, open_hold);
+
+-- A single row (id 1) the primary rewrites every second with its clock in milliseconds. On a
+-- replica it's as old as the replicated data, RoutingDataSource reads it there to know the lag.
+CREATE TABLE IF NOT EXISTS replica_heartbeat (
+    id INT PRIMARY KEY NOT NULL,
+    beat BIGINT NOT NULL
+)  ENGINE=INNODB;
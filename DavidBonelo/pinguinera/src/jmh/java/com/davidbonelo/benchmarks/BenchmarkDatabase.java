@@ -0,0 +1,207 @@
+package com.davidbonelo.benchmarks;
+
+import com.davidbonelo.persistance.ConnectionPool;
+import com.davidbonelo.persistance.PoolConfig;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in memory H2 database (MySQL mode) created from pingu_schema.sql, with helpers to seed it
+ * and to count the statements sent to it.
+ */
+public class BenchmarkDatabase implements AutoCloseable {
+    private final ConnectionPool pool;
+    private final AtomicLong roundTrips = new AtomicLong();
+
+    public BenchmarkDatabase(String name) throws SQLException, IOException {
+        this(name, new PoolConfig());
+    }
+
+    public BenchmarkDatabase(String name, PoolConfig config) throws SQLException, IOException {
+        String url = "jdbc:h2:mem:" + name + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+        this.pool = new ConnectionPool(url, "sa", "", config.setMaxSize(32));
+        loadSchema();
+    }
+
+    public ConnectionPool getPool() {
+        return pool;
+    }
+
+    /**
+     * A DataSource over the pool that counts every statement execution, that is every round
+     * trip to the database
+     */
+    public DataSource countingDataSource() {
+        return (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+                new Class<?>[]{DataSource.class}, (proxy, method, args) -> {
+                    Object result = invoke(pool, method, args);
+                    if (result instanceof Connection connection) {
+                        return countingConnection(connection);
+                    }
+                    return result;
+                });
+    }
+
+    public long getRoundTrips() {
+        return roundTrips.get();
+    }
+
+    private Connection countingConnection(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    Object result = invoke(connection, method, args);
+                    if (result instanceof PreparedStatement statement) {
+                        return countingStatement(statement, PreparedStatement.class);
+                    } else if (result instanceof Statement statement) {
+                        return countingStatement(statement, Statement.class);
+                    }
+                    return result;
+                });
+    }
+
+    private Object countingStatement(Statement statement, Class<?> type) {
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    if (method.getName().startsWith("execute")) {
+                        roundTrips.incrementAndGet();
+                    }
+                    return invoke(statement, method, args);
+                });
+    }
+
+    private static Object invoke(Object target, java.lang.reflect.Method method, Object[] args)
+            throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void loadSchema() throws SQLException, IOException {
+        String schema = Files.readString(Path.of(System.getProperty("pingu.schema",
+                "../pingu_schema.sql")));
+        try (Connection connection = pool.getConnection();
+             Statement statement = connection.createStatement()) {
+            for (String sql : schema.split(";")) {
+                sql = sql.trim();
+                // H2 has no DATABASE statements and uses single quoted strings
+                if (sql.isEmpty() || sql.matches("(?is)^(DROP DATABASE|CREATE DATABASE|USE) .*")) {
+                    continue;
+                }
+                statement.execute(sql.replace('"', '\'')
+                        .replaceAll("(?i)ENGINE\\s*=\\s*INNODB", ""));
+            }
+        }
+    }
+
+    /**
+     * Inserts readers, books, novels and borrowings with 2 books and 1 novel each.
+     */
+    public void seed(int users, int books, int novels, int borrowings) throws SQLException {
+        try (Connection connection = pool.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement("INSERT INTO Users " +
+                    "(name, email, password, role) VALUES (?, ?, ?, 'READER')")) {
+                for (int i = 0; i < users; i++) {
+                    statement.setString(1, "Reader " + i);
+                    statement.setString(2, "reader" + i + "@pingu.com.co");
+                    statement.setString(3, "password" + i);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+            try (PreparedStatement statement = connection.prepareStatement("INSERT INTO Books " +
+                    "(title, author, copies, copies_borrowed, field, pages) VALUES (?, ?, ?, 0, " +
+                    "?, ?)")) {
+                for (int i = 0; i < books; i++) {
+                    statement.setString(1, "Libro " + i);
+                    statement.setString(2, "Autor " + (i % 100));
+                    statement.setInt(3, 1_000_000);
+                    statement.setString(4, "Campo " + (i % 20));
+                    statement.setInt(5, 100 + i % 500);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+            try (PreparedStatement statement = connection.prepareStatement("INSERT INTO Novels " +
+                    "(title, author, copies, copies_borrowed, genre, recommended_age) VALUES (?, " +
+                    "?, ?, 0, ?, ?)")) {
+                for (int i = 0; i < novels; i++) {
+                    statement.setString(1, "Novela " + i);
+                    statement.setString(2, "Autora " + (i % 100));
+                    statement.setInt(3, 1_000_000);
+                    statement.setString(4, "Genero " + (i % 10));
+                    statement.setInt(5, 6 + i % 12);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+            seedBorrowings(connection, users, books, novels, borrowings);
+            connection.commit();
+            connection.setAutoCommit(true);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("ANALYZE"); // fresh statistics, like a long running MySQL
+            }
+        }
+    }
+
+    private void seedBorrowings(Connection connection, int users, int books, int novels,
+                                int borrowings) throws SQLException {
+        LocalDate requested = LocalDate.now().minusDays(5);
+        try (PreparedStatement statement = connection.prepareStatement("INSERT INTO Borrowings " +
+                "(id, user_id, requested_date, returned_date, status, finalized_date) VALUES " +
+                "(?, ?, ?, ?, ?, ?)");
+             PreparedStatement statementB = connection.prepareStatement("INSERT INTO " +
+                     "borrowings_books (borrowing_id, book_id) VALUES (?, ?)");
+             PreparedStatement statementN = connection.prepareStatement("INSERT INTO " +
+                     "borrowings_novels (borrowing_id, novel_id) VALUES (?, ?)")) {
+            for (int id = 1; id <= borrowings; id++) {
+                statement.setInt(1, id);
+                statement.setInt(2, 2 + id % users); // user 1 is the admin
+                statement.setDate(3, Date.valueOf(requested));
+                statement.setDate(4, Date.valueOf(requested.plusDays(10)));
+                boolean finalized = id % 3 == 0;
+                statement.setString(5, finalized ? "FINALIZED" : "BORROWED");
+                statement.setDate(6, finalized ? Date.valueOf(requested.plusDays(3)) : null);
+                statement.addBatch();
+
+                int firstBook = 1 + (id * 2) % books;
+                statementB.setInt(1, id);
+                statementB.setInt(2, firstBook);
+                statementB.addBatch();
+                statementB.setInt(1, id);
+                statementB.setInt(2, 1 + firstBook % books);
+                statementB.addBatch();
+
+                statementN.setInt(1, id);
+                statementN.setInt(2, 1 + id % novels);
+                statementN.addBatch();
+            }
+            statement.executeBatch();
+            statementB.executeBatch();
+            statementN.executeBatch();
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try (Connection connection = pool.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("SHUTDOWN");
+        }
+        pool.close();
+    }
+}
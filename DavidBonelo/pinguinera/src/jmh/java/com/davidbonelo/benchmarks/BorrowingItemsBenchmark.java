@@ -0,0 +1,88 @@
+package com.davidbonelo.benchmarks;
+
+import com.davidbonelo.models.Borrowing;
+import com.davidbonelo.persistance.BorrowingDAO;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading every borrowing with its items: one query per borrowing (N+1) against the
+ * paged IN list loader. roundTrips / calls is the number of statements sent per load.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BorrowingItemsBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    public int borrowings;
+
+    private BenchmarkDatabase database;
+    private BorrowingDAO borrowingDAO;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException, IOException {
+        database = new BenchmarkDatabase("borrowing_items_" + borrowings);
+        database.seed(100, 2_000, 1_000, borrowings);
+        borrowingDAO = new BorrowingDAO(database.countingDataSource());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        database.close();
+    }
+
+    @Benchmark
+    public List<Borrowing> perBorrowing(RoundTrips counter) throws SQLException {
+        long before = database.getRoundTrips();
+        List<Borrowing> result = borrowingDAO.getAllBorrowings();
+        result.forEach(b -> b.setBorrowedItems(borrowingDAO.getAllItemsForABorrowing(b.getId())));
+        counter.count(database.getRoundTrips() - before);
+        return result;
+    }
+
+    @Benchmark
+    public List<Borrowing> batched(RoundTrips counter) throws SQLException {
+        long before = database.getRoundTrips();
+        List<Borrowing> result = borrowingDAO.getAllBorrowingsAndItems();
+        counter.count(database.getRoundTrips() - before);
+        return result;
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class RoundTrips {
+        public long roundTrips;
+        public long calls;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            roundTrips = 0;
+            calls = 0;
+        }
+
+        void count(long statements) {
+            roundTrips += statements;
+            calls++;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.davidbonelo.benchmarks;
+
+import com.davidbonelo.audit.AuditLog;
+import com.davidbonelo.audit.AuditOptions;
+import com.davidbonelo.models.Borrowing;
+import com.davidbonelo.models.User;
+import com.davidbonelo.models.UserRole;
+import com.davidbonelo.persistance.AuditDAO;
+import com.davidbonelo.persistance.BookDAO;
+import com.davidbonelo.persistance.BorrowingDAO;
+import com.davidbonelo.persistance.CirculationDAO;
+import com.davidbonelo.persistance.HoldDAO;
+import com.davidbonelo.persistance.NovelDAO;
+import com.davidbonelo.services.BorrowingsService;
+import com.davidbonelo.services.HoldsService;
+import com.davidbonelo.services.LibraryManager;
+import com.davidbonelo.services.OverdueScanner;
+import com.davidbonelo.services.Session;
+import com.davidbonelo.services.SessionRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Borrowing flows through the service: creating a borrowing of a book and a novel (one
+ * transaction) and loading every borrowing with its items, at several borrowings table sizes
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BorrowingsServiceBenchmark {
+    private static final int BOOKS = 2_000;
+    private static final int NOVELS = 1_000;
+
+    @Param({"100", "1000", "10000"})
+    public int borrowings;
+
+    private BenchmarkDatabase database;
+    private BorrowingDAO borrowingDAO;
+    private BorrowingsService borrowingsService;
+    private AuditLog auditLog;
+    private User reader;
+    private Session session;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException, IOException {
+        database = new BenchmarkDatabase("borrowings_service_" + borrowings);
+        database.seed(100, BOOKS, NOVELS, borrowings);
+        BookDAO bookDAO = new BookDAO(database.getPool());
+        NovelDAO novelDAO = new NovelDAO(database.getPool());
+        borrowingDAO = new BorrowingDAO(database.getPool());
+        // The real audit table, its inserts happen on the writer thread
+        auditLog = new AuditLog(new AuditDAO(database.getPool())::createEvents,
+                new AuditOptions());
+        LibraryManager libraryManager = new LibraryManager(bookDAO, novelDAO);
+        borrowingsService = new BorrowingsService(bookDAO, novelDAO, borrowingDAO,
+                new CirculationDAO(database.getPool()), database.getPool(), libraryManager,
+                auditLog, new OverdueScanner(borrowingDAO), new HoldsService(
+                new HoldDAO(database.getPool()), bookDAO, novelDAO, database.getPool(),
+                libraryManager, Duration.ofHours(48)));
+        reader = new User(2, "Reader 0", "reader0@pingu.com.co", UserRole.READER);
+        session = new SessionRegistry(1, Duration.ofHours(1), Duration.ofHours(1))
+                .open(reader);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        auditLog.close();
+        database.close();
+    }
+
+    @Benchmark
+    public Borrowing createBorrowing() throws SQLException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        borrowingsService.addBorrowingBook(session, 1 + random.nextInt(BOOKS));
+        borrowingsService.addBorrowingNovel(session, 1 + random.nextInt(NOVELS));
+        Borrowing borrowing = new Borrowing(LocalDate.now().plusDays(10), reader);
+        borrowingsService.createBorrowing(session, borrowing);
+        return borrowing;
+    }
+
+    @Benchmark
+    public List<Borrowing> getAllBorrowingsAndItems() throws SQLException {
+        return borrowingDAO.getAllBorrowingsAndItems();
+    }
+}
@@ -0,0 +1,68 @@
+package com.davidbonelo.benchmarks;
+
+import com.davidbonelo.models.Book;
+import com.davidbonelo.persistance.BookDAO;
+import com.davidbonelo.persistance.PoolConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading the books table straight from the DAO: the whole listing and single rows by id
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CatalogBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int books;
+
+    // 0 prepares every statement again, like before the statement cache
+    @Param({"0", "64"})
+    public int statementCacheSize;
+
+    private BenchmarkDatabase database;
+    private BookDAO bookDAO;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException, IOException {
+        database = new BenchmarkDatabase("catalog_" + books,
+                new PoolConfig().setStatementCacheSize(statementCacheSize));
+        database.seed(10, books, 10, 0);
+        bookDAO = new BookDAO(database.getPool());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        database.close();
+    }
+
+    @Benchmark
+    public List<Book> getAllBooks() throws SQLException {
+        return bookDAO.getAllBooks();
+    }
+
+    @Benchmark
+    public Book getBookById() throws SQLException {
+        return bookDAO.getBookById(1 + ThreadLocalRandom.current().nextInt(books));
+    }
+}
@@ -0,0 +1,101 @@
+package com.davidbonelo.benchmarks;
+
+import com.davidbonelo.models.Book;
+import com.davidbonelo.persistance.BookDAO;
+import com.davidbonelo.persistance.ConnectionPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Many threads borrowing the same few titles: reading the book and writing the whole row back
+ * (the old updateBook path) against the conditional in place increment. The tear down prints how
+ * many borrowed copies were lost by each one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+public class CopyReservationBenchmark {
+    @Param({"1", "10", "1000"})
+    public int hotTitles;
+
+    private BenchmarkDatabase database;
+    private ConnectionPool pool;
+    private BookDAO bookDAO;
+    private final AtomicLong reserved = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException, IOException {
+        database = new BenchmarkDatabase("copy_reservation_" + hotTitles);
+        database.seed(10, hotTitles, 10, 0);
+        pool = database.getPool();
+        bookDAO = new BookDAO(pool);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        try (Connection connection = pool.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT SUM(copies_borrowed) FROM Books")) {
+            rs.next();
+            System.out.println("\nCopies reserved: " + reserved.get() + ", recorded: " +
+                    rs.getLong(1) + ", lost: " + (reserved.get() - rs.getLong(1)));
+        }
+        database.close();
+    }
+
+    @Benchmark
+    public Book readModifyWrite() throws SQLException {
+        int bookId = 1 + ThreadLocalRandom.current().nextInt(hotTitles);
+        Book book = pool.inTransaction(() -> {
+            Book current = bookDAO.getBookById(bookId);
+            if (current.getAvailableCopies() < 1) {
+                return null;
+            }
+            current.setCopiesBorrowed(current.getCopiesBorrowed() + 1);
+            bookDAO.updateBook(current);
+            return current;
+        });
+        if (book != null) {
+            reserved.incrementAndGet();
+        }
+        return book;
+    }
+
+    @Benchmark
+    public Map<Integer, Boolean> conditionalIncrement() throws SQLException {
+        int bookId = 1 + ThreadLocalRandom.current().nextInt(hotTitles);
+        Map<Integer, Boolean> result = pool.inTransaction(() ->
+                bookDAO.reserveCopies(List.of(bookId)));
+        if (result.get(bookId)) {
+            reserved.incrementAndGet();
+        }
+        return result;
+    }
+}
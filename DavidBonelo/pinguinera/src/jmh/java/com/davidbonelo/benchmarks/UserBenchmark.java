@@ -0,0 +1,64 @@
+package com.davidbonelo.benchmarks;
+
+import com.davidbonelo.persistance.PoolConfig;
+import com.davidbonelo.persistance.StoredCredentials;
+import com.davidbonelo.persistance.UserDAO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looking up the credentials of a login, with the email index the time should barely move with
+ * the number of users. Checking the password hash is left out on purpose, it costs far more.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserBenchmark {
+    @Param({"100", "10000", "100000"})
+    public int users;
+
+    // 0 prepares every statement again, like before the statement cache
+    @Param({"0", "64"})
+    public int statementCacheSize;
+
+    private BenchmarkDatabase database;
+    private UserDAO userDAO;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException, IOException {
+        database = new BenchmarkDatabase("users_" + users,
+                new PoolConfig().setStatementCacheSize(statementCacheSize));
+        database.seed(users, 10, 10, 0);
+        userDAO = new UserDAO(database.getPool());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        database.close();
+    }
+
+    @Benchmark
+    public StoredCredentials getCredentials() throws SQLException {
+        int i = ThreadLocalRandom.current().nextInt(users);
+        return userDAO.getCredentials("reader" + i + "@pingu.com.co");
+    }
+}
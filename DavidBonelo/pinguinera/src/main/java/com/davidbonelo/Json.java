@@ -0,0 +1,234 @@
+package com.davidbonelo;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Just enough JSON for the API and the catalog files: objects become Maps, arrays Lists, numbers
+ * BigDecimals. Writing takes the same types plus any other Number, Boolean and Strings (anything
+ * else uses toString).
+ */
+public class Json {
+    private Json() {
+    }
+
+    public static String write(Object value) {
+        StringBuilder out = new StringBuilder();
+        write(value, out);
+        return out.toString();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the text isn't valid JSON
+     */
+    public static Object parse(String text) {
+        Parser parser = new Parser(text);
+        Object value = parser.value();
+        parser.skipSpaces();
+        if (parser.position != text.length()) {
+            throw parser.error("Unexpected text after the value");
+        }
+        return value;
+    }
+
+    private static void write(Object value, StringBuilder out) {
+        if (value == null) {
+            out.append("null");
+        } else if (value instanceof Number || value instanceof Boolean) {
+            out.append(value);
+        } else if (value instanceof Map<?, ?> map) {
+            out.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if (!first) {
+                    out.append(',');
+                }
+                first = false;
+                quote(String.valueOf(entry.getKey()), out);
+                out.append(':');
+                write(entry.getValue(), out);
+            }
+            out.append('}');
+        } else if (value instanceof Iterable<?> list) {
+            out.append('[');
+            boolean first = true;
+            for (Object item : list) {
+                if (!first) {
+                    out.append(',');
+                }
+                first = false;
+                write(item, out);
+            }
+            out.append(']');
+        } else {
+            quote(value.toString(), out);
+        }
+    }
+
+    private static void quote(String text, StringBuilder out) {
+        out.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+                }
+            }
+        }
+        out.append('"');
+    }
+
+    private static class Parser {
+        private final String text;
+        private int position;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        Object value() {
+            skipSpaces();
+            if (position >= text.length()) {
+                throw error("Missing value");
+            }
+            char c = text.charAt(position);
+            switch (c) {
+                case '{' -> {
+                    return object();
+                }
+                case '[' -> {
+                    return array();
+                }
+                case '"' -> {
+                    return string();
+                }
+            }
+            if (text.startsWith("true", position)) {
+                position += 4;
+                return true;
+            } else if (text.startsWith("false", position)) {
+                position += 5;
+                return false;
+            } else if (text.startsWith("null", position)) {
+                position += 4;
+                return null;
+            }
+            return number();
+        }
+
+        private Map<String, Object> object() {
+            Map<String, Object> object = new LinkedHashMap<>();
+            position++; // {
+            skipSpaces();
+            if (consume('}')) {
+                return object;
+            }
+            do {
+                skipSpaces();
+                String key = string();
+                skipSpaces();
+                expect(':');
+                object.put(key, value());
+                skipSpaces();
+            } while (consume(','));
+            expect('}');
+            return object;
+        }
+
+        private List<Object> array() {
+            List<Object> array = new ArrayList<>();
+            position++; // [
+            skipSpaces();
+            if (consume(']')) {
+                return array;
+            }
+            do {
+                array.add(value());
+                skipSpaces();
+            } while (consume(','));
+            expect(']');
+            return array;
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (position < text.length()) {
+                char c = text.charAt(position++);
+                if (c == '"') {
+                    return value.toString();
+                } else if (c != '\\') {
+                    value.append(c);
+                } else if (position < text.length()) {
+                    char escaped = text.charAt(position++);
+                    switch (escaped) {
+                        case 'n' -> value.append('\n');
+                        case 't' -> value.append('\t');
+                        case 'r' -> value.append('\r');
+                        case 'b' -> value.append('\b');
+                        case 'f' -> value.append('\f');
+                        case 'u' -> {
+                            if (position + 4 > text.length()) {
+                                throw error("Invalid unicode escape");
+                            }
+                            value.append((char) Integer.parseInt(
+                                    text.substring(position, position + 4), 16));
+                            position += 4;
+                        }
+                        default -> value.append(escaped); // \" \\ \/
+                    }
+                }
+            }
+            throw error("Unterminated string");
+        }
+
+        private BigDecimal number() {
+            int start = position;
+            while (position < text.length() &&
+                    "+-0123456789.eE".indexOf(text.charAt(position)) >= 0) {
+                position++;
+            }
+            try {
+                return new BigDecimal(text.substring(start, position));
+            } catch (NumberFormatException e) {
+                throw error("Invalid value");
+            }
+        }
+
+        private void expect(char c) {
+            if (!consume(c)) {
+                throw error("Expected '" + c + "'");
+            }
+        }
+
+        private boolean consume(char c) {
+            if (position < text.length() && text.charAt(position) == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        void skipSpaces() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + (position + 1));
+        }
+    }
+}
@@ -1,17 +1,33 @@
 package com.davidbonelo;
 
-import com.davidbonelo.persistance.UserDAO;
-import com.davidbonelo.services.UserService;
+import com.davidbonelo.api.ApiServer;
 import com.davidbonelo.ui.MainMenu;
 
-import java.sql.Connection;
+import java.io.IOException;
 
 public class Main {
-    public static void main(String[] args) {
-        Connection connection = PinguDatabase.getConnection();
+    public static void main(String[] args) throws IOException {
+        PinguServices services = new PinguServices(PinguDatabase.getDatabase());
+        services.start();
 
-        new MainMenu(connection).menu();
+        if (args.length > 0 && args[0].equals("api")) {
+            // Runs until the process is stopped
+            ApiServer server = new ApiServer(services);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.stop();
+                services.stop();
+                PinguDatabase.close();
+            }));
+            server.start();
+            return;
+        }
 
-        PinguDatabase.close();
+        try {
+            new MainMenu(services).menu();
+        } finally {
+            // Also when the menu fails, so the queued audit events are written
+            services.stop();
+            PinguDatabase.close();
+        }
     }
-}
\ No newline at end of file
+}
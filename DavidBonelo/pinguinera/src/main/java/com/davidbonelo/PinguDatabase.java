@@ -1,38 +1,54 @@
 package com.davidbonelo;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.SQLException;
+import com.davidbonelo.persistance.ConnectionPool;
+import com.davidbonelo.persistance.PoolConfig;
+import com.davidbonelo.persistance.ReplicaConfig;
+import com.davidbonelo.persistance.RoutingDataSource;
 
 import static com.davidbonelo.Secrets.DB_PASSWORD;
 import static com.davidbonelo.Secrets.DB_URL;
 import static com.davidbonelo.Secrets.DB_USER;
 
+/**
+ * The primary database and, when the pingu.replica.url property is set, a replica of it (same
+ * user and password) for the catalog pages. pingu.replica.maxStaleness is how many
+ * milliseconds behind the replica can be.
+ */
 public class PinguDatabase {
-    private static Connection connection;
+    private static RoutingDataSource database;
 
-    private static void startConnection() {
-        try {
-            connection = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
-//            connection.setAutoCommit(false);
-        } catch (Exception e) {
-            System.out.println("Database connection error: " + e.getMessage());
+    private static void startPool() {
+        ConnectionPool pool = new ConnectionPool(DB_URL, DB_USER, DB_PASSWORD, new PoolConfig());
+        String replicaUrl = System.getProperty("pingu.replica.url");
+        if (replicaUrl == null) {
+            database = new RoutingDataSource(pool);
+            return;
         }
+        ReplicaConfig config = new ReplicaConfig();
+        config.setMaxStaleness(Long.getLong("pingu.replica.maxStaleness",
+                config.getMaxStaleness()));
+        database = new RoutingDataSource(pool, new ConnectionPool(replicaUrl, DB_USER,
+                DB_PASSWORD, new PoolConfig()), config);
     }
 
-    public static Connection getConnection() {
-        if (connection == null) {
-            startConnection();
+    public static synchronized RoutingDataSource getDatabase() {
+        if (database == null) {
+            startPool();
         }
-        return connection;
+        return database;
     }
 
-    public static void close() {
-        try {
-            connection.close();
-            connection = null;
-        } catch (SQLException e) {
-            e.printStackTrace();
+    public static synchronized ConnectionPool getPool() {
+        return getDatabase().getPrimary();
+    }
+
+    public static synchronized void close() {
+        if (database != null) {
+            System.out.println("Closing database pool " + database.getPrimary().getStats() +
+                    ", reads from the replica " + database.getReplicaReads() + ", from the " +
+                    "primary " + database.getPrimaryReads());
+            database.close();
+            database = null;
         }
     }
 }
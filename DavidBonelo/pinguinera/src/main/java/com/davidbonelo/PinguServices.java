@@ -0,0 +1,191 @@
+package com.davidbonelo;
+
+import com.davidbonelo.audit.AuditFile;
+import com.davidbonelo.audit.AuditLog;
+import com.davidbonelo.audit.AuditOptions;
+import com.davidbonelo.audit.AuditSink;
+import com.davidbonelo.metrics.MetricsReporter;
+import com.davidbonelo.persistance.AuditDAO;
+import com.davidbonelo.persistance.BookDAO;
+import com.davidbonelo.persistance.BorrowingDAO;
+import com.davidbonelo.persistance.CirculationDAO;
+import com.davidbonelo.persistance.ConnectionPool;
+import com.davidbonelo.persistance.ExportDAO;
+import com.davidbonelo.persistance.HoldDAO;
+import com.davidbonelo.persistance.ImportCheckpointDAO;
+import com.davidbonelo.persistance.NovelDAO;
+import com.davidbonelo.persistance.RoutingDataSource;
+import com.davidbonelo.persistance.UserDAO;
+import com.davidbonelo.reports.CirculationReport;
+import com.davidbonelo.services.BorrowingsService;
+import com.davidbonelo.services.CatalogExporter;
+import com.davidbonelo.services.CatalogImporter;
+import com.davidbonelo.services.HoldsService;
+import com.davidbonelo.services.LibraryManager;
+import com.davidbonelo.services.OverdueScanner;
+import com.davidbonelo.services.PasswordHasher;
+import com.davidbonelo.services.SessionRegistry;
+import com.davidbonelo.services.UserService;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Duration;
+
+/**
+ * Builds the DAOs and services over one connection pool, shared by the console and the HTTP API.
+ * The pages of the catalog listings can be read from a replica, see {@link RoutingDataSource}.
+ */
+public class PinguServices {
+    // Leaves connections free for the other users while exporting
+    private static final int EXPORT_THREADS = 4;
+    private static final int MAX_SESSIONS = 10_000;
+    private static final Duration SESSION_IDLE_TIMEOUT = Duration.ofMinutes(30);
+    // Even in use, a session ends after this long and its user logs in again
+    private static final Duration SESSION_MAX_LIFETIME = Duration.ofHours(12);
+    private static final int DEFAULT_METRICS_INTERVAL = 60;
+    // Minutes, scans in the same day after the first one cost nothing
+    private static final int DEFAULT_OVERDUE_INTERVAL = 60;
+    // Hours a copy set aside for a hold waits for its patron, and minutes between expiry checks
+    private static final int DEFAULT_HOLD_PICKUP = 48;
+    private static final int DEFAULT_HOLD_INTERVAL = 5;
+
+    private final RoutingDataSource database;
+    private final ConnectionPool pool;
+    private final UserService userService;
+    private final LibraryManager libraryManager;
+    private final BorrowingsService borrowingsService;
+    private final CatalogImporter catalogImporter;
+    private final CatalogExporter catalogExporter;
+    private final CirculationReport circulationReport;
+    private final AuditLog auditLog;
+    private final OverdueScanner overdueScanner;
+    private final HoldsService holdsService;
+    private MetricsReporter metricsReporter;
+
+    public PinguServices(ConnectionPool pool) {
+        this(new RoutingDataSource(pool));
+    }
+
+    public PinguServices(RoutingDataSource database) {
+        this.database = database;
+        this.pool = database.getPrimary();
+        UserDAO userDAO = new UserDAO(pool);
+        BookDAO bookDAO = new BookDAO(pool, database.reads());
+        NovelDAO novelDAO = new NovelDAO(pool, database.reads());
+        BorrowingDAO borrowingDAO = new BorrowingDAO(pool);
+        // pingu.password.iterations trades login CPU time for resistance to brute force
+        this.userService = new UserService(userDAO,
+                new SessionRegistry(MAX_SESSIONS, SESSION_IDLE_TIMEOUT, SESSION_MAX_LIFETIME),
+                new PasswordHasher(Integer.getInteger("pingu.password.iterations",
+                        PasswordHasher.DEFAULT_ITERATIONS)));
+        this.libraryManager = new LibraryManager(bookDAO, novelDAO);
+        this.auditLog = new AuditLog(auditSink(pool), new AuditOptions());
+        this.overdueScanner = new OverdueScanner(borrowingDAO);
+        this.holdsService = new HoldsService(new HoldDAO(pool), bookDAO, novelDAO, pool,
+                libraryManager, Duration.ofHours(Integer.getInteger("pingu.holds.pickupHours",
+                DEFAULT_HOLD_PICKUP)));
+        CirculationDAO circulationDAO = new CirculationDAO(pool);
+        this.borrowingsService = new BorrowingsService(bookDAO, novelDAO, borrowingDAO,
+                circulationDAO, pool, libraryManager, auditLog, overdueScanner, holdsService);
+        this.circulationReport = new CirculationReport(circulationDAO, pool);
+        this.catalogImporter = new CatalogImporter(pool, bookDAO, novelDAO,
+                new ImportCheckpointDAO(pool), libraryManager);
+        this.catalogExporter = new CatalogExporter(new ExportDAO(pool), EXPORT_THREADS);
+    }
+
+    /**
+     * The borrowings_audit table, or the file of the pingu.audit.file property when set
+     */
+    private static AuditSink auditSink(ConnectionPool pool) {
+        String file = System.getProperty("pingu.audit.file");
+        if (file != null) {
+            return new AuditFile(Path.of(file));
+        }
+        AuditDAO auditDAO = new AuditDAO(pool);
+        // One commit per batch instead of one per event
+        return events -> pool.inTransaction(() -> {
+            auditDAO.createEvents(events);
+            return null;
+        });
+    }
+
+    /**
+     * Starts what can warm up in the background, e.g. the availability ledger and the search
+     * index, and the periodic jobs: the metrics snapshots every pingu.metrics.interval seconds
+     * (0 turns them off) to the pingu.metrics.file, the overdue borrowings scan every
+     * pingu.overdue.interval minutes and the expiry of holds every pingu.holds.interval minutes.
+     * The open holds are loaded before returning.
+     */
+    public void start() {
+        try {
+            holdsService.load();
+        } catch (SQLException e) {
+            System.err.println("Couldn't load the holds, " + e.getLocalizedMessage());
+        }
+        holdsService.start(Duration.ofMinutes(Integer.getInteger("pingu.holds.interval",
+                DEFAULT_HOLD_INTERVAL)));
+        Thread indexer = new Thread(() -> {
+            libraryManager.loadAvailability();
+            libraryManager.loadSearchIndex();
+        }, "pingu-search-indexer");
+        indexer.setDaemon(true);
+        indexer.start();
+        overdueScanner.start(Duration.ofMinutes(Integer.getInteger("pingu.overdue.interval",
+                DEFAULT_OVERDUE_INTERVAL)));
+
+        int interval = Integer.getInteger("pingu.metrics.interval", DEFAULT_METRICS_INTERVAL);
+        if (interval > 0) {
+            metricsReporter = new MetricsReporter(Path.of(System.getProperty("pingu.metrics.file",
+                    "pingu-metrics.log")), Duration.ofSeconds(interval));
+        }
+    }
+
+    /**
+     * Stops the background work and writes the pending audit events, the connection pool is
+     * closed apart (after this)
+     */
+    public void stop() {
+        overdueScanner.stop();
+        holdsService.stop();
+        auditLog.close();
+        if (metricsReporter != null) {
+            metricsReporter.stop();
+        }
+    }
+
+    public RoutingDataSource getDatabase() {
+        return database;
+    }
+
+    public ConnectionPool getPool() {
+        return pool;
+    }
+
+    public UserService getUserService() {
+        return userService;
+    }
+
+    public LibraryManager getLibraryManager() {
+        return libraryManager;
+    }
+
+    public BorrowingsService getBorrowingsService() {
+        return borrowingsService;
+    }
+
+    public CatalogImporter getCatalogImporter() {
+        return catalogImporter;
+    }
+
+    public CatalogExporter getCatalogExporter() {
+        return catalogExporter;
+    }
+
+    public HoldsService getHoldsService() {
+        return holdsService;
+    }
+
+    public CirculationReport getCirculationReport() {
+        return circulationReport;
+    }
+}
@@ -2,6 +2,7 @@ package com.davidbonelo;
 
 // TODO: replace with an env file
 public class Secrets {
-    public static final String DB_URL = "jdbc:mysql://localhost:3307/pingu";
+    public static final String DB_URL = "jdbc:mysql://localhost:3307/pingu?useCursorFetch=true" +
+            "&useServerPrepStmts=true&rewriteBatchedStatements=true";
     public static final String DB_USER = "root", DB_PASSWORD = "root1234";
 }
@@ -4,9 +4,14 @@ import com.davidbonelo.models.User;
 import com.davidbonelo.models.UserRole;
 
 import java.time.LocalDate;
+import java.util.List;
 import java.util.Scanner;
+import java.util.function.BiFunction;
+import java.util.function.ToIntFunction;
 
 public class Utils {
+    // Rows shown per page in the listings, -Dpingu.pageSize=50 to change it
+    public static final int PAGE_SIZE = Integer.getInteger("pingu.pageSize", 20);
     private static final Scanner scanner = new Scanner(System.in);
 
     public static void closeScanner() {
@@ -70,6 +75,28 @@ public class Utils {
         return date;
     }
 
+    /**
+     * Prints a listing page by page, asking before loading the next one
+     *
+     * @param loadPage loads up to PAGE_SIZE items after the given id
+     * @param idOf     the id of an item, the last one of a page is where the next page starts
+     */
+    public static <T> void printPages(BiFunction<Integer, Integer, List<T>> loadPage,
+                                      ToIntFunction<T> idOf) {
+        int afterId = 0;
+        while (true) {
+            List<T> page = loadPage.apply(afterId, PAGE_SIZE);
+            page.forEach(System.out::println);
+            if (page.size() < PAGE_SIZE) {
+                return;
+            }
+            afterId = idOf.applyAsInt(page.get(page.size() - 1));
+            if (askNumber("1. Next page | 0. Back") != 1) {
+                return;
+            }
+        }
+    }
+
     public static boolean validMenuAccess(User user, UserRole requiredRole) {
         boolean valid = validPermission(user, requiredRole);
         if (!valid) {
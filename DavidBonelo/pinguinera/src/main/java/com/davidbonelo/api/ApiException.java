@@ -0,0 +1,18 @@
+package com.davidbonelo.api;
+
+/**
+ * An error the client made, answered with the status code and the message
+ */
+public class ApiException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    private final int status;
+
+    public ApiException(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+}
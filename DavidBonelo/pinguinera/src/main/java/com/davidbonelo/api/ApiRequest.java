@@ -0,0 +1,191 @@
+package com.davidbonelo.api;
+
+import com.davidbonelo.Json;
+import com.davidbonelo.models.User;
+import com.davidbonelo.models.UserRole;
+import com.davidbonelo.services.Session;
+import com.davidbonelo.services.UserService;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.davidbonelo.Utils.validPermission;
+
+/**
+ * One HTTP call: its path below the handler context, query, JSON body and caller
+ */
+public class ApiRequest {
+    // Bigger bodies are refused, none of the endpoints needs more
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+
+    private final HttpExchange exchange;
+    private final UserService userService;
+    private final List<String> path = new ArrayList<>();
+    private final Map<String, String> query = new HashMap<>();
+    private int status = 200;
+    private Session session;
+
+    ApiRequest(HttpExchange exchange, UserService userService) {
+        this.exchange = exchange;
+        this.userService = userService;
+        String context = exchange.getHttpContext().getPath();
+        for (String segment : exchange.getRequestURI().getPath().substring(context.length())
+                .split("/")) {
+            if (!segment.isEmpty()) {
+                path.add(URLDecoder.decode(segment, StandardCharsets.UTF_8));
+            }
+        }
+        String rawQuery = exchange.getRequestURI().getRawQuery();
+        if (rawQuery != null) {
+            for (String pair : rawQuery.split("&")) {
+                int equals = pair.indexOf('=');
+                String name = equals < 0 ? pair : pair.substring(0, equals);
+                String value = equals < 0 ? "" : pair.substring(equals + 1);
+                query.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                        URLDecoder.decode(value, StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    public String getMethod() {
+        return exchange.getRequestMethod();
+    }
+
+    /**
+     * @return the path segments after the handler context, e.g. [12, confirm] for
+     * /api/borrowings/12/confirm
+     */
+    public List<String> getPath() {
+        return path;
+    }
+
+    public int pathId(int index) {
+        try {
+            return Integer.parseInt(path.get(index));
+        } catch (NumberFormatException e) {
+            throw new ApiException(404, "Not found");
+        }
+    }
+
+    public String getParam(String name) {
+        return query.get(name);
+    }
+
+    public int getIntParam(String name, int defaultValue, int max) {
+        String value = query.get(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Math.min(Integer.parseInt(value), max);
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, name + " must be a number");
+        }
+    }
+
+    /**
+     * @return the JSON object sent as body
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> body() throws IOException {
+        byte[] bytes;
+        try (InputStream in = exchange.getRequestBody()) {
+            bytes = in.readNBytes(MAX_BODY_BYTES + 1);
+        }
+        if (bytes.length > MAX_BODY_BYTES) {
+            throw new ApiException(413, "Body too large");
+        }
+        Object json = Json.parse(new String(bytes, StandardCharsets.UTF_8));
+        if (!(json instanceof Map)) {
+            throw new ApiException(400, "Expected a JSON object");
+        }
+        return (Map<String, Object>) json;
+    }
+
+    public static String text(Map<String, Object> body, String name) {
+        Object value = body.get(name);
+        if (!(value instanceof String text) || text.isBlank()) {
+            throw new ApiException(400, "Missing " + name);
+        }
+        return text.trim();
+    }
+
+    public static List<Integer> ids(Map<String, Object> body, String name) {
+        Object value = body.get(name);
+        List<Integer> ids = new ArrayList<>();
+        if (value == null) {
+            return ids;
+        }
+        if (!(value instanceof List<?> list)) {
+            throw new ApiException(400, name + " must be a list of ids");
+        }
+        for (Object id : list) {
+            try {
+                ids.add(((BigDecimal) id).intValueExact());
+            } catch (ClassCastException | NullPointerException | ArithmeticException e) {
+                throw new ApiException(400, name + " must be a list of ids");
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * The session of the caller, from the token of "Authorization: Bearer" that POST
+     * /api/sessions returned. Resolved in memory, the database isn't queried.
+     */
+    public Session session() {
+        if (session == null) {
+            String token = token(exchange);
+            if (token == null) {
+                throw new ApiException(401, "Authentication required");
+            }
+            session = userService.getSession(token);
+            if (session == null) {
+                throw new ApiException(401, "Invalid or expired token");
+            }
+        }
+        return session;
+    }
+
+    /**
+     * @return the token of "Authorization: Bearer", null without one
+     */
+    static String token(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.startsWith("Bearer ")) {
+            return null;
+        }
+        return header.substring(7).trim();
+    }
+
+    /**
+     * The caller, see {@link #session()}
+     */
+    public User user() {
+        return session().getUser();
+    }
+
+    public User requireRole(UserRole role) {
+        User caller = user();
+        if (!validPermission(caller, role)) {
+            throw new ApiException(403, "Not allowed");
+        }
+        return caller;
+    }
+
+    int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+}
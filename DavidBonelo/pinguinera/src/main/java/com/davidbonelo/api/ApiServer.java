@@ -0,0 +1,101 @@
+package com.davidbonelo.api;
+
+import com.davidbonelo.PinguServices;
+import com.davidbonelo.services.UserService;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON over HTTP for the catalog, borrowings, holds, users and reports, on the JDK http
+ * server. Every request gets its own virtual thread when the JVM has them (21+), otherwise a
+ * bounded pool of platform threads. Either way the connection pool limits how many reach the
+ * database at once, the rest wait for a connection and get a 503 if none frees up in time.
+ * <p>
+ * Callers log in once with POST /api/sessions and send the token it returns as "Authorization:
+ * Bearer" on every other call. Tokens are checked in memory, so only logging in pays for the
+ * password hash and the Users query.
+ * <p>
+ * Sessions read their own writes: after a write their reads stay on the primary database for
+ * as long as the replica may be behind, see {@link ReadYourWritesFilter}.
+ */
+public class ApiServer {
+    private static final int DEFAULT_PORT = 8080;
+    private static final int DEFAULT_THREADS = 200;
+    // Seconds given to the requests in progress when stopping
+    private static final int STOP_DELAY = 5;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public ApiServer(PinguServices services, int port) throws IOException {
+        UserService userService = services.getUserService();
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        ReadYourWritesFilter readYourWrites = new ReadYourWritesFilter(userService,
+                services.getDatabase());
+        Map<String, HttpHandler> handlers = new LinkedHashMap<>();
+        handlers.put("/api/sessions", new SessionsHandler(userService));
+        handlers.put("/api/books", new CatalogHandler(services.getLibraryManager(), userService,
+                CatalogHandler.Collection.BOOKS));
+        handlers.put("/api/novels", new CatalogHandler(services.getLibraryManager(), userService,
+                CatalogHandler.Collection.NOVELS));
+        handlers.put("/api/search", new CatalogHandler(services.getLibraryManager(), userService,
+                CatalogHandler.Collection.SEARCH));
+        handlers.put("/api/borrowings", new BorrowingsHandler(services.getBorrowingsService(),
+                services.getLibraryManager(), userService));
+        handlers.put("/api/holds", new HoldsHandler(services.getHoldsService(),
+                services.getLibraryManager(), userService));
+        handlers.put("/api/users", new UsersHandler(userService));
+        handlers.put("/api/reports", new ReportsHandler(services.getCirculationReport(),
+                userService));
+        handlers.forEach((path, handler) -> server.createContext(path, handler).getFilters()
+                .add(readYourWrites));
+        executor = newExecutor(Integer.getInteger("pingu.api.threads", DEFAULT_THREADS));
+        server.setExecutor(executor);
+    }
+
+    /**
+     * Uses the port of the pingu.api.port system property
+     */
+    public ApiServer(PinguServices services) throws IOException {
+        this(services, Integer.getInteger("pingu.api.port", DEFAULT_PORT));
+    }
+
+    public void start() {
+        server.start();
+        System.out.println("API listening on port " + getPort());
+    }
+
+    public void stop() {
+        server.stop(STOP_DELAY);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(STOP_DELAY, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Looked up by reflection so the project still builds and runs on Java 17
+     */
+    static ExecutorService newExecutor(int platformThreads) {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(platformThreads);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.davidbonelo.api;
+
+import com.davidbonelo.models.Borrowing;
+import com.davidbonelo.models.LibraryItem;
+import com.davidbonelo.models.User;
+import com.davidbonelo.models.UserRole;
+import com.davidbonelo.services.BorrowingsService;
+import com.davidbonelo.services.LibraryManager;
+import com.davidbonelo.services.UserService;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static com.davidbonelo.Utils.validPermission;
+
+/**
+ * Borrowings of the authenticated user, employees see and manage all of them:
+ * <pre>
+ * GET  /api/borrowings?email=             own borrowings, employees all or the ones of email
+ * GET  /api/borrowings/{id}               with its items
+ * POST /api/borrowings                    {"returnDate": "2024-12-31", "books": [1], "novels": []}
+ * POST /api/borrowings/{id}/confirm       employees
+ * POST /api/borrowings/{id}/finalize      employees
+ * POST /api/borrowings/confirm            {"ids": [1, 2]}, employees, the result of every id
+ * POST /api/borrowings/finalize           {"ids": [1, 2]}, employees, the result of every id
+ * </pre>
+ */
+public class BorrowingsHandler extends JsonHandler {
+    private final BorrowingsService borrowingsService;
+    private final LibraryManager libraryManager;
+
+    public BorrowingsHandler(BorrowingsService borrowingsService, LibraryManager libraryManager,
+                             UserService userService) {
+        super(userService);
+        this.borrowingsService = borrowingsService;
+        this.libraryManager = libraryManager;
+    }
+
+    @Override
+    protected Object handle(ApiRequest request) throws IOException, SQLException {
+        User user = request.user();
+        List<String> path = request.getPath();
+        String method = request.getMethod();
+        if (path.isEmpty() && method.equals("GET")) {
+            return list(request, user);
+        } else if (path.isEmpty() && method.equals("POST")) {
+            return create(request);
+        } else if (path.size() == 1 && method.equals("GET")) {
+            return JsonViews.borrowing(details(user, request.pathId(0)));
+        } else if (path.size() == 1 && method.equals("POST")) {
+            return bulk(request, path.get(0));
+        } else if (path.size() == 2 && method.equals("POST")) {
+            request.requireRole(UserRole.EMPLOYEE);
+            int borrowingId = request.pathId(0);
+            switch (path.get(1)) {
+                case "confirm" -> borrowingsService.confirmBorrowing(user, borrowingId);
+                case "finalize" -> borrowingsService.finalizeBorrowing(user, borrowingId);
+                default -> throw notFound();
+            }
+            return JsonViews.borrowing(details(user, borrowingId));
+        }
+        throw path.size() > 2 ? notFound() : methodNotAllowed();
+    }
+
+    private Object bulk(ApiRequest request, String transition) throws IOException,
+            SQLException {
+        User user = request.requireRole(UserRole.EMPLOYEE);
+        List<Integer> ids = ApiRequest.ids(request.body(), "ids");
+        if (ids.isEmpty()) {
+            throw new ApiException(400, "Missing ids");
+        }
+        return switch (transition) {
+            case "confirm" -> borrowingsService.confirmBorrowings(user, ids);
+            case "finalize" -> borrowingsService.finalizeBorrowings(user, ids);
+            default -> throw notFound();
+        };
+    }
+
+    private Object list(ApiRequest request, User user) {
+        String email = request.getParam("email");
+        List<Borrowing> borrowings = email != null && validPermission(user, UserRole.EMPLOYEE) ?
+                borrowingsService.getBorrowingsByEmail(user, email) :
+                borrowingsService.getAllBorrowings(user);
+        if (borrowings == null) {
+            throw new ApiException(500, "Couldn't read the borrowings");
+        }
+        return borrowings.stream().map(JsonViews::borrowing).toList();
+    }
+
+    private Object create(ApiRequest request) throws IOException, SQLException {
+        User user = request.requireRole(UserRole.READER);
+        Map<String, Object> body = request.body();
+        LocalDate returnDate;
+        try {
+            returnDate = LocalDate.parse(ApiRequest.text(body, "returnDate"));
+        } catch (DateTimeParseException e) {
+            throw new ApiException(400, "returnDate must be a date like 2024-12-31");
+        }
+        if (!returnDate.isAfter(LocalDate.now())) {
+            throw new ApiException(400, "returnDate must be in the future");
+        }
+
+        List<LibraryItem> items = new ArrayList<>();
+        for (int bookId : ApiRequest.ids(body, "books")) {
+            items.add(found(libraryManager.getBook(bookId), "Book", bookId));
+        }
+        for (int novelId : ApiRequest.ids(body, "novels")) {
+            items.add(found(libraryManager.getNovel(novelId), "Novel", novelId));
+        }
+        Borrowing borrowing = new Borrowing(returnDate, user);
+        borrowingsService.createBorrowing(borrowing, items);
+        request.setStatus(201);
+        return JsonViews.borrowing(borrowing);
+    }
+
+    private Borrowing details(User user, int borrowingId) throws SQLException {
+        Borrowing borrowing = borrowingsService.getBorrowingDetails(user, borrowingId);
+        if (borrowing == null) {
+            throw notFound(); // someone else's
+        }
+        return borrowing;
+    }
+
+    private static LibraryItem found(LibraryItem item, String type, int id) {
+        if (item == null) {
+            throw new ApiException(400, type + " with id " + id + " not found");
+        }
+        return item;
+    }
+}
@@ -0,0 +1,85 @@
+package com.davidbonelo.api;
+
+import com.davidbonelo.models.LibraryItem;
+import com.davidbonelo.services.LibraryManager;
+import com.davidbonelo.services.UserService;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read only catalog endpoints, open to anyone like the books and novels menus:
+ * <pre>
+ * GET /api/books?after=&limit=     a page of books ordered by id
+ * GET /api/books?author=           the books of an author
+ * GET /api/books/{id}
+ * (the same for /api/novels)
+ * GET /api/search?q=&limit=        best matches of titles, authors, fields and genres
+ * </pre>
+ */
+public class CatalogHandler extends JsonHandler {
+    static final int DEFAULT_PAGE = 20;
+    static final int MAX_PAGE = 100;
+
+    public enum Collection {BOOKS, NOVELS, SEARCH}
+
+    private final LibraryManager libraryManager;
+    private final Collection collection;
+
+    public CatalogHandler(LibraryManager libraryManager, UserService userService,
+                          Collection collection) {
+        super(userService);
+        this.libraryManager = libraryManager;
+        this.collection = collection;
+    }
+
+    @Override
+    protected Object handle(ApiRequest request) throws SQLException {
+        if (!request.getMethod().equals("GET")) {
+            throw methodNotAllowed();
+        }
+        if (collection == Collection.SEARCH) {
+            String query = request.getParam("q");
+            if (query == null || query.isBlank()) {
+                throw new ApiException(400, "Missing q");
+            }
+            return JsonViews.items(libraryManager.search(query,
+                    request.getIntParam("limit", DEFAULT_PAGE, MAX_PAGE)));
+        }
+        List<String> path = request.getPath();
+        if (path.size() == 1) {
+            LibraryItem item = collection == Collection.BOOKS ?
+                    libraryManager.getBook(request.pathId(0)) :
+                    libraryManager.getNovel(request.pathId(0));
+            if (item == null) {
+                throw notFound();
+            }
+            return JsonViews.item(item);
+        } else if (!path.isEmpty()) {
+            throw notFound();
+        }
+
+        String author = request.getParam("author");
+        if (author != null) {
+            return JsonViews.items(collection == Collection.BOOKS ?
+                    libraryManager.filterBooksByAuthor(author) :
+                    libraryManager.filterNovelsByAuthor(author));
+        }
+        int after = request.getIntParam("after", 0, Integer.MAX_VALUE);
+        int limit = request.getIntParam("limit", DEFAULT_PAGE, MAX_PAGE);
+        if (limit < 1) {
+            throw new ApiException(400, "limit must be at least 1");
+        }
+        List<? extends LibraryItem> page = collection == Collection.BOOKS ?
+                libraryManager.getBooksPage(after, limit) :
+                libraryManager.getNovelsPage(after, limit);
+        return page(JsonViews.items(page), page, limit);
+    }
+
+    static Map<String, Object> page(List<Map<String, Object>> json,
+                                    List<? extends LibraryItem> items, int limit) {
+        Integer next = items.size() < limit ? null : items.get(items.size() - 1).getId();
+        return JsonViews.page(json, next);
+    }
+}
@@ -0,0 +1,105 @@
+package com.davidbonelo.api;
+
+import com.davidbonelo.models.Hold;
+import com.davidbonelo.models.LibraryItem;
+import com.davidbonelo.models.User;
+import com.davidbonelo.models.UserRole;
+import com.davidbonelo.services.HoldsService;
+import com.davidbonelo.services.LibraryManager;
+import com.davidbonelo.services.UserService;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hold queues of the items without available copies, answered from memory:
+ * <pre>
+ * GET    /api/holds                       own open holds with their position
+ * GET    /api/holds?bookId= or ?novelId=  the queue of an item, employees
+ * POST   /api/holds                       {"bookId": 1} or {"novelId": 1}
+ * DELETE /api/holds/{id}                  own holds, employees any
+ * </pre>
+ */
+public class HoldsHandler extends JsonHandler {
+    private final HoldsService holdsService;
+    private final LibraryManager libraryManager;
+
+    public HoldsHandler(HoldsService holdsService, LibraryManager libraryManager,
+                        UserService userService) {
+        super(userService);
+        this.holdsService = holdsService;
+        this.libraryManager = libraryManager;
+    }
+
+    @Override
+    protected Object handle(ApiRequest request) throws IOException, SQLException {
+        User user = request.user();
+        List<String> path = request.getPath();
+        String method = request.getMethod();
+        if (path.isEmpty() && method.equals("GET")) {
+            return list(request, user);
+        } else if (path.isEmpty() && method.equals("POST")) {
+            Hold hold = holdsService.placeHold(request.requireRole(UserRole.READER),
+                    item(request.body()));
+            request.setStatus(201);
+            return view(hold);
+        } else if (path.size() == 1 && method.equals("DELETE")) {
+            if (!holdsService.cancelHold(user, request.pathId(0))) {
+                throw notFound();
+            }
+            request.setStatus(204);
+            return null;
+        }
+        throw path.size() > 1 ? notFound() : methodNotAllowed();
+    }
+
+    private Object list(ApiRequest request, User user) throws SQLException {
+        String bookId = request.getParam("bookId");
+        String novelId = request.getParam("novelId");
+        if (bookId == null && novelId == null) {
+            return holdsService.getHolds(user).stream().map(this::view).toList();
+        }
+        request.requireRole(UserRole.EMPLOYEE);
+        LibraryItem item = bookId != null ? libraryManager.getBook(parseId(bookId)) :
+                libraryManager.getNovel(parseId(novelId));
+        if (item == null) {
+            throw notFound();
+        }
+        return holdsService.getQueue(item).stream().map(this::view).toList();
+    }
+
+    private LibraryItem item(Map<String, Object> body) throws SQLException {
+        boolean book = body.containsKey("bookId");
+        if (!book && !body.containsKey("novelId")) {
+            throw new ApiException(400, "Missing bookId or novelId");
+        }
+        String name = book ? "bookId" : "novelId";
+        int id;
+        try {
+            id = ((BigDecimal) body.get(name)).intValueExact();
+        } catch (ClassCastException | NullPointerException | ArithmeticException e) {
+            throw new ApiException(400, name + " must be an id");
+        }
+        LibraryItem item = book ? libraryManager.getBook(id) : libraryManager.getNovel(id);
+        if (item == null) {
+            throw new ApiException(400, (book ? "Book" : "Novel") + " with id " + id +
+                    " not found");
+        }
+        return item;
+    }
+
+    private Map<String, Object> view(Hold hold) {
+        return JsonViews.hold(hold, holdsService.getPosition(hold));
+    }
+
+    private static int parseId(String id) {
+        try {
+            return Integer.parseInt(id);
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, "The id must be a number");
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.davidbonelo.api;
+
+import com.davidbonelo.Json;
+import com.davidbonelo.services.UserService;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Map;
+
+/**
+ * Base of the API handlers: turns what {@link #handle(ApiRequest)} returns into a JSON response
+ * and every failure into a JSON error with the right status code
+ */
+public abstract class JsonHandler implements HttpHandler {
+    // SQL state "no data", the DAOs use it when an id doesn't exist
+    private static final String NOT_FOUND = "02000";
+    private final UserService userService;
+
+    protected JsonHandler(UserService userService) {
+        this.userService = userService;
+    }
+
+    /**
+     * @return what to send as JSON (see {@link Json#write(Object)})
+     */
+    protected abstract Object handle(ApiRequest request) throws IOException, SQLException;
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        ApiRequest request = new ApiRequest(exchange, userService);
+        int status;
+        Object body;
+        try {
+            body = handle(request);
+            status = request.getStatus();
+        } catch (ApiException e) {
+            status = e.getStatus();
+            body = error(e.getMessage());
+            if (status == 401) {
+                exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer realm=\"pingu\"");
+            }
+        } catch (IllegalArgumentException e) {
+            status = 400;
+            body = error(e.getMessage());
+        } catch (SQLTransientConnectionException e) {
+            // Every connection is busy, the client should come back later
+            status = 503;
+            body = error("Busy, try again");
+            exchange.getResponseHeaders().set("Retry-After", "1");
+        } catch (SQLException e) {
+            if (NOT_FOUND.equals(e.getSQLState())) {
+                status = 404;
+                body = error(e.getMessage());
+            } else {
+                e.printStackTrace();
+                status = 500;
+                body = error("Internal error");
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            status = 500;
+            body = error("Internal error");
+        }
+        if (status == 204) {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+        byte[] bytes = Json.write(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    protected static ApiException notFound() {
+        return new ApiException(404, "Not found");
+    }
+
+    protected static ApiException methodNotAllowed() {
+        return new ApiException(405, "Method not allowed");
+    }
+
+    private static Map<String, Object> error(String message) {
+        return Map.of("error", message == null ? "" : message);
+    }
+}
@@ -0,0 +1,94 @@
+package com.davidbonelo.api;
+
+import com.davidbonelo.models.Book;
+import com.davidbonelo.models.Borrowing;
+import com.davidbonelo.models.Hold;
+import com.davidbonelo.models.LibraryItem;
+import com.davidbonelo.models.Novel;
+import com.davidbonelo.models.User;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * How the models look in the API
+ */
+class JsonViews {
+    private JsonViews() {
+    }
+
+    static Map<String, Object> item(LibraryItem item) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", item.getId());
+        json.put("title", item.getTitle());
+        json.put("author", item.getAuthor());
+        json.put("copies", item.getCopies());
+        json.put("availableCopies", item.getAvailableCopies());
+        if (item instanceof Book book) {
+            json.put("type", "book");
+            json.put("field", book.getField());
+            json.put("pages", book.getPages());
+        } else if (item instanceof Novel novel) {
+            json.put("type", "novel");
+            json.put("genre", novel.getGenre());
+            json.put("recommendedAge", novel.getRecommendedAge());
+        }
+        return json;
+    }
+
+    static List<Map<String, Object>> items(List<? extends LibraryItem> items) {
+        return items.stream().map(JsonViews::item).toList();
+    }
+
+    static Map<String, Object> user(User user) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", user.getId());
+        json.put("name", user.getName());
+        json.put("email", user.getEmail());
+        json.put("role", user.getRole());
+        return json;
+    }
+
+    static Map<String, Object> borrowing(Borrowing borrowing) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", borrowing.getId());
+        json.put("status", borrowing.getStatus());
+        json.put("requestedDate", borrowing.getRequestedDate());
+        json.put("returnDate", borrowing.getReturnDate());
+        if (borrowing.getBorrower() != null) {
+            json.put("borrower", user(borrowing.getBorrower()));
+        }
+        if (borrowing.getBorrowedItems() != null) {
+            json.put("items", items(borrowing.getBorrowedItems()));
+        }
+        return json;
+    }
+
+    /**
+     * @param position 0 when READY, 1 for the first in the queue and so on
+     */
+    static Map<String, Object> hold(Hold hold, int position) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", hold.getId());
+        json.put("type", hold.getItemType().toLowerCase(Locale.ROOT));
+        json.put("itemId", hold.getItemId());
+        json.put("userId", hold.getUserId());
+        json.put("status", hold.getStatus());
+        json.put("position", position < 0 ? null : position);
+        json.put("requestedAt", hold.getRequestedAt());
+        json.put("readyUntil", hold.getReadyUntil());
+        return json;
+    }
+
+    /**
+     * A page of a listing, "next" is the value of the after parameter for the next page
+     */
+    static Map<String, Object> page(List<Map<String, Object>> items, Integer next) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("items", items);
+        json.put("next", next);
+        return json;
+    }
+}
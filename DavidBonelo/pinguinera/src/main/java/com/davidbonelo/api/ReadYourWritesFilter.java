@@ -0,0 +1,51 @@
+package com.davidbonelo.api;
+
+import com.davidbonelo.persistance.RoutingDataSource;
+import com.davidbonelo.services.Session;
+import com.davidbonelo.services.UserService;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+
+/**
+ * Sends the reads of a session to the primary database while the replica may not have its
+ * writes yet: during its write requests (anything but GET) and for the staleness tolerance of
+ * the replica after them
+ */
+class ReadYourWritesFilter extends Filter {
+    private final UserService userService;
+    private final RoutingDataSource database;
+
+    ReadYourWritesFilter(UserService userService, RoutingDataSource database) {
+        this.userService = userService;
+        this.database = database;
+    }
+
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        String token = ApiRequest.token(exchange);
+        Session session = token == null ? null : userService.getSession(token);
+        if (session == null) {
+            chain.doFilter(exchange);
+            return;
+        }
+        boolean write = !exchange.getRequestMethod().equals("GET");
+        boolean before = database.setReadingOwnWrites(write ||
+                session.isReadingOwnWrites(System.currentTimeMillis()));
+        try {
+            chain.doFilter(exchange);
+        } finally {
+            database.setReadingOwnWrites(before);
+            if (write) {
+                session.readOwnWritesUntil(System.currentTimeMillis() +
+                        database.getMaxStaleness());
+            }
+        }
+    }
+
+    @Override
+    public String description() {
+        return "Reads of sessions that just wrote go to the primary database";
+    }
+}
@@ -0,0 +1,74 @@
+package com.davidbonelo.api;
+
+import com.davidbonelo.models.UserRole;
+import com.davidbonelo.reports.CirculationGroup;
+import com.davidbonelo.reports.CirculationReport;
+import com.davidbonelo.reports.GroupCount;
+import com.davidbonelo.reports.TitleCount;
+import com.davidbonelo.services.UserService;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Circulation statistics for the administrators' dashboard, read from the rollup tables:
+ * <pre>
+ * GET /api/reports/circulation?limit=
+ * </pre>
+ */
+public class ReportsHandler extends JsonHandler {
+    private final CirculationReport circulationReport;
+
+    public ReportsHandler(CirculationReport circulationReport, UserService userService) {
+        super(userService);
+        this.circulationReport = circulationReport;
+    }
+
+    @Override
+    protected Object handle(ApiRequest request) throws IOException, SQLException {
+        List<String> path = request.getPath();
+        if (path.size() != 1 || !path.get(0).equals("circulation")) {
+            throw notFound();
+        }
+        if (!request.getMethod().equals("GET")) {
+            throw methodNotAllowed();
+        }
+        request.requireRole(UserRole.ADMINISTRATOR);
+        int limit = request.getIntParam("limit", CatalogHandler.DEFAULT_PAGE,
+                CatalogHandler.MAX_PAGE);
+        if (limit < 1) {
+            throw new ApiException(400, "limit must be at least 1");
+        }
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("titles", circulationReport.getTopTitles(limit).stream()
+                .map(ReportsHandler::title).toList());
+        for (CirculationGroup group : CirculationGroup.values()) {
+            report.put(group.name().toLowerCase(Locale.ROOT) + "s",
+                    circulationReport.getTopGroups(group, limit).stream()
+                            .map(ReportsHandler::group).toList());
+        }
+        report.put("averageLoanDays", circulationReport.getAverageLoanDays());
+        return report;
+    }
+
+    private static Map<String, Object> title(TitleCount title) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("type", title.getItemType().toLowerCase(Locale.ROOT));
+        json.put("id", title.getItemId());
+        json.put("title", title.getTitle());
+        json.put("author", title.getAuthor());
+        json.put("borrowings", title.getBorrowings());
+        return json;
+    }
+
+    private static Map<String, Object> group(GroupCount group) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("name", group.getName());
+        json.put("borrowings", group.getBorrowings());
+        return json;
+    }
+}
@@ -0,0 +1,50 @@
+package com.davidbonelo.api;
+
+import com.davidbonelo.services.Session;
+import com.davidbonelo.services.UserService;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Logging in and out. The token returned goes in "Authorization: Bearer" on the other calls.
+ * <pre>
+ * POST   /api/sessions      {"email": "", "password": ""}
+ * DELETE /api/sessions
+ * </pre>
+ */
+public class SessionsHandler extends JsonHandler {
+    private final UserService userService;
+
+    public SessionsHandler(UserService userService) {
+        super(userService);
+        this.userService = userService;
+    }
+
+    @Override
+    protected Object handle(ApiRequest request) throws IOException, SQLException {
+        if (!request.getPath().isEmpty()) {
+            throw notFound();
+        }
+        if (request.getMethod().equals("POST")) {
+            Map<String, Object> body = request.body();
+            Session session = userService.login(ApiRequest.text(body, "email"),
+                    ApiRequest.text(body, "password"));
+            if (session == null) {
+                throw new ApiException(401, "Invalid credentials");
+            }
+            Map<String, Object> view = new LinkedHashMap<>();
+            view.put("token", session.getId());
+            view.put("user", JsonViews.user(session.getUser()));
+            request.setStatus(201);
+            return view;
+        } else if (request.getMethod().equals("DELETE")) {
+            userService.logOut(request.session());
+            request.setStatus(204);
+            return Map.of();
+        }
+        throw methodNotAllowed();
+    }
+}
@@ -0,0 +1,76 @@
+package com.davidbonelo.api;
+
+import com.davidbonelo.models.User;
+import com.davidbonelo.models.UserRole;
+import com.davidbonelo.services.UserService;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The authenticated user and, for administrators, the user management of the admin menu:
+ * <pre>
+ * GET    /api/users/me
+ * GET    /api/users?after=&limit=
+ * POST   /api/users          {"name": "", "email": "", "password": "", "role": "EMPLOYEE"}
+ * PUT    /api/users/{id}     {"name": "", "email": "", "role": "READER"}
+ * DELETE /api/users/{id}
+ * </pre>
+ */
+public class UsersHandler extends JsonHandler {
+    private final UserService userService;
+
+    public UsersHandler(UserService userService) {
+        super(userService);
+        this.userService = userService;
+    }
+
+    @Override
+    protected Object handle(ApiRequest request) throws IOException, SQLException {
+        List<String> path = request.getPath();
+        String method = request.getMethod();
+        if (path.size() == 1 && path.get(0).equals("me") && method.equals("GET")) {
+            return JsonViews.user(request.user());
+        }
+        request.requireRole(UserRole.ADMINISTRATOR);
+        if (path.isEmpty() && method.equals("GET")) {
+            int after = request.getIntParam("after", 0, Integer.MAX_VALUE);
+            int limit = request.getIntParam("limit", CatalogHandler.DEFAULT_PAGE,
+                    CatalogHandler.MAX_PAGE);
+            if (limit < 1) {
+                throw new ApiException(400, "limit must be at least 1");
+            }
+            List<User> users = userService.getUsersPage(after, limit);
+            Integer next = users.size() < limit ? null : users.get(users.size() - 1).getId();
+            return JsonViews.page(users.stream().map(JsonViews::user).toList(), next);
+        } else if (path.isEmpty() && method.equals("POST")) {
+            Map<String, Object> body = request.body();
+            User user = fromBody(body);
+            userService.register(user, ApiRequest.text(body, "password"));
+            request.setStatus(201);
+            return JsonViews.user(user);
+        } else if (path.size() == 1 && method.equals("PUT")) {
+            User user = fromBody(request.body());
+            user.setId(request.pathId(0));
+            userService.updateUser(user);
+            return JsonViews.user(user);
+        } else if (path.size() == 1 && method.equals("DELETE")) {
+            userService.deleteUser(request.pathId(0));
+            request.setStatus(204);
+            return Map.of();
+        }
+        throw path.size() > 1 ? notFound() : methodNotAllowed();
+    }
+
+    private static User fromBody(Map<String, Object> body) {
+        UserRole role;
+        try {
+            role = UserRole.valueOf(ApiRequest.text(body, "role"));
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(400, "role must be READER, EMPLOYEE or ADMINISTRATOR");
+        }
+        return new User(ApiRequest.text(body, "name"), ApiRequest.text(body, "email"), role);
+    }
+}
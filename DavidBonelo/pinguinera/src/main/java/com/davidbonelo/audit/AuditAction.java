@@ -0,0 +1,8 @@
+package com.davidbonelo.audit;
+
+/**
+ * The transitions of a borrowing recorded in the audit trail
+ */
+public enum AuditAction {
+    REQUESTED, CONFIRMED, FINALIZED, DELETED
+}
@@ -0,0 +1,45 @@
+package com.davidbonelo.audit;
+
+import java.time.Instant;
+
+/**
+ * Who did what to a borrowing and when
+ */
+public class AuditEvent {
+    private final AuditAction action;
+    private final int borrowingId;
+    private final int userId;
+    private final Instant time;
+
+    public AuditEvent(AuditAction action, int borrowingId, int userId, Instant time) {
+        this.action = action;
+        this.borrowingId = borrowingId;
+        this.userId = userId;
+        this.time = time;
+    }
+
+    public AuditEvent(AuditAction action, int borrowingId, int userId) {
+        this(action, borrowingId, userId, Instant.now());
+    }
+
+    public AuditAction getAction() {
+        return action;
+    }
+
+    public int getBorrowingId() {
+        return borrowingId;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public Instant getTime() {
+        return time;
+    }
+
+    @Override
+    public String toString() {
+        return time + "\t" + action + "\tborrowing " + borrowingId + "\tuser " + userId;
+    }
+}
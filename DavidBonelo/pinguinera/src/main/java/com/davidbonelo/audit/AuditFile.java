@@ -0,0 +1,31 @@
+package com.davidbonelo.audit;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Appends the events to a text file, one per line, for installations without the audit table
+ */
+public class AuditFile implements AuditSink {
+    private final Path file;
+
+    public AuditFile(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public void write(List<AuditEvent> events) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (AuditEvent event : events) {
+                writer.write(event.toString());
+                writer.newLine();
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.davidbonelo.audit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Write-behind audit trail: {@link #publish(AuditEvent)} only queues the event and a background
+ * thread hands them in batches to the sink, so recording a borrowing change costs a queue insert
+ * and not a database round trip.
+ * <p>
+ * The queue is a lock-free linked queue bounded by a CAS counter. When it is full the
+ * {@link OverflowPolicy} decides between dropping the event and waiting (a bounded time) for the
+ * writer, the drops are counted. Events not written yet are lost if the process dies, a normal
+ * shutdown calls {@link #close()} which writes them all.
+ */
+public class AuditLog implements AutoCloseable {
+    // How long a blocked publisher sleeps between checks for room
+    private static final long BLOCK_PAUSE_NANOS = 100_000;
+    // Time given to the writer to finish on close
+    private static final long CLOSE_TIMEOUT_MILLIS = 10_000;
+
+    private final AuditSink sink;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutNanos;
+    private final Queue<AuditEvent> queue = new ConcurrentLinkedQueue<>();
+    // Reserved slots: events queued plus publishers about to queue one
+    private final AtomicInteger size = new AtomicInteger();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    public AuditLog(AuditSink sink, AuditOptions options) {
+        this.sink = sink;
+        this.capacity = options.getCapacity();
+        this.batchSize = options.getBatchSize();
+        this.flushIntervalNanos = options.getFlushInterval().toNanos();
+        this.overflowPolicy = options.getOverflowPolicy();
+        this.blockTimeoutNanos = options.getBlockTimeout().toNanos();
+        this.writer = new Thread(this::writeLoop, "pingu-audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * @return false if the event was dropped: the queue stayed full or the log is closed
+     */
+    public boolean publish(AuditEvent event) {
+        if (closed || !reserve()) {
+            dropped.increment();
+            return false;
+        }
+        queue.offer(event);
+        published.increment();
+        if (size.get() >= batchSize) {
+            LockSupport.unpark(writer);
+        }
+        return true;
+    }
+
+    private boolean reserve() {
+        if (tryReserve()) {
+            return true;
+        } else if (overflowPolicy == OverflowPolicy.DROP) {
+            return false;
+        }
+        LockSupport.unpark(writer);
+        long deadline = System.nanoTime() + blockTimeoutNanos;
+        while (!closed && deadline - System.nanoTime() > 0) {
+            LockSupport.parkNanos(this, BLOCK_PAUSE_NANOS);
+            if (tryReserve()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean tryReserve() {
+        int current;
+        do {
+            current = size.get();
+            if (current >= capacity) {
+                return false;
+            }
+        } while (!size.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    private void writeLoop() {
+        while (!closed || size.get() > 0) {
+            if (!writeBatch()) {
+                LockSupport.parkNanos(this, flushIntervalNanos);
+            }
+        }
+    }
+
+    /**
+     * @return false if there was nothing to write
+     */
+    private boolean writeBatch() {
+        List<AuditEvent> batch = new ArrayList<>(Math.min(batchSize, size.get()));
+        AuditEvent event;
+        while (batch.size() < batchSize && (event = queue.poll()) != null) {
+            batch.add(event);
+        }
+        if (batch.isEmpty()) {
+            return false;
+        }
+        try {
+            sink.write(batch);
+            written.add(batch.size());
+        } catch (Exception e) {
+            failed.add(batch.size());
+            System.err.println("Couldn't write " + batch.size() + " audit events, " +
+                    e.getMessage());
+        } finally {
+            // Only now, so a full queue keeps blocking publishers while the batch is written
+            size.addAndGet(-batch.size());
+        }
+        return true;
+    }
+
+    /**
+     * Stops taking events and writes the queued ones, waiting for the writer thread
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!writer.isAlive()) {
+            writeLoop(); // a publisher that reserved its slot just before the close
+        } else {
+            System.err.println("The audit writer didn't finish, " + size.get() +
+                    " events may be lost");
+        }
+    }
+
+    public long getPublished() {
+        return published.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getWritten() {
+        return written.sum();
+    }
+
+    /**
+     * @return events the sink failed to write
+     */
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    /**
+     * @return events waiting to be written
+     */
+    public int getPending() {
+        return size.get();
+    }
+}
@@ -0,0 +1,79 @@
+package com.davidbonelo.audit;
+
+import java.time.Duration;
+
+/**
+ * Settings for {@link AuditLog}
+ */
+public class AuditOptions {
+    private int capacity = 10_000;
+    private int batchSize = 200;
+    private Duration flushInterval = Duration.ofSeconds(1);
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+    private Duration blockTimeout = Duration.ofMillis(100);
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @param capacity events waiting to be written before the overflow policy applies
+     */
+    public AuditOptions setCapacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        this.capacity = capacity;
+        return this;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize most events handed to the sink at once, the writer also wakes up early
+     *                  when this many are waiting
+     */
+    public AuditOptions setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be at least 1");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public Duration getFlushInterval() {
+        return flushInterval;
+    }
+
+    /**
+     * @param flushInterval longest time an event waits in the queue while there are few of them
+     */
+    public AuditOptions setFlushInterval(Duration flushInterval) {
+        this.flushInterval = flushInterval;
+        return this;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public AuditOptions setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+        return this;
+    }
+
+    public Duration getBlockTimeout() {
+        return blockTimeout;
+    }
+
+    /**
+     * @param blockTimeout longest wait for room with {@link OverflowPolicy#BLOCK}, it bounds the
+     *                     latency the audit trail can add to a borrowing
+     */
+    public AuditOptions setBlockTimeout(Duration blockTimeout) {
+        this.blockTimeout = blockTimeout;
+        return this;
+    }
+}
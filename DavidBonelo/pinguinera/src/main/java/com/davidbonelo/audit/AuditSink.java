@@ -0,0 +1,13 @@
+package com.davidbonelo.audit;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Where {@link AuditLog} writes its batches, e.g. AuditDAO::createEvents or an {@link AuditFile}
+ */
+@FunctionalInterface
+public interface AuditSink {
+    void write(List<AuditEvent> events) throws IOException, SQLException;
+}
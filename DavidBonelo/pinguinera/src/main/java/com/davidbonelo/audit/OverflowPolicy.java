@@ -0,0 +1,16 @@
+package com.davidbonelo.audit;
+
+/**
+ * What {@link AuditLog#publish(AuditEvent)} does when the queue is full because the writer
+ * can't keep up
+ */
+public enum OverflowPolicy {
+    /**
+     * Drop the event at once, the borrowing never waits for the audit trail
+     */
+    DROP,
+    /**
+     * Wait for room up to {@link AuditOptions#getBlockTimeout()}, then drop the event
+     */
+    BLOCK
+}
@@ -0,0 +1,79 @@
+package com.davidbonelo.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free latency histogram with log-linear buckets: every power of two of microseconds is
+ * split in 8 buckets, so a percentile is off by 12.5% at most. Recording is two shifts and one
+ * striped counter increment, threads recording at the same time don't contend.
+ */
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Powers of two up to 2^36 µs, about 19 hours
+    private static final int MAX_EXPONENT = 36;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+
+    LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    void record(long nanos) {
+        counts[bucketOf(nanos / 1000)].increment();
+    }
+
+    /**
+     * @param quantile between 0 and 1, e.g. 0.99
+     * @return the upper bound in microseconds of the bucket holding that quantile, 0 if nothing
+     * was recorded
+     */
+    long percentile(double quantile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts[i].sum();
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    void reset() {
+        for (LongAdder count : counts) {
+            count.reset();
+        }
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < 2 * SUB_BUCKETS) {
+            return (int) Math.max(0, micros); // exact below 16 µs
+        }
+        int exponent = Math.min(63 - Long.numberOfLeadingZeros(micros), MAX_EXPONENT);
+        int shift = exponent - SUB_BUCKET_BITS;
+        long top = Math.min(micros >> shift, 2 * SUB_BUCKETS - 1); // 8..15
+        return shift * SUB_BUCKETS + (int) top;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long top = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((top + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,53 @@
+package com.davidbonelo.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Measures the methods of one class, e.g.
+ * <pre>
+ * private static final Meter METER = Metrics.meter(BookDAO.class);
+ *
+ * public List&lt;Book&gt; getAllBooks() throws SQLException {
+ *     return METER.call("getAllBooks", () -&gt; { ... });
+ * }
+ * </pre>
+ * Exceptions go through untouched, they only count as errors.
+ */
+public class Meter {
+    private final String className;
+    private final Map<String, MethodStats> methods = new ConcurrentHashMap<>();
+
+    Meter(String className) {
+        this.className = className;
+    }
+
+    public <T, E extends Exception> T call(String method, MeteredCall<T, E> body) throws E {
+        long start = System.nanoTime();
+        boolean failed = true;
+        T result = null;
+        try {
+            result = body.call();
+            failed = false;
+            return result;
+        } finally {
+            stats(method).record(System.nanoTime() - start, result, failed);
+        }
+    }
+
+    public <E extends Exception> void run(String method, MeteredRun<E> body) throws E {
+        call(method, () -> {
+            body.run();
+            return null;
+        });
+    }
+
+    MethodStats stats(String method) {
+        MethodStats stats = methods.get(method);
+        return stats != null ? stats : methods.computeIfAbsent(method, name -> {
+            MethodStats created = new MethodStats(className, name);
+            Metrics.register(created);
+            return created;
+        });
+    }
+}
@@ -0,0 +1,9 @@
+package com.davidbonelo.metrics;
+
+/**
+ * The body of an instrumented method, see {@link Meter#call(String, MeteredCall)}
+ */
+@FunctionalInterface
+public interface MeteredCall<T, E extends Exception> {
+    T call() throws E;
+}
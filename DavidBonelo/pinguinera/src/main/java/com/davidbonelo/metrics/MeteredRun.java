@@ -0,0 +1,9 @@
+package com.davidbonelo.metrics;
+
+/**
+ * The body of an instrumented method returning nothing, see {@link Meter#run(String, MeteredRun)}
+ */
+@FunctionalInterface
+public interface MeteredRun<E extends Exception> {
+    void run() throws E;
+}
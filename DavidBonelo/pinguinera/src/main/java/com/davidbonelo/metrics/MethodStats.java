@@ -0,0 +1,100 @@
+package com.davidbonelo.metrics;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Calls, errors, rows and latencies of one method
+ */
+public class MethodStats implements MethodStatsMXBean {
+    private final String className;
+    private final String methodName;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    MethodStats(String className, String methodName) {
+        this.className = className;
+        this.methodName = methodName;
+    }
+
+    void record(long nanos, Object result, boolean failed) {
+        calls.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+        latencies.record(nanos);
+        if (failed) {
+            errors.increment();
+        } else if (result instanceof Collection<?> collection) {
+            rows.add(collection.size());
+        } else if (result instanceof Map<?, ?> map) {
+            rows.add(map.size());
+        } else if (result != null) {
+            rows.increment();
+        }
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    @Override
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getRows() {
+        return rows.sum();
+    }
+
+    @Override
+    public long getMeanMicros() {
+        long count = calls.sum();
+        return count == 0 ? 0 : totalNanos.sum() / count / 1000;
+    }
+
+    @Override
+    public long getP50Micros() {
+        return latencies.percentile(0.5);
+    }
+
+    @Override
+    public long getP99Micros() {
+        return latencies.percentile(0.99);
+    }
+
+    @Override
+    public long getP999Micros() {
+        return latencies.percentile(0.999);
+    }
+
+    @Override
+    public long getMaxMicros() {
+        return maxNanos.get() / 1000;
+    }
+
+    @Override
+    public void reset() {
+        calls.reset();
+        errors.reset();
+        rows.reset();
+        totalNanos.reset();
+        maxNanos.reset();
+        latencies.reset();
+    }
+}
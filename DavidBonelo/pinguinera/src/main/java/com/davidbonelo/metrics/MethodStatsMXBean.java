@@ -0,0 +1,28 @@
+package com.davidbonelo.metrics;
+
+/**
+ * What JMX consoles (jconsole, VisualVM) show of one instrumented method, latencies are in
+ * microseconds
+ */
+public interface MethodStatsMXBean {
+    long getCalls();
+
+    long getErrors();
+
+    /**
+     * @return rows or items returned by all the calls
+     */
+    long getRows();
+
+    long getMeanMicros();
+
+    long getP50Micros();
+
+    long getP99Micros();
+
+    long getP999Micros();
+
+    long getMaxMicros();
+
+    void reset();
+}
@@ -0,0 +1,89 @@
+package com.davidbonelo.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Every instrumented method of the application. Each one is published as a JMX MBean named
+ * com.davidbonelo:type=Methods,class=&lt;class&gt;,name=&lt;method&gt; the first time it's called.
+ */
+public class Metrics {
+    private static final String DOMAIN = "com.davidbonelo";
+    private static final Map<String, Meter> meters = new ConcurrentHashMap<>();
+    private static final List<MethodStats> methods = new CopyOnWriteArrayList<>();
+
+    private Metrics() {
+    }
+
+    public static Meter meter(Class<?> type) {
+        return meters.computeIfAbsent(type.getSimpleName(), Meter::new);
+    }
+
+    /**
+     * @return the stats of every method called at least once, by class and method name
+     */
+    public static List<MethodStats> getMethods() {
+        return methods.stream().filter(stats -> stats.getCalls() > 0)
+                .sorted(Comparator.comparing(MethodStats::getClassName)
+                        .thenComparing(MethodStats::getMethodName)).toList();
+    }
+
+    /**
+     * @return a table with a line per method called at least once
+     */
+    public static String snapshot() {
+        StringBuilder text = new StringBuilder(String.format("%-50s %9s %7s %10s %9s %9s %9s %9s" +
+                " %9s%n", "method", "calls", "errors", "rows", "mean µs", "p50 µs", "p99 µs",
+                "p999 µs", "max µs"));
+        for (MethodStats stats : getMethods()) {
+            text.append(String.format("%-50s %9d %7d %10d %9d %9d %9d %9d %9d%n",
+                    stats.getClassName() + "." + stats.getMethodName(), stats.getCalls(),
+                    stats.getErrors(), stats.getRows(), stats.getMeanMicros(),
+                    stats.getP50Micros(), stats.getP99Micros(), stats.getP999Micros(),
+                    stats.getMaxMicros()));
+        }
+        return text.toString();
+    }
+
+    public static void reset() {
+        methods.forEach(MethodStats::reset);
+    }
+
+    /**
+     * Publishes an MXBean as com.davidbonelo:type=&lt;type&gt;,name=&lt;name&gt;, in place of the
+     * one published before with the same name
+     */
+    public static void publish(String type, String name, Object mxBean) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type + ",name=" + name);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(mxBean, objectName);
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    static void register(MethodStats stats) {
+        methods.add(stats);
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(DOMAIN + ":type=Methods,class=" +
+                    stats.getClassName() + ",name=" + stats.getMethodName());
+            if (!server.isRegistered(name)) {
+                server.registerMBean(stats, name);
+            }
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.davidbonelo.metrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends {@link Metrics#snapshot()} to a file every interval, on a file so it doesn't mix with
+ * the console menus
+ */
+public class MetricsReporter {
+    private final Path file;
+    private final ScheduledExecutorService scheduler;
+
+    public MetricsReporter(Path file, Duration interval) {
+        this.file = file;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "pingu-metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::report, interval.toMillis(), interval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops reporting, writing one last snapshot
+     */
+    public void stop() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        report();
+    }
+
+    private void report() {
+        String text = LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME) +
+                System.lineSeparator() + Metrics.snapshot() + System.lineSeparator();
+        try {
+            Files.writeString(file, text, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.err.println("Couldn't write the metrics to " + file + ", " + e.getMessage());
+        }
+    }
+}
@@ -20,10 +20,15 @@ public class Borrowing {
 
     public Borrowing(int id, LocalDate returnDate,
                      LocalDate requestedDate, User borrower) {
+        this(id, returnDate, requestedDate, BorrowingStatus.REQUESTED, borrower);
+    }
+
+    public Borrowing(int id, LocalDate returnDate, LocalDate requestedDate,
+                     BorrowingStatus status, User borrower) {
         this.id = id;
         this.requestedDate = requestedDate;
         setReturnDate(returnDate);
-        this.status = BorrowingStatus.REQUESTED;
+        this.status = status;
         this.borrower = borrower;
     }
 
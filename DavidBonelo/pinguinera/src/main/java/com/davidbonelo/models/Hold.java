@@ -0,0 +1,97 @@
+package com.davidbonelo.models;
+
+import java.time.Instant;
+
+/**
+ * A patron waiting for a copy of a book or novel that had none available
+ */
+public class Hold {
+    public static final String BOOK = "BOOK";
+    public static final String NOVEL = "NOVEL";
+
+    private final String itemType;
+    private final int itemId;
+    private final int userId;
+    private final Instant requestedAt;
+    private int id;
+    private HoldStatus status;
+    private Instant readyUntil;
+
+    public Hold(LibraryItem item, int userId, Instant requestedAt) {
+        this(0, typeOf(item), item.getId(), userId, HoldStatus.WAITING, requestedAt, null);
+    }
+
+    public Hold(int id, String itemType, int itemId, int userId, HoldStatus status,
+                Instant requestedAt, Instant readyUntil) {
+        this.id = id;
+        this.itemType = itemType;
+        this.itemId = itemId;
+        this.userId = userId;
+        this.status = status;
+        this.requestedAt = requestedAt;
+        this.readyUntil = readyUntil;
+    }
+
+    /**
+     * @return BOOK or NOVEL
+     */
+    public static String typeOf(LibraryItem item) {
+        return item instanceof Book ? BOOK : NOVEL;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    /**
+     * @return BOOK or NOVEL
+     */
+    public String getItemType() {
+        return itemType;
+    }
+
+    public int getItemId() {
+        return itemId;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public HoldStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(HoldStatus status) {
+        this.status = status;
+    }
+
+    public Instant getRequestedAt() {
+        return requestedAt;
+    }
+
+    /**
+     * @return when the copy set aside stops waiting for the patron, null unless READY
+     */
+    public Instant getReadyUntil() {
+        return readyUntil;
+    }
+
+    public void setReadyUntil(Instant readyUntil) {
+        this.readyUntil = readyUntil;
+    }
+
+    public boolean isFor(LibraryItem item) {
+        return itemType.equals(typeOf(item)) && itemId == item.getId();
+    }
+
+    @Override
+    public String toString() {
+        return "Hold " + id + " " + status + " of " + itemType.toLowerCase() + " " + itemId +
+                (readyUntil != null ? " until " + readyUntil : "");
+    }
+}
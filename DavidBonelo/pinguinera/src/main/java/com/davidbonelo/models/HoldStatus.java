@@ -0,0 +1,9 @@
+package com.davidbonelo.models;
+
+/**
+ * WAITING holds are in the queue of their item, a READY one has a copy set aside until it's
+ * picked up or expires. The others are closed.
+ */
+public enum HoldStatus {
+    WAITING, READY, FULFILLED, EXPIRED, CANCELLED
+}
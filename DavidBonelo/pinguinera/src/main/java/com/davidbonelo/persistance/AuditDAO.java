@@ -0,0 +1,45 @@
+package com.davidbonelo.persistance;
+
+import com.davidbonelo.audit.AuditEvent;
+import com.davidbonelo.metrics.Meter;
+import com.davidbonelo.metrics.Metrics;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * The borrowings_audit table, the sink of the AuditLog
+ */
+public class AuditDAO {
+    private static final Meter METER = Metrics.meter(AuditDAO.class);
+    private final DataSource dataSource;
+
+    public AuditDAO(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Inserts the events with one JDBC batch
+     */
+    public void createEvents(List<AuditEvent> events) throws SQLException {
+        METER.run("createEvents", () -> {
+            String sql = "INSERT INTO borrowings_audit (borrowing_id, action, user_id, " +
+                    "happened_at) VALUES (?, ?, ?, ?)";
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql)) {
+                for (AuditEvent event : events) {
+                    statement.setInt(1, event.getBorrowingId());
+                    statement.setString(2, event.getAction().name());
+                    statement.setInt(3, event.getUserId());
+                    statement.setTimestamp(4, Timestamp.from(event.getTime()));
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        });
+    }
+}
@@ -1,20 +1,34 @@
 package com.davidbonelo.persistance;
 
+import com.davidbonelo.metrics.Meter;
+import com.davidbonelo.metrics.Metrics;
 import com.davidbonelo.models.Book;
 import com.davidbonelo.models.LibraryItem;
 
+import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 public class BookDAO {
-    private final Connection connection;
+    private static final Meter METER = Metrics.meter(BookDAO.class);
+    private final DataSource dataSource;
+    // The pages of the listings, that can come from a replica a little behind
+    private final DataSource readSource;
 
-    public BookDAO(Connection connection) {
-        this.connection = connection;
+    public BookDAO(DataSource dataSource) {
+        this(dataSource, dataSource);
+    }
+
+    public BookDAO(DataSource dataSource, DataSource readSource) {
+        this.dataSource = dataSource;
+        this.readSource = readSource;
     }
 
     protected static Book buildBookFromResult(ResultSet rs) throws SQLException {
@@ -24,75 +38,188 @@ public class BookDAO {
     }
 
     public Book getBookById(int itemId) throws SQLException {
-        String sql = "SELECT * FROM Books WHERE id= ?";
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setInt(1, itemId);
-            ResultSet rs = statement.executeQuery();
-            if (rs.next()) {
-                return buildBookFromResult(rs);
+        return METER.call("getBookById", () -> {
+            String sql = "SELECT * FROM Books WHERE id= ?";
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setInt(1, itemId);
+                ResultSet rs = statement.executeQuery();
+                if (rs.next()) {
+                    return buildBookFromResult(rs);
+                }
+                rs.close();
             }
-            rs.close();
-        }
-        return null;
+            return null;
+        });
     }
 
+    /**
+     * Reads the primary, the catalog cache keeps this listing for longer than the replica may
+     * be behind
+     */
     public List<Book> getAllBooks() throws SQLException {
-        List<Book> books = new ArrayList<>();
-        String sql = "SELECT * FROM Books";
-        try (PreparedStatement statement = connection.prepareStatement(sql); ResultSet rs =
-                statement.executeQuery()) {
-            while (rs.next()) {
-                books.add(buildBookFromResult(rs));
+        return METER.call("getAllBooks", () -> {
+            List<Book> books = new ArrayList<>();
+            String sql = "SELECT * FROM Books";
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql); ResultSet rs =
+                    statement.executeQuery()) {
+                while (rs.next()) {
+                    books.add(buildBookFromResult(rs));
+                }
             }
-        }
-        return books;
+            return books;
+        });
+    }
+
+    /**
+     * Keyset pagination, the next page starts after the id of the last book of this one
+     */
+    public List<Book> getBooksPage(int afterId, int pageSize) throws SQLException {
+        return METER.call("getBooksPage", () -> {
+            String sql = "SELECT * FROM Books WHERE id > ? ORDER BY id LIMIT ?";
+            return Cursors.page(readSource, sql, afterId, pageSize, BookDAO::buildBookFromResult);
+        });
+    }
+
+    /**
+     * Reads every row from the primary. The indexes and the availability ledger load from it
+     * once and then ignore the changes made before, so they can't start from a lagging replica.
+     */
+    public void streamAllBooks(Consumer<? super Book> consumer) throws SQLException {
+        METER.run("streamAllBooks", () -> {
+            String sql = "SELECT * FROM Books ORDER BY id";
+            Cursors.stream(dataSource, sql, BookDAO::buildBookFromResult, consumer);
+        });
     }
 
     public void createBook(Book book) throws SQLException {
-        String sql = "INSERT INTO Books ( title, author, copies, copies_borrowed, field, " +
-                "pages ) VALUES ( ?, ?, ?, ?, ?, ? )";
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setString(1, book.getTitle());
-            statement.setString(2, book.getAuthor());
-            statement.setInt(3, book.getCopies());
-            statement.setInt(4, book.getCopiesBorrowed());
-            statement.setString(5, book.getField());
-            statement.setInt(6, book.getPages());
-            int rowsInserted = statement.executeUpdate();
-            if (rowsInserted == 0) {
-                throw new SQLException("Creating book failed, no rows affected.");
+        METER.run("createBook", () -> {
+            String sql = "INSERT INTO Books ( title, author, copies, copies_borrowed, field, " +
+                    "pages ) VALUES ( ?, ?, ?, ?, ?, ? )";
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql,
+                         Statement.RETURN_GENERATED_KEYS)) {
+                statement.setString(1, book.getTitle());
+                statement.setString(2, book.getAuthor());
+                statement.setInt(3, book.getCopies());
+                statement.setInt(4, book.getCopiesBorrowed());
+                statement.setString(5, book.getField());
+                statement.setInt(6, book.getPages());
+                int rowsInserted = statement.executeUpdate();
+                if (rowsInserted == 0) {
+                    throw new SQLException("Creating book failed, no rows affected.");
+                }
+                try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
+                    if (generatedKeys.next()) {
+                        book.setId(generatedKeys.getInt(1));
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Inserts all the books with one batch, for bulk imports. Their ids aren't read back.
+     */
+    public void createBooks(List<Book> books) throws SQLException {
+        METER.run("createBooks", () -> {
+            String sql = "INSERT INTO Books ( title, author, copies, copies_borrowed, field, " +
+                    "pages ) VALUES ( ?, ?, ?, ?, ?, ? )";
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql)) {
+                for (Book book : books) {
+                    statement.setString(1, book.getTitle());
+                    statement.setString(2, book.getAuthor());
+                    statement.setInt(3, book.getCopies());
+                    statement.setInt(4, book.getCopiesBorrowed());
+                    statement.setString(5, book.getField());
+                    statement.setInt(6, book.getPages());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
             }
-        }
+        });
     }
 
     public void updateBook(Book book) throws SQLException {
-        if (!containsId(book))
-            throw new IllegalArgumentException("Cant update a Book without an id");
-        String sql = "UPDATE Books b SET title= ?, author= ?, copies= ?, copies_borrowed= ?, " +
-                "field= ?, pages= ? WHERE b.id=" + book.getId();
-
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setString(1, book.getTitle());
-            statement.setString(2, book.getAuthor());
-            statement.setInt(3, book.getCopies());
-            statement.setInt(4, book.getCopiesBorrowed());
-            statement.setString(5, book.getField());
-            statement.setInt(6, book.getPages());
-            int rowsUpdated = statement.executeUpdate();
-            if (rowsUpdated == 0) {
-                throw new SQLException("Update of book with id " + book.getId() + " failed.");
+        METER.run("updateBook", () -> {
+            if (!containsId(book))
+                throw new IllegalArgumentException("Cant update a Book without an id");
+            String sql = "UPDATE Books b SET title= ?, author= ?, copies= ?, copies_borrowed= ?, " +
+                    "field= ?, pages= ? WHERE b.id= ?";
+
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setString(1, book.getTitle());
+                statement.setString(2, book.getAuthor());
+                statement.setInt(3, book.getCopies());
+                statement.setInt(4, book.getCopiesBorrowed());
+                statement.setString(5, book.getField());
+                statement.setInt(6, book.getPages());
+                statement.setInt(7, book.getId()); // WHERE
+                int rowsUpdated = statement.executeUpdate();
+                if (rowsUpdated == 0) {
+                    throw new SQLException("Update of book with id " + book.getId() + " failed.");
+                }
             }
-        }
+        });
     }
 
     public void deleteBook(int bookId) throws SQLException {
-        String sql = "DELETE FROM Books b WHERE b.id=" + bookId;
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
-            int rowsDeleted = statement.executeUpdate();
-            if (rowsDeleted == 0) {
-                throw new SQLException("Book deletion failed, no rows affected");
+        METER.run("deleteBook", () -> {
+            String sql = "DELETE FROM Books b WHERE b.id= ?";
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setInt(1, bookId);
+                int rowsDeleted = statement.executeUpdate();
+                if (rowsDeleted == 0) {
+                    throw new SQLException("Book deletion failed, no rows affected");
+                }
             }
-        }
+        });
+    }
+
+    /**
+     * Takes one copy of every book, only if it has copies available. Call it inside a transaction
+     * and roll back if a book that's needed couldn't be reserved.
+     *
+     * @return for every id whether a copy was reserved
+     */
+    public Map<Integer, Boolean> reserveCopies(List<Integer> bookIds) throws SQLException {
+        return METER.call("reserveCopies", () -> {
+            String sql = "UPDATE Books SET copies_borrowed = copies_borrowed + 1 WHERE id = ? " +
+                    "AND copies_borrowed < copies";
+            return Copies.update(dataSource, sql, bookIds);
+        });
+    }
+
+    /**
+     * Gives back one copy of every book
+     *
+     * @return for every id whether a copy was given back, false if none was borrowed
+     */
+    public Map<Integer, Boolean> releaseCopies(List<Integer> bookIds) throws SQLException {
+        return METER.call("releaseCopies", () -> {
+            String sql = "UPDATE Books SET copies_borrowed = copies_borrowed - 1 WHERE id = ? " +
+                    "AND copies_borrowed > 0";
+            return Copies.update(dataSource, sql, bookIds);
+        });
+    }
+
+    /**
+     * Gives back several copies of each book with one grouped update per book, e.g. when
+     * finalizing many borrowings at once. copies_borrowed doesn't go below 0.
+     *
+     * @param copiesById how many copies of every book id
+     */
+    public Map<Integer, Boolean> releaseCopies(Map<Integer, Integer> copiesById)
+            throws SQLException {
+        return METER.call("releaseCopiesGrouped", () -> {
+            String sql = "UPDATE Books SET copies_borrowed = GREATEST(copies_borrowed - ?, 0) " +
+                    "WHERE id = ?";
+            return Copies.updateGrouped(dataSource, sql, copiesById);
+        });
     }
 
     private boolean containsId(LibraryItem item) {
@@ -1,133 +1,343 @@
 package com.davidbonelo.persistance;
 
+import com.davidbonelo.metrics.Meter;
+import com.davidbonelo.metrics.Metrics;
 import com.davidbonelo.models.Book;
 import com.davidbonelo.models.Borrowing;
+import com.davidbonelo.models.BorrowingStatus;
 import com.davidbonelo.models.LibraryItem;
 import com.davidbonelo.models.Novel;
 import com.davidbonelo.models.User;
 import com.davidbonelo.models.UserRole;
 
+import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
-
-import static com.davidbonelo.persistance.BookDAO.buildBookFromResult;
-import static com.davidbonelo.persistance.NovelDAO.buildNovelFromResult;
+import java.util.Map;
 
 public class BorrowingDAO {
-    Connection connection;
+    private static final Meter METER = Metrics.meter(BorrowingDAO.class);
+    // Short IN lists, some databases compare them linearly against every candidate row
+    static final int ITEMS_PAGE_SIZE = 100;
+    private static final String SELECT_BORROWINGS = "SELECT b.*, u.name, u.email, u.role FROM " +
+            "Borrowings b LEFT JOIN Users u ON b.user_id = u.id";
+    private static final String BOOK = "BOOK";
+    private static final String NOVEL = "NOVEL";
+    private final DataSource dataSource;
 
-    public BorrowingDAO(Connection connection) {
-        this.connection = connection;
+    public BorrowingDAO(DataSource dataSource) {
+        this.dataSource = dataSource;
     }
 
     private static Borrowing buildBorrowingFromResult(ResultSet rs) throws SQLException {
         UserRole role = UserRole.valueOf(rs.getString("role"));
-        User user = new User(rs.getString("name"), rs.getString("email"), role);
+        User user = new User(rs.getInt("user_id"), rs.getString("name"), rs.getString("email"),
+                role);
+        BorrowingStatus status = BorrowingStatus.valueOf(rs.getString("status"));
         return new Borrowing(rs.getInt("id"), rs.getDate("returned_date").toLocalDate(),
-                rs.getDate("requested_date").toLocalDate(), user);
+                rs.getDate("requested_date").toLocalDate(), status, user);
+    }
+
+    /**
+     * Selects the books and novels of some borrowings as one result, see
+     * {@link #buildItemFromResult(ResultSet)}. Each branch filters on its link table, so both
+     * use the primary key of borrowings_books and borrowings_novels.
+     *
+     * @param slots the number of ids in the IN list, bound twice: once for books, once for
+     *              novels
+     */
+    private static String selectItems(int slots) {
+        String inList = String.join(", ", Collections.nCopies(slots, "?"));
+        return "SELECT bb.borrowing_id, '" + BOOK + "' AS item_type, bk.id AS item_id, " +
+                "bk.title, bk.author, bk.copies, bk.copies_borrowed, bk.field AS field_genre, " +
+                "bk.pages AS pages_age FROM borrowings_books bb JOIN Books bk ON " +
+                "bb.book_id = bk.id " +
+                "WHERE bb.borrowing_id IN (" + inList + ") " +
+                "UNION ALL " +
+                "SELECT bn.borrowing_id, '" + NOVEL + "', n.id, n.title, n.author, n.copies, " +
+                "n.copies_borrowed, n.genre, n.recommended_age FROM borrowings_novels bn JOIN " +
+                "Novels n ON bn.novel_id = n.id WHERE bn.borrowing_id IN (" + inList + ")";
     }
 
+    /**
+     * Builds the book or novel of a {@link #selectItems(int)} row, null if the row has no item
+     * (a borrowing without items in an outer join)
+     */
+    static LibraryItem buildItemFromResult(ResultSet rs) throws SQLException {
+        String type = rs.getString("item_type");
+        if (type == null) {
+            return null;
+        }
+        int id = rs.getInt("item_id");
+        String title = rs.getString("title");
+        String author = rs.getString("author");
+        int copies = rs.getInt("copies");
+        int copiesBorrowed = rs.getInt("copies_borrowed");
+        return switch (type) {
+            case BOOK -> new Book(id, title, author, copies, copiesBorrowed,
+                    rs.getString("field_genre"), rs.getInt("pages_age"));
+            case NOVEL -> new Novel(id, title, author, copies, copiesBorrowed,
+                    rs.getString("field_genre"), rs.getInt("pages_age"));
+            default -> throw new SQLException("Unknown item type " + type);
+        };
+    }
+
+    /**
+     * The borrowing, its borrower and its items in a single query, one row per item
+     */
     public Borrowing getBorrowingWithItems(int borrowingId) throws SQLException {
-        String sql = "SELECT * FROM Borrowings b WHERE b.id = ?";
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setInt(1, borrowingId);
-            ResultSet rs = statement.executeQuery();
-            if (rs.next()) {
-                Borrowing borrowing = buildBorrowingFromResult(rs);
-                borrowing.setBorrowedItems(getAllItemsForABorrowing(borrowing.getId()));
-                return borrowing;
-            } else {
-                throw new SQLException("Borrowing with id " + borrowingId + " Not found");
+        return METER.call("getBorrowingWithItems", () -> {
+            String sql = "SELECT b.*, u.name, u.email, u.role, i.* FROM Borrowings b LEFT JOIN " +
+                    "Users u ON b.user_id = u.id LEFT JOIN (" + selectItems(1) + ") i ON " +
+                    "i.borrowing_id = b.id WHERE b.id = ?";
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setInt(1, borrowingId);
+                statement.setInt(2, borrowingId);
+                statement.setInt(3, borrowingId);
+                try (ResultSet rs = statement.executeQuery()) {
+                    if (!rs.next()) {
+                        throw new SQLException("Borrowing with id " + borrowingId + " Not found",
+                                Cursors.NOT_FOUND);
+                    }
+                    Borrowing borrowing = buildBorrowingFromResult(rs);
+                    List<LibraryItem> items = new ArrayList<>();
+                    do {
+                        LibraryItem item = buildItemFromResult(rs);
+                        if (item != null) {
+                            items.add(item);
+                        }
+                    } while (rs.next());
+                    borrowing.setBorrowedItems(items);
+                    return borrowing;
+                }
             }
-        }
+        });
     }
 
     public List<Borrowing> getAllBorrowings() throws SQLException {
-        List<Borrowing> borrowings = new ArrayList<>();
-        String sql = "SELECT b.*, u.name, u.email, u.role FROM Borrowings b LEFT JOIN Users u ON "
-                + "b.user_id = u.id";
-        try (PreparedStatement statement = connection.prepareStatement(sql); ResultSet rs =
-                statement.executeQuery()) {
-            while (rs.next()) {
-                borrowings.add(buildBorrowingFromResult(rs));
+        return METER.call("getAllBorrowings", () -> findBorrowings(new BorrowingFilter()));
+    }
+
+    /**
+     * Runs the filter in the database, every criteria is backed by an index (see
+     * pingu_schema.sql) so the cost follows the number of matching borrowings
+     */
+    public List<Borrowing> findBorrowings(BorrowingFilter filter) throws SQLException {
+        return METER.call("findBorrowings", () -> {
+            List<Object> params = new ArrayList<>();
+            StringBuilder sql = new StringBuilder(SELECT_BORROWINGS + " WHERE 1 = 1");
+            if (filter.getBorrowerEmail() != null) {
+                sql.append(" AND u.email = ?");
+                params.add(filter.getBorrowerEmail());
             }
-        }
-        return borrowings;
+            if (filter.getUserId() != null) {
+                sql.append(" AND b.user_id = ?");
+                params.add(filter.getUserId());
+            }
+            if (filter.getStatus() != null) {
+                sql.append(" AND b.status = ?");
+                params.add(filter.getStatus().getValue());
+            }
+            if (filter.getRequestedFrom() != null) {
+                sql.append(" AND b.requested_date >= ?");
+                params.add(Date.valueOf(filter.getRequestedFrom()));
+            }
+            if (filter.getRequestedTo() != null) {
+                sql.append(" AND b.requested_date <= ?");
+                params.add(Date.valueOf(filter.getRequestedTo()));
+            }
+            if (filter.getReturnFrom() != null) {
+                sql.append(" AND b.returned_date >= ?");
+                params.add(Date.valueOf(filter.getReturnFrom()));
+            }
+            if (filter.getReturnTo() != null) {
+                sql.append(" AND b.returned_date <= ?");
+                params.add(Date.valueOf(filter.getReturnTo()));
+            }
+            sql.append(" ORDER BY b.id");
+
+            List<Borrowing> borrowings = new ArrayList<>();
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+                for (int i = 0; i < params.size(); i++) {
+                    statement.setObject(i + 1, params.get(i));
+                }
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        borrowings.add(buildBorrowingFromResult(rs));
+                    }
+                }
+            }
+            return borrowings;
+        });
     }
 
     /**
-     * Calling this is expensive, consider only fetching the items for one or a few Borrowings
+     * Loads every borrowing with its items, the items are fetched in pages of
+     * {@link #ITEMS_PAGE_SIZE} borrowings, so this costs 1 + pages round trips instead of one
+     * query per borrowing
      */
     public List<Borrowing> getAllBorrowingsAndItems() throws SQLException {
-        List<Borrowing> borrowings = getAllBorrowings();
-        borrowings.forEach(b -> b.setBorrowedItems(getAllItemsForABorrowing(b.getId())));
-        return borrowings;
+        return METER.call("getAllBorrowingsAndItems", () -> {
+            List<Borrowing> borrowings = getAllBorrowings();
+            loadItems(borrowings);
+            return borrowings;
+        });
     }
 
-    public List<LibraryItem> getAllItemsForABorrowing(int borrowingId) {
-        List<LibraryItem> items = new ArrayList<>();
-        // Note to self: Don't try to optimize by joining this 2 queries because then it will not
-        // be possible to diferenciate Books and Novels
-        // SubQuery a borrowing and join its books
-        String sqlB =
-                "SELECT b.* FROM (SELECT * FROM borrowings_books bb WHERE bb.borrowing_id " + "=" + " ?) AS bb LEFT JOIN Books b ON bb.book_id = b.id";
-        // SubQuery a borrowing and join its novels
-        String sqlN = "SELECT n.* FROM (SELECT * FROM borrowings_novels bn WHERE bn.borrowing_id "
-                + "= ?) AS bn LEFT JOIN Novels n ON bb.novel_id = n.id";
+    /**
+     * Fills the borrowed items of all the given borrowings using one query for each page of ids.
+     * Items shared between borrowings are built only once.
+     */
+    public void loadItems(List<Borrowing> borrowings) throws SQLException {
+        METER.run("loadItems", () -> {
+            Map<Integer, Borrowing> borrowingsById = new HashMap<>();
+            for (Borrowing borrowing : borrowings) {
+                borrowing.setBorrowedItems(new ArrayList<>());
+                borrowingsById.put(borrowing.getId(), borrowing);
+            }
+            List<Integer> ids = new ArrayList<>(borrowingsById.keySet());
+            // By type and id, a book and a novel can have the same id
+            Map<String, LibraryItem> items = new HashMap<>();
 
-        try (PreparedStatement statementB = connection.prepareStatement(sqlB); PreparedStatement statementN = connection.prepareStatement(sqlN)) {
-            statementB.setInt(1, borrowingId);
-            statementN.setInt(1, borrowingId);
+            try (Connection connection = dataSource.getConnection()) {
+                for (int from = 0; from < ids.size(); from += ITEMS_PAGE_SIZE) {
+                    List<Integer> page = ids.subList(from, Math.min(from + ITEMS_PAGE_SIZE,
+                            ids.size()));
+                    int slots = inListSlots(page.size());
+                    try (PreparedStatement statement = connection.prepareStatement(
+                            selectItems(slots))) {
+                        bindIds(statement, 1, page, slots);
+                        bindIds(statement, slots + 1, page, slots);
+                        try (ResultSet rs = statement.executeQuery()) {
+                            while (rs.next()) {
+                                String key = rs.getString("item_type") + ":" +
+                                        rs.getInt("item_id");
+                                LibraryItem item = items.get(key);
+                                if (item == null) {
+                                    item = buildItemFromResult(rs);
+                                    items.put(key, item);
+                                }
+                                borrowingsById.get(rs.getInt("borrowing_id")).getBorrowedItems()
+                                        .add(item);
+                            }
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Rounds the IN list up to a power of two, so there are only a few distinct SQL texts for the
+     * statement cache instead of one per list length
+     */
+    static int inListSlots(int ids) {
+        return Math.min(ITEMS_PAGE_SIZE, Integer.highestOneBit(Math.max(1, ids - 1)) << 1);
+    }
 
-            try (ResultSet rsB = statementB.executeQuery(); ResultSet rsN =
-                    statementN.executeQuery()) {
+    /**
+     * Binds the ids from the parameter index first and fills the extra slots repeating the last
+     * one
+     */
+    private static void bindIds(PreparedStatement statement, int first, List<Integer> ids,
+                                int slots) throws SQLException {
+        for (int i = 0; i < slots; i++) {
+            statement.setInt(first + i, ids.get(Math.min(i, ids.size() - 1)));
+        }
+    }
 
-                while (rsB.next()) {
-                    items.add(buildBookFromResult(rsB));
+    /**
+     * The borrowings with the given ids and their items, in pages of {@link #ITEMS_PAGE_SIZE}
+     * ids. Ids without a borrowing are left out.
+     */
+    public List<Borrowing> getBorrowingsWithItems(List<Integer> borrowingIds)
+            throws SQLException {
+        return METER.call("getBorrowingsWithItems", () -> {
+            List<Integer> ids = borrowingIds.stream().distinct().toList();
+            List<Borrowing> borrowings = new ArrayList<>();
+            try (Connection connection = dataSource.getConnection()) {
+                for (int from = 0; from < ids.size(); from += ITEMS_PAGE_SIZE) {
+                    List<Integer> page = ids.subList(from, Math.min(from + ITEMS_PAGE_SIZE,
+                            ids.size()));
+                    int slots = inListSlots(page.size());
+                    String sql = SELECT_BORROWINGS + " WHERE b.id IN (" +
+                            String.join(", ", Collections.nCopies(slots, "?")) + ")";
+                    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                        bindIds(statement, 1, page, slots);
+                        try (ResultSet rs = statement.executeQuery()) {
+                            while (rs.next()) {
+                                borrowings.add(buildBorrowingFromResult(rs));
+                            }
+                        }
+                    }
                 }
-                while (rsN.next()) {
-                    items.add(buildNovelFromResult(rsB));
+            }
+            loadItems(borrowings);
+            return borrowings;
+        });
+    }
+
+    public List<LibraryItem> getAllItemsForABorrowing(int borrowingId) {
+        return METER.call("getAllItemsForABorrowing", () -> {
+            List<LibraryItem> items = new ArrayList<>();
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(selectItems(1))) {
+                statement.setInt(1, borrowingId);
+                statement.setInt(2, borrowingId);
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        items.add(buildItemFromResult(rs));
+                    }
                 }
+            } catch (SQLException e) {
+                return null;
             }
-        } catch (SQLException e) {
-            return null;
-        }
-        return items;
+            return items;
+        });
     }
 
     public void createBorrowing(Borrowing borrowing) throws SQLException {
-        String sql = "INSERT INTO Borrowings ( user_id , requested_date , returned_date , status "
-                + ") VALUES ( ?, ?, ?, ? )";
-        try (PreparedStatement statement = connection.prepareStatement(sql,
-                Statement.RETURN_GENERATED_KEYS)) {
-            statement.setInt(1, borrowing.getBorrower().getId());
-            statement.setDate(2, Date.valueOf(borrowing.getRequestedDate()));
-            statement.setDate(3, Date.valueOf(borrowing.getReturnDate()));
-            statement.setString(4, borrowing.getStatus().getValue());
-
-            int insertedRows = statement.executeUpdate();
-            if (insertedRows == 0) {
-                throw new SQLException("Borrowing creation failed, no rows affected");
-            }
-
-            try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
-                if (generatedKeys.next()) {
-                    borrowing.setId(generatedKeys.getInt(1));
-                } else {
-                    throw new SQLException("Borrowing creation failed, no ID obtained");
+        METER.run("createBorrowing", () -> {
+            String sql = "INSERT INTO Borrowings ( user_id , requested_date , returned_date , " +
+                    "status ) VALUES ( ?, ?, ?, ? )";
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql,
+                    Statement.RETURN_GENERATED_KEYS)) {
+                statement.setInt(1, borrowing.getBorrower().getId());
+                statement.setDate(2, Date.valueOf(borrowing.getRequestedDate()));
+                statement.setDate(3, Date.valueOf(borrowing.getReturnDate()));
+                statement.setString(4, borrowing.getStatus().getValue());
+
+                int insertedRows = statement.executeUpdate();
+                if (insertedRows == 0) {
+                    throw new SQLException("Borrowing creation failed, no rows affected");
                 }
+
+                try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
+                    if (generatedKeys.next()) {
+                        borrowing.setId(generatedKeys.getInt(1));
+                    } else {
+                        throw new SQLException("Borrowing creation failed, no ID obtained");
+                    }
+                }
+                saveBorrowedItems(connection, borrowing);
             }
-            saveBorrowedItems(borrowing);
-        }
+        });
     }
 
-    private void saveBorrowedItems(Borrowing borrowing) throws SQLException {
+    private void saveBorrowedItems(Connection connection, Borrowing borrowing) throws SQLException {
         String sqlB = "INSERT INTO borrowings_books (borrowing_id, book_id) VALUES (?, ?)";
         String sqlN = "INSERT INTO borrowings_novels (borrowing_id, novel_id) VALUES (?, ?)";
         try (PreparedStatement statementB = connection.prepareStatement(sqlB); PreparedStatement statementN = connection.prepareStatement(sqlN)) {
@@ -149,31 +359,96 @@ public class BorrowingDAO {
     }
 
     public void updateBorrowingStatus(Borrowing borrowing) throws SQLException {
-        if (missingId(borrowing)) {
-            throw new IllegalArgumentException("Can't update a borrowing without a id");
-        }
-        String sql = "UPDATE Borrowing b SET status= ? WHERE id= ?";
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setString(1, borrowing.getStatus().getValue());
-            statement.setInt(2, borrowing.getId()); // WHERE
+        METER.run("updateBorrowingStatus", () -> {
+            if (missingId(borrowing)) {
+                throw new IllegalArgumentException("Can't update a borrowing without a id");
+            }
+            String sql = "UPDATE Borrowings b SET status= ? WHERE id= ?";
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setString(1, borrowing.getStatus().getValue());
+                statement.setInt(2, borrowing.getId()); // WHERE
 
-            int updatedRows = statement.executeUpdate();
-            if (updatedRows == 0) {
-                throw new SQLException("Couldn't update borrowing with id " + borrowing.getId());
+                int updatedRows = statement.executeUpdate();
+                if (updatedRows == 0) {
+                    throw new SQLException("Couldn't update borrowing with id " +
+                            borrowing.getId());
+                }
             }
-        }
+        });
     }
 
-    public void deleteBorrowing(int borrowingId) throws SQLException {
-        String sql = "DELETE FROM Borrowing WHERE id= ?";
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setInt(1, borrowingId); // WHERE
+    /**
+     * Moves the borrowings to the status in one batch. Each row is updated only if it still has
+     * the status the borrowing was read with, so concurrent transitions can't both apply. Ids
+     * are sent sorted, like the copies updates, so concurrent batches can't deadlock. Finalizing
+     * stores the day too, the loans rollup is rebuilt from it.
+     *
+     * @return for every borrowing id whether it was updated
+     */
+    public Map<Integer, Boolean> updateBorrowingsStatus(List<Borrowing> borrowings,
+                                                        BorrowingStatus status)
+            throws SQLException {
+        return METER.call("updateBorrowingsStatus", () -> {
+            Map<Integer, Boolean> results = new HashMap<>();
+            if (borrowings.isEmpty()) {
+                return results;
+            }
+            List<Borrowing> sorted = new ArrayList<>(borrowings);
+            sorted.sort(Comparator.comparingInt(Borrowing::getId));
+            String sql = "UPDATE Borrowings SET status = ?, finalized_date = ? WHERE id = ? AND " +
+                    "status = ?";
+            Date finalized = status == BorrowingStatus.FINALIZED ?
+                    Date.valueOf(LocalDate.now()) : null;
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql)) {
+                for (Borrowing borrowing : sorted) {
+                    statement.setString(1, status.getValue());
+                    statement.setDate(2, finalized);
+                    statement.setInt(3, borrowing.getId());
+                    statement.setString(4, borrowing.getStatus().getValue());
+                    statement.addBatch();
+                }
+                int[] counts = statement.executeBatch();
+                for (int i = 0; i < sorted.size(); i++) {
+                    results.put(sorted.get(i).getId(), counts[i] != 0);
+                }
+            }
+            return results;
+        });
+    }
 
-            int deletedRows = statement.executeUpdate();
-            if (deletedRows == 0) {
-                throw new SQLException("Couldn't delete borrowing with id " + borrowingId);
+    /**
+     * Deletes the borrowing with its item rows, as long as it's still in the status it was read
+     * with. Call it in a transaction, the borrowing row stays locked until it ends.
+     *
+     * @return false if it changed status meanwhile, nothing is deleted then
+     */
+    public boolean deleteBorrowing(Borrowing borrowing) throws SQLException {
+        return METER.call("deleteBorrowing", () -> {
+            String sqlLock = "SELECT id FROM Borrowings WHERE id = ? AND status = ? FOR UPDATE";
+            String sqlB = "DELETE FROM borrowings_books WHERE borrowing_id = ?";
+            String sqlN = "DELETE FROM borrowings_novels WHERE borrowing_id = ?";
+            String sql = "DELETE FROM Borrowings WHERE id = ?";
+            try (Connection connection = dataSource.getConnection()) {
+                try (PreparedStatement lock = connection.prepareStatement(sqlLock)) {
+                    lock.setInt(1, borrowing.getId());
+                    lock.setString(2, borrowing.getStatus().getValue());
+                    try (ResultSet resultSet = lock.executeQuery()) {
+                        if (!resultSet.next()) {
+                            return false;
+                        }
+                    }
+                }
+                for (String delete : List.of(sqlB, sqlN, sql)) {
+                    try (PreparedStatement statement = connection.prepareStatement(delete)) {
+                        statement.setInt(1, borrowing.getId());
+                        statement.executeUpdate();
+                    }
+                }
             }
-        }
+            return true;
+        });
     }
 
     private boolean missingId(Borrowing borrowing) {
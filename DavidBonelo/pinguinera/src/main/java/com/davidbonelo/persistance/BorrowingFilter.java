@@ -0,0 +1,74 @@
+package com.davidbonelo.persistance;
+
+import com.davidbonelo.models.BorrowingStatus;
+
+import java.time.LocalDate;
+
+/**
+ * Criteria for {@link BorrowingDAO#findBorrowings(BorrowingFilter)}, null fields are ignored and
+ * date ranges are inclusive
+ */
+public class BorrowingFilter {
+    private String borrowerEmail;
+    private Integer userId;
+    private BorrowingStatus status;
+    private LocalDate requestedFrom;
+    private LocalDate requestedTo;
+    private LocalDate returnFrom;
+    private LocalDate returnTo;
+
+    public String getBorrowerEmail() {
+        return borrowerEmail;
+    }
+
+    public BorrowingFilter setBorrowerEmail(String borrowerEmail) {
+        this.borrowerEmail = borrowerEmail;
+        return this;
+    }
+
+    public Integer getUserId() {
+        return userId;
+    }
+
+    public BorrowingFilter setUserId(Integer userId) {
+        this.userId = userId;
+        return this;
+    }
+
+    public BorrowingStatus getStatus() {
+        return status;
+    }
+
+    public BorrowingFilter setStatus(BorrowingStatus status) {
+        this.status = status;
+        return this;
+    }
+
+    public LocalDate getRequestedFrom() {
+        return requestedFrom;
+    }
+
+    public LocalDate getRequestedTo() {
+        return requestedTo;
+    }
+
+    public BorrowingFilter setRequestedBetween(LocalDate from, LocalDate to) {
+        this.requestedFrom = from;
+        this.requestedTo = to;
+        return this;
+    }
+
+    public LocalDate getReturnFrom() {
+        return returnFrom;
+    }
+
+    public LocalDate getReturnTo() {
+        return returnTo;
+    }
+
+    public BorrowingFilter setReturnBetween(LocalDate from, LocalDate to) {
+        this.returnFrom = from;
+        this.returnTo = to;
+        return this;
+    }
+}
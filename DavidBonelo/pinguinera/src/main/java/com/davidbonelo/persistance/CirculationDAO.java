@@ -0,0 +1,191 @@
+package com.davidbonelo.persistance;
+
+import com.davidbonelo.metrics.Meter;
+import com.davidbonelo.metrics.Metrics;
+import com.davidbonelo.models.Book;
+import com.davidbonelo.models.LibraryItem;
+import com.davidbonelo.models.Novel;
+import com.davidbonelo.reports.CirculationGroup;
+import com.davidbonelo.reports.GroupCount;
+import com.davidbonelo.reports.TitleCount;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The circulation rollup tables (see pingu_schema.sql). The add methods are meant to run in the
+ * transaction of the borrowing they count, so the rollups never drift from the borrowings.
+ */
+public class CirculationDAO {
+    private static final Meter METER = Metrics.meter(CirculationDAO.class);
+    private static final String BOOK = "BOOK";
+    private static final String NOVEL = "NOVEL";
+    // The aggregates over the whole history the rollups are rebuilt from
+    private static final String[] REBUILD = {
+            "DELETE FROM circulation_titles",
+            "INSERT INTO circulation_titles (item_type, item_id, borrowings) SELECT '" + BOOK +
+                    "', book_id, COUNT(*) FROM borrowings_books GROUP BY book_id",
+            "INSERT INTO circulation_titles (item_type, item_id, borrowings) SELECT '" + NOVEL +
+                    "', novel_id, COUNT(*) FROM borrowings_novels GROUP BY novel_id",
+            "DELETE FROM circulation_groups",
+            "INSERT INTO circulation_groups (dimension, name, borrowings) SELECT '" +
+                    CirculationGroup.AUTHOR + "', author, COUNT(*) FROM (SELECT bk.author FROM " +
+                    "borrowings_books bb JOIN Books bk ON bb.book_id = bk.id UNION ALL SELECT " +
+                    "n.author FROM borrowings_novels bn JOIN Novels n ON bn.novel_id = n.id) a " +
+                    "GROUP BY author",
+            "INSERT INTO circulation_groups (dimension, name, borrowings) SELECT '" +
+                    CirculationGroup.GENRE + "', n.genre, COUNT(*) FROM borrowings_novels bn " +
+                    "JOIN Novels n ON bn.novel_id = n.id GROUP BY n.genre",
+            "INSERT INTO circulation_groups (dimension, name, borrowings) SELECT '" +
+                    CirculationGroup.FIELD + "', bk.field, COUNT(*) FROM borrowings_books bb " +
+                    "JOIN Books bk ON bb.book_id = bk.id GROUP BY bk.field",
+            "DELETE FROM circulation_loans",
+            "INSERT INTO circulation_loans (id, loans, loan_days) SELECT 1, COUNT(*), " +
+                    "COALESCE(SUM(TIMESTAMPDIFF(DAY, requested_date, finalized_date)), 0) FROM " +
+                    "Borrowings WHERE finalized_date IS NOT NULL"
+    };
+    private final DataSource dataSource;
+
+    public CirculationDAO(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Counts one more borrowing of every item, for its title, author and genre or field
+     */
+    public void addBorrowing(List<LibraryItem> items) throws SQLException {
+        METER.run("addBorrowing", () -> {
+            String sqlT = "INSERT INTO circulation_titles (item_type, item_id, borrowings) " +
+                    "VALUES (?, ?, 1) ON DUPLICATE KEY UPDATE borrowings = borrowings + 1";
+            String sqlG = "INSERT INTO circulation_groups (dimension, name, borrowings) " +
+                    "VALUES (?, ?, 1) ON DUPLICATE KEY UPDATE borrowings = borrowings + 1";
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement titles = connection.prepareStatement(sqlT);
+                 PreparedStatement groups = connection.prepareStatement(sqlG)) {
+                for (LibraryItem item : items) {
+                    titles.setString(1, item instanceof Book ? BOOK : NOVEL);
+                    titles.setInt(2, item.getId());
+                    titles.addBatch();
+                    addGroup(groups, CirculationGroup.AUTHOR, item.getAuthor());
+                    if (item instanceof Book book) {
+                        addGroup(groups, CirculationGroup.FIELD, book.getField());
+                    } else if (item instanceof Novel novel) {
+                        addGroup(groups, CirculationGroup.GENRE, novel.getGenre());
+                    }
+                }
+                titles.executeBatch();
+                groups.executeBatch();
+            }
+        });
+    }
+
+    private static void addGroup(PreparedStatement statement, CirculationGroup group, String name)
+            throws SQLException {
+        statement.setString(1, group.name());
+        statement.setString(2, name);
+        statement.addBatch();
+    }
+
+    /**
+     * Counts finalized borrowings that were on loan for the given days in total
+     */
+    public void addLoans(int loans, long loanDays) throws SQLException {
+        METER.run("addLoans", () -> {
+            String sql = "INSERT INTO circulation_loans (id, loans, loan_days) VALUES (1, ?, ?) " +
+                    "ON DUPLICATE KEY UPDATE loans = loans + VALUES(loans), loan_days = " +
+                    "loan_days + VALUES(loan_days)";
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setInt(1, loans);
+                statement.setLong(2, loanDays);
+                statement.executeUpdate();
+            }
+        });
+    }
+
+    /**
+     * @return the most borrowed titles, read from the top of the borrowings index
+     */
+    public List<TitleCount> getTopTitles(int limit) throws SQLException {
+        return METER.call("getTopTitles", () -> {
+            String sql = "SELECT ct.item_type, ct.item_id, ct.borrowings, COALESCE(bk.title, " +
+                    "n.title) AS title, COALESCE(bk.author, n.author) AS author FROM " +
+                    "circulation_titles ct LEFT JOIN Books bk ON ct.item_type = '" + BOOK +
+                    "' AND bk.id = ct.item_id LEFT JOIN Novels n ON ct.item_type = '" + NOVEL +
+                    "' AND n.id = ct.item_id ORDER BY ct.borrowings DESC LIMIT ?";
+            List<TitleCount> titles = new ArrayList<>();
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setInt(1, limit);
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        titles.add(new TitleCount(rs.getString("item_type"), rs.getInt("item_id"),
+                                rs.getString("title"), rs.getString("author"),
+                                rs.getLong("borrowings")));
+                    }
+                }
+            }
+            return titles;
+        });
+    }
+
+    /**
+     * @return the authors, genres or fields with the most borrowed items
+     */
+    public List<GroupCount> getTopGroups(CirculationGroup group, int limit) throws SQLException {
+        return METER.call("getTopGroups", () -> {
+            String sql = "SELECT name, borrowings FROM circulation_groups WHERE dimension = ? " +
+                    "ORDER BY borrowings DESC LIMIT ?";
+            List<GroupCount> groups = new ArrayList<>();
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setString(1, group.name());
+                statement.setInt(2, limit);
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        groups.add(new GroupCount(rs.getString("name"), rs.getLong("borrowings")));
+                    }
+                }
+            }
+            return groups;
+        });
+    }
+
+    /**
+     * @return the average days finalized borrowings were on loan, 0 if none was finalized
+     */
+    public double getAverageLoanDays() throws SQLException {
+        return METER.call("getAverageLoanDays", () -> {
+            String sql = "SELECT loans, loan_days FROM circulation_loans WHERE id = 1";
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql);
+                 ResultSet rs = statement.executeQuery()) {
+                if (rs.next() && rs.getLong("loans") > 0) {
+                    return (double) rs.getLong("loan_days") / rs.getLong("loans");
+                }
+            }
+            return 0.0;
+        });
+    }
+
+    /**
+     * Computes every rollup again with aggregates over the borrowings, e.g. after installing
+     * them on an existing database. Run it in a transaction so the reports never see them empty.
+     */
+    public void rebuildRollups() throws SQLException {
+        METER.run("rebuildRollups", () -> {
+            try (Connection connection = dataSource.getConnection();
+                 Statement statement = connection.createStatement()) {
+                for (String sql : REBUILD) {
+                    statement.executeUpdate(sql);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,406 @@
+package com.davidbonelo.persistance;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * A small bounded pool of JDBC connections. Every unit of work borrows its own connection with
+ * {@link #getConnection()} and gives it back by closing it, so slow queries of one user don't
+ * block everyone else.
+ * <p>
+ * Each connection keeps its prepared statements (see {@link StatementCache}), so the DAOs can keep
+ * preparing and closing them per call while the driver parses every SQL text only once.
+ * <p>
+ * Work that must be atomic goes through {@link #inTransaction(TransactionWork)}, which pins one
+ * connection to the current thread so the DAOs called inside it join the same transaction.
+ */
+public class ConnectionPool implements DataSource, AutoCloseable {
+    private final String url;
+    private final String user;
+    private final String password;
+    private final PoolConfig config;
+
+    // LIFO, so the most recently used (warm) connections are reused first
+    private final BlockingDeque<PooledEntry> idle = new LinkedBlockingDeque<>();
+    private final Set<PooledEntry> leased = ConcurrentHashMap.newKeySet();
+    private final Semaphore permits;
+    private final ThreadLocal<PooledEntry> transaction = new ThreadLocal<>();
+    private final ScheduledExecutorService housekeeper;
+    private final SlowQueryLog slowQueryLog;
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong destroyed = new AtomicLong();
+    private final AtomicLong borrowed = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong leaks = new AtomicLong();
+    private final AtomicLong statementHits = new AtomicLong();
+    private final AtomicLong statementMisses = new AtomicLong();
+    private volatile boolean closed;
+
+    public ConnectionPool(String url, String user, String password, PoolConfig config) {
+        if (config.getMinIdle() > config.getMaxSize()) {
+            throw new IllegalArgumentException("minIdle can't be greater than maxSize");
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.config = config;
+        this.permits = new Semaphore(config.getMaxSize(), true);
+        this.slowQueryLog = config.getSlowQueryThreshold() > 0 ?
+                new SlowQueryLog(config.getSlowQueryThreshold(), config.isExplainSlowQueries(),
+                        Path.of(config.getSlowQueryLog())) : null;
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "pingu-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (config.getHousekeepingInterval() > 0) {
+            housekeeper.scheduleWithFixedDelay(this::housekeeping, 0,
+                    config.getHousekeepingInterval(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Borrows a connection, closing it returns it to the pool. Inside
+     * {@link #inTransaction(TransactionWork)} this returns the transaction connection instead.
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        PooledEntry current = transaction.get();
+        if (current != null) {
+            return wrap(current, false);
+        }
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        acquirePermit();
+        try {
+            PooledEntry entry = takeIdleOrCreate();
+            entry.leasedAt = System.currentTimeMillis();
+            entry.leakReported = false;
+            entry.leasedBy = config.getLeakDetectionThreshold() > 0 ?
+                    new Throwable("Connection leased by " + Thread.currentThread().getName()) :
+                    null;
+            leased.add(entry);
+            borrowed.incrementAndGet();
+            return wrap(entry, true);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("The pool only serves its configured user");
+    }
+
+    /**
+     * Runs the work in a single transaction, commits if it finishes and rolls back if it throws.
+     * Nested calls join the outer transaction.
+     */
+    public <T> T inTransaction(TransactionWork<T> work) throws SQLException {
+        if (transaction.get() != null) {
+            return work.execute();
+        }
+        try (Connection connection = getConnection()) {
+            connection.setAutoCommit(false); // start transaction
+            transaction.set(((PooledHandle) Proxy.getInvocationHandler(connection)).entry);
+            try {
+                T result = work.execute();
+                connection.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                transaction.remove();
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    public boolean isInTransaction() {
+        return transaction.get() != null;
+    }
+
+    public PoolStats getStats() {
+        return new PoolStats(idle.size(), leased.size(), permits.getQueueLength(), created.get(),
+                destroyed.get(), borrowed.get(), timeouts.get(), leaks.get(), statementHits.get(),
+                statementMisses.get());
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledEntry entry;
+        while ((entry = idle.pollFirst()) != null) {
+            destroy(entry);
+        }
+        // leased connections are destroyed as soon as they are given back
+    }
+
+    private void acquirePermit() throws SQLException {
+        try {
+            if (config.getConnectionTimeout() <= 0) {
+                permits.acquire();
+            } else if (!permits.tryAcquire(config.getConnectionTimeout(), TimeUnit.MILLISECONDS)) {
+                timeouts.incrementAndGet();
+                throw new SQLTransientConnectionException("Timed out after " +
+                        config.getConnectionTimeout() + "ms waiting for a connection, " +
+                        getStats());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+    }
+
+    private PooledEntry takeIdleOrCreate() throws SQLException {
+        PooledEntry entry;
+        while ((entry = idle.pollFirst()) != null) {
+            if (!config.isValidateOnBorrow() || isValid(entry)) {
+                return entry;
+            }
+            destroy(entry);
+        }
+        return createEntry();
+    }
+
+    private PooledEntry createEntry() throws SQLException {
+        Connection raw = DriverManager.getConnection(url, user, password);
+        if (slowQueryLog != null) {
+            raw = slowQueryLog.wrap(raw);
+        }
+        created.incrementAndGet();
+        StatementCache statements = config.getStatementCacheSize() > 0 ?
+                new StatementCache(config.getStatementCacheSize(), statementHits, statementMisses) :
+                null;
+        return new PooledEntry(raw, statements);
+    }
+
+    private boolean isValid(PooledEntry entry) {
+        try {
+            return entry.raw.isValid(config.getValidationTimeoutSeconds());
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void release(PooledEntry entry) {
+        leased.remove(entry);
+        entry.leasedBy = null;
+        entry.lastUsed = System.currentTimeMillis();
+        try {
+            if (closed || entry.raw.isClosed()) {
+                destroy(entry);
+            } else {
+                if (!entry.raw.getAutoCommit()) {
+                    // Don't leak a half done transaction to the next borrower
+                    entry.raw.rollback();
+                    entry.raw.setAutoCommit(true);
+                }
+                idle.offerFirst(entry);
+            }
+        } catch (SQLException e) {
+            destroy(entry);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void destroy(PooledEntry entry) {
+        destroyed.incrementAndGet();
+        if (entry.statements != null) {
+            entry.statements.closeAll();
+        }
+        try {
+            entry.raw.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    private void housekeeping() {
+        long now = System.currentTimeMillis();
+        try {
+            if (config.getIdleTimeout() > 0) {
+                for (PooledEntry entry : idle) {
+                    if (idle.size() + leased.size() <= config.getMinIdle()) {
+                        break;
+                    }
+                    if (now - entry.lastUsed > config.getIdleTimeout() && idle.remove(entry)) {
+                        destroy(entry);
+                    }
+                }
+            }
+            if (config.getLeakDetectionThreshold() > 0) {
+                for (PooledEntry entry : leased) {
+                    Throwable leasedBy = entry.leasedBy;
+                    if (!entry.leakReported && leasedBy != null &&
+                            now - entry.leasedAt > config.getLeakDetectionThreshold()) {
+                        entry.leakReported = true;
+                        leaks.incrementAndGet();
+                        System.err.println("Possible connection leak, leased for " +
+                                (now - entry.leasedAt) + "ms");
+                        leasedBy.printStackTrace();
+                    }
+                }
+            }
+            // Holding a permit while creating keeps idle + leased within maxSize
+            while (!closed && idle.size() < config.getMinIdle() && permits.tryAcquire()) {
+                try {
+                    if (idle.size() + leased.size() >= config.getMaxSize()) {
+                        break;
+                    }
+                    idle.offerLast(createEntry());
+                } finally {
+                    permits.release();
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Connection pool housekeeping error: " + e.getMessage());
+        }
+    }
+
+    private Connection wrap(PooledEntry entry, boolean owned) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new PooledHandle(entry, owned));
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return 0;
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    private static class PooledEntry {
+        final Connection raw;
+        final StatementCache statements;
+        volatile long lastUsed = System.currentTimeMillis();
+        volatile long leasedAt;
+        volatile Throwable leasedBy;
+        volatile boolean leakReported;
+
+        PooledEntry(Connection raw, StatementCache statements) {
+            this.raw = raw;
+            this.statements = statements;
+        }
+    }
+
+    /**
+     * What the DAOs actually hold, closing it gives the connection back instead of closing the
+     * socket. Handles that don't own the connection (transaction joins) ignore close.
+     */
+    private class PooledHandle implements InvocationHandler {
+        final PooledEntry entry;
+        final boolean owned;
+        boolean handleClosed;
+
+        PooledHandle(PooledEntry entry, boolean owned) {
+            this.entry = entry;
+            this.owned = owned;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close" -> {
+                    if (!handleClosed) {
+                        handleClosed = true;
+                        if (owned) {
+                            release(entry);
+                        }
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    return handleClosed || entry.raw.isClosed();
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+                    return "Pooled" + entry.raw;
+                }
+            }
+            if (handleClosed) {
+                throw new SQLException("Connection is closed");
+            }
+            if (isCacheable(method, args)) {
+                int autoGeneratedKeys = args.length == 2 ? (Integer) args[1] :
+                        Statement.NO_GENERATED_KEYS;
+                return entry.statements.prepare(entry.raw, (String) args[0], autoGeneratedKeys,
+                        (Connection) proxy);
+            }
+            try {
+                return method.invoke(entry.raw, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        /**
+         * prepareStatement(sql) and prepareStatement(sql, autoGeneratedKeys), the variants with
+         * cursor options are rare and set up differently every time
+         */
+        private boolean isCacheable(Method method, Object[] args) {
+            return entry.statements != null && method.getName().equals("prepareStatement") &&
+                    (args.length == 1 || (args.length == 2 && args[1] instanceof Integer));
+        }
+    }
+}
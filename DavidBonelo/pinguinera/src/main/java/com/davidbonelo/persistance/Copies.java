@@ -0,0 +1,84 @@
+package com.davidbonelo.persistance;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Conditional in place updates of copies_borrowed shared by the item DAOs. The condition is
+ * checked by the database on the current row, so concurrent borrowers can't lend the same last
+ * copy twice or lose each other's updates.
+ */
+class Copies {
+    private Copies() {
+    }
+
+    /**
+     * Runs the update once per id in a single batch. Ids are sent sorted, so concurrent batches
+     * lock the rows in the same order and can't deadlock each other.
+     *
+     * @param sql an update with the item id as its only parameter
+     * @return for every id (in the given order) whether its row was updated. An id repeated n
+     * times is true only if all its n updates succeeded
+     */
+    static Map<Integer, Boolean> update(DataSource dataSource, String sql, List<Integer> ids)
+            throws SQLException {
+        Map<Integer, Boolean> results = new LinkedHashMap<>();
+        if (ids.isEmpty()) {
+            return results;
+        }
+        List<Integer> sorted = new ArrayList<>(ids);
+        sorted.sort(null);
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int id : sorted) {
+                statement.setInt(1, id);
+                statement.addBatch();
+            }
+            int[] counts = statement.executeBatch();
+            ids.forEach(id -> results.put(id, true));
+            for (int i = 0; i < sorted.size(); i++) {
+                if (counts[i] == 0) {
+                    results.put(sorted.get(i), false);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Runs the update once per distinct id in a single batch, ids sorted as in
+     * {@link #update(DataSource, String, List)}
+     *
+     * @param sql an update with the count and then the item id as parameters
+     * @return for every id whether its row was updated
+     */
+    static Map<Integer, Boolean> updateGrouped(DataSource dataSource, String sql,
+                                               Map<Integer, Integer> countsById)
+            throws SQLException {
+        Map<Integer, Boolean> results = new LinkedHashMap<>();
+        if (countsById.isEmpty()) {
+            return results;
+        }
+        List<Integer> sorted = new ArrayList<>(countsById.keySet());
+        sorted.sort(null);
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int id : sorted) {
+                statement.setInt(1, countsById.get(id));
+                statement.setInt(2, id);
+                statement.addBatch();
+            }
+            int[] counts = statement.executeBatch();
+            for (int i = 0; i < sorted.size(); i++) {
+                results.put(sorted.get(i), counts[i] != 0);
+            }
+        }
+        return results;
+    }
+}
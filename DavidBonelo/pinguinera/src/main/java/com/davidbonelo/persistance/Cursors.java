@@ -0,0 +1,63 @@
+package com.davidbonelo.persistance;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Shared keyset pagination and streaming for the DAO listings
+ */
+class Cursors {
+    // Rows per network fetch while streaming, needs useCursorFetch=true on MySQL
+    static final int STREAM_FETCH_SIZE = 500;
+    // SQL state "no data", of the SQLExceptions thrown when an id doesn't exist
+    static final String NOT_FOUND = "02000";
+
+    private Cursors() {
+    }
+
+    /**
+     * @param sql a query with two parameters, the id to start after and the page size, ordered
+     *            by id. e.g. "... WHERE id > ? ORDER BY id LIMIT ?"
+     */
+    static <T> List<T> page(DataSource dataSource, String sql, int afterId, int pageSize,
+                            RowMapper<T> mapper) throws SQLException {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("pageSize must be at least 1");
+        }
+        List<T> page = new ArrayList<>(pageSize);
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setInt(1, afterId);
+            statement.setInt(2, pageSize);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    page.add(mapper.map(rs));
+                }
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Hands every row to the consumer as it arrives, only one fetch of rows is held in memory
+     */
+    static <T> void stream(DataSource dataSource, String sql, RowMapper<T> mapper,
+                           Consumer<? super T> consumer) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql,
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            statement.setFetchSize(STREAM_FETCH_SIZE);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    consumer.accept(mapper.map(rs));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.davidbonelo.persistance;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Raw table dumps for audits, rows go from the ResultSet to the writer one fetch at a time
+ */
+public class ExportDAO {
+    private static final Map<String, String> TABLES = new LinkedHashMap<>();
+
+    static {
+        TABLES.put("books", "SELECT * FROM Books ORDER BY id");
+        TABLES.put("novels", "SELECT * FROM Novels ORDER BY id");
+        // never the passwords
+        TABLES.put("users", "SELECT id, name, email, role, is_deleted FROM Users ORDER BY id");
+        TABLES.put("borrowings", "SELECT * FROM Borrowings ORDER BY id");
+        TABLES.put("borrowings_books", "SELECT * FROM borrowings_books ORDER BY borrowing_id, " +
+                "book_id");
+        TABLES.put("borrowings_novels", "SELECT * FROM borrowings_novels ORDER BY borrowing_id, " +
+                "novel_id");
+    }
+
+    private final DataSource dataSource;
+
+    public ExportDAO(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public List<String> getTables() {
+        return new ArrayList<>(TABLES.keySet());
+    }
+
+    /**
+     * @return the number of rows written
+     */
+    public long streamTable(String table, RowWriter writer) throws SQLException, IOException {
+        String sql = TABLES.get(table);
+        if (sql == null) {
+            throw new IllegalArgumentException("Unknown table " + table);
+        }
+        long rows = 0;
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql,
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            statement.setFetchSize(Cursors.STREAM_FETCH_SIZE);
+            try (ResultSet rs = statement.executeQuery()) {
+                ResultSetMetaData metaData = rs.getMetaData();
+                List<String> columns = new ArrayList<>();
+                for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                    columns.add(metaData.getColumnLabel(i).toLowerCase(Locale.ROOT));
+                }
+                writer.header(columns);
+                Object[] values = new Object[columns.size()];
+                while (rs.next()) {
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = rs.getObject(i + 1);
+                    }
+                    writer.row(values);
+                    rows++;
+                }
+            }
+        }
+        return rows;
+    }
+}
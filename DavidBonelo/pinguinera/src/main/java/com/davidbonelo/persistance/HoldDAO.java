@@ -0,0 +1,127 @@
+package com.davidbonelo.persistance;
+
+import com.davidbonelo.metrics.Meter;
+import com.davidbonelo.metrics.Metrics;
+import com.davidbonelo.models.Hold;
+import com.davidbonelo.models.HoldStatus;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The holds table, mirrored in memory by HoldQueue
+ */
+public class HoldDAO {
+    private static final Meter METER = Metrics.meter(HoldDAO.class);
+    private final DataSource dataSource;
+
+    public HoldDAO(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public void createHold(Hold hold) throws SQLException {
+        METER.run("createHold", () -> {
+            String sql = "INSERT INTO holds (item_type, item_id, user_id, status, requested_at) " +
+                    "VALUES (?, ?, ?, ?, ?)";
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql,
+                         Statement.RETURN_GENERATED_KEYS)) {
+                statement.setString(1, hold.getItemType());
+                statement.setInt(2, hold.getItemId());
+                statement.setInt(3, hold.getUserId());
+                statement.setString(4, hold.getStatus().name());
+                statement.setTimestamp(5, Timestamp.from(hold.getRequestedAt()));
+                statement.executeUpdate();
+                try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
+                    if (!generatedKeys.next()) {
+                        throw new SQLException("Hold creation failed, no ID obtained");
+                    }
+                    hold.setId(generatedKeys.getInt(1));
+                }
+            }
+        });
+    }
+
+    /**
+     * Moves the hold to another status only if it's still in the expected one, so concurrent
+     * changes (e.g. a cancel and an expiry) can't both apply
+     *
+     * @param readyUntil null unless the new status is READY
+     * @return whether it was updated
+     */
+    public boolean updateStatus(int holdId, HoldStatus expected, HoldStatus status,
+                                Instant readyUntil) throws SQLException {
+        return METER.call("updateStatus", () -> {
+            String sql = "UPDATE holds SET status = ?, ready_until = ? WHERE id = ? AND " +
+                    "status = ?";
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setString(1, status.name());
+                statement.setTimestamp(2, readyUntil == null ? null : Timestamp.from(readyUntil));
+                statement.setInt(3, holdId);
+                statement.setString(4, expected.name());
+                return statement.executeUpdate() == 1;
+            }
+        });
+    }
+
+    /**
+     * @return the WAITING and READY holds, oldest first
+     */
+    public List<Hold> getOpenHolds() throws SQLException {
+        return METER.call("getOpenHolds", () -> {
+            String sql = "SELECT id, item_type, item_id, user_id, status, requested_at, " +
+                    "ready_until FROM holds WHERE status IN (?, ?) ORDER BY id";
+            List<Hold> holds = new ArrayList<>();
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setString(1, HoldStatus.WAITING.name());
+                statement.setString(2, HoldStatus.READY.name());
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        holds.add(toHold(rs));
+                    }
+                }
+            }
+            return holds;
+        });
+    }
+
+    /**
+     * @return the WAITING or READY hold of the user on the item, null if there's none
+     */
+    public Hold getOpenHold(int userId, String itemType, int itemId) throws SQLException {
+        return METER.call("getOpenHold", () -> {
+            String sql = "SELECT id, item_type, item_id, user_id, status, requested_at, " +
+                    "ready_until FROM holds WHERE user_id = ? AND item_type = ? AND item_id = ? " +
+                    "AND status IN (?, ?)";
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setInt(1, userId);
+                statement.setString(2, itemType);
+                statement.setInt(3, itemId);
+                statement.setString(4, HoldStatus.WAITING.name());
+                statement.setString(5, HoldStatus.READY.name());
+                try (ResultSet rs = statement.executeQuery()) {
+                    return rs.next() ? toHold(rs) : null;
+                }
+            }
+        });
+    }
+
+    private static Hold toHold(ResultSet rs) throws SQLException {
+        Timestamp readyUntil = rs.getTimestamp("ready_until");
+        return new Hold(rs.getInt("id"), rs.getString("item_type"), rs.getInt("item_id"),
+                rs.getInt("user_id"), HoldStatus.valueOf(rs.getString("status")),
+                rs.getTimestamp("requested_at").toInstant(),
+                readyUntil == null ? null : readyUntil.toInstant());
+    }
+}
@@ -0,0 +1,45 @@
+package com.davidbonelo.persistance;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * How far each import file got. Saving the offset in the same transaction as the imported rows
+ * makes a resumed import neither skip nor repeat rows.
+ */
+public class ImportCheckpointDAO {
+    private final DataSource dataSource;
+
+    public ImportCheckpointDAO(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * @return the lines of the source already imported, 0 if it was never imported
+     */
+    public long getOffset(String source) throws SQLException {
+        String sql = "SELECT line_offset FROM import_checkpoints WHERE source = ?";
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, source);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() ? rs.getLong("line_offset") : 0;
+            }
+        }
+    }
+
+    public void saveOffset(String source, long lineOffset) throws SQLException {
+        String sql = "INSERT INTO import_checkpoints (source, line_offset) VALUES (?, ?) " +
+                "ON DUPLICATE KEY UPDATE line_offset = VALUES(line_offset), updated_at = " +
+                "CURRENT_TIMESTAMP";
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, source);
+            statement.setLong(2, lineOffset);
+            statement.executeUpdate();
+        }
+    }
+}
@@ -1,20 +1,34 @@
 package com.davidbonelo.persistance;
 
+import com.davidbonelo.metrics.Meter;
+import com.davidbonelo.metrics.Metrics;
 import com.davidbonelo.models.LibraryItem;
 import com.davidbonelo.models.Novel;
 
+import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 public class NovelDAO {
-    private final Connection connection;
+    private static final Meter METER = Metrics.meter(NovelDAO.class);
+    private final DataSource dataSource;
+    // The pages of the listings, that can come from a replica a little behind
+    private final DataSource readSource;
 
-    public NovelDAO(Connection connection) {
-        this.connection = connection;
+    public NovelDAO(DataSource dataSource) {
+        this(dataSource, dataSource);
+    }
+
+    public NovelDAO(DataSource dataSource, DataSource readSource) {
+        this.dataSource = dataSource;
+        this.readSource = readSource;
     }
 
     static Novel buildNovelFromResult(ResultSet rs) throws SQLException {
@@ -24,78 +38,189 @@ public class NovelDAO {
     }
 
     public Novel getNovelById(int itemId) throws SQLException {
-        String sql = "SELECT * FROM Novels WHERE id= ?";
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setInt(1, itemId);
-            ResultSet rs = statement.executeQuery();
-            if (rs.next()) {
-                return buildNovelFromResult(rs);
+        return METER.call("getNovelById", () -> {
+            String sql = "SELECT * FROM Novels WHERE id= ?";
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setInt(1, itemId);
+                ResultSet rs = statement.executeQuery();
+                if (rs.next()) {
+                    return buildNovelFromResult(rs);
+                }
+                rs.close();
             }
-            rs.close();
-        }
-        return null;
+            return null;
+        });
     }
 
+    /**
+     * Reads the primary, the catalog cache keeps this listing for longer than the replica may
+     * be behind
+     */
     public List<Novel> getAllNovels() throws SQLException {
-        List<Novel> novels = new ArrayList<>();
-        String sql = "SELECT * FROM Novels";
-        try (PreparedStatement statement = connection.prepareStatement(sql); ResultSet rs =
-                statement.executeQuery()) {
-            while (rs.next()) {
-                novels.add(buildNovelFromResult(rs));
+        return METER.call("getAllNovels", () -> {
+            List<Novel> novels = new ArrayList<>();
+            String sql = "SELECT * FROM Novels";
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql); ResultSet rs =
+                    statement.executeQuery()) {
+                while (rs.next()) {
+                    novels.add(buildNovelFromResult(rs));
+                }
             }
-        }
-        return novels;
+            return novels;
+        });
+    }
+
+    /**
+     * Keyset pagination, the next page starts after the id of the last novel of this one
+     */
+    public List<Novel> getNovelsPage(int afterId, int pageSize) throws SQLException {
+        return METER.call("getNovelsPage", () -> {
+            String sql = "SELECT * FROM Novels WHERE id > ? ORDER BY id LIMIT ?";
+            return Cursors.page(readSource, sql, afterId, pageSize, NovelDAO::buildNovelFromResult);
+        });
+    }
+
+    /**
+     * Reads every row from the primary, see {@link BookDAO#streamAllBooks(Consumer)}
+     */
+    public void streamAllNovels(Consumer<? super Novel> consumer) throws SQLException {
+        METER.run("streamAllNovels", () -> {
+            String sql = "SELECT * FROM Novels ORDER BY id";
+            Cursors.stream(dataSource, sql, NovelDAO::buildNovelFromResult, consumer);
+        });
     }
 
     public void createNovel(Novel novel) throws SQLException {
-        String sql = "INSERT INTO Novels ( title, author, copies, copies_borrowed, genre, " +
-                "recommended_age ) VALUES ( ?, ?, ?, ?, ?, ? )";
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setString(1, novel.getTitle());
-            statement.setString(2, novel.getAuthor());
-            statement.setInt(3, novel.getCopies());
-            statement.setInt(4, novel.getCopiesBorrowed());
-            statement.setString(5, novel.getGenre());
-            statement.setInt(6, novel.getRecommendedAge());
-            int rowsInserted = statement.executeUpdate();
-            if (rowsInserted == 0) {
-                throw new SQLException("Creating novel failed, no rows affected.");
+        METER.run("createNovel", () -> {
+            String sql = "INSERT INTO Novels ( title, author, copies, copies_borrowed, genre, " +
+                    "recommended_age ) VALUES ( ?, ?, ?, ?, ?, ? )";
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql,
+                         Statement.RETURN_GENERATED_KEYS)) {
+                statement.setString(1, novel.getTitle());
+                statement.setString(2, novel.getAuthor());
+                statement.setInt(3, novel.getCopies());
+                statement.setInt(4, novel.getCopiesBorrowed());
+                statement.setString(5, novel.getGenre());
+                statement.setInt(6, novel.getRecommendedAge());
+                int rowsInserted = statement.executeUpdate();
+                if (rowsInserted == 0) {
+                    throw new SQLException("Creating novel failed, no rows affected.");
+                }
+                try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
+                    if (generatedKeys.next()) {
+                        novel.setId(generatedKeys.getInt(1));
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Inserts all the novels with one batch, for bulk imports. Their ids aren't read back.
+     */
+    public void createNovels(List<Novel> novels) throws SQLException {
+        METER.run("createNovels", () -> {
+            String sql = "INSERT INTO Novels ( title, author, copies, copies_borrowed, genre, " +
+                    "recommended_age ) VALUES ( ?, ?, ?, ?, ?, ? )";
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql)) {
+                for (Novel novel : novels) {
+                    statement.setString(1, novel.getTitle());
+                    statement.setString(2, novel.getAuthor());
+                    statement.setInt(3, novel.getCopies());
+                    statement.setInt(4, novel.getCopiesBorrowed());
+                    statement.setString(5, novel.getGenre());
+                    statement.setInt(6, novel.getRecommendedAge());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
             }
-        }
+        });
     }
 
     public void updateNovel(Novel novel) throws SQLException {
-        if (!containsId(novel)) {
-            throw new IllegalArgumentException("Cant update a Novel without an id");
-        }
-        String sql =
-                "UPDATE Novels b SET title= ?, author= ?, copies= ?, copies_borrowed= ?, " +
-                        "genre= ?, recommended_age= ? WHERE b.id= ?" ;
-
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setString(1, novel.getTitle());
-            statement.setString(2, novel.getAuthor());
-            statement.setInt(3, novel.getCopies());
-            statement.setInt(4, novel.getCopiesBorrowed());
-            statement.setString(5, novel.getGenre());
-            statement.setInt(6, novel.getRecommendedAge());
-            statement.setInt(7, novel.getId()); // WHERE
-            int rowsUpdated = statement.executeUpdate();
-            if (rowsUpdated == 0) {
-                throw new SQLException("Update of novel with id " + novel.getId() + " failed.");
+        METER.run("updateNovel", () -> {
+            if (!containsId(novel)) {
+                throw new IllegalArgumentException("Cant update a Novel without an id");
             }
-        }
+            String sql =
+                    "UPDATE Novels b SET title= ?, author= ?, copies= ?, copies_borrowed= ?, " +
+                            "genre= ?, recommended_age= ? WHERE b.id= ?" ;
+
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setString(1, novel.getTitle());
+                statement.setString(2, novel.getAuthor());
+                statement.setInt(3, novel.getCopies());
+                statement.setInt(4, novel.getCopiesBorrowed());
+                statement.setString(5, novel.getGenre());
+                statement.setInt(6, novel.getRecommendedAge());
+                statement.setInt(7, novel.getId()); // WHERE
+                int rowsUpdated = statement.executeUpdate();
+                if (rowsUpdated == 0) {
+                    throw new SQLException("Update of novel with id " + novel.getId() + " failed.");
+                }
+            }
+        });
     }
 
     public void deleteNovel(int novelId) throws SQLException {
-        String sql = "DELETE FROM Novels b WHERE b.id=" + novelId;
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
-            int rowsDeleted = statement.executeUpdate();
-            if (rowsDeleted == 0) {
-                throw new SQLException("Novel deletion failed, no rows affected");
+        METER.run("deleteNovel", () -> {
+            String sql = "DELETE FROM Novels b WHERE b.id= ?";
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setInt(1, novelId);
+                int rowsDeleted = statement.executeUpdate();
+                if (rowsDeleted == 0) {
+                    throw new SQLException("Novel deletion failed, no rows affected");
+                }
             }
-        }
+        });
+    }
+
+    /**
+     * Takes one copy of every novel, only if it has copies available. Call it inside a transaction
+     * and roll back if a novel that's needed couldn't be reserved.
+     *
+     * @return for every id whether a copy was reserved
+     */
+    public Map<Integer, Boolean> reserveCopies(List<Integer> novelIds) throws SQLException {
+        return METER.call("reserveCopies", () -> {
+            String sql = "UPDATE Novels SET copies_borrowed = copies_borrowed + 1 WHERE id = ? " +
+                    "AND copies_borrowed < copies";
+            return Copies.update(dataSource, sql, novelIds);
+        });
+    }
+
+    /**
+     * Gives back one copy of every novel
+     *
+     * @return for every id whether a copy was given back, false if none was borrowed
+     */
+    public Map<Integer, Boolean> releaseCopies(List<Integer> novelIds) throws SQLException {
+        return METER.call("releaseCopies", () -> {
+            String sql = "UPDATE Novels SET copies_borrowed = copies_borrowed - 1 WHERE id = ? " +
+                    "AND copies_borrowed > 0";
+            return Copies.update(dataSource, sql, novelIds);
+        });
+    }
+
+    /**
+     * Gives back several copies of each novel with one grouped update per novel, e.g. when
+     * finalizing many borrowings at once. copies_borrowed doesn't go below 0.
+     *
+     * @param copiesById how many copies of every novel id
+     */
+    public Map<Integer, Boolean> releaseCopies(Map<Integer, Integer> copiesById)
+            throws SQLException {
+        return METER.call("releaseCopiesGrouped", () -> {
+            String sql = "UPDATE Novels SET copies_borrowed = GREATEST(copies_borrowed - ?, 0) " +
+                    "WHERE id = ?";
+            return Copies.updateGrouped(dataSource, sql, copiesById);
+        });
     }
 
     private boolean containsId(LibraryItem item) {
@@ -0,0 +1,161 @@
+package com.davidbonelo.persistance;
+
+/**
+ * Settings for {@link ConnectionPool}, the defaults are fine for the console app.
+ * All times are in milliseconds, a value of 0 disables the related feature.
+ */
+public class PoolConfig {
+    private int minIdle = 2;
+    private int maxSize = 10;
+    private long connectionTimeout = 5_000;
+    private long idleTimeout = 10 * 60_000;
+    private long housekeepingInterval = 30_000;
+    private long leakDetectionThreshold = 60_000;
+    private int validationTimeoutSeconds = 2;
+    private boolean validateOnBorrow = true;
+    private int statementCacheSize = 64;
+    private long slowQueryThreshold = 1_000;
+    private String slowQueryLog = "pingu-slow-queries.log";
+    private boolean explainSlowQueries = false;
+
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    public PoolConfig setMinIdle(int minIdle) {
+        if (minIdle < 0) {
+            throw new IllegalArgumentException("minIdle can't be negative");
+        }
+        this.minIdle = minIdle;
+        return this;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public PoolConfig setMaxSize(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1");
+        }
+        this.maxSize = maxSize;
+        return this;
+    }
+
+    public long getConnectionTimeout() {
+        return connectionTimeout;
+    }
+
+    /**
+     * @param connectionTimeout how long getConnection waits for a free connection before failing
+     */
+    public PoolConfig setConnectionTimeout(long connectionTimeout) {
+        this.connectionTimeout = connectionTimeout;
+        return this;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * @param idleTimeout connections idle for longer than this are closed (keeping minIdle)
+     */
+    public PoolConfig setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+        return this;
+    }
+
+    public long getHousekeepingInterval() {
+        return housekeepingInterval;
+    }
+
+    public PoolConfig setHousekeepingInterval(long housekeepingInterval) {
+        this.housekeepingInterval = housekeepingInterval;
+        return this;
+    }
+
+    public long getLeakDetectionThreshold() {
+        return leakDetectionThreshold;
+    }
+
+    /**
+     * @param leakDetectionThreshold connections leased for longer than this are reported as
+     *                               possible leaks, with the stack trace of the borrower
+     */
+    public PoolConfig setLeakDetectionThreshold(long leakDetectionThreshold) {
+        this.leakDetectionThreshold = leakDetectionThreshold;
+        return this;
+    }
+
+    public int getValidationTimeoutSeconds() {
+        return validationTimeoutSeconds;
+    }
+
+    public PoolConfig setValidationTimeoutSeconds(int validationTimeoutSeconds) {
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        return this;
+    }
+
+    public boolean isValidateOnBorrow() {
+        return validateOnBorrow;
+    }
+
+    public PoolConfig setValidateOnBorrow(boolean validateOnBorrow) {
+        this.validateOnBorrow = validateOnBorrow;
+        return this;
+    }
+
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    /**
+     * @param statementCacheSize prepared statements kept open per connection, by SQL text
+     */
+    public PoolConfig setStatementCacheSize(int statementCacheSize) {
+        if (statementCacheSize < 0) {
+            throw new IllegalArgumentException("statementCacheSize can't be negative");
+        }
+        this.statementCacheSize = statementCacheSize;
+        return this;
+    }
+
+    public long getSlowQueryThreshold() {
+        return slowQueryThreshold;
+    }
+
+    /**
+     * @param slowQueryThreshold statements that take longer than this, counting the time
+     *                           fetching their rows, are written to the slow query log
+     */
+    public PoolConfig setSlowQueryThreshold(long slowQueryThreshold) {
+        this.slowQueryThreshold = slowQueryThreshold;
+        return this;
+    }
+
+    public String getSlowQueryLog() {
+        return slowQueryLog;
+    }
+
+    /**
+     * @param slowQueryLog path of the slow query log, older entries roll over to .1, .2...
+     */
+    public PoolConfig setSlowQueryLog(String slowQueryLog) {
+        this.slowQueryLog = slowQueryLog;
+        return this;
+    }
+
+    public boolean isExplainSlowQueries() {
+        return explainSlowQueries;
+    }
+
+    /**
+     * @param explainSlowQueries also log the EXPLAIN plan of slow queries, it runs the EXPLAIN
+     *                           right after the query on the same connection
+     */
+    public PoolConfig setExplainSlowQueries(boolean explainSlowQueries) {
+        this.explainSlowQueries = explainSlowQueries;
+        return this;
+    }
+}
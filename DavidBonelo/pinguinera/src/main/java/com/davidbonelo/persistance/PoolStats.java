@@ -0,0 +1,87 @@
+package com.davidbonelo.persistance;
+
+/**
+ * Point in time snapshot of the {@link ConnectionPool} counters
+ */
+public class PoolStats {
+    private final int idle;
+    private final int active;
+    private final int waiting;
+    private final long created;
+    private final long destroyed;
+    private final long borrowed;
+    private final long timeouts;
+    private final long leaks;
+    private final long statementHits;
+    private final long statementMisses;
+
+    public PoolStats(int idle, int active, int waiting, long created, long destroyed,
+                     long borrowed, long timeouts, long leaks, long statementHits,
+                     long statementMisses) {
+        this.idle = idle;
+        this.active = active;
+        this.waiting = waiting;
+        this.created = created;
+        this.destroyed = destroyed;
+        this.borrowed = borrowed;
+        this.timeouts = timeouts;
+        this.leaks = leaks;
+        this.statementHits = statementHits;
+        this.statementMisses = statementMisses;
+    }
+
+    public int getIdle() {
+        return idle;
+    }
+
+    public int getActive() {
+        return active;
+    }
+
+    public int getTotal() {
+        return idle + active;
+    }
+
+    public int getWaiting() {
+        return waiting;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public long getDestroyed() {
+        return destroyed;
+    }
+
+    public long getBorrowed() {
+        return borrowed;
+    }
+
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    public long getLeaks() {
+        return leaks;
+    }
+
+    /**
+     * @return prepareStatement calls served from the statement cache
+     */
+    public long getStatementHits() {
+        return statementHits;
+    }
+
+    public long getStatementMisses() {
+        return statementMisses;
+    }
+
+    @Override
+    public String toString() {
+        return "PoolStats{" + "idle=" + idle + ", active=" + active + ", waiting=" + waiting +
+                ", created=" + created + ", destroyed=" + destroyed + ", borrowed=" + borrowed +
+                ", timeouts=" + timeouts + ", leaks=" + leaks + ", statementHits=" +
+                statementHits + ", statementMisses=" + statementMisses + '}';
+    }
+}
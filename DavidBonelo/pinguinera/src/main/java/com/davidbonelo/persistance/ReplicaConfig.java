@@ -0,0 +1,38 @@
+package com.davidbonelo.persistance;
+
+/**
+ * Settings for the replica of {@link RoutingDataSource}, times in milliseconds
+ */
+public class ReplicaConfig {
+    private long maxStaleness = 5_000;
+    private long heartbeatInterval = 1_000;
+
+    public long getMaxStaleness() {
+        return maxStaleness;
+    }
+
+    /**
+     * @param maxStaleness how far behind the primary the replica can be and still serve reads,
+     *                     it should be a few heartbeat intervals
+     */
+    public ReplicaConfig setMaxStaleness(long maxStaleness) {
+        if (maxStaleness < 0) {
+            throw new IllegalArgumentException("maxStaleness can't be negative");
+        }
+        this.maxStaleness = maxStaleness;
+        return this;
+    }
+
+    public long getHeartbeatInterval() {
+        return heartbeatInterval;
+    }
+
+    /**
+     * @param heartbeatInterval how often the heartbeat is written and the lag measured, 0 leaves
+     *                          it to whoever calls {@link RoutingDataSource#heartbeat()}
+     */
+    public ReplicaConfig setHeartbeatInterval(long heartbeatInterval) {
+        this.heartbeatInterval = heartbeatInterval;
+        return this;
+    }
+}
@@ -0,0 +1,256 @@
+package com.davidbonelo.persistance;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * The primary pool, for writes and most reads, and optionally a pool of replica connections for
+ * the read-only listings that can be a little behind, see {@link #reads()}. Those go to the
+ * primary anyway when:
+ * <ul>
+ * <li>the thread is in a transaction of the primary, so it sees what the transaction wrote
+ * <li>the thread reads its own writes, see {@link #setReadingOwnWrites(boolean)} and
+ * {@link #readOwnWritesUntil(long)}
+ * <li>the replica is more than {@link ReplicaConfig#getMaxStaleness()} behind
+ * </ul>
+ * The lag is measured with a heartbeat: the primary writes its clock to replica_heartbeat, and
+ * the copy of that row on the replica is as old as the replicated data. Without a recent beat
+ * (replication stopped, the replica is down) the reads stay on the primary.
+ */
+public class RoutingDataSource implements AutoCloseable {
+    private final ConnectionPool primary;
+    private final ConnectionPool replica;
+    private final ReplicaConfig config;
+    private final DataSource reads = new Reads();
+    private final ThreadLocal<Boolean> readingOwnWrites = new ThreadLocal<>();
+    private final ThreadLocal<Long> readOwnWritesUntil = new ThreadLocal<>();
+    private final ScheduledExecutorService heartbeats;
+    private final AtomicLong replicaReads = new AtomicLong();
+    private final AtomicLong primaryReads = new AtomicLong();
+    // Primary clock of the last beat seen on the replica, 0 until there is one
+    private volatile long replicaBeat;
+
+    /**
+     * Without a replica, every read goes to the primary
+     */
+    public RoutingDataSource(ConnectionPool primary) {
+        this(primary, null, new ReplicaConfig());
+    }
+
+    public RoutingDataSource(ConnectionPool primary, ConnectionPool replica,
+                             ReplicaConfig config) {
+        this.primary = primary;
+        this.replica = replica;
+        this.config = config;
+        if (replica != null && config.getHeartbeatInterval() > 0) {
+            heartbeats = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "pingu-replica-heartbeat");
+                thread.setDaemon(true);
+                return thread;
+            });
+            heartbeats.scheduleWithFixedDelay(this::heartbeat, 0,
+                    config.getHeartbeatInterval(), TimeUnit.MILLISECONDS);
+        } else {
+            heartbeats = null;
+        }
+    }
+
+    public ConnectionPool getPrimary() {
+        return primary;
+    }
+
+    /**
+     * The DataSource of the read-only DAO methods the replica can serve
+     */
+    public DataSource reads() {
+        return reads;
+    }
+
+    /**
+     * Sends the reads of the current thread to the primary, or lets them go to the replica
+     * again, for a session that has to see what it just wrote
+     *
+     * @return whether they went to the primary before, to restore it afterwards
+     */
+    public boolean setReadingOwnWrites(boolean readingOwnWrites) {
+        boolean before = Boolean.TRUE.equals(this.readingOwnWrites.get());
+        if (readingOwnWrites) {
+            this.readingOwnWrites.set(true);
+        } else {
+            this.readingOwnWrites.remove();
+        }
+        return before;
+    }
+
+    /**
+     * Sends the reads of the current thread to the primary until the given time in millis, for
+     * a thread that serves a single session and just wrote, like the console
+     */
+    public void readOwnWritesUntil(long until) {
+        readOwnWritesUntil.set(until);
+    }
+
+    public long getMaxStaleness() {
+        return config.getMaxStaleness();
+    }
+
+    /**
+     * Writes the beat on the primary and reads the one on the replica, runs every heartbeat
+     * interval
+     */
+    public void heartbeat() {
+        if (replica == null) {
+            return;
+        }
+        String sql = "INSERT INTO replica_heartbeat (id, beat) VALUES (1, ?) ON DUPLICATE KEY " +
+                "UPDATE beat = VALUES(beat)";
+        try (Connection connection = primary.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setLong(1, System.currentTimeMillis());
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            System.err.println("Couldn't write the replica heartbeat, " + e.getMessage());
+        }
+        try (Connection connection = replica.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT beat FROM replica_heartbeat WHERE id = 1");
+             ResultSet rs = statement.executeQuery()) {
+            if (rs.next()) {
+                replicaBeat = rs.getLong("beat");
+            }
+        } catch (SQLException e) {
+            System.err.println("Couldn't read the replica heartbeat, " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return how far behind the primary the replica is as of now, judging by the last beat
+     * seen on it. Long.MAX_VALUE without a replica or a beat.
+     */
+    public long getReplicaLag() {
+        long beat = replicaBeat;
+        if (replica == null || beat == 0) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, System.currentTimeMillis() - beat);
+    }
+
+    /**
+     * @return the connections {@link #reads()} took from the replica
+     */
+    public long getReplicaReads() {
+        return replicaReads.get();
+    }
+
+    /**
+     * @return the connections {@link #reads()} took from the primary
+     */
+    public long getPrimaryReads() {
+        return primaryReads.get();
+    }
+
+    /**
+     * Stops the heartbeat and closes both pools
+     */
+    @Override
+    public void close() {
+        if (heartbeats != null) {
+            heartbeats.shutdownNow();
+        }
+        if (replica != null) {
+            replica.close();
+        }
+        primary.close();
+    }
+
+    private boolean readFromReplica() {
+        return replica != null && !primary.isInTransaction() &&
+                !Boolean.TRUE.equals(readingOwnWrites.get()) && !inOwnWritesWindow() &&
+                getReplicaLag() <= config.getMaxStaleness();
+    }
+
+    private boolean inOwnWritesWindow() {
+        Long until = readOwnWritesUntil.get();
+        if (until == null) {
+            return false;
+        } else if (System.currentTimeMillis() < until) {
+            return true;
+        }
+        readOwnWritesUntil.remove();
+        return false;
+    }
+
+    /**
+     * Hands out replica connections while {@link #readFromReplica()}, primary ones otherwise
+     */
+    private class Reads implements DataSource {
+        @Override
+        public Connection getConnection() throws SQLException {
+            if (readFromReplica()) {
+                try {
+                    Connection connection = replica.getConnection();
+                    replicaReads.incrementAndGet();
+                    return connection;
+                } catch (SQLException e) {
+                    replicaBeat = 0; // until the next beat read from it
+                    System.err.println("Replica unavailable, reading from the primary, " +
+                            e.getMessage());
+                }
+            }
+            primaryReads.incrementAndGet();
+            return primary.getConnection();
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            throw new SQLFeatureNotSupportedException("The pools only serve their configured " +
+                    "user");
+        }
+
+        @Override
+        public PrintWriter getLogWriter() {
+            return null;
+        }
+
+        @Override
+        public void setLogWriter(PrintWriter out) {
+        }
+
+        @Override
+        public int getLoginTimeout() {
+            return 0;
+        }
+
+        @Override
+        public void setLoginTimeout(int seconds) {
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> iface) throws SQLException {
+            if (iface.isInstance(this)) {
+                return iface.cast(this);
+            }
+            throw new SQLException("Not a wrapper for " + iface);
+        }
+
+        @Override
+        public boolean isWrapperFor(Class<?> iface) {
+            return iface.isInstance(this);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.davidbonelo.persistance;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Builds one object from the current row of a ResultSet, e.g. BookDAO::buildBookFromResult
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+    T map(ResultSet rs) throws SQLException;
+}
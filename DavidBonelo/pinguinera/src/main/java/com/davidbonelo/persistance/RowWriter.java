@@ -0,0 +1,16 @@
+package com.davidbonelo.persistance;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Receives the rows of a table as they are read, see {@link ExportDAO#streamTable}
+ */
+public interface RowWriter {
+    void header(List<String> columns) throws IOException;
+
+    /**
+     * @param values the columns of the row, the array is reused for the next row
+     */
+    void row(Object[] values) throws IOException;
+}
@@ -0,0 +1,331 @@
+package com.davidbonelo.persistance;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Times the statements run on the connections of the pool and writes the slow ones to a log
+ * file: SQL, bound parameters, rows, the DAO method that ran it and optionally the EXPLAIN plan.
+ * <p>
+ * A query is timed from its execute until its ResultSet is closed, counting only the time spent
+ * in the driver (execute and next), not what the DAO does with every row. The log rolls over
+ * to .1, .2... when it reaches {@link #MAX_FILE_BYTES}.
+ */
+class SlowQueryLog {
+    static final long MAX_FILE_BYTES = 10 * 1024 * 1024;
+    static final int MAX_OLD_FILES = 5;
+    private static final String PACKAGE = "com.davidbonelo.";
+    private static final List<String> PLUMBING = List.of(SlowQueryLog.class.getName(),
+            ConnectionPool.class.getName(), StatementCache.class.getName(),
+            Cursors.class.getName(), Copies.class.getName(), "com.davidbonelo.metrics.");
+
+    private final long thresholdNanos;
+    private final boolean explain;
+    private final Path file;
+
+    SlowQueryLog(long thresholdMillis, boolean explain, Path file) {
+        this.thresholdNanos = thresholdMillis * 1_000_000;
+        this.explain = explain;
+        this.file = file;
+    }
+
+    /**
+     * @return the connection, timing every statement created from it
+     */
+    Connection wrap(Connection raw) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    Object result = invoke(raw, method, args);
+                    if (result instanceof Statement statement) {
+                        String sql = args != null && args.length > 0 &&
+                                args[0] instanceof String text ? text : null;
+                        return timed(raw, statement, sql);
+                    }
+                    return result;
+                });
+    }
+
+    private Statement timed(Connection raw, Statement statement, String sql) {
+        Class<?> type = statement instanceof CallableStatement ? CallableStatement.class :
+                statement instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+        return (Statement) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                new TimedStatement(raw, statement, sql));
+    }
+
+    private void log(Execution execution, Connection raw) {
+        StringBuilder entry = new StringBuilder();
+        entry.append(LocalDateTime.now()).append(" slow query ")
+                .append(execution.nanos / 1_000_000).append(" ms, ")
+                .append(execution.rows < 0 ? "?" : execution.rows).append(" rows, ")
+                .append(callingMethod()).append(System.lineSeparator());
+        entry.append("SQL: ").append(execution.sql).append(System.lineSeparator());
+        if (execution.sql.toLowerCase(Locale.ROOT).contains("password")) {
+            entry.append("Parameters: hidden, they may include a password")
+                    .append(System.lineSeparator());
+        } else if (!execution.params.isEmpty()) {
+            entry.append("Parameters: ").append(execution.params).append(System.lineSeparator());
+        }
+        if (execution.batches > 0) {
+            entry.append("Batches: ").append(execution.batches).append(System.lineSeparator());
+        }
+        if (explain && isExplainable(execution.sql)) {
+            entry.append("Plan:").append(System.lineSeparator());
+            explain(entry, execution, raw);
+        }
+        write(entry.append(System.lineSeparator()).toString());
+    }
+
+    /**
+     * Runs EXPLAIN directly on the driver connection, so it isn't timed or logged itself
+     */
+    private void explain(StringBuilder entry, Execution execution, Connection raw) {
+        try (PreparedStatement statement = raw.prepareStatement("EXPLAIN " + execution.sql)) {
+            for (Map.Entry<Integer, Object> param : execution.params.entrySet()) {
+                statement.setObject(param.getKey(), param.getValue());
+            }
+            try (ResultSet rs = statement.executeQuery()) {
+                ResultSetMetaData columns = rs.getMetaData();
+                StringBuilder header = new StringBuilder("  ");
+                for (int i = 1; i <= columns.getColumnCount(); i++) {
+                    header.append(columns.getColumnLabel(i)).append('\t');
+                }
+                entry.append(header).append(System.lineSeparator());
+                while (rs.next()) {
+                    entry.append("  ");
+                    for (int i = 1; i <= columns.getColumnCount(); i++) {
+                        entry.append(rs.getString(i)).append('\t');
+                    }
+                    entry.append(System.lineSeparator());
+                }
+            }
+        } catch (SQLException e) {
+            entry.append("  unavailable, ").append(e.getMessage()).append(System.lineSeparator());
+        }
+    }
+
+    private synchronized void write(String entry) {
+        byte[] bytes = entry.getBytes(StandardCharsets.UTF_8);
+        try {
+            if (Files.exists(file) && Files.size(file) + bytes.length > MAX_FILE_BYTES) {
+                rollOver();
+            }
+            Files.write(file, bytes, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.err.println("Couldn't write the slow query log " + file + ", " +
+                    e.getMessage());
+        }
+    }
+
+    private void rollOver() throws IOException {
+        Files.deleteIfExists(old(MAX_OLD_FILES));
+        for (int i = MAX_OLD_FILES - 1; i >= 1; i--) {
+            if (Files.exists(old(i))) {
+                Files.move(old(i), old(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(file, old(1), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Path old(int number) {
+        return file.resolveSibling(file.getFileName() + "." + number);
+    }
+
+    private static boolean isExplainable(String sql) {
+        String start = sql.stripLeading().toUpperCase(Locale.ROOT);
+        return start.startsWith("SELECT") || start.startsWith("UPDATE") ||
+                start.startsWith("DELETE");
+    }
+
+    /**
+     * @return the first application method in the current stack that isn't JDBC plumbing, a
+     * DAO method like BorrowingDAO.getAllItemsForABorrowing
+     */
+    private static String callingMethod() {
+        return StackWalker.getInstance().walk(frames -> frames
+                .filter(frame -> frame.getClassName().startsWith(PACKAGE) &&
+                        PLUMBING.stream().noneMatch(frame.getClassName()::startsWith))
+                .findFirst()
+                .map(frame -> simpleName(frame.getClassName()) + "." +
+                        methodName(frame.getMethodName()))
+                .orElse("unknown"));
+    }
+
+    private static String simpleName(String className) {
+        return className.substring(className.lastIndexOf('.') + 1);
+    }
+
+    /**
+     * The metered DAO methods run their body in a lambda named lambda$method$N
+     */
+    private static String methodName(String name) {
+        if (name.startsWith("lambda$")) {
+            int end = name.indexOf('$', 7);
+            return end > 7 ? name.substring(7, end) : name;
+        }
+        return name;
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * One run of a statement, until its results are read
+     */
+    private static class Execution {
+        final String sql;
+        final Map<Integer, Object> params;
+        final int batches;
+        long nanos;
+        long rows;
+
+        Execution(String sql, Map<Integer, Object> params, int batches) {
+            this.sql = sql;
+            this.params = params;
+            this.batches = batches;
+        }
+    }
+
+    private class TimedStatement implements InvocationHandler {
+        final Connection raw;
+        final Statement statement;
+        final String preparedSql;
+        final Map<Integer, Object> params = new TreeMap<>();
+        int batches;
+        Execution running; // a query whose ResultSet is still open
+
+        TimedStatement(Connection raw, Statement statement, String preparedSql) {
+            this.raw = raw;
+            this.statement = statement;
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                return execute(method, args);
+            } else if (name.equals("close") || name.equals("clearParameters")) {
+                finish();
+                params.clear();
+            } else if (name.equals("addBatch")) {
+                batches++;
+            } else if (name.equals("clearBatch")) {
+                batches = 0;
+            } else if (name.startsWith("set") && args != null && args.length >= 2 &&
+                    args[0] instanceof Integer index) {
+                params.put(index, name.equals("setNull") ? null : args[1]);
+            }
+            return SlowQueryLog.invoke(statement, method, args);
+        }
+
+        private Object execute(Method method, Object[] args) throws Throwable {
+            finish();
+            String sql = args != null && args.length > 0 && args[0] instanceof String text ?
+                    text : preparedSql;
+            Execution execution = new Execution(sql, new TreeMap<>(params), batches);
+            batches = 0;
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = SlowQueryLog.invoke(statement, method, args);
+            } finally {
+                execution.nanos = System.nanoTime() - start;
+            }
+            if (result instanceof ResultSet rs) {
+                running = execution;
+                return Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                        new Class<?>[]{ResultSet.class}, new TimedResultSet(rs, this, execution));
+            }
+            if (result instanceof Number count) {
+                execution.rows = count.longValue();
+            } else if (result instanceof int[] counts) {
+                for (int count : counts) {
+                    execution.rows += Math.max(count, 0);
+                }
+            } else {
+                execution.rows = -1; // execute(), could be either
+            }
+            complete(execution);
+            return result;
+        }
+
+        void finish() {
+            if (running != null) {
+                Execution execution = running;
+                running = null;
+                complete(execution);
+            }
+        }
+
+        void complete(Execution execution) {
+            if (execution.nanos >= thresholdNanos) {
+                log(execution, raw);
+            }
+        }
+    }
+
+    /**
+     * Adds the time of every fetch to the query, closing it completes the query
+     */
+    private static class TimedResultSet implements InvocationHandler {
+        final ResultSet rs;
+        final TimedStatement statement;
+        final Execution execution;
+
+        TimedResultSet(ResultSet rs, TimedStatement statement, Execution execution) {
+            this.rs = rs;
+            this.statement = statement;
+            this.execution = execution;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "next" -> {
+                    long start = System.nanoTime();
+                    boolean hasRow = (Boolean) SlowQueryLog.invoke(rs, method, args);
+                    execution.nanos += System.nanoTime() - start;
+                    if (hasRow) {
+                        execution.rows++;
+                    }
+                    return hasRow;
+                }
+                case "close" -> {
+                    SlowQueryLog.invoke(rs, method, args);
+                    if (statement.running == execution) {
+                        statement.finish();
+                    }
+                    return null;
+                }
+                default -> {
+                    return SlowQueryLog.invoke(rs, method, args);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.davidbonelo.persistance;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The prepared statements of one pooled connection, keyed by SQL text and kept in LRU order.
+ * Closing a statement handed out by the cache only resets it (parameters, batch, open results)
+ * so the next prepare of the same SQL skips the parsing and planning.
+ * <p>
+ * A connection is used by one thread at a time, so this class isn't thread safe.
+ */
+class StatementCache {
+    private final int maxSize;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final Map<String, CachedStatement> statements;
+
+    StatementCache(int maxSize, AtomicLong hits, AtomicLong misses) {
+        this.maxSize = maxSize;
+        this.hits = hits;
+        this.misses = misses;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * @param autoGeneratedKeys {@link Statement#RETURN_GENERATED_KEYS} or
+     *                          {@link Statement#NO_GENERATED_KEYS}
+     * @param owner             the connection the statement reports from getConnection
+     */
+    PreparedStatement prepare(Connection raw, String sql, int autoGeneratedKeys, Connection owner)
+            throws SQLException {
+        String key = autoGeneratedKeys + ":" + sql;
+        CachedStatement cached = statements.get(key);
+        if (cached != null && !cached.inUse) {
+            hits.incrementAndGet();
+            return cached.lease(owner);
+        }
+        misses.incrementAndGet();
+        PreparedStatement statement = raw.prepareStatement(sql, autoGeneratedKeys);
+        if (cached != null) {
+            // Same SQL still open (e.g. nested loops), this one is used once and closed
+            return statement;
+        }
+        cached = new CachedStatement(key, statement);
+        statements.put(key, cached);
+        evictOverflow();
+        return cached.lease(owner);
+    }
+
+    /**
+     * Closes every statement, for when the connection is destroyed
+     */
+    void closeAll() {
+        for (CachedStatement cached : statements.values()) {
+            cached.evicted = true;
+            if (!cached.inUse) {
+                cached.closeQuietly();
+            }
+        }
+        statements.clear();
+    }
+
+    private void evictOverflow() {
+        Iterator<CachedStatement> eldest = statements.values().iterator();
+        while (statements.size() > maxSize && eldest.hasNext()) {
+            CachedStatement cached = eldest.next();
+            eldest.remove();
+            cached.evicted = true;
+            if (!cached.inUse) {
+                cached.closeQuietly();
+            } // in use ones are closed when given back
+        }
+    }
+
+    private class CachedStatement {
+        final String key;
+        final PreparedStatement raw;
+        boolean inUse;
+        boolean evicted;
+
+        CachedStatement(String key, PreparedStatement raw) {
+            this.key = key;
+            this.raw = raw;
+        }
+
+        PreparedStatement lease(Connection owner) {
+            inUse = true;
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, new Handle(this, owner));
+        }
+
+        void giveBack() {
+            inUse = false;
+            if (evicted) {
+                closeQuietly();
+                return;
+            }
+            try {
+                ResultSet rs = raw.getResultSet();
+                if (rs != null) {
+                    rs.close();
+                }
+                raw.clearParameters();
+                raw.clearBatch();
+                raw.clearWarnings();
+            } catch (SQLException e) {
+                // Can't be trusted for the next borrower
+                statements.remove(key);
+                closeQuietly();
+            }
+        }
+
+        void closeQuietly() {
+            try {
+                raw.close();
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+
+    /**
+     * What the DAOs hold, close gives the statement back to the cache
+     */
+    private static class Handle implements InvocationHandler {
+        final CachedStatement cached;
+        final Connection owner;
+        boolean closed;
+
+        Handle(CachedStatement cached, Connection owner) {
+            this.cached = cached;
+            this.owner = owner;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close" -> {
+                    if (!closed) {
+                        closed = true;
+                        cached.giveBack();
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    return closed || cached.raw.isClosed();
+                }
+                case "getConnection" -> {
+                    return owner;
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+                    return "Cached" + cached.raw;
+                }
+            }
+            if (closed) {
+                throw new SQLException("Statement is closed");
+            }
+            try {
+                return method.invoke(cached.raw, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.davidbonelo.persistance;
+
+import com.davidbonelo.models.User;
+
+/**
+ * A user and its stored password (a hash, see PasswordHasher), for checking logins
+ */
+public class StoredCredentials {
+    private final User user;
+    private final String password;
+
+    public StoredCredentials(User user, String password) {
+        this.user = user;
+        this.password = password;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+}
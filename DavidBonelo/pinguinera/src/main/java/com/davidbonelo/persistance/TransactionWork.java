@@ -0,0 +1,12 @@
+package com.davidbonelo.persistance;
+
+import java.sql.SQLException;
+
+/**
+ * A unit of work that runs inside {@link ConnectionPool#inTransaction(TransactionWork)}, every
+ * DAO call made by the current thread while it runs shares the same connection
+ */
+@FunctionalInterface
+public interface TransactionWork<T> {
+    T execute() throws SQLException;
+}
@@ -1,20 +1,26 @@
 package com.davidbonelo.persistance;
 
+import com.davidbonelo.metrics.Meter;
+import com.davidbonelo.metrics.Metrics;
 import com.davidbonelo.models.User;
 import com.davidbonelo.models.UserRole;
 
+import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 public class UserDAO {
-    private final Connection connection;
+    private static final Meter METER = Metrics.meter(UserDAO.class);
+    private final DataSource dataSource;
 
-    public UserDAO(Connection connection) {
-        this.connection = connection;
+    public UserDAO(DataSource dataSource) {
+        this.dataSource = dataSource;
     }
 
     public static User buildUserFromResult(ResultSet rs) throws SQLException {
@@ -22,105 +28,177 @@ public class UserDAO {
         return new User(rs.getInt("id"), rs.getString("name"), rs.getString("email"), role);
     }
 
-    public User validateUserCredentials(String userEmail, String password) throws SQLException {
-        String sql = "SELECT * FROM Users WHERE is_deleted = 0 AND email= ?";
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setString(1, userEmail);
-            try (ResultSet rs = statement.executeQuery()) {
-                if (rs.next() && rs.getString("password").equals(password)) {
-                    return buildUserFromResult(rs);
+    /**
+     * @return the user with that email and its stored password, null if there's none
+     */
+    public StoredCredentials getCredentials(String userEmail) throws SQLException {
+        return METER.call("getCredentials", () -> {
+            String sql = "SELECT * FROM Users WHERE is_deleted = 0 AND email= ?";
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setString(1, userEmail);
+                try (ResultSet rs = statement.executeQuery()) {
+                    if (rs.next()) {
+                        return new StoredCredentials(buildUserFromResult(rs),
+                                rs.getString("password"));
+                    }
                 }
             }
-        }
-        return null;
+            return null;
+        });
+    }
+
+    /**
+     * @param password already hashed
+     */
+    public void updatePassword(int userId, String password) throws SQLException {
+        METER.run("updatePassword", () -> {
+            String sql = "UPDATE Users SET password = ? WHERE id = ?";
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setString(1, password);
+                statement.setInt(2, userId);
+                statement.executeUpdate();
+            }
+        });
     }
 
     public User getUserById(int userId) throws SQLException {
-        String sql = "SELECT * FROM Users WHERE is_deleted = 0 AND id = ?";
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setInt(1, userId);
-            ResultSet rs = statement.executeQuery();
-            if (rs.next()) {
-                User user = buildUserFromResult(rs);
-                rs.close();
-                return user;
-            } else {
-                rs.close();
-                throw new SQLException("User with id " + userId + " Not found");
+        return METER.call("getUserById", () -> {
+            String sql = "SELECT * FROM Users WHERE is_deleted = 0 AND id = ?";
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setInt(1, userId);
+                ResultSet rs = statement.executeQuery();
+                if (rs.next()) {
+                    User user = buildUserFromResult(rs);
+                    rs.close();
+                    return user;
+                } else {
+                    rs.close();
+                    throw new SQLException("User with id " + userId + " Not found",
+                            Cursors.NOT_FOUND);
+                }
             }
-        }
+        });
     }
 
     public List<User> getAllUsers() throws SQLException {
-        // Avoid selecting passwords
-        String sql = "SELECT id, name, email, role FROM Users WHERE is_deleted = 0";
-        ArrayList<User> users = new ArrayList<>();
-        try (PreparedStatement statement = connection.prepareStatement(sql); ResultSet rs =
-                statement.executeQuery()) {
-
-            while (rs.next()) {
-                users.add(buildUserFromResult(rs));
+        return METER.call("getAllUsers", () -> {
+            // Avoid selecting passwords
+            String sql = "SELECT id, name, email, role FROM Users WHERE is_deleted = 0";
+            ArrayList<User> users = new ArrayList<>();
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql); ResultSet rs =
+                    statement.executeQuery()) {
+
+                while (rs.next()) {
+                    users.add(buildUserFromResult(rs));
+                }
+                return users;
             }
-            return users;
-        }
+        });
+    }
+
+    /**
+     * Keyset pagination, the next page starts after the id of the last user of this one
+     */
+    public List<User> getUsersPage(int afterId, int pageSize) throws SQLException {
+        return METER.call("getUsersPage", () -> {
+            String sql = "SELECT id, name, email, role FROM Users WHERE is_deleted = 0 AND " +
+                    "id > ? ORDER BY id LIMIT ?";
+            return Cursors.page(dataSource, sql, afterId, pageSize, UserDAO::buildUserFromResult);
+        });
+    }
+
+    public void streamAllUsers(Consumer<? super User> consumer) throws SQLException {
+        METER.run("streamAllUsers", () -> {
+            String sql = "SELECT id, name, email, role FROM Users WHERE is_deleted = 0 ORDER BY id";
+            Cursors.stream(dataSource, sql, UserDAO::buildUserFromResult, consumer);
+        });
     }
 
+    /**
+     * @param password already hashed
+     */
     public void createUser(User user, String password) throws SQLException {
-        String sql = "INSERT INTO Users (name, email, password, role) VALUES (?, ?, ?, ?)";
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setString(1, user.getName());
-            statement.setString(2, user.getEmail());
-            statement.setString(3, password);
-            statement.setString(4, user.getRole().getValue());
-
-            int rowsInserted = statement.executeUpdate();
-            if (rowsInserted == 0) {
-                throw new SQLException("Creating user failed, no rows affected");
+        METER.run("createUser", () -> {
+            String sql = "INSERT INTO Users (name, email, password, role) VALUES (?, ?, ?, ?)";
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql,
+                         Statement.RETURN_GENERATED_KEYS)) {
+                statement.setString(1, user.getName());
+                statement.setString(2, user.getEmail());
+                statement.setString(3, password);
+                statement.setString(4, user.getRole().getValue());
+
+                int rowsInserted = statement.executeUpdate();
+                if (rowsInserted == 0) {
+                    throw new SQLException("Creating user failed, no rows affected");
+                }
+                try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
+                    if (generatedKeys.next()) {
+                        user.setId(generatedKeys.getInt(1));
+                    }
+                }
             }
-        }
+        });
     }
 
     public void updateUser(User user) throws SQLException {
-        if (missingId(user)) {
-            throw new IllegalArgumentException("Cant update a User without an id");
-        }
-        String sql = "UPDATE Users SET name= ?, email= ?, role= ? WHERE is_deleted = 0 AND id = ?";
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setString(1, user.getName());
-            statement.setString(2, user.getEmail());
-            statement.setString(3, user.getRole().getValue());
-            statement.setInt(4, user.getId()); // WHERE
-
-            int updatedRows = statement.executeUpdate();
-            if (updatedRows == 0) {
-                throw new SQLException("Couldn't update user with id: " + user.getId());
+        METER.run("updateUser", () -> {
+            if (missingId(user)) {
+                throw new IllegalArgumentException("Cant update a User without an id");
+            }
+            String sql = "UPDATE Users SET name= ?, email= ?, role= ? WHERE is_deleted = 0 AND " +
+                    "id = ?";
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setString(1, user.getName());
+                statement.setString(2, user.getEmail());
+                statement.setString(3, user.getRole().getValue());
+                statement.setInt(4, user.getId()); // WHERE
+
+                int updatedRows = statement.executeUpdate();
+                if (updatedRows == 0) {
+                    throw new SQLException("Couldn't update user with id: " + user.getId(),
+                            Cursors.NOT_FOUND);
+                }
             }
-        }
+        });
     }
 
     public void deleteUser(User user) throws SQLException {
-        if (missingId(user)) {
-            throw new IllegalArgumentException("Cant delete a User without an id");
-        }
-        String sql = "DELETE FROM Users WHERE id = ?";
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setInt(1, user.getId());
-            int deletedRows = statement.executeUpdate();
-            if (deletedRows == 0) {
-                throw new SQLException("User with id " + user.getId() + " not found, can't delete");
+        METER.run("deleteUser", () -> {
+            if (missingId(user)) {
+                throw new IllegalArgumentException("Cant delete a User without an id");
+            }
+            String sql = "DELETE FROM Users WHERE id = ?";
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setInt(1, user.getId());
+                int deletedRows = statement.executeUpdate();
+                if (deletedRows == 0) {
+                    throw new SQLException("User with id " + user.getId() + " not found, " +
+                            "can't delete", Cursors.NOT_FOUND);
+                }
             }
-        }
+        });
     }
 
     public void softDeleteUser(int userId) throws SQLException {
-        String sql = "UPDATE Users SET is_deleted=1 WHERE id = ?";
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setInt(1, userId);
-            int deletedRows = statement.executeUpdate();
-            if (deletedRows == 0) {
-                throw new SQLException("User with id " + userId + " not found, can't delete");
+        METER.run("softDeleteUser", () -> {
+            String sql = "UPDATE Users SET is_deleted=1 WHERE id = ?";
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setInt(1, userId);
+                int deletedRows = statement.executeUpdate();
+                if (deletedRows == 0) {
+                    throw new SQLException("User with id " + userId + " not found, can't delete",
+                            Cursors.NOT_FOUND);
+                }
             }
-        }
+        });
     }
 
     private boolean missingId(User user) {
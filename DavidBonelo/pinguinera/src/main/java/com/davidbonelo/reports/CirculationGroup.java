@@ -0,0 +1,9 @@
+package com.davidbonelo.reports;
+
+/**
+ * What the borrowed items are grouped by: authors of books and novels, genres of novels and
+ * fields of books
+ */
+public enum CirculationGroup {
+    AUTHOR, GENRE, FIELD
+}
@@ -0,0 +1,47 @@
+package com.davidbonelo.reports;
+
+import com.davidbonelo.metrics.Meter;
+import com.davidbonelo.metrics.Metrics;
+import com.davidbonelo.persistance.CirculationDAO;
+import com.davidbonelo.persistance.ConnectionPool;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Circulation statistics for management: most borrowed titles, items borrowed per author, genre
+ * and field, and the average loan length. Everything is read from the rollup tables that
+ * BorrowingsService keeps up to date, so the cost doesn't grow with the borrowings history.
+ */
+public class CirculationReport {
+    private static final Meter METER = Metrics.meter(CirculationReport.class);
+    private final CirculationDAO circulationDAO;
+    private final ConnectionPool pool;
+
+    public CirculationReport(CirculationDAO circulationDAO, ConnectionPool pool) {
+        this.circulationDAO = circulationDAO;
+        this.pool = pool;
+    }
+
+    public List<TitleCount> getTopTitles(int limit) throws SQLException {
+        return METER.call("getTopTitles", () -> circulationDAO.getTopTitles(limit));
+    }
+
+    public List<GroupCount> getTopGroups(CirculationGroup group, int limit) throws SQLException {
+        return METER.call("getTopGroups", () -> circulationDAO.getTopGroups(group, limit));
+    }
+
+    public double getAverageLoanDays() throws SQLException {
+        return METER.call("getAverageLoanDays", circulationDAO::getAverageLoanDays);
+    }
+
+    /**
+     * Recomputes the rollups from the whole history, in one transaction
+     */
+    public void rebuild() throws SQLException {
+        METER.run("rebuild", () -> pool.inTransaction(() -> {
+            circulationDAO.rebuildRollups();
+            return null;
+        }));
+    }
+}
@@ -0,0 +1,27 @@
+package com.davidbonelo.reports;
+
+/**
+ * Items borrowed of one author, genre or field
+ */
+public class GroupCount {
+    private final String name;
+    private final long borrowings;
+
+    public GroupCount(String name, long borrowings) {
+        this.name = name;
+        this.borrowings = borrowings;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getBorrowings() {
+        return borrowings;
+    }
+
+    @Override
+    public String toString() {
+        return borrowings + "\t" + name;
+    }
+}
@@ -0,0 +1,49 @@
+package com.davidbonelo.reports;
+
+/**
+ * How many times a book or novel was borrowed
+ */
+public class TitleCount {
+    private final String itemType;
+    private final int itemId;
+    private final String title;
+    private final String author;
+    private final long borrowings;
+
+    public TitleCount(String itemType, int itemId, String title, String author,
+                      long borrowings) {
+        this.itemType = itemType;
+        this.itemId = itemId;
+        this.title = title;
+        this.author = author;
+        this.borrowings = borrowings;
+    }
+
+    /**
+     * @return BOOK or NOVEL
+     */
+    public String getItemType() {
+        return itemType;
+    }
+
+    public int getItemId() {
+        return itemId;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public long getBorrowings() {
+        return borrowings;
+    }
+
+    @Override
+    public String toString() {
+        return borrowings + "\t" + title + " (" + author + ")";
+    }
+}
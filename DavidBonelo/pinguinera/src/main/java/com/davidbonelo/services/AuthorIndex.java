@@ -0,0 +1,117 @@
+package com.davidbonelo.services;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.BiConsumer;
+
+/**
+ * Maps authors (case-insensitive) to the ids of their items and keeps the authors sorted for
+ * prefix lookups. It's loaded once on first use and then updated item by item, so it never
+ * needs to scan the catalog again.
+ */
+public class AuthorIndex {
+    private final Loader loader;
+    private boolean loaded;
+    private final Map<String, Set<Integer>> idsByAuthor = new HashMap<>();
+    private final Map<Integer, String> authorById = new HashMap<>();
+    // folded author -> author as it was first written
+    private final NavigableMap<String, String> authors = new TreeMap<>();
+
+    public AuthorIndex(Loader loader) {
+        this.loader = loader;
+    }
+
+    static String fold(String author) {
+        return author.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Adds or moves an item to the given author. Ignored until the index is loaded, the load
+     * will find the item in the database.
+     */
+    public synchronized void put(int itemId, String author) {
+        if (loaded) {
+            add(itemId, author);
+        }
+    }
+
+    private void add(int itemId, String author) {
+        remove(itemId);
+        String key = fold(author);
+        idsByAuthor.computeIfAbsent(key, k -> new TreeSet<>()).add(itemId);
+        authorById.put(itemId, key);
+        authors.putIfAbsent(key, author.trim());
+    }
+
+    public synchronized void remove(int itemId) {
+        String key = authorById.remove(itemId);
+        if (key == null) {
+            return;
+        }
+        Set<Integer> ids = idsByAuthor.get(key);
+        ids.remove(itemId);
+        if (ids.isEmpty()) {
+            idsByAuthor.remove(key);
+            authors.remove(key);
+        }
+    }
+
+    /**
+     * Drops everything, the index is loaded again on next use
+     */
+    public synchronized void clear() {
+        idsByAuthor.clear();
+        authorById.clear();
+        authors.clear();
+        loaded = false;
+    }
+
+    private void ensureLoaded() throws SQLException {
+        if (!loaded) {
+            try {
+                loader.load(this::add);
+            } catch (SQLException | RuntimeException e) {
+                clear(); // don't keep half an index
+                throw e;
+            }
+            loaded = true;
+        }
+    }
+
+    /**
+     * @return the ids of the items of the author, in ascending order
+     */
+    public synchronized List<Integer> idsOf(String author) throws SQLException {
+        ensureLoaded();
+        Set<Integer> ids = idsByAuthor.get(fold(author));
+        return ids == null ? List.of() : new ArrayList<>(ids);
+    }
+
+    public synchronized List<String> getAuthors() throws SQLException {
+        ensureLoaded();
+        return new ArrayList<>(authors.values());
+    }
+
+    public synchronized List<String> getAuthorsStartingWith(String prefix) throws SQLException {
+        ensureLoaded();
+        String from = fold(prefix);
+        return new ArrayList<>(authors.subMap(from, true, from + Character.MAX_VALUE, false)
+                .values());
+    }
+
+    /**
+     * Feeds every (item id, author) pair of the catalog to the sink
+     */
+    @FunctionalInterface
+    public interface Loader {
+        void load(BiConsumer<Integer, String> sink) throws SQLException;
+    }
+}
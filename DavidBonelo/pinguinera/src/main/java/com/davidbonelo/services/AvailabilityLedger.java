@@ -0,0 +1,237 @@
+package com.davidbonelo.services;
+
+import com.davidbonelo.models.Book;
+import com.davidbonelo.models.LibraryItem;
+import com.davidbonelo.models.Novel;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Copies and borrowed copies of every book and novel, kept in memory so availability can be
+ * checked and reserved without asking the database. The database is still written (and its
+ * conditional update has the last word), this is updated right after it.
+ * <p>
+ * Every item is one AtomicLong with the copies in the high 32 bits and the borrowed copies in
+ * the low 32 bits, so a reserve or release is a compare and set of one word and never blocks.
+ * Items that aren't loaded yet are read from the database the first time they're needed.
+ */
+public class AvailabilityLedger {
+    private static final long LOW_BITS = 0xFFFF_FFFFL;
+
+    private final Map<Integer, AtomicLong> books = new ConcurrentHashMap<>();
+    private final Map<Integer, AtomicLong> novels = new ConcurrentHashMap<>();
+    private final CatalogCache.ItemLoader<Book> bookLoader;
+    private final CatalogCache.ItemLoader<Novel> novelLoader;
+    private final SearchIndex.Loader catalogLoader;
+
+    public AvailabilityLedger(CatalogCache.ItemLoader<Book> bookLoader,
+                              CatalogCache.ItemLoader<Novel> novelLoader,
+                              SearchIndex.Loader catalogLoader) {
+        this.bookLoader = bookLoader;
+        this.novelLoader = novelLoader;
+        this.catalogLoader = catalogLoader;
+    }
+
+    /**
+     * Reads every item, call it at startup. Items already in the ledger keep their counts, they
+     * can have reservations newer than the rows read.
+     */
+    public void load() throws SQLException {
+        catalogLoader.load(item -> counters(item).putIfAbsent(item.getId(),
+                new AtomicLong(pack(item.getCopies(), item.getCopiesBorrowed()))));
+    }
+
+    /**
+     * Takes a copy of every item, or of none
+     *
+     * @return the items without a free copy (or that don't exist), nothing was reserved if it
+     * isn't empty
+     */
+    public List<LibraryItem> reserve(List<? extends LibraryItem> items) throws SQLException {
+        List<LibraryItem> unavailable = new ArrayList<>();
+        List<AtomicLong> reserved = new ArrayList<>(items.size());
+        for (LibraryItem item : items) {
+            AtomicLong counter = counter(item);
+            if (counter != null && tryReserve(counter)) {
+                reserved.add(counter);
+            } else {
+                unavailable.add(item);
+            }
+        }
+        if (!unavailable.isEmpty()) {
+            reserved.forEach(AvailabilityLedger::release);
+        }
+        return unavailable;
+    }
+
+    /**
+     * Gives back a copy of every item
+     */
+    public void release(List<? extends LibraryItem> items) {
+        for (LibraryItem item : items) {
+            release(counters(item).get(item.getId()));
+        }
+    }
+
+    public void releaseBook(int bookId) {
+        release(books.get(bookId));
+    }
+
+    public void releaseNovel(int novelId) {
+        release(novels.get(novelId));
+    }
+
+    /**
+     * Reads the items again from the database, after it disagreed with the ledger
+     */
+    public void reload(List<? extends LibraryItem> items) throws SQLException {
+        for (LibraryItem item : items) {
+            LibraryItem current = item instanceof Book ? bookLoader.load(item.getId()) :
+                    novelLoader.load(item.getId());
+            if (current == null) {
+                remove(item);
+            } else {
+                put(current);
+            }
+        }
+    }
+
+    /**
+     * Sets the counts of an item that was created or updated in the database
+     */
+    public void put(LibraryItem item) {
+        counters(item).put(item.getId(), new AtomicLong(pack(item.getCopies(),
+                item.getCopiesBorrowed())));
+    }
+
+    public void remove(LibraryItem item) {
+        counters(item).remove(item.getId());
+    }
+
+    public void removeBook(int bookId) {
+        books.remove(bookId);
+    }
+
+    public void removeNovel(int novelId) {
+        novels.remove(novelId);
+    }
+
+    /**
+     * Forgets every item, for changes made in bulk. They are read again when needed.
+     */
+    public void clear() {
+        books.clear();
+        novels.clear();
+    }
+
+    /**
+     * @return the item with the borrowed copies of the ledger, a copy of it if they differ (the
+     * item may be shared). The item itself if it isn't loaded.
+     */
+    public <T extends LibraryItem> T live(T item) {
+        AtomicLong counter = counters(item).get(item.getId());
+        if (counter == null) {
+            return item;
+        }
+        int borrowed = borrowed(counter.get());
+        if (borrowed == item.getCopiesBorrowed()) {
+            return item;
+        }
+        @SuppressWarnings("unchecked")
+        T copy = (T) withCopiesBorrowed(item, borrowed);
+        return copy;
+    }
+
+    public <T extends LibraryItem> List<T> live(List<T> items) {
+        if (items == null) {
+            return null;
+        }
+        List<T> live = new ArrayList<>(items.size());
+        items.forEach(item -> live.add(live(item)));
+        return live;
+    }
+
+    /**
+     * @return the free copies of the item, -1 if it isn't loaded
+     */
+    public int getAvailableCopies(LibraryItem item) {
+        AtomicLong counter = counters(item).get(item.getId());
+        if (counter == null) {
+            return -1;
+        }
+        long value = counter.get();
+        return copies(value) - borrowed(value);
+    }
+
+    private Map<Integer, AtomicLong> counters(LibraryItem item) {
+        return item instanceof Book ? books : novels;
+    }
+
+    /**
+     * @return the counter of the item, read from the database if it isn't loaded. Null if the
+     * item doesn't exist.
+     */
+    private AtomicLong counter(LibraryItem item) throws SQLException {
+        Map<Integer, AtomicLong> counters = counters(item);
+        AtomicLong counter = counters.get(item.getId());
+        if (counter != null) {
+            return counter;
+        }
+        LibraryItem current = item instanceof Book ? bookLoader.load(item.getId()) :
+                novelLoader.load(item.getId());
+        if (current == null) {
+            return null;
+        }
+        // Another thread may have loaded it meanwhile, with reservations of its own
+        return counters.computeIfAbsent(item.getId(), id ->
+                new AtomicLong(pack(current.getCopies(), current.getCopiesBorrowed())));
+    }
+
+    private static boolean tryReserve(AtomicLong counter) {
+        while (true) {
+            long value = counter.get();
+            int copies = copies(value);
+            int borrowed = borrowed(value);
+            if (borrowed >= copies) {
+                return false;
+            }
+            if (counter.compareAndSet(value, pack(copies, borrowed + 1))) {
+                return true;
+            }
+        }
+    }
+
+    private static void release(AtomicLong counter) {
+        if (counter == null) {
+            return; // not loaded, it will be read with the copy given back
+        }
+        counter.updateAndGet(value -> pack(copies(value), Math.max(0, borrowed(value) - 1)));
+    }
+
+    private static long pack(int copies, int borrowed) {
+        return ((long) copies << 32) | (borrowed & LOW_BITS);
+    }
+
+    private static int copies(long value) {
+        return (int) (value >>> 32);
+    }
+
+    private static int borrowed(long value) {
+        return (int) value;
+    }
+
+    private static LibraryItem withCopiesBorrowed(LibraryItem item, int borrowed) {
+        if (item instanceof Book book) {
+            return new Book(book.getId(), book.getTitle(), book.getAuthor(), book.getCopies(),
+                    borrowed, book.getField(), book.getPages());
+        }
+        Novel novel = (Novel) item;
+        return new Novel(novel.getId(), novel.getTitle(), novel.getAuthor(), novel.getCopies(),
+                borrowed, novel.getGenre(), novel.getRecommendedAge());
+    }
+}
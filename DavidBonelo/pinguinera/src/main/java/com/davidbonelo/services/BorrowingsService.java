@@ -1,164 +1,494 @@
 package com.davidbonelo.services;
 
+import com.davidbonelo.audit.AuditAction;
+import com.davidbonelo.audit.AuditEvent;
+import com.davidbonelo.audit.AuditLog;
+import com.davidbonelo.metrics.Meter;
+import com.davidbonelo.metrics.Metrics;
 import com.davidbonelo.models.Book;
 import com.davidbonelo.models.Borrowing;
+import com.davidbonelo.models.BorrowingStatus;
+import com.davidbonelo.models.Hold;
 import com.davidbonelo.models.LibraryItem;
 import com.davidbonelo.models.Novel;
 import com.davidbonelo.models.User;
 import com.davidbonelo.models.UserRole;
 import com.davidbonelo.persistance.BookDAO;
 import com.davidbonelo.persistance.BorrowingDAO;
+import com.davidbonelo.persistance.BorrowingFilter;
+import com.davidbonelo.persistance.CirculationDAO;
+import com.davidbonelo.persistance.ConnectionPool;
 import com.davidbonelo.persistance.NovelDAO;
 
-import java.sql.Connection;
 import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static com.davidbonelo.Utils.validPermission;
 
 public class BorrowingsService {
+    private static final Meter METER = Metrics.meter(BorrowingsService.class);
+    // SQL state of a missing row, answered with a 404 by the API
+    private static final String NOT_FOUND = "02000";
     private final BookDAO bookDAO;
     private final NovelDAO novelDAO;
     private final BorrowingDAO borrowingDAO;
-    private final Set<LibraryItem> itemsToBorrow;
-    private final Connection connection;
+    private final CirculationDAO circulationDAO;
+    private final ConnectionPool pool;
+    private final LibraryManager libraryManager;
+    private final AuditLog auditLog;
+    private final OverdueScanner overdueScanner;
+    private final HoldsService holdsService;
 
     public BorrowingsService(BookDAO bookDAO, NovelDAO novelDAO, BorrowingDAO borrowingDAO,
-                             Connection connection) {
+                             CirculationDAO circulationDAO, ConnectionPool pool,
+                             LibraryManager libraryManager, AuditLog auditLog,
+                             OverdueScanner overdueScanner, HoldsService holdsService) {
         this.bookDAO = bookDAO;
         this.novelDAO = novelDAO;
         this.borrowingDAO = borrowingDAO;
-        this.connection = connection;
-        this.itemsToBorrow = new HashSet<>();
+        this.circulationDAO = circulationDAO;
+        this.pool = pool;
+        this.libraryManager = libraryManager;
+        this.auditLog = auditLog;
+        this.overdueScanner = overdueScanner;
+        this.holdsService = holdsService;
     }
 
-    public Set<LibraryItem> getItemsToBorrow() {
-        return this.itemsToBorrow;
+    public List<LibraryItem> getItemsToBorrow(Session session) {
+        return session.getCart();
     }
 
     public List<Borrowing> getBorrowingsByEmail(User employee, String email) {
-        return getAllBorrowings(employee).stream().filter(b -> b.getBorrower().getEmail().equals(email)).toList();
+        return METER.call("getBorrowingsByEmail", () -> {
+            return findBorrowings(employee, new BorrowingFilter().setBorrowerEmail(email));
+        });
     }
 
     public Borrowing getBorrowingDetails(User user, int borrowingId) throws SQLException {
-        Borrowing borrowing = borrowingDAO.getBorrowingWithItems(borrowingId);
-        if (validPermission(user, UserRole.EMPLOYEE)) {
-            return borrowing;
-        } else if (user.getId() == borrowing.getBorrower().getId()) { // Is the owner
-            return borrowing;
-        }
-        return null;
+        return METER.call("getBorrowingDetails", () -> {
+            Borrowing borrowing = borrowingDAO.getBorrowingWithItems(borrowingId);
+            if (validPermission(user, UserRole.EMPLOYEE)) {
+                return borrowing;
+            } else if (user.getId() == borrowing.getBorrower().getId()) { // Is the owner
+                return borrowing;
+            }
+            return null;
+        });
     }
 
-    public void addBorrowingBook(int itemId) throws SQLException {
-        Book book = bookDAO.getBookById(itemId);
-        if (book == null) {
-            throw new SQLException("Book with id " + itemId + " not found");
-        }
-        this.itemsToBorrow.add(book);
-        itemsToBorrow.forEach(System.out::println);
+    public void addBorrowingBook(Session session, int itemId) throws SQLException {
+        METER.run("addBorrowingBook", () -> {
+            Book book = bookDAO.getBookById(itemId);
+            if (book == null) {
+                throw new SQLException("Book with id " + itemId + " not found");
+            }
+            session.addToCart(book);
+        });
     }
 
-    public void addBorrowingNovel(int itemId) throws SQLException {
-        Novel novel = novelDAO.getNovelById(itemId);
-        if (novel == null) {
-            throw new SQLException("Novel with id " + itemId + " not found");
-        }
-        this.itemsToBorrow.add(novel);
-        itemsToBorrow.forEach(System.out::println);
+    public void addBorrowingNovel(Session session, int itemId) throws SQLException {
+        METER.run("addBorrowingNovel", () -> {
+            Novel novel = novelDAO.getNovelById(itemId);
+            if (novel == null) {
+                throw new SQLException("Novel with id " + itemId + " not found");
+            }
+            session.addToCart(novel);
+        });
     }
 
     public List<Borrowing> getAllBorrowings(User user) {
-        try {
-            List<Borrowing> borrowings = borrowingDAO.getAllBorrowings();
-            // Show all borrowings only if authorized
+        return METER.call("getAllBorrowings", () -> findBorrowings(user, new BorrowingFilter()));
+    }
+
+    /**
+     * The overdue borrowings found by the last scan, from memory. Users that aren't employees
+     * only get their own.
+     */
+    public List<Borrowing> getOverdueBorrowings(User user) {
+        return METER.call("getOverdueBorrowings", () -> {
+            List<Borrowing> overdue = overdueScanner.getOverdue();
             if (validPermission(user, UserRole.EMPLOYEE)) {
-                return borrowings;
-            } else {
-                // Filter if user isn't owner
-                return borrowings.stream().filter(b -> b.getId() == user.getId()).toList();
+                return overdue;
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return null;
+            return overdue.stream().filter(b -> b.getBorrower().getId() == user.getId())
+                    .toList();
+        });
     }
 
-    public void createBorrowing(Borrowing borrowing) throws SQLException {
-        try {
-            connection.setAutoCommit(false); // start transaction
-            verifyItemsAvailability(itemsToBorrow);
-            borrowing.setBorrowedItems(itemsToBorrow.stream().toList());
+    /**
+     * Runs the filter in the database, users that aren't employees only get their own borrowings
+     */
+    public List<Borrowing> findBorrowings(User user, BorrowingFilter filter) {
+        return METER.call("findBorrowings", () -> {
+            // Show all borrowings only if authorized
+            if (!validPermission(user, UserRole.EMPLOYEE)) {
+                filter.setUserId(user.getId());
+            }
+            try {
+                return borrowingDAO.findBorrowings(filter);
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            return null;
+        });
+    }
 
-            borrowingDAO.createBorrowing(borrowing);
-            updateItemsBorrowedCopies(borrowing.getBorrowedItems(), 1);
+    /**
+     * Creates the borrowing of the items in the session cart, which are taken out of it
+     */
+    public void createBorrowing(Session session, Borrowing borrowing) throws SQLException {
+        METER.run("createBorrowingFromCart", () -> {
+            List<LibraryItem> items = session.getCart();
+            createBorrowing(borrowing, items);
+            session.removeFromCart(items);
+        });
+    }
 
-            connection.commit(); // commit transaction
-            itemsToBorrow.clear(); // Clean this class set
+    /**
+     * Creates the borrowing of the given items, taking a copy of each one. The copies are taken
+     * from the availability ledger first, a cart with unavailable items is only rejected after
+     * reading those items again. Items the borrower has a READY hold on use the copy set aside.
+     *
+     * @throws IllegalArgumentException if an item is unavailable or more than once in the list
+     */
+    public void createBorrowing(Borrowing borrowing, List<LibraryItem> items) throws SQLException {
+        METER.run("createBorrowing", () -> {
+            if (items.isEmpty()) {
+                throw new IllegalArgumentException("A borrowing needs at least one item");
+            }
+            Set<String> distinct = new HashSet<>();
+            for (LibraryItem item : items) {
+                if (!distinct.add(item.getClass().getSimpleName() + ":" + item.getId())) {
+                    throw new IllegalArgumentException(item.getTitle() + " is more than once " +
+                            "in the borrowing, it takes one copy of each item");
+                }
+            }
+            AvailabilityLedger availability = libraryManager.getAvailability();
+            List<Hold> holds = holdsService.takeReady(borrowing.getBorrower(), items);
+            List<LibraryItem> toReserve = withoutHeld(items, holds);
+            List<LibraryItem> unavailable = availability.reserve(toReserve);
+            if (!unavailable.isEmpty()) {
+                // Copies given back by another process or an edit of the item aren't in the
+                // ledger, the database decides
+                availability.reload(unavailable);
+                unavailable = availability.reserve(toReserve);
+            }
+            if (!unavailable.isEmpty()) {
+                holdsService.restore(holds);
+                throw new IllegalArgumentException("No copies available of: " +
+                        titlesOf(unavailable) + ", place a hold to get the next one returned");
+            }
+            try {
+                pool.inTransaction(() -> {
+                    borrowing.setBorrowedItems(items);
+                    holdsService.fulfill(holds);
+                    reserveCopies(toReserve);
+                    borrowingDAO.createBorrowing(borrowing);
+                    circulationDAO.addBorrowing(items);
+                    return null;
+                });
+            } catch (SQLException | RuntimeException e) {
+                availability.release(toReserve);
+                holdsService.restore(holds);
+                if (e instanceof IllegalArgumentException) {
+                    availability.reload(toReserve); // the database had fewer copies
+                }
+                throw e;
+            }
+            // New objects with the copies taken, the given items may be shared with the caches
+            borrowing.setBorrowedItems(availability.live(items));
+            auditLog.publish(new AuditEvent(AuditAction.REQUESTED, borrowing.getId(),
+                    borrowing.getBorrower().getId()));
+        });
+    }
 
-        } catch (SQLException e) {
-            connection.rollback();
-            throw e;
-        } finally {
-            connection.setAutoCommit(true);
+    /**
+     * Takes a copy of every item in the database, the availability is checked again on the
+     * current rows in case something changed them behind the ledger's back
+     *
+     * @throws IllegalArgumentException naming the items without copies, the transaction rolls
+     *                                  back so none is reserved
+     */
+    private void reserveCopies(List<LibraryItem> items) throws SQLException {
+        Map<Integer, Boolean> books = bookDAO.reserveCopies(idsOf(items, Book.class));
+        Map<Integer, Boolean> novels = novelDAO.reserveCopies(idsOf(items, Novel.class));
+        List<LibraryItem> unavailable = new ArrayList<>();
+        for (LibraryItem item : items) {
+            Map<Integer, Boolean> reserved = item instanceof Book ? books : novels;
+            if (!reserved.get(item.getId())) {
+                unavailable.add(item);
+            }
+        }
+        if (!unavailable.isEmpty()) {
+            throw new IllegalArgumentException("No copies available of: " +
+                    titlesOf(unavailable));
         }
     }
 
-    private void verifyItemsAvailability(Set<LibraryItem> borrowingItems) {
-        for (LibraryItem item : borrowingItems) {
-            if (item.getAvailableCopies() < 1) {
-                throw new IllegalArgumentException("Item: " + item.getTitle() + " has no " +
-                        "copies available");
+    /**
+     * @return the items but one for every hold on it
+     */
+    private static List<LibraryItem> withoutHeld(List<LibraryItem> items, List<Hold> holds) {
+        List<Hold> unused = new ArrayList<>(holds);
+        List<LibraryItem> rest = new ArrayList<>(items.size());
+        for (LibraryItem item : items) {
+            Hold hold = unused.stream().filter(h -> h.isFor(item)).findFirst().orElse(null);
+            if (hold == null) {
+                rest.add(item);
+            } else {
+                unused.remove(hold);
             }
         }
+        return rest;
+    }
+
+    private static List<String> titlesOf(List<LibraryItem> items) {
+        return items.stream().map(LibraryItem::getTitle).toList();
     }
 
     /**
-     * @param factor the amount of copies to sum (or rest if negative)
+     * Gives back a copy of every item with one update per distinct item, an item returned by
+     * several borrowings is updated once with all its copies
      */
-    private void updateItemsBorrowedCopies(List<LibraryItem> items, int factor) throws SQLException {
-        for (LibraryItem li : items) {
-            li.setCopiesBorrowed(li.getCopiesBorrowed() + factor);
-            if (li instanceof Book) {
-                bookDAO.updateBook((Book) li);
-            } else if (li instanceof Novel) {
-                novelDAO.updateNovel((Novel) li);
+    private void releaseCopies(List<LibraryItem> items) throws SQLException {
+        bookDAO.releaseCopies(countsOf(items, Book.class));
+        novelDAO.releaseCopies(countsOf(items, Novel.class));
+        for (LibraryItem item : items) {
+            item.setCopiesBorrowed(Math.max(0, item.getCopiesBorrowed() - 1));
+        }
+    }
+
+    private static List<Integer> idsOf(List<LibraryItem> items, Class<? extends LibraryItem> type) {
+        return items.stream().filter(type::isInstance).map(LibraryItem::getId).toList();
+    }
+
+    private static Map<Integer, Integer> countsOf(List<LibraryItem> items,
+                                                  Class<? extends LibraryItem> type) {
+        Map<Integer, Integer> counts = new HashMap<>();
+        for (LibraryItem item : items) {
+            if (type.isInstance(item)) {
+                counts.merge(item.getId(), 1, Integer::sum);
             }
         }
+        return counts;
     }
 
+    /**
+     * Confirms a REQUESTED borrowing, with the conditional update of
+     * {@link #confirmBorrowings(User, List)}
+     *
+     * @throws SQLException             if it doesn't exist or isn't the user's
+     * @throws IllegalArgumentException if it isn't REQUESTED, e.g. it was confirmed already
+     */
     public void confirmBorrowing(User user, int borrowingId) throws SQLException {
-        Borrowing borrowing = getBorrowingDetails(user, borrowingId);
-        borrowing.setStatusBorrowed();
-        borrowingDAO.updateBorrowingStatus(borrowing);
+        METER.run("confirmBorrowing", () -> requireUpdated(borrowingId,
+                confirmBorrowings(user, List.of(borrowingId)), "REQUESTED"));
+    }
+
+    /**
+     * Confirms all the REQUESTED borrowings among the ids in one transaction, with a single
+     * batched update
+     *
+     * @return the result of every id, in the given order. Users that aren't employees get
+     * NOT_FOUND for the borrowings of others.
+     */
+    public Map<Integer, TransitionResult> confirmBorrowings(User user, List<Integer> borrowingIds)
+            throws SQLException {
+        return METER.call("confirmBorrowings", () -> {
+            Map<Integer, TransitionResult> results = new LinkedHashMap<>();
+            List<Borrowing> confirmed = pool.inTransaction(() -> {
+                List<Borrowing> borrowings = toTransition(user, borrowingIds, results,
+                        EnumSet.of(BorrowingStatus.REQUESTED));
+                return transition(borrowings, BorrowingStatus.BORROWED, results);
+            });
+            for (Borrowing borrowing : confirmed) {
+                borrowing.setStatusBorrowed();
+                overdueScanner.borrowingConfirmed(borrowing);
+                auditLog.publish(new AuditEvent(AuditAction.CONFIRMED, borrowing.getId(),
+                        user.getId()));
+            }
+            return results;
+        });
+    }
+
+    /**
+     * Finalizes all the open borrowings among the ids in one transaction: one batched status
+     * update, the returned copies handed over to the holds or given back with one update per
+     * item, and the loans counted at once
+     *
+     * @return the result of every id, in the given order. Users that aren't employees get
+     * NOT_FOUND for the borrowings of others.
+     */
+    public Map<Integer, TransitionResult> finalizeBorrowings(User user, List<Integer> borrowingIds)
+            throws SQLException {
+        return METER.call("finalizeBorrowings", () -> {
+            Map<Integer, TransitionResult> results = new LinkedHashMap<>();
+            List<Hold> handedOver = new ArrayList<>();
+            List<LibraryItem> returned = new ArrayList<>();
+            List<Borrowing> finalized;
+            try {
+                finalized = pool.inTransaction(() -> {
+                    List<Borrowing> borrowings = toTransition(user, borrowingIds, results,
+                            EnumSet.of(BorrowingStatus.REQUESTED, BorrowingStatus.BORROWED));
+                    List<Borrowing> updated = transition(borrowings, BorrowingStatus.FINALIZED,
+                            results);
+                    List<LibraryItem> items = new ArrayList<>();
+                    long loanDays = 0;
+                    for (Borrowing borrowing : updated) {
+                        items.addAll(borrowing.getBorrowedItems());
+                        loanDays += ChronoUnit.DAYS.between(borrowing.getRequestedDate(),
+                                LocalDate.now());
+                    }
+                    handedOver.addAll(holdsService.handOver(items));
+                    returned.addAll(withoutHeld(items, handedOver));
+                    releaseCopies(returned);
+                    if (!updated.isEmpty()) {
+                        circulationDAO.addLoans(updated.size(), loanDays);
+                    }
+                    return updated;
+                });
+            } catch (SQLException | RuntimeException e) {
+                holdsService.rollback(handedOver);
+                throw e;
+            }
+            libraryManager.getAvailability().release(returned);
+            for (Borrowing borrowing : finalized) {
+                borrowing.setStatusFinalized();
+                overdueScanner.borrowingClosed(borrowing.getId());
+                auditLog.publish(new AuditEvent(AuditAction.FINALIZED, borrowing.getId(),
+                        user.getId()));
+            }
+            return results;
+        });
+    }
+
+    /**
+     * Reads the borrowings of a bulk transition and fills the results of the ids that can't
+     * move: missing or not the user's, and those in another status than the expected ones
+     *
+     * @return the borrowings that can move, each id once
+     */
+    private List<Borrowing> toTransition(User user, List<Integer> borrowingIds,
+                                         Map<Integer, TransitionResult> results,
+                                         Set<BorrowingStatus> from) throws SQLException {
+        Map<Integer, Borrowing> byId = new HashMap<>();
+        for (Borrowing borrowing : borrowingDAO.getBorrowingsWithItems(borrowingIds)) {
+            if (validPermission(user, UserRole.EMPLOYEE) ||
+                    borrowing.getBorrower().getId() == user.getId()) {
+                byId.put(borrowing.getId(), borrowing);
+            }
+        }
+        List<Borrowing> borrowings = new ArrayList<>();
+        for (int id : borrowingIds) {
+            if (results.containsKey(id)) {
+                continue; // repeated
+            }
+            Borrowing borrowing = byId.get(id);
+            if (borrowing == null) {
+                results.put(id, TransitionResult.NOT_FOUND);
+            } else if (!from.contains(borrowing.getStatus())) {
+                results.put(id, TransitionResult.WRONG_STATUS);
+            } else {
+                results.put(id, TransitionResult.UPDATED); // until the update says otherwise
+                borrowings.add(borrowing);
+            }
+        }
+        return borrowings;
     }
 
-    public void deleteBorrowing(int borrowingId) {
-        try {
-            borrowingDAO.deleteBorrowing(borrowingId);
-            System.out.println("Borrowing deleted successfully");
-        } catch (SQLException e) {
-            System.out.println(e.getLocalizedMessage());
+    /**
+     * Updates the status of the borrowings in one batch, those changed meanwhile by someone
+     * else are WRONG_STATUS
+     *
+     * @return the borrowings updated
+     */
+    private List<Borrowing> transition(List<Borrowing> borrowings, BorrowingStatus status,
+                                       Map<Integer, TransitionResult> results)
+            throws SQLException {
+        Map<Integer, Boolean> updated = borrowingDAO.updateBorrowingsStatus(borrowings, status);
+        List<Borrowing> moved = new ArrayList<>();
+        for (Borrowing borrowing : borrowings) {
+            if (updated.get(borrowing.getId())) {
+                results.put(borrowing.getId(), TransitionResult.UPDATED);
+                moved.add(borrowing);
+            } else {
+                results.put(borrowing.getId(), TransitionResult.WRONG_STATUS);
+            }
         }
+        return moved;
+    }
+
+    /**
+     * Deletes a borrowing in one transaction. The copies of an open one are handed over to the
+     * holds or given back, like when it's finalized.
+     *
+     * @throws SQLException             if it doesn't exist
+     * @throws IllegalArgumentException if it changed status meanwhile
+     */
+    public void deleteBorrowing(User user, int borrowingId) throws SQLException {
+        METER.run("deleteBorrowing", () -> {
+            List<Hold> handedOver = new ArrayList<>();
+            List<LibraryItem> returned = new ArrayList<>();
+            try {
+                pool.inTransaction(() -> {
+                    List<Borrowing> found =
+                            borrowingDAO.getBorrowingsWithItems(List.of(borrowingId));
+                    if (found.isEmpty()) {
+                        throw new SQLException("Borrowing with id " + borrowingId + " Not found",
+                                NOT_FOUND);
+                    }
+                    Borrowing borrowing = found.get(0);
+                    if (!borrowingDAO.deleteBorrowing(borrowing)) {
+                        throw new IllegalArgumentException("Borrowing " + borrowingId +
+                                " changed meanwhile, try again");
+                    }
+                    if (borrowing.getStatus() != BorrowingStatus.FINALIZED) {
+                        List<LibraryItem> items = borrowing.getBorrowedItems();
+                        handedOver.addAll(holdsService.handOver(items));
+                        returned.addAll(withoutHeld(items, handedOver));
+                        releaseCopies(returned);
+                    }
+                    return null;
+                });
+            } catch (SQLException | RuntimeException e) {
+                holdsService.rollback(handedOver);
+                throw e;
+            }
+            libraryManager.getAvailability().release(returned);
+            overdueScanner.borrowingClosed(borrowingId);
+            auditLog.publish(new AuditEvent(AuditAction.DELETED, borrowingId, user.getId()));
+        });
     }
 
+    /**
+     * Finalizes an open borrowing, with the conditional update of
+     * {@link #finalizeBorrowings(User, List)}
+     *
+     * @throws SQLException             if it doesn't exist or isn't the user's
+     * @throws IllegalArgumentException if it isn't REQUESTED or BORROWED, e.g. it was finalized
+     *                                  already
+     */
     public void finalizeBorrowing(User user, int borrowingId) throws SQLException {
-        try {
-            connection.setAutoCommit(false);
-
-            Borrowing borrowing = getBorrowingDetails(user, borrowingId);
-            borrowing.setStatusFinalized();
-            borrowingDAO.updateBorrowingStatus(borrowing);
-            updateItemsBorrowedCopies(borrowing.getBorrowedItems(), -1);
-
-            connection.commit();
-        } catch (SQLException e) {
-            connection.rollback();
-            throw e;
-        } finally {
-            connection.setAutoCommit(true);
+        METER.run("finalizeBorrowing", () -> requireUpdated(borrowingId,
+                finalizeBorrowings(user, List.of(borrowingId)), "REQUESTED or BORROWED"));
+    }
+
+    private static void requireUpdated(int borrowingId, Map<Integer, TransitionResult> results,
+                                       String expected) throws SQLException {
+        TransitionResult result = results.get(borrowingId);
+        if (result == TransitionResult.NOT_FOUND) {
+            throw new SQLException("Borrowing with id " + borrowingId + " Not found", NOT_FOUND);
+        } else if (result == TransitionResult.WRONG_STATUS) {
+            throw new IllegalArgumentException("Borrowing " + borrowingId + " isn't " + expected);
         }
     }
 }
@@ -0,0 +1,232 @@
+package com.davidbonelo.services;
+
+import com.davidbonelo.models.LibraryItem;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Read-through LRU cache of one kind of catalog item, keyed by id, with a time to live.
+ * <p>
+ * Besides single items it can answer the full listing while all the items of the table fit in
+ * it. Writes must go through {@link #put}, {@link #invalidate} or {@link #remove} so the listing
+ * stays correct, an invalidated item is reloaded alone the next time it's needed.
+ * <p>
+ * The cached objects are shared, callers must not modify them.
+ */
+public class CatalogCache<T extends LibraryItem> implements CatalogCacheMXBean {
+    private final String name;
+    private final int maxSize;
+    private final long ttlMillis;
+    private final ItemLoader<T> itemLoader;
+    private final ListLoader<T> listLoader;
+    private final LinkedHashMap<Integer, CachedItem<T>> items;
+    // Ids known to exist whose cached copy was invalidated, only tracked while complete
+    private final Set<Integer> staleIds = new HashSet<>();
+    private boolean complete;
+    private long completeSince;
+    // Bumped by every write, a load that raced with a write isn't stored
+    private long writes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public CatalogCache(String name, int maxSize, long ttlMillis, ItemLoader<T> itemLoader,
+                        ListLoader<T> listLoader) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1");
+        }
+        this.name = name;
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.itemLoader = itemLoader;
+        this.listLoader = listLoader;
+        // access ordered, the eldest entry is the least recently used
+        this.items = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, CachedItem<T>> eldest) {
+                if (size() > CatalogCache.this.maxSize) {
+                    evictions++;
+                    complete = false; // the listing is missing an item now
+                    staleIds.clear();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return the item, loading it if it isn't cached or expired, null if it doesn't exist
+     */
+    public T get(int id) throws SQLException {
+        long writesBefore;
+        synchronized (this) {
+            CachedItem<T> cached = items.get(id);
+            if (cached != null && !isExpired(cached.loadedAt)) {
+                hits++;
+                return cached.item;
+            }
+            misses++;
+            writesBefore = writes;
+        }
+        T item = itemLoader.load(id);
+        synchronized (this) {
+            if (writes != writesBefore) {
+                return item;
+            }
+            if (item == null) {
+                items.remove(id);
+                staleIds.remove(id);
+            } else {
+                items.put(id, new CachedItem<>(item, System.currentTimeMillis()));
+                staleIds.remove(id);
+            }
+        }
+        return item;
+    }
+
+    /**
+     * @return every item ordered by id, from the cache if the whole table is cached
+     */
+    public List<T> getAll() throws SQLException {
+        List<Integer> toReload;
+        synchronized (this) {
+            if (complete && !isExpired(completeSince)) {
+                hits++;
+                toReload = new ArrayList<>(staleIds);
+            } else {
+                toReload = null;
+                misses++;
+            }
+        }
+        if (toReload != null) {
+            for (int id : toReload) {
+                get(id);
+            }
+            synchronized (this) {
+                // A reload that raced with a write wasn't stored, the items would miss it
+                if (complete && staleIds.isEmpty()) {
+                    List<T> all = new ArrayList<>(items.size());
+                    items.values().forEach(cached -> all.add(cached.item));
+                    all.sort(Comparator.comparingInt(LibraryItem::getId));
+                    return all;
+                }
+            }
+        }
+        return loadAll();
+    }
+
+    private List<T> loadAll() throws SQLException {
+        long writesBefore;
+        synchronized (this) {
+            writesBefore = writes;
+        }
+        List<T> all = listLoader.loadAll();
+        synchronized (this) {
+            if (writes == writesBefore && all.size() <= maxSize) {
+                items.clear();
+                long now = System.currentTimeMillis();
+                all.forEach(item -> items.put(item.getId(), new CachedItem<>(item, now)));
+                staleIds.clear();
+                complete = true;
+                completeSince = now;
+            }
+        }
+        return all;
+    }
+
+    /**
+     * Stores an item that was just created or updated, it replaces any cached copy
+     */
+    public synchronized void put(T item) {
+        writes++;
+        items.put(item.getId(), new CachedItem<>(item, System.currentTimeMillis()));
+        staleIds.remove(item.getId());
+    }
+
+    /**
+     * Drops the cached copy of an item that changed in the database
+     */
+    public synchronized void invalidate(int id) {
+        writes++;
+        if (items.remove(id) != null && complete) {
+            staleIds.add(id);
+        }
+    }
+
+    /**
+     * Forgets an item that was deleted
+     */
+    public synchronized void remove(int id) {
+        writes++;
+        items.remove(id);
+        staleIds.remove(id);
+    }
+
+    public synchronized void clear() {
+        writes++;
+        items.clear();
+        staleIds.clear();
+        complete = false;
+    }
+
+    public synchronized CacheStats getStats() {
+        return new CacheStats(name, items.size(), hits, misses, evictions);
+    }
+
+    @Override
+    public synchronized int getSize() {
+        return items.size();
+    }
+
+    @Override
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    @Override
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public double getHitRatio() {
+        return getStats().getHitRatio();
+    }
+
+    private boolean isExpired(long loadedAt) {
+        return ttlMillis > 0 && System.currentTimeMillis() - loadedAt > ttlMillis;
+    }
+
+    @FunctionalInterface
+    public interface ItemLoader<T> {
+        T load(int id) throws SQLException;
+    }
+
+    @FunctionalInterface
+    public interface ListLoader<T> {
+        List<T> loadAll() throws SQLException;
+    }
+
+    private static class CachedItem<T> {
+        final T item;
+        final long loadedAt;
+
+        CachedItem(T item, long loadedAt) {
+            this.item = item;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
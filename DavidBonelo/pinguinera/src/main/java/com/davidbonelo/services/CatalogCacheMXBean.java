@@ -0,0 +1,17 @@
+package com.davidbonelo.services;
+
+/**
+ * What JMX consoles (jconsole, VisualVM) show of a {@link CatalogCache}, published as
+ * com.davidbonelo:type=Caches,name=&lt;books|novels&gt;
+ */
+public interface CatalogCacheMXBean {
+    int getSize();
+
+    long getHits();
+
+    long getMisses();
+
+    long getEvictions();
+
+    double getHitRatio();
+}
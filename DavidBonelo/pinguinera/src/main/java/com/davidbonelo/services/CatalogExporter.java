@@ -0,0 +1,189 @@
+package com.davidbonelo.services;
+
+import com.davidbonelo.Json;
+import com.davidbonelo.persistance.ExportDAO;
+import com.davidbonelo.persistance.RowWriter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Dumps every table to its own CSV or JSON lines file (optionally gzipped). Rows are written as
+ * they are fetched, so memory use doesn't depend on the size of the tables, and the tables are
+ * exported in parallel, each on its own pooled connection.
+ * <p>
+ * Each table is read in its own transaction, so the files aren't a snapshot of the same instant:
+ * a borrowing created during the export can show up without its items.
+ */
+public class CatalogExporter {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ExportDAO exportDAO;
+    private final int threads;
+
+    /**
+     * @param threads tables exported at the same time, each one holds a connection
+     */
+    public CatalogExporter(ExportDAO exportDAO, int threads) {
+        this.exportDAO = exportDAO;
+        this.threads = threads;
+    }
+
+    /**
+     * Writes one file per table into the directory, e.g. books.csv.gz. Files are written under a
+     * .part name and renamed when complete, so a failed export never leaves a truncated dump.
+     *
+     * @return the rows written per table
+     */
+    public Map<String, Long> exportAll(Path directory, ExportFormat format, boolean gzip)
+            throws IOException, SQLException {
+        Files.createDirectories(directory);
+        List<String> tables = exportDAO.getTables();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, tables.size()),
+                r -> {
+                    Thread thread = new Thread(r, "pingu-exporter");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        try {
+            List<Future<Long>> futures = new ArrayList<>();
+            for (String table : tables) {
+                Path file = directory.resolve(table + format.getExtension() + (gzip ? ".gz" : ""));
+                futures.add(executor.submit(() -> exportTable(table, file, format, gzip)));
+            }
+            Map<String, Long> rows = new LinkedHashMap<>();
+            for (int i = 0; i < tables.size(); i++) {
+                rows.put(tables.get(i), await(futures.get(i)));
+            }
+            return rows;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private long exportTable(String table, Path file, ExportFormat format, boolean gzip)
+            throws IOException, SQLException {
+        Path part = file.resolveSibling(file.getFileName() + ".part");
+        long rows;
+        try (FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             Writer out = openWriter(channel, gzip)) {
+            rows = exportDAO.streamTable(table, format == ExportFormat.CSV ? new CsvWriter(out) :
+                    new JsonLinesWriter(out));
+        } catch (IOException | SQLException | RuntimeException e) {
+            Files.deleteIfExists(part);
+            throw e;
+        }
+        Files.move(part, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return rows;
+    }
+
+    private static Writer openWriter(FileChannel channel, boolean gzip) throws IOException {
+        OutputStream out = Channels.newOutputStream(channel);
+        if (gzip) {
+            out = new GZIPOutputStream(out, BUFFER_SIZE);
+        }
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    private static long await(Future<Long> future) throws IOException, SQLException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Export interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            } else if (e.getCause() instanceof SQLException sql) {
+                throw sql;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static class CsvWriter implements RowWriter {
+        private final Writer out;
+
+        CsvWriter(Writer out) {
+            this.out = out;
+        }
+
+        @Override
+        public void header(List<String> columns) throws IOException {
+            row(columns.toArray());
+        }
+
+        @Override
+        public void row(Object[] values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                if (values[i] != null) {
+                    String value = values[i].toString();
+                    if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 ||
+                            value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+                        out.write('"');
+                        out.write(value.replace("\"", "\"\""));
+                        out.write('"');
+                    } else {
+                        out.write(value);
+                    }
+                }
+            }
+            out.write('\n');
+        }
+    }
+
+    private static class JsonLinesWriter implements RowWriter {
+        private final Writer out;
+        private List<String> keys;
+
+        JsonLinesWriter(Writer out) {
+            this.out = out;
+        }
+
+        @Override
+        public void header(List<String> columns) {
+            keys = new ArrayList<>();
+            for (String column : columns) {
+                keys.add(Json.write(column));
+            }
+        }
+
+        @Override
+        public void row(Object[] values) throws IOException {
+            out.write('{');
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                out.write(keys.get(i));
+                out.write(':');
+                out.write(Json.write(values[i]));
+            }
+            out.write("}\n");
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.davidbonelo.services;
+
+import com.davidbonelo.models.Book;
+import com.davidbonelo.models.LibraryItem;
+import com.davidbonelo.models.Novel;
+import com.davidbonelo.persistance.BookDAO;
+import com.davidbonelo.persistance.ConnectionPool;
+import com.davidbonelo.persistance.ImportCheckpointDAO;
+import com.davidbonelo.persistance.NovelDAO;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static com.davidbonelo.services.ImportRecords.csvRecord;
+import static com.davidbonelo.services.ImportRecords.parseCsvLine;
+import static com.davidbonelo.services.ImportRecords.parseJsonObject;
+import static com.davidbonelo.services.ImportRecords.toItem;
+
+/**
+ * Loads books and novels from publisher feeds: CSV files with a header row or JSON lines files
+ * (.jsonl, .ndjson), one object per line. Both use the column names of the Books and Novels
+ * tables plus an optional "type" (book or novel).
+ * <p>
+ * The file is read line by line and valid rows are inserted with JDBC batches, committing every
+ * {@link ImportOptions#getCommitInterval()} lines together with the number of lines consumed. A
+ * failed or interrupted import run again continues after the last commit. Invalid rows don't
+ * stop the import, they are written to the error file as "line number TAB reason TAB line".
+ */
+public class CatalogImporter {
+    private final ConnectionPool pool;
+    private final BookDAO bookDAO;
+    private final NovelDAO novelDAO;
+    private final ImportCheckpointDAO checkpointDAO;
+    private final LibraryManager libraryManager;
+
+    public CatalogImporter(ConnectionPool pool, BookDAO bookDAO, NovelDAO novelDAO,
+                           ImportCheckpointDAO checkpointDAO, LibraryManager libraryManager) {
+        this.pool = pool;
+        this.bookDAO = bookDAO;
+        this.novelDAO = novelDAO;
+        this.checkpointDAO = checkpointDAO;
+        this.libraryManager = libraryManager;
+    }
+
+    public ImportReport importFile(Path file, ImportOptions options) throws IOException,
+            SQLException {
+        String source = file.toAbsolutePath().normalize().toString();
+        long offset = options.isResume() ? checkpointDAO.getOffset(source) : 0;
+        boolean csv = file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".csv");
+        Chunk chunk = new Chunk(source, offset, System.currentTimeMillis());
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+             BufferedWriter errors = Files.newBufferedWriter(options.getErrorFile(file),
+                     StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     offset > 0 ? StandardOpenOption.APPEND :
+                             StandardOpenOption.TRUNCATE_EXISTING)) {
+            long lineNumber = 0;
+            List<String> header = null;
+            if (csv) {
+                String line = reader.readLine();
+                lineNumber++;
+                if (line == null) {
+                    throw new IOException("Empty CSV file, a header row is needed");
+                }
+                header = parseCsvLine(line).stream().map(name ->
+                        name.trim().toLowerCase(Locale.ROOT)).toList();
+            }
+            while (lineNumber < offset && reader.readLine() != null) {
+                lineNumber++; // already imported
+            }
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    Map<String, String> record = csv ? csvRecord(header, line) :
+                            parseJsonObject(line);
+                    chunk.items.add(toItem(record));
+                } catch (IllegalArgumentException e) {
+                    chunk.rejects.add(lineNumber + "\t" + e.getMessage() + "\t" + line);
+                }
+                if (chunk.items.size() + chunk.rejects.size() >= options.getCommitInterval()) {
+                    commit(chunk, lineNumber, options, errors);
+                }
+            }
+            commit(chunk, lineNumber, options, errors);
+        } finally {
+            if (chunk.imported > 0) {
+                libraryManager.reloadCatalog();
+            }
+        }
+        return chunk.report();
+    }
+
+    private void commit(Chunk chunk, long lineNumber, ImportOptions options,
+                        BufferedWriter errors) throws SQLException, IOException {
+        if (lineNumber == chunk.committedOffset) {
+            return;
+        }
+        List<Book> books = new ArrayList<>();
+        List<Novel> novels = new ArrayList<>();
+        for (LibraryItem item : chunk.items) {
+            if (item instanceof Book book) {
+                books.add(book);
+            } else if (item instanceof Novel novel) {
+                novels.add(novel);
+            }
+        }
+        pool.inTransaction(() -> {
+            for (int from = 0; from < books.size(); from += options.getBatchSize()) {
+                bookDAO.createBooks(books.subList(from,
+                        Math.min(from + options.getBatchSize(), books.size())));
+            }
+            for (int from = 0; from < novels.size(); from += options.getBatchSize()) {
+                novelDAO.createNovels(novels.subList(from,
+                        Math.min(from + options.getBatchSize(), novels.size())));
+            }
+            checkpointDAO.saveOffset(chunk.source, lineNumber);
+            return null;
+        });
+        // Only now, a crash before the commit reads these lines again
+        for (String reject : chunk.rejects) {
+            errors.write(reject);
+            errors.newLine();
+        }
+        errors.flush();
+
+        chunk.imported += chunk.items.size();
+        chunk.rejected += chunk.rejects.size();
+        chunk.committedOffset = lineNumber;
+        chunk.items.clear();
+        chunk.rejects.clear();
+        System.out.println("Imported " + chunk.imported + " rows, rejected " + chunk.rejected +
+                String.format(" (%.0f rows/s)", chunk.report().getRowsPerSecond()));
+    }
+
+    /**
+     * The rows read since the last commit and the totals so far
+     */
+    private static class Chunk {
+        final String source;
+        final long skipped;
+        final long startedAt;
+        final List<LibraryItem> items = new ArrayList<>();
+        final List<String> rejects = new ArrayList<>();
+        long committedOffset;
+        long imported;
+        long rejected;
+
+        Chunk(String source, long offset, long startedAt) {
+            this.source = source;
+            this.skipped = offset;
+            this.committedOffset = offset;
+            this.startedAt = startedAt;
+        }
+
+        ImportReport report() {
+            return new ImportReport(source, skipped, imported, rejected,
+                    System.currentTimeMillis() - startedAt);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.davidbonelo.services;
+
+public enum ExportFormat {
+    CSV(".csv"), JSON_LINES(".jsonl");
+
+    private final String extension;
+
+    ExportFormat(String extension) {
+        this.extension = extension;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+}
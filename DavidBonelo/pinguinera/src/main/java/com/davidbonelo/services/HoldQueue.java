@@ -0,0 +1,196 @@
+package com.davidbonelo.services;
+
+import com.davidbonelo.models.Hold;
+import com.davidbonelo.models.HoldStatus;
+import com.davidbonelo.models.LibraryItem;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The open holds in memory: a FIFO queue of the WAITING holds of every item plus the READY
+ * ones, so the next patron of an item is found in O(1) and positions are answered without
+ * reading the holds table. It only mirrors the table, HoldsService keeps both in step.
+ */
+public class HoldQueue {
+    private final Map<String, Deque<Hold>> waiting = new HashMap<>();
+    private final Map<Integer, Hold> open = new HashMap<>();
+    // The open hold of a user on an item, by "user:type:id"
+    private final Map<String, Hold> byUser = new HashMap<>();
+
+    /**
+     * Adds a WAITING hold at the end of the queue of its item, or a READY one
+     */
+    public synchronized void add(Hold hold) {
+        open.put(hold.getId(), hold);
+        byUser.put(userKey(hold.getUserId(), hold.getItemType(), hold.getItemId()), hold);
+        if (hold.getStatus() == HoldStatus.WAITING) {
+            waiting.computeIfAbsent(key(hold.getItemType(), hold.getItemId()),
+                    k -> new ArrayDeque<>()).addLast(hold);
+        }
+    }
+
+    /**
+     * Adds the hold unless the user has one open on its item already, checking and adding in
+     * one step so concurrent placements of the same hold keep a single one
+     *
+     * @return the open hold of the user on the item, the given one if it was added
+     */
+    public synchronized Hold addIfAbsent(Hold hold) {
+        Hold open = byUser.get(userKey(hold.getUserId(), hold.getItemType(), hold.getItemId()));
+        if (open != null) {
+            return open;
+        }
+        add(hold);
+        return hold;
+    }
+
+    /**
+     * Takes the first waiting hold of the item out of its queue and marks it READY
+     *
+     * @return null if nobody waits
+     */
+    public synchronized Hold next(String itemType, int itemId, Instant readyUntil) {
+        String key = key(itemType, itemId);
+        Deque<Hold> queue = waiting.get(key);
+        if (queue == null) {
+            return null;
+        }
+        Hold hold = queue.pollFirst();
+        if (queue.isEmpty()) {
+            waiting.remove(key);
+        }
+        hold.setStatus(HoldStatus.READY);
+        hold.setReadyUntil(readyUntil);
+        return hold;
+    }
+
+    /**
+     * Undoes {@link #next}, for a transaction that rolled back. The holds go back to the front
+     * of their queues unless they were closed meanwhile.
+     */
+    public synchronized void unready(List<Hold> holds) {
+        for (int i = holds.size() - 1; i >= 0; i--) {
+            Hold hold = holds.get(i);
+            if (open.get(hold.getId()) == hold && hold.getStatus() == HoldStatus.READY) {
+                hold.setStatus(HoldStatus.WAITING);
+                hold.setReadyUntil(null);
+                waiting.computeIfAbsent(key(hold.getItemType(), hold.getItemId()),
+                        k -> new ArrayDeque<>()).addFirst(hold);
+            }
+        }
+    }
+
+    /**
+     * @return false if it wasn't open
+     */
+    public synchronized boolean remove(Hold hold) {
+        if (open.remove(hold.getId()) == null) {
+            return false;
+        }
+        byUser.remove(userKey(hold.getUserId(), hold.getItemType(), hold.getItemId()));
+        String key = key(hold.getItemType(), hold.getItemId());
+        Deque<Hold> queue = waiting.get(key);
+        if (queue != null && queue.remove(hold) && queue.isEmpty()) {
+            waiting.remove(key);
+        }
+        return true;
+    }
+
+    public synchronized Hold get(int holdId) {
+        return open.get(holdId);
+    }
+
+    /**
+     * @return the open hold of the user on the item, null if there's none
+     */
+    public synchronized Hold find(int userId, LibraryItem item) {
+        return byUser.get(userKey(userId, Hold.typeOf(item), item.getId()));
+    }
+
+    /**
+     * Takes out the READY holds of the user on the items
+     */
+    public synchronized List<Hold> takeReady(int userId, List<? extends LibraryItem> items) {
+        List<Hold> ready = new ArrayList<>();
+        for (LibraryItem item : items) {
+            Hold hold = find(userId, item);
+            if (hold != null && hold.getStatus() == HoldStatus.READY) {
+                remove(hold);
+                ready.add(hold);
+            }
+        }
+        return ready;
+    }
+
+    /**
+     * Takes out the READY holds not picked up in time
+     */
+    public synchronized List<Hold> takeExpired(Instant now) {
+        List<Hold> expired = open.values().stream().filter(hold ->
+                hold.getStatus() == HoldStatus.READY && hold.getReadyUntil().isBefore(now))
+                .toList();
+        expired.forEach(this::remove);
+        return expired;
+    }
+
+    /**
+     * @return 0 for a READY hold, 1 for the first in the queue and so on. -1 if it isn't open.
+     */
+    public synchronized int position(Hold hold) {
+        if (open.get(hold.getId()) != hold) {
+            return -1;
+        } else if (hold.getStatus() == HoldStatus.READY) {
+            return 0;
+        }
+        int position = 1;
+        for (Hold waiter : waiting.get(key(hold.getItemType(), hold.getItemId()))) {
+            if (waiter == hold) {
+                return position;
+            }
+            position++;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the open holds of the user, oldest first
+     */
+    public synchronized List<Hold> getHolds(int userId) {
+        return open.values().stream().filter(hold -> hold.getUserId() == userId)
+                .sorted(Comparator.comparingInt(Hold::getId)).toList();
+    }
+
+    /**
+     * @return the READY holds of the item and then the waiting ones, in order
+     */
+    public synchronized List<Hold> getQueue(LibraryItem item) {
+        String type = Hold.typeOf(item);
+        List<Hold> queue = new ArrayList<>(open.values().stream().filter(hold ->
+                hold.getStatus() == HoldStatus.READY && hold.getItemType().equals(type) &&
+                        hold.getItemId() == item.getId())
+                .sorted(Comparator.comparingInt(Hold::getId)).toList());
+        queue.addAll(waiting.getOrDefault(key(type, item.getId()), new ArrayDeque<>()));
+        return queue;
+    }
+
+    public synchronized void clear() {
+        waiting.clear();
+        open.clear();
+        byUser.clear();
+    }
+
+    private static String key(String itemType, int itemId) {
+        return itemType + ":" + itemId;
+    }
+
+    private static String userKey(int userId, String itemType, int itemId) {
+        return userId + ":" + key(itemType, itemId);
+    }
+}
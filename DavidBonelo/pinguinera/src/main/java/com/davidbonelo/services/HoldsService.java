@@ -0,0 +1,341 @@
+package com.davidbonelo.services;
+
+import com.davidbonelo.metrics.Meter;
+import com.davidbonelo.metrics.Metrics;
+import com.davidbonelo.models.Hold;
+import com.davidbonelo.models.HoldStatus;
+import com.davidbonelo.models.LibraryItem;
+import com.davidbonelo.models.User;
+import com.davidbonelo.models.UserRole;
+import com.davidbonelo.persistance.BookDAO;
+import com.davidbonelo.persistance.ConnectionPool;
+import com.davidbonelo.persistance.HoldDAO;
+import com.davidbonelo.persistance.NovelDAO;
+
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.davidbonelo.Utils.validPermission;
+
+/**
+ * Hold queues of the books and novels without available copies. A returned copy goes straight
+ * to the first patron waiting for it: the hold becomes READY and the copy stays borrowed for
+ * them until they borrow it or the pickup time runs out, then it passes to the next one.
+ * <p>
+ * The holds table is written first, in the transaction that moves the copy, and the open
+ * holds are mirrored in a {@link HoldQueue}. Status changes are conditional on the current
+ * status, so a cancel, an expiry and a pickup of the same hold can't both apply.
+ */
+public class HoldsService {
+    private static final Meter METER = Metrics.meter(HoldsService.class);
+    private final HoldDAO holdDAO;
+    private final BookDAO bookDAO;
+    private final NovelDAO novelDAO;
+    private final ConnectionPool pool;
+    private final LibraryManager libraryManager;
+    private final Duration pickupTime;
+    private final Clock clock;
+    private final HoldQueue queue = new HoldQueue();
+    private ScheduledExecutorService scheduler;
+
+    public HoldsService(HoldDAO holdDAO, BookDAO bookDAO, NovelDAO novelDAO, ConnectionPool pool,
+                        LibraryManager libraryManager, Duration pickupTime) {
+        this(holdDAO, bookDAO, novelDAO, pool, libraryManager, pickupTime,
+                Clock.systemDefaultZone());
+    }
+
+    public HoldsService(HoldDAO holdDAO, BookDAO bookDAO, NovelDAO novelDAO, ConnectionPool pool,
+                        LibraryManager libraryManager, Duration pickupTime, Clock clock) {
+        this.holdDAO = holdDAO;
+        this.bookDAO = bookDAO;
+        this.novelDAO = novelDAO;
+        this.pool = pool;
+        this.libraryManager = libraryManager;
+        this.pickupTime = pickupTime;
+        this.clock = clock;
+    }
+
+    /**
+     * Reads the open holds, call it at startup before taking requests
+     */
+    public void load() throws SQLException {
+        METER.run("load", () -> {
+            queue.clear();
+            holdDAO.getOpenHolds().forEach(queue::add);
+        });
+    }
+
+    /**
+     * Expires the holds not picked up every interval, on a background thread
+     */
+    public synchronized void start(Duration interval) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "pingu-hold-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::expireHolds, interval.toMillis(),
+                interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Puts the user in the queue of an item without available copies. Holding the same item
+     * twice returns the hold already open.
+     *
+     * @throws IllegalArgumentException if the item has copies available, it can be borrowed
+     */
+    public Hold placeHold(User user, LibraryItem item) throws SQLException {
+        return METER.call("placeHold", () -> {
+            Hold open = queue.find(user.getId(), item);
+            if (open != null) {
+                return open;
+            }
+            if (libraryManager.getAvailability().getAvailableCopies(item) > 0) {
+                throw new IllegalArgumentException("There are copies of " + item.getTitle() +
+                        " available, borrow it instead");
+            }
+            Hold hold = new Hold(item, user.getId(), clock.instant());
+            try {
+                holdDAO.createHold(hold);
+            } catch (SQLIntegrityConstraintViolationException e) {
+                // A concurrent placement of the same hold inserted it first
+                hold = holdDAO.getOpenHold(user.getId(), hold.getItemType(), item.getId());
+                if (hold == null) {
+                    throw e;
+                }
+            }
+            Hold added = queue.addIfAbsent(hold);
+            if (added == hold) {
+                takeFromShelf(item); // a copy returned meanwhile would wait for the next return
+            }
+            return added;
+        });
+    }
+
+    /**
+     * @return false if the hold isn't open or isn't the user's (employees can cancel any)
+     */
+    public boolean cancelHold(User user, int holdId) throws SQLException {
+        return METER.call("cancelHold", () -> {
+            Hold hold = queue.get(holdId);
+            if (hold == null || (hold.getUserId() != user.getId() &&
+                    !validPermission(user, UserRole.EMPLOYEE))) {
+                return false;
+            }
+            HoldStatus status = hold.getStatus();
+            if (!queue.remove(hold)) {
+                return false;
+            }
+            if (status == HoldStatus.WAITING) {
+                holdDAO.updateStatus(holdId, HoldStatus.WAITING, HoldStatus.CANCELLED, null);
+            } else {
+                close(hold, HoldStatus.CANCELLED);
+            }
+            return true;
+        });
+    }
+
+    /**
+     * @return the open holds of the user, oldest first
+     */
+    public List<Hold> getHolds(User user) {
+        return queue.getHolds(user.getId());
+    }
+
+    /**
+     * @return the READY and then the waiting holds of the item, in order
+     */
+    public List<Hold> getQueue(LibraryItem item) {
+        return queue.getQueue(item);
+    }
+
+    /**
+     * @return 0 for a READY hold, 1 for the first in the queue and so on. -1 if it isn't open.
+     */
+    public int getPosition(Hold hold) {
+        return queue.position(hold);
+    }
+
+    /**
+     * Gives each returned copy to the first patron waiting for its item, call it in the
+     * transaction that returns them and {@link #rollback} if it fails
+     *
+     * @return the holds made READY, their copies stay borrowed
+     */
+    public List<Hold> handOver(List<? extends LibraryItem> items) throws SQLException {
+        return METER.call("handOver", () -> {
+            List<Hold> ready = new ArrayList<>();
+            for (LibraryItem item : items) {
+                Hold hold = next(Hold.typeOf(item), item.getId());
+                if (hold != null) {
+                    ready.add(hold);
+                }
+            }
+            return ready;
+        });
+    }
+
+    /**
+     * Puts the holds of a failed {@link #handOver} back at the front of their queues
+     */
+    public void rollback(List<Hold> handedOver) {
+        queue.unready(handedOver);
+    }
+
+    /**
+     * Takes the READY holds of the user on the items, for a borrowing that uses their copies.
+     * Call {@link #fulfill} in its transaction, or {@link #restore} if it doesn't happen.
+     */
+    public List<Hold> takeReady(User user, List<? extends LibraryItem> items) {
+        return queue.takeReady(user.getId(), items);
+    }
+
+    /**
+     * @throws IllegalArgumentException if a hold expired or was cancelled meanwhile
+     */
+    public void fulfill(List<Hold> holds) throws SQLException {
+        for (Hold hold : holds) {
+            if (!holdDAO.updateStatus(hold.getId(), HoldStatus.READY, HoldStatus.FULFILLED,
+                    null)) {
+                throw new IllegalArgumentException("The hold " + hold.getId() + " isn't ready " +
+                        "anymore");
+            }
+        }
+    }
+
+    public void restore(List<Hold> holds) {
+        holds.forEach(queue::add);
+    }
+
+    /**
+     * The copies of the READY holds not picked up in time go to the next patron in line, or
+     * back to the shelf
+     */
+    public void expireHolds() {
+        METER.run("expireHolds", () -> {
+            for (Hold hold : queue.takeExpired(clock.instant())) {
+                try {
+                    close(hold, HoldStatus.EXPIRED);
+                } catch (SQLException | RuntimeException e) {
+                    queue.add(hold);
+                    System.err.println("Couldn't expire the hold " + hold.getId() + ", " +
+                            e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Closes a READY hold already taken out of the queue, its copy goes to the next patron
+     */
+    private void close(Hold hold, HoldStatus status) throws SQLException {
+        List<Hold> next = new ArrayList<>();
+        boolean released;
+        try {
+            released = pool.inTransaction(() -> {
+                if (!holdDAO.updateStatus(hold.getId(), HoldStatus.READY, status, null)) {
+                    return false; // closed by someone else, the copy went with it
+                }
+                Hold following = next(hold.getItemType(), hold.getItemId());
+                if (following != null) {
+                    next.add(following);
+                    return false;
+                }
+                updateCopies(hold.getItemType(), hold.getItemId(), false);
+                return true;
+            });
+        } catch (SQLException | RuntimeException e) {
+            queue.unready(next);
+            throw e;
+        }
+        hold.setStatus(status);
+        if (released && hold.getItemType().equals(Hold.BOOK)) {
+            libraryManager.getAvailability().releaseBook(hold.getItemId());
+        } else if (released) {
+            libraryManager.getAvailability().releaseNovel(hold.getItemId());
+        }
+    }
+
+    /**
+     * Takes a free copy of the item for its queue, if it has any
+     */
+    private void takeFromShelf(LibraryItem item) throws SQLException {
+        AvailabilityLedger availability = libraryManager.getAvailability();
+        if (!availability.reserve(List.of(item)).isEmpty()) {
+            return;
+        }
+        List<Hold> next = new ArrayList<>();
+        boolean taken;
+        try {
+            taken = pool.inTransaction(() -> {
+                if (!updateCopies(Hold.typeOf(item), item.getId(), true)) {
+                    return false;
+                }
+                Hold hold = next(Hold.typeOf(item), item.getId());
+                if (hold == null) { // cancelled meanwhile
+                    updateCopies(Hold.typeOf(item), item.getId(), false);
+                    return false;
+                }
+                next.add(hold);
+                return true;
+            });
+        } catch (SQLException | RuntimeException e) {
+            queue.unready(next);
+            availability.release(List.of(item));
+            throw e;
+        }
+        if (!taken) {
+            availability.release(List.of(item));
+            availability.reload(List.of(item));
+        }
+    }
+
+    /**
+     * The first waiting hold of the item made READY, in the current transaction
+     */
+    private Hold next(String itemType, int itemId) throws SQLException {
+        Instant readyUntil = clock.instant().plus(pickupTime);
+        Hold hold;
+        while ((hold = queue.next(itemType, itemId, readyUntil)) != null) {
+            if (holdDAO.updateStatus(hold.getId(), HoldStatus.WAITING, HoldStatus.READY,
+                    readyUntil)) {
+                return hold;
+            }
+            queue.remove(hold); // not waiting in the table, out of sync
+        }
+        return null;
+    }
+
+    /**
+     * Takes (reserve) or gives back a copy of the item in the database
+     *
+     * @return whether the copy was taken or given back
+     */
+    private boolean updateCopies(String itemType, int itemId, boolean reserve)
+            throws SQLException {
+        List<Integer> ids = List.of(itemId);
+        Map<Integer, Boolean> updated = itemType.equals(Hold.BOOK) ?
+                reserve ? bookDAO.reserveCopies(ids) : bookDAO.releaseCopies(ids) :
+                reserve ? novelDAO.reserveCopies(ids) : novelDAO.releaseCopies(ids);
+        return updated.get(itemId);
+    }
+}
@@ -0,0 +1,69 @@
+package com.davidbonelo.services;
+
+import java.nio.file.Path;
+
+/**
+ * Settings for {@link CatalogImporter}
+ */
+public class ImportOptions {
+    private int batchSize = 500;
+    private int commitInterval = 5_000;
+    private Path errorFile;
+    private boolean resume = true;
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize rows sent to the database per INSERT batch
+     */
+    public ImportOptions setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be at least 1");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public int getCommitInterval() {
+        return commitInterval;
+    }
+
+    /**
+     * @param commitInterval rows read per transaction, also how much work a crash can lose
+     */
+    public ImportOptions setCommitInterval(int commitInterval) {
+        if (commitInterval < 1) {
+            throw new IllegalArgumentException("commitInterval must be at least 1");
+        }
+        this.commitInterval = commitInterval;
+        return this;
+    }
+
+    /**
+     * @return where the rejected rows go, by default next to the source file with a .errors suffix
+     */
+    public Path getErrorFile(Path source) {
+        return errorFile != null ? errorFile :
+                source.resolveSibling(source.getFileName() + ".errors");
+    }
+
+    public ImportOptions setErrorFile(Path errorFile) {
+        this.errorFile = errorFile;
+        return this;
+    }
+
+    public boolean isResume() {
+        return resume;
+    }
+
+    /**
+     * @param resume continue after the last committed line of a previous import of the same file,
+     *               false imports the file from the start again
+     */
+    public ImportOptions setResume(boolean resume) {
+        this.resume = resume;
+        return this;
+    }
+}
@@ -0,0 +1,157 @@
+package com.davidbonelo.services;
+
+import com.davidbonelo.Json;
+import com.davidbonelo.models.Book;
+import com.davidbonelo.models.LibraryItem;
+import com.davidbonelo.models.Novel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Parsing and validation of the rows of a catalog import, one line at a time. Every problem is
+ * reported as an IllegalArgumentException with a message fit for the error file.
+ */
+class ImportRecords {
+    // Column sizes of the Books and Novels tables
+    private static final int MAX_TITLE = 100;
+    private static final int MAX_AUTHOR = 50;
+    private static final int MAX_FIELD = 100;
+    private static final int MAX_GENRE = 50;
+
+    private ImportRecords() {
+    }
+
+    /**
+     * Splits a CSV line, fields can be quoted to hold commas and "" is an escaped quote. Quoted
+     * fields can't span lines.
+     */
+    static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quoted field");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    static Map<String, String> csvRecord(List<String> header, String line) {
+        List<String> values = parseCsvLine(line);
+        if (values.size() != header.size()) {
+            throw new IllegalArgumentException("Expected " + header.size() + " fields but found "
+                    + values.size());
+        }
+        Map<String, String> record = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            record.put(header.get(i), values.get(i));
+        }
+        return record;
+    }
+
+    /**
+     * Parses a flat JSON object, values can be strings, numbers, booleans or null. Nested
+     * objects and arrays aren't part of the catalog format.
+     */
+    static Map<String, String> parseJsonObject(String line) {
+        if (!(Json.parse(line) instanceof Map<?, ?> object)) {
+            throw new IllegalArgumentException("Expected an object");
+        }
+        Map<String, String> record = new HashMap<>();
+        for (Map.Entry<?, ?> entry : object.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof Map || value instanceof List) {
+                throw new IllegalArgumentException("Nested objects and arrays aren't supported");
+            }
+            String key = entry.getKey().toString().toLowerCase(Locale.ROOT);
+            record.put(key, value == null ? null : value.toString());
+        }
+        return record;
+    }
+
+    /**
+     * Builds the book or novel of a record. The type comes from the "type" field (book or novel)
+     * or, without it, from having a field (books) or a genre (novels).
+     */
+    static LibraryItem toItem(Map<String, String> record) {
+        String type = text(record, "type", false);
+        if (type == null) {
+            type = text(record, "field", false) != null ? "book" :
+                    text(record, "genre", false) != null ? "novel" : null;
+        }
+        if (type == null) {
+            throw new IllegalArgumentException("Can't tell if it's a book or a novel, add a type");
+        }
+        String title = limited(record, "title", MAX_TITLE);
+        String author = limited(record, "author", MAX_AUTHOR);
+        int copies = number(record, "copies", 0);
+        int copiesBorrowed = record.get("copies_borrowed") == null ? 0 :
+                number(record, "copies_borrowed", 0);
+        if (copiesBorrowed > copies) {
+            throw new IllegalArgumentException("copies_borrowed is greater than copies");
+        }
+        return switch (type.toLowerCase(Locale.ROOT)) {
+            case "book" -> new Book(title, author, copies, copiesBorrowed,
+                    limited(record, "field", MAX_FIELD), number(record, "pages", 1));
+            case "novel" -> new Novel(title, author, copies, copiesBorrowed,
+                    limited(record, "genre", MAX_GENRE), number(record, "recommended_age", 0));
+            default -> throw new IllegalArgumentException("Unknown type " + type);
+        };
+    }
+
+    private static String text(Map<String, String> record, String name, boolean required) {
+        String value = record.get(name);
+        if (value == null || value.isBlank()) {
+            if (required) {
+                throw new IllegalArgumentException("Missing " + name);
+            }
+            return null;
+        }
+        return value.trim();
+    }
+
+    private static String limited(Map<String, String> record, String name, int maxLength) {
+        String value = text(record, name, true);
+        if (value.length() > maxLength) {
+            throw new IllegalArgumentException(name + " is longer than " + maxLength);
+        }
+        return value;
+    }
+
+    private static int number(Map<String, String> record, String name, int min) {
+        String value = text(record, name, true);
+        try {
+            int number = Integer.parseInt(value);
+            if (number < min) {
+                throw new IllegalArgumentException(name + " must be at least " + min);
+            }
+            return number;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " is not a whole number: " + value);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.davidbonelo.services;
+
+/**
+ * What a {@link CatalogImporter} run did
+ */
+public class ImportReport {
+    private final String source;
+    private final long skipped;
+    private final long imported;
+    private final long rejected;
+    private final long elapsedMillis;
+
+    public ImportReport(String source, long skipped, long imported, long rejected,
+                        long elapsedMillis) {
+        this.source = source;
+        this.skipped = skipped;
+        this.imported = imported;
+        this.rejected = rejected;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * @return lines skipped because a previous run already imported them
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * @return rows read (imported or rejected) per second
+     */
+    public double getRowsPerSecond() {
+        return elapsedMillis == 0 ? 0 : (imported + rejected) * 1000.0 / elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ImportReport{" + "source='" + source + '\'' + ", skipped=" + skipped +
+                ", imported=" + imported + ", rejected=" + rejected + ", elapsedMillis=" +
+                elapsedMillis + ", rowsPerSecond=" + String.format("%.1f", getRowsPerSecond()) +
+                '}';
+    }
+}
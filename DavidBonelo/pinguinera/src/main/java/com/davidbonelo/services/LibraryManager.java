@@ -1,5 +1,7 @@
 package com.davidbonelo.services;
 
+import com.davidbonelo.metrics.Meter;
+import com.davidbonelo.metrics.Metrics;
 import com.davidbonelo.models.Book;
 import com.davidbonelo.models.LibraryItem;
 import com.davidbonelo.models.Novel;
@@ -8,87 +10,328 @@ import com.davidbonelo.persistance.BorrowingDAO;
 import com.davidbonelo.persistance.NovelDAO;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
 
 public class LibraryManager {
+    private static final Meter METER = Metrics.meter(LibraryManager.class);
+    // Items kept per cache and for how long, tune with the hit/miss/eviction counters
+    private static final int CACHE_MAX_ITEMS = Integer.getInteger("pingu.cache.maxItems", 10_000);
+    private static final long CACHE_TTL_MILLIS = Long.getLong("pingu.cache.ttlSeconds", 300) * 1000;
 
     private final BookDAO bookDAO;
     private final NovelDAO novelDAO;
+    private final CatalogCache<Book> booksCache;
+    private final CatalogCache<Novel> novelsCache;
+    private final AuthorIndex bookAuthors;
+    private final AuthorIndex novelAuthors;
+    private final SearchIndex searchIndex;
+    private final AvailabilityLedger availability;
 
     public LibraryManager(BookDAO bookDAO, NovelDAO novelDAO) {
         this.bookDAO = bookDAO;
         this.novelDAO = novelDAO;
+        this.booksCache = new CatalogCache<>("books", CACHE_MAX_ITEMS, CACHE_TTL_MILLIS,
+                bookDAO::getBookById, bookDAO::getAllBooks);
+        this.novelsCache = new CatalogCache<>("novels", CACHE_MAX_ITEMS, CACHE_TTL_MILLIS,
+                novelDAO::getNovelById, novelDAO::getAllNovels);
+        Metrics.publish("Caches", "books", booksCache);
+        Metrics.publish("Caches", "novels", novelsCache);
+        this.bookAuthors = new AuthorIndex(sink -> bookDAO.streamAllBooks(book ->
+                sink.accept(book.getId(), book.getAuthor())));
+        this.novelAuthors = new AuthorIndex(sink -> novelDAO.streamAllNovels(novel ->
+                sink.accept(novel.getId(), novel.getAuthor())));
+        SearchIndex.Loader catalog = sink -> {
+            bookDAO.streamAllBooks(sink);
+            novelDAO.streamAllNovels(sink);
+        };
+        this.searchIndex = new SearchIndex(catalog);
+        this.availability = new AvailabilityLedger(bookDAO::getBookById, novelDAO::getNovelById,
+                catalog);
+    }
+
+    /**
+     * Builds the search index, call it at startup so the first search doesn't have to
+     */
+    public void loadSearchIndex() {
+        METER.run("loadSearchIndex", () -> {
+            try {
+                searchIndex.load();
+            } catch (SQLException e) {
+                System.err.println("Couldn't build the search index, " + e.getLocalizedMessage());
+            }
+        });
+    }
+
+    /**
+     * Reads the copies of every item into the availability ledger, call it at startup
+     */
+    public void loadAvailability() {
+        METER.run("loadAvailability", () -> {
+            try {
+                availability.load();
+            } catch (SQLException e) {
+                System.err.println("Couldn't load the availability of the items, " +
+                        e.getLocalizedMessage());
+            }
+        });
+    }
+
+    /**
+     * Keyword search over title, author and field/genre of books and novels
+     *
+     * @return up to limit items, best match first
+     */
+    public List<LibraryItem> search(String query, int limit) {
+        return METER.call("search", () -> {
+            List<LibraryItem> items = new ArrayList<>();
+            try {
+                for (SearchHit hit : searchIndex.search(query, limit)) {
+                    LibraryItem item = hit.getType() == Book.class ? booksCache.get(hit.getId()) :
+                            novelsCache.get(hit.getId());
+                    if (item != null) {
+                        items.add(availability.live(item));
+                    }
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            return items;
+        });
     }
 
     public List<Book> getAllBooks() {
-        // TODO: Filter unavailable items for users
-        try {
-            return bookDAO.getAllBooks();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return null;
+        return METER.call("getAllBooks", () -> {
+            // TODO: Filter unavailable items for users
+            try {
+                return availability.live(booksCache.getAll());
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            return null;
+        });
     }
 
     public List<Novel> getAllNovels() {
-        try {
-            return novelDAO.getAllNovels();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return null;
+        return METER.call("getAllNovels", () -> {
+            try {
+                return availability.live(novelsCache.getAll());
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            return null;
+        });
     }
 
-    public Set<String> getAuthorsList(List<? extends LibraryItem> items) {
-        return items.stream().map(LibraryItem::getAuthor).collect(Collectors.toSet());
+    /**
+     * @return the book, or null if it doesn't exist
+     */
+    public Book getBook(int bookId) throws SQLException {
+        return METER.call("getBook", () -> live(booksCache.get(bookId)));
     }
 
-    public List<? extends LibraryItem> filterItemsByAuthor(List<? extends LibraryItem> items,
-                                                           String author) {
-        return items.stream().filter(item -> item.getAuthor().equalsIgnoreCase(author)).toList();
+    public Novel getNovel(int novelId) throws SQLException {
+        return METER.call("getNovel", () -> live(novelsCache.get(novelId)));
     }
 
-    public void registerItem(LibraryItem item) {
-        try {
-            if (item.getClass().equals(Book.class)) {
-                bookDAO.createBook((Book) item);
-            } else if (item.getClass().equals(Novel.class)) {
-                novelDAO.createNovel((Novel) item);
-            }
-            System.out.println("Successful item registration " + item);
-        } catch (SQLException e) {
-            System.out.println("Couldn't register item, " + e.getLocalizedMessage());
+    public List<Book> getBooksPage(int afterId, int pageSize) {
+        return METER.call("getBooksPage", () -> {
+            try {
+                return availability.live(bookDAO.getBooksPage(afterId, pageSize));
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            return List.of();
+        });
+    }
+
+    public List<Novel> getNovelsPage(int afterId, int pageSize) {
+        return METER.call("getNovelsPage", () -> {
+            try {
+                return availability.live(novelDAO.getNovelsPage(afterId, pageSize));
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            return List.of();
+        });
+    }
+
+    public List<String> getBookAuthors() {
+        return METER.call("getBookAuthors", () -> {
+            try {
+                return bookAuthors.getAuthors();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            return List.of();
+        });
+    }
+
+    public List<String> getNovelAuthors() {
+        return METER.call("getNovelAuthors", () -> {
+            try {
+                return novelAuthors.getAuthors();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            return List.of();
+        });
+    }
+
+    /**
+     * @return the book authors whose name starts with the prefix, ignoring case
+     */
+    public List<String> getBookAuthorsStartingWith(String prefix) {
+        return METER.call("getBookAuthorsStartingWith", () -> {
+            try {
+                return bookAuthors.getAuthorsStartingWith(prefix);
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            return List.of();
+        });
+    }
+
+    public List<String> getNovelAuthorsStartingWith(String prefix) {
+        return METER.call("getNovelAuthorsStartingWith", () -> {
+            try {
+                return novelAuthors.getAuthorsStartingWith(prefix);
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            return List.of();
+        });
+    }
+
+    public List<Book> filterBooksByAuthor(String author) {
+        return METER.call("filterBooksByAuthor", () -> {
+            try {
+                return getByIds(booksCache, bookAuthors.idsOf(author));
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            return List.of();
+        });
+    }
+
+    public List<Novel> filterNovelsByAuthor(String author) {
+        return METER.call("filterNovelsByAuthor", () -> {
+            try {
+                return getByIds(novelsCache, novelAuthors.idsOf(author));
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            return List.of();
+        });
+    }
+
+    private <T extends LibraryItem> List<T> getByIds(CatalogCache<T> cache, List<Integer> ids)
+            throws SQLException {
+        List<T> items = new ArrayList<>(ids.size());
+        for (int id : ids) {
+            T item = cache.get(id);
+            if (item != null) {
+                items.add(availability.live(item));
+            }
         }
+        return items;
+    }
+
+    private <T extends LibraryItem> T live(T item) {
+        return item == null ? null : availability.live(item);
+    }
+
+    public void registerItem(LibraryItem item) {
+        METER.run("registerItem", () -> {
+            try {
+                if (item.getClass().equals(Book.class)) {
+                    bookDAO.createBook((Book) item);
+                    booksCache.put((Book) item);
+                    bookAuthors.put(item.getId(), item.getAuthor());
+                    searchIndex.put(item);
+                } else if (item.getClass().equals(Novel.class)) {
+                    novelDAO.createNovel((Novel) item);
+                    novelsCache.put((Novel) item);
+                    novelAuthors.put(item.getId(), item.getAuthor());
+                    searchIndex.put(item);
+                }
+                availability.put(item);
+                System.out.println("Successful item registration " + item);
+            } catch (SQLException e) {
+                System.out.println("Couldn't register item, " + e.getLocalizedMessage());
+            }
+        });
     }
 
     public void updateItem(LibraryItem item) {
-        try {
-            if (item.getClass().equals(Book.class)) {
-                bookDAO.updateBook((Book) item);
-            } else if (item.getClass().equals(Novel.class)) {
-                novelDAO.updateNovel((Novel) item);
-            }
-            System.out.println("Successful item update " + item);
-        } catch (SQLException e) {
-            System.out.println("Couldn't update item, " + e.getLocalizedMessage());
-        }
+        METER.run("updateItem", () -> {
+            try {
+                if (item.getClass().equals(Book.class)) {
+                    bookDAO.updateBook((Book) item);
+                    booksCache.put((Book) item);
+                    bookAuthors.put(item.getId(), item.getAuthor());
+                    searchIndex.put(item);
+                } else if (item.getClass().equals(Novel.class)) {
+                    novelDAO.updateNovel((Novel) item);
+                    novelsCache.put((Novel) item);
+                    novelAuthors.put(item.getId(), item.getAuthor());
+                    searchIndex.put(item);
+                }
+                availability.put(item);
+                System.out.println("Successful item update " + item);
+            } catch (SQLException e) {
+                System.out.println("Couldn't update item, " + e.getLocalizedMessage());
+            }
+        });
     }
 
     public void deleteBook(int bookId) {
-        try {
-            bookDAO.deleteBook(bookId);
-        } catch (SQLException e) {
-            System.out.println("Couldn't delete book, " + e.getLocalizedMessage());
-        }
+        METER.run("deleteBook", () -> {
+            try {
+                bookDAO.deleteBook(bookId);
+                booksCache.remove(bookId);
+                bookAuthors.remove(bookId);
+                searchIndex.removeBook(bookId);
+                availability.removeBook(bookId);
+            } catch (SQLException e) {
+                System.out.println("Couldn't delete book, " + e.getLocalizedMessage());
+            }
+        });
     }
 
     public void deleteNovel(int novelId) {
-        try {
-            novelDAO.deleteNovel(novelId);
-        } catch (SQLException e) {
-            System.out.println("Couldn't delete novel, " + e.getLocalizedMessage());
-        }
+        METER.run("deleteNovel", () -> {
+            try {
+                novelDAO.deleteNovel(novelId);
+                novelsCache.remove(novelId);
+                novelAuthors.remove(novelId);
+                searchIndex.removeNovel(novelId);
+                availability.removeNovel(novelId);
+            } catch (SQLException e) {
+                System.out.println("Couldn't delete novel, " + e.getLocalizedMessage());
+            }
+        });
+    }
+
+    /**
+     * Forgets every cached item and index, for changes made in bulk (e.g. imports). They are
+     * loaded again on next use.
+     */
+    public void reloadCatalog() {
+        METER.run("reloadCatalog", () -> {
+            booksCache.clear();
+            novelsCache.clear();
+            bookAuthors.clear();
+            novelAuthors.clear();
+            searchIndex.clear();
+            availability.clear();
+        });
+    }
+
+    /**
+     * The live copies of every item, borrowings reserve and release them here
+     */
+    public AvailabilityLedger getAvailability() {
+        return availability;
     }
 }
@@ -0,0 +1,129 @@
+package com.davidbonelo.services;
+
+import com.davidbonelo.metrics.Meter;
+import com.davidbonelo.metrics.Metrics;
+import com.davidbonelo.models.Borrowing;
+import com.davidbonelo.models.BorrowingStatus;
+import com.davidbonelo.persistance.BorrowingDAO;
+import com.davidbonelo.persistance.BorrowingFilter;
+
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the BORROWED borrowings past their return date in memory, so employees can list them
+ * without a query.
+ * <p>
+ * Every {@link #scan()} only reads the borrowings that became overdue since the last one: those
+ * with a return date from the watermark (the day of the last scan) to yesterday, a range on the
+ * (status, returned_date) index. The first scan after a start reads all of them. Borrowings that
+ * are finalized, deleted or confirmed late are reported by BorrowingsService, as they don't fall
+ * in the scanned range.
+ */
+public class OverdueScanner {
+    private static final Meter METER = Metrics.meter(OverdueScanner.class);
+    private final BorrowingDAO borrowingDAO;
+    private final Clock clock;
+    private final Map<Integer, Borrowing> overdue = new ConcurrentHashMap<>();
+    // Every borrowing due before this day was scanned, null before the first scan
+    private volatile LocalDate watermark;
+    private ScheduledExecutorService scheduler;
+
+    public OverdueScanner(BorrowingDAO borrowingDAO) {
+        this(borrowingDAO, Clock.systemDefaultZone());
+    }
+
+    public OverdueScanner(BorrowingDAO borrowingDAO, Clock clock) {
+        this.borrowingDAO = borrowingDAO;
+        this.clock = clock;
+    }
+
+    /**
+     * Scans now and then every interval, on a background thread
+     */
+    public synchronized void start(Duration interval) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "pingu-overdue-scanner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                scan();
+            } catch (SQLException e) {
+                System.err.println("Couldn't look for overdue borrowings, " + e.getMessage());
+            }
+        }, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Adds the borrowings that became overdue since the last scan
+     *
+     * @return how many were found
+     */
+    public synchronized int scan() throws SQLException {
+        return METER.call("scan", () -> {
+            LocalDate today = LocalDate.now(clock);
+            if (today.equals(watermark)) {
+                return 0; // nothing can have become overdue since
+            }
+            BorrowingFilter filter = new BorrowingFilter().setStatus(BorrowingStatus.BORROWED)
+                    .setReturnBetween(watermark, today.minusDays(1));
+            List<Borrowing> found = borrowingDAO.findBorrowings(filter);
+            for (Borrowing borrowing : found) {
+                overdue.put(borrowing.getId(), borrowing);
+            }
+            watermark = today;
+            return found.size();
+        });
+    }
+
+    /**
+     * @return the overdue borrowings, the most late first
+     */
+    public List<Borrowing> getOverdue() {
+        return overdue.values().stream()
+                .sorted(Comparator.comparing(Borrowing::getReturnDate)
+                        .thenComparing(Borrowing::getId))
+                .toList();
+    }
+
+    /**
+     * Adds the borrowing if it was confirmed after its return date and a scan already covered
+     * that date
+     */
+    public synchronized void borrowingConfirmed(Borrowing borrowing) {
+        LocalDate scanned = watermark;
+        if (borrowing.getStatus() == BorrowingStatus.BORROWED && scanned != null &&
+                borrowing.getReturnDate().isBefore(scanned)) {
+            overdue.put(borrowing.getId(), borrowing);
+        }
+    }
+
+    /**
+     * The borrowing was finalized or deleted, it's no longer overdue. Waits for a scan in
+     * progress, which may have read the borrowing before it changed.
+     */
+    public synchronized void borrowingClosed(int borrowingId) {
+        overdue.remove(borrowingId);
+    }
+}
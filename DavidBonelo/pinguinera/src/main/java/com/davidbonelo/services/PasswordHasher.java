@@ -0,0 +1,92 @@
+package com.davidbonelo.services;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Salted PBKDF2 password hashes, stored as "pbkdf2$iterations$salt$hash". The iterations set the
+ * cost of every login: more is slower to brute force but also takes more CPU per login, hashes
+ * made with fewer iterations are upgraded when their user logs in.
+ * <p>
+ * Passwords stored before hashing (plain text) are still accepted, so they can be upgraded too.
+ */
+public class PasswordHasher {
+    // OWASP recommendation for PBKDF2-HMAC-SHA256 (2023), about 0.3s per login
+    public static final int DEFAULT_ITERATIONS = 600_000;
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String PREFIX = "pbkdf2";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private final int iterations;
+    private final SecureRandom random = new SecureRandom();
+    // Checked for unknown emails, so they take as long as a wrong password
+    private final String unknownUserHash;
+
+    public PasswordHasher(int iterations) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("iterations must be at least 1");
+        }
+        this.iterations = iterations;
+        this.unknownUserHash = hash("unknown user");
+    }
+
+    public String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        Base64.Encoder base64 = Base64.getEncoder().withoutPadding();
+        return PREFIX + "$" + iterations + "$" + base64.encodeToString(salt) + "$" +
+                base64.encodeToString(pbkdf2(password, salt, iterations));
+    }
+
+    /**
+     * @param stored what {@link #hash(String)} returned, or a plain text password
+     */
+    public boolean verify(String password, String stored) {
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4 || !parts[0].equals(PREFIX)) {
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8),
+                    stored.getBytes(StandardCharsets.UTF_8));
+        }
+        try {
+            Base64.Decoder base64 = Base64.getDecoder();
+            byte[] expected = base64.decode(parts[3]);
+            return MessageDigest.isEqual(expected, pbkdf2(password, base64.decode(parts[2]),
+                    Integer.parseInt(parts[1])));
+        } catch (IllegalArgumentException e) {
+            return false; // corrupted hash
+        }
+    }
+
+    /**
+     * Spends the time of a verification, for logins of unknown users
+     */
+    public void verifyNothing(String password) {
+        verify(password, unknownUserHash);
+    }
+
+    /**
+     * @return true if the stored password is plain text or hashed with other iterations
+     */
+    public boolean needsRehash(String stored) {
+        String[] parts = stored.split("\\$");
+        return parts.length != 4 || !parts[0].equals(PREFIX) ||
+                !parts[1].equals(String.valueOf(iterations));
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " isn't available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.davidbonelo.services;
+
+import com.davidbonelo.models.LibraryItem;
+
+/**
+ * An item found by {@link SearchIndex}, hits compare by matched words and then by score
+ */
+public class SearchHit implements Comparable<SearchHit> {
+    private final Class<? extends LibraryItem> type;
+    private final int id;
+    private final int matchedWords;
+    private final float score;
+
+    public SearchHit(Class<? extends LibraryItem> type, int id, int matchedWords, float score) {
+        this.type = type;
+        this.id = id;
+        this.matchedWords = matchedWords;
+        this.score = score;
+    }
+
+    public Class<? extends LibraryItem> getType() {
+        return type;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getMatchedWords() {
+        return matchedWords;
+    }
+
+    public float getScore() {
+        return score;
+    }
+
+    @Override
+    public int compareTo(SearchHit other) {
+        if (matchedWords != other.matchedWords) {
+            return Integer.compare(matchedWords, other.matchedWords);
+        }
+        return Float.compare(score, other.score);
+    }
+
+    @Override
+    public String toString() {
+        return "SearchHit{" + "type=" + type.getSimpleName() + ", id=" + id + ", matchedWords=" +
+                matchedWords + ", score=" + score + '}';
+    }
+}
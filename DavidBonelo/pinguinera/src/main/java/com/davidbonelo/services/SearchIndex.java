@@ -0,0 +1,436 @@
+package com.davidbonelo.services;
+
+import com.davidbonelo.models.Book;
+import com.davidbonelo.models.LibraryItem;
+import com.davidbonelo.models.Novel;
+
+import java.sql.SQLException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * In memory inverted index over the text of books (title, author, field) and novels (title,
+ * author, genre). Words are lower-cased and accent-folded, so "accion" finds "Acción".
+ * <p>
+ * Documents get an internal number (ordinal) that only grows, so the postings of every word stay
+ * sorted by just appending. Updating or deleting an item marks its old ordinal as dead, dead
+ * ordinals are skipped on search and dropped once they are a good part of the index.
+ */
+public class SearchIndex {
+    private static final float TITLE_WEIGHT = 3f;
+    private static final float AUTHOR_WEIGHT = 2f;
+    private static final float TOPIC_WEIGHT = 1f;
+    private static final int MIN_DEAD_TO_COMPACT = 1024;
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Set<String> STOP_WORDS = Set.of("a", "al", "and", "con", "de", "del",
+            "el", "en", "la", "las", "lo", "los", "of", "para", "por", "the", "un", "una", "y");
+
+    private final Loader loader;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private boolean loaded;
+
+    private final NavigableMap<String, Postings> postings = new TreeMap<>();
+    private final Map<Integer, Integer> bookOrdinals = new HashMap<>();
+    private final Map<Integer, Integer> novelOrdinals = new HashMap<>();
+    // ordinal -> item id, negative ids are novels
+    private int[] docs = new int[1024];
+    private boolean[] dead = new boolean[1024];
+    private int docCount;
+    private int deadCount;
+
+    public SearchIndex(Loader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Splits the text in folded words: no accents, lower case, no stop words
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        String folded = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD))
+                .replaceAll("").toLowerCase(Locale.ROOT);
+        for (String token : SEPARATORS.split(folded)) {
+            if (!token.isEmpty() && !STOP_WORDS.contains(token)) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Adds or replaces the item. Ignored until the index is loaded, the load will find the item
+     * in the database.
+     */
+    public void put(LibraryItem item) {
+        lock.writeLock().lock();
+        try {
+            if (loaded) {
+                add(item);
+                compactIfNeeded();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeBook(int bookId) {
+        remove(bookOrdinals, bookId);
+    }
+
+    public void removeNovel(int novelId) {
+        remove(novelOrdinals, novelId);
+    }
+
+    private void remove(Map<Integer, Integer> ordinals, int id) {
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = ordinals.remove(id);
+            if (ordinal != null) {
+                markDead(ordinal);
+                compactIfNeeded();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drops everything, the index is loaded again on next use
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            bookOrdinals.clear();
+            novelOrdinals.clear();
+            docCount = 0;
+            deadCount = 0;
+            loaded = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Loads the index now instead of on the first search
+     */
+    public void load() throws SQLException {
+        lock.writeLock().lock();
+        try {
+            ensureLoaded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the items matching any of the query words, the last word also matches as a prefix
+     * so partial input works. Items matching more words rank first, then by the words weight
+     * (title over author over field/genre) and how rare the words are.
+     *
+     * @return up to limit hits, best first
+     */
+    public List<SearchHit> search(String query, int limit) throws SQLException {
+        List<String> words = tokenize(query);
+        if (words.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        if (!isLoaded()) {
+            load();
+        }
+        lock.readLock().lock();
+        try {
+            List<Map<String, Postings>> termsByWord = new ArrayList<>(words.size());
+            long postingsRead = 0;
+            for (int w = 0; w < words.size(); w++) {
+                String word = words.get(w);
+                Map<String, Postings> terms = w == words.size() - 1 ?
+                        postings.subMap(word, true, word + Character.MAX_VALUE, false) :
+                        single(word);
+                termsByWord.add(terms);
+                for (Postings list : terms.values()) {
+                    postingsRead += list.size;
+                }
+            }
+            // Only the documents in the postings read get a score, not the whole index
+            Scores scores = new Scores((int) Math.min(postingsRead, docCount), docCount);
+            for (int w = 0; w < words.size(); w++) {
+                String word = words.get(w);
+                for (Map.Entry<String, Postings> term : termsByWord.get(w).entrySet()) {
+                    Postings list = term.getValue();
+                    float idf = (float) Math.log(1 + (double) (docCount - deadCount) / list.size);
+                    // exact matches of the prefix beat longer words
+                    float boost = term.getKey().equals(word) ? 1f : 0.5f;
+                    for (int i = 0; i < list.size; i++) {
+                        int doc = list.docs[i];
+                        if (!dead[doc]) {
+                            scores.add(doc, list.weights[i] * idf * boost, w);
+                        }
+                    }
+                }
+            }
+            return topHits(scores, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docCount - deadCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean isLoaded() {
+        lock.readLock().lock();
+        try {
+            return loaded;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Map<String, Postings> single(String word) {
+        Postings list = postings.get(word);
+        return list == null ? Map.of() : Map.of(word, list);
+    }
+
+    private List<SearchHit> topHits(Scores scores, int limit) {
+        // min heap, the root is the worst of the best hits found so far
+        PriorityQueue<SearchHit> best = new PriorityQueue<>(limit + 1);
+        for (int slot = 0; slot < scores.matched.length; slot++) {
+            int doc = scores.doc(slot);
+            if (doc < 0) {
+                continue;
+            }
+            int matched = scores.matched[slot];
+            float score = scores.scores[slot];
+            if (best.size() == limit) {
+                SearchHit worst = best.peek();
+                if (worst.getMatchedWords() > matched || (worst.getMatchedWords() == matched &&
+                        worst.getScore() >= score)) {
+                    continue;
+                }
+            }
+            int id = docs[doc];
+            best.add(new SearchHit(id < 0 ? Novel.class : Book.class, Math.abs(id), matched,
+                    score));
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        List<SearchHit> hits = new ArrayList<>(best);
+        hits.sort(Collections.reverseOrder());
+        return hits;
+    }
+
+    private void ensureLoaded() throws SQLException {
+        if (!loaded) {
+            try {
+                loader.load(this::add);
+            } catch (SQLException | RuntimeException e) {
+                clear(); // don't keep half an index
+                throw e;
+            }
+            loaded = true;
+        }
+    }
+
+    private void add(LibraryItem item) {
+        Map<Integer, Integer> ordinals;
+        String topic;
+        int docId;
+        if (item instanceof Novel novel) {
+            ordinals = novelOrdinals;
+            topic = novel.getGenre();
+            docId = -novel.getId();
+        } else if (item instanceof Book book) {
+            ordinals = bookOrdinals;
+            topic = book.getField();
+            docId = book.getId();
+        } else {
+            return;
+        }
+        Integer previous = ordinals.get(item.getId());
+        if (previous != null) {
+            markDead(previous);
+        }
+
+        Map<String, Float> weights = new LinkedHashMap<>();
+        tokenize(item.getTitle()).forEach(t -> weights.merge(t, TITLE_WEIGHT, Float::sum));
+        tokenize(item.getAuthor()).forEach(t -> weights.merge(t, AUTHOR_WEIGHT, Float::sum));
+        tokenize(topic).forEach(t -> weights.merge(t, TOPIC_WEIGHT, Float::sum));
+
+        int ordinal = newOrdinal(docId);
+        ordinals.put(item.getId(), ordinal);
+        weights.forEach((term, weight) ->
+                postings.computeIfAbsent(term, t -> new Postings()).add(ordinal, weight));
+    }
+
+    private int newOrdinal(int docId) {
+        if (docCount == docs.length) {
+            docs = Arrays.copyOf(docs, docCount * 2);
+            dead = Arrays.copyOf(dead, docCount * 2);
+        }
+        docs[docCount] = docId;
+        dead[docCount] = false;
+        return docCount++;
+    }
+
+    private void markDead(int ordinal) {
+        if (!dead[ordinal]) {
+            dead[ordinal] = true;
+            deadCount++;
+        }
+    }
+
+    /**
+     * Renumbers the live documents once dead ones are a quarter of the index, keeping the
+     * postings short and the idf close to the real one
+     */
+    private void compactIfNeeded() {
+        if (deadCount < MIN_DEAD_TO_COMPACT || deadCount * 4 < docCount) {
+            return;
+        }
+        int[] remap = new int[docCount];
+        int live = 0;
+        for (int doc = 0; doc < docCount; doc++) {
+            if (dead[doc]) {
+                remap[doc] = -1;
+            } else {
+                remap[doc] = live;
+                docs[live] = docs[doc];
+                dead[live] = false;
+                live++;
+            }
+        }
+        postings.values().removeIf(list -> list.compact(remap) == 0);
+        bookOrdinals.replaceAll((id, ordinal) -> remap[ordinal]);
+        novelOrdinals.replaceAll((id, ordinal) -> remap[ordinal]);
+        docCount = live;
+        deadCount = 0;
+    }
+
+    /**
+     * Documents (ordinals) containing a word, in ascending order, with the word weight in each
+     */
+    private static class Postings {
+        int[] docs = new int[2];
+        float[] weights = new float[2];
+        int size;
+
+        void add(int doc, float weight) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                weights = Arrays.copyOf(weights, size * 2);
+            }
+            docs[size] = doc;
+            weights[size] = weight;
+            size++;
+        }
+
+        int compact(int[] remap) {
+            int live = 0;
+            for (int i = 0; i < size; i++) {
+                int doc = remap[docs[i]];
+                if (doc >= 0) {
+                    docs[live] = doc;
+                    weights[live] = weights[i];
+                    live++;
+                }
+            }
+            size = live;
+            return size;
+        }
+    }
+
+    /**
+     * Score of every document a query matched, in an open addressing table sized for the
+     * documents it can match, so a query costs what its postings cost. When it can match most
+     * of the index the ordinal is the slot, which is smaller than a table with free slots.
+     */
+    private static class Scores {
+        // ordinal + 1 in every used slot, 0 in the free ones. Null when direct.
+        final int[] docs;
+        final float[] scores;
+        final int[] matched;
+        // a doc counts once per query word even if several terms start with it
+        final int[] lastWord;
+        final boolean direct;
+        final int mask;
+        final int bits;
+
+        Scores(int maxDocs, int docCount) {
+            int capacity = Integer.highestOneBit(Math.max(8, maxDocs) * 2 - 1) << 1;
+            direct = capacity >= docCount;
+            if (direct) {
+                capacity = docCount;
+            }
+            docs = direct ? null : new int[capacity];
+            scores = new float[capacity];
+            matched = new int[capacity];
+            lastWord = new int[capacity];
+            mask = capacity - 1;
+            bits = Integer.numberOfTrailingZeros(capacity);
+        }
+
+        /**
+         * @return the ordinal in the slot, -1 if it's free
+         */
+        int doc(int slot) {
+            if (direct) {
+                return matched[slot] == 0 ? -1 : slot;
+            }
+            return docs[slot] - 1;
+        }
+
+        void add(int doc, float score, int word) {
+            int slot = direct ? doc : slot(doc);
+            scores[slot] += score;
+            if (lastWord[slot] != word + 1) {
+                lastWord[slot] = word + 1;
+                matched[slot]++;
+            }
+        }
+
+        private int slot(int doc) {
+            // Postings are in ordinal order, so neighbour ordinals go to neighbour slots while
+            // the high bits spread the ones that would collide
+            int slot = (doc ^ (doc >>> bits)) & mask;
+            while (docs[slot] != 0 && docs[slot] != doc + 1) {
+                slot = (slot + 1) & mask;
+            }
+            docs[slot] = doc + 1;
+            return slot;
+        }
+    }
+
+    /**
+     * Feeds every book and novel of the catalog to the sink
+     */
+    @FunctionalInterface
+    public interface Loader {
+        void load(Consumer<LibraryItem> sink) throws SQLException;
+    }
+}
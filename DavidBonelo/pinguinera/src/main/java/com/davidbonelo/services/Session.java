@@ -0,0 +1,87 @@
+package com.davidbonelo.services;
+
+import com.davidbonelo.models.LibraryItem;
+import com.davidbonelo.models.User;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What the library remembers of a logged user between calls: who they are and the items they
+ * picked to borrow. Opened and expired by the {@link SessionRegistry}.
+ */
+public class Session {
+    private final String id;
+    private final User user;
+    // By type and id, picking the same item twice keeps one
+    private final Map<String, LibraryItem> cart = new LinkedHashMap<>();
+    private final long created;
+    private volatile long lastAccess;
+    // Until when its reads go to the primary database, see RoutingDataSource
+    private volatile long readOwnWritesUntil;
+
+    Session(String id, User user, long now) {
+        this.id = id;
+        this.user = user;
+        this.created = now;
+        this.lastAccess = now;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    /**
+     * @return a copy of the items to borrow, in the order they were added
+     */
+    public synchronized List<LibraryItem> getCart() {
+        return new ArrayList<>(cart.values());
+    }
+
+    public synchronized void addToCart(LibraryItem item) {
+        cart.put(cartKey(item), item);
+    }
+
+    public synchronized void removeFromCart(Collection<? extends LibraryItem> items) {
+        items.forEach(item -> cart.remove(cartKey(item)));
+    }
+
+    public synchronized void clearCart() {
+        cart.clear();
+    }
+
+    /**
+     * Sends the reads of the session to the primary database until the given time (millis), so
+     * it sees what it wrote even if the replica hasn't caught up yet
+     */
+    public void readOwnWritesUntil(long until) {
+        readOwnWritesUntil = Math.max(readOwnWritesUntil, until);
+    }
+
+    public boolean isReadingOwnWrites(long now) {
+        return now < readOwnWritesUntil;
+    }
+
+    long getCreated() {
+        return created;
+    }
+
+    long getLastAccess() {
+        return lastAccess;
+    }
+
+    void touch(long now) {
+        lastAccess = now;
+    }
+
+    private static String cartKey(LibraryItem item) {
+        return item.getClass().getSimpleName() + ":" + item.getId();
+    }
+}
@@ -0,0 +1,126 @@
+package com.davidbonelo.services;
+
+import com.davidbonelo.models.User;
+
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The open sessions, safe to share between threads. Looking up a session doesn't lock anything,
+ * only opening one when the registry is full does.
+ * <p>
+ * Sessions not used for the idle timeout expire, and so do the ones opened longer than the max
+ * lifetime ago, even if they are still in use. When all the places are taken the expired sessions
+ * are dropped and, if that isn't enough, the least recently used one.
+ */
+public class SessionRegistry {
+    private static final int ID_BYTES = 24;
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final int maxSessions;
+    private final long idleTimeoutMillis;
+    private final long maxLifetimeMillis;
+    private final Clock clock;
+
+    public SessionRegistry(int maxSessions, Duration idleTimeout, Duration maxLifetime) {
+        this(maxSessions, idleTimeout, maxLifetime, Clock.systemUTC());
+    }
+
+    public SessionRegistry(int maxSessions, Duration idleTimeout, Duration maxLifetime,
+                           Clock clock) {
+        if (maxSessions < 1) {
+            throw new IllegalArgumentException("maxSessions must be at least 1");
+        }
+        this.maxSessions = maxSessions;
+        this.idleTimeoutMillis = idleTimeout.toMillis();
+        this.maxLifetimeMillis = maxLifetime.toMillis();
+        this.clock = clock;
+    }
+
+    public Session open(User user) {
+        byte[] bytes = new byte[ID_BYTES];
+        random.nextBytes(bytes);
+        String id = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        Session session = new Session(id, user, clock.millis());
+        synchronized (this) {
+            if (sessions.size() >= maxSessions && evictIdle() == 0) {
+                sessions.values().stream().min(Comparator.comparingLong(Session::getLastAccess))
+                        .ifPresent(oldest -> sessions.remove(oldest.getId()));
+            }
+            sessions.put(id, session);
+        }
+        return session;
+    }
+
+    /**
+     * @return the session, or null if it doesn't exist or expired. Counts as a use of it
+     */
+    public Session get(String id) {
+        if (id == null) {
+            return null;
+        }
+        Session session = sessions.get(id);
+        if (session == null) {
+            return null;
+        }
+        long now = clock.millis();
+        if (expired(session, now)) {
+            sessions.remove(id, session);
+            return null;
+        }
+        session.touch(now);
+        return session;
+    }
+
+    public void close(Session session) {
+        if (session != null) {
+            sessions.remove(session.getId(), session);
+        }
+    }
+
+    /**
+     * Closes every session of the user, for when they are deleted or their role changes and the
+     * User the sessions hold is no longer right
+     *
+     * @return how many sessions were closed
+     */
+    public int closeAll(int userId) {
+        int closed = 0;
+        for (Session session : sessions.values()) {
+            if (session.getUser().getId() == userId &&
+                    sessions.remove(session.getId(), session)) {
+                closed++;
+            }
+        }
+        return closed;
+    }
+
+    /**
+     * @return how many expired sessions were dropped
+     */
+    public int evictIdle() {
+        long now = clock.millis();
+        int evicted = 0;
+        for (Session session : sessions.values()) {
+            if (expired(session, now) && sessions.remove(session.getId(), session)) {
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    private boolean expired(Session session, long now) {
+        return now - session.getLastAccess() > idleTimeoutMillis ||
+                now - session.getCreated() > maxLifetimeMillis;
+    }
+}
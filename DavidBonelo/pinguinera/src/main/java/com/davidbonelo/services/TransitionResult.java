@@ -0,0 +1,8 @@
+package com.davidbonelo.services;
+
+/**
+ * What happened to each borrowing of a bulk confirm or finalize
+ */
+public enum TransitionResult {
+    UPDATED, NOT_FOUND, WRONG_STATUS
+}
@@ -1,54 +1,123 @@
 package com.davidbonelo.services;
 
+import com.davidbonelo.metrics.Meter;
+import com.davidbonelo.metrics.Metrics;
 import com.davidbonelo.models.User;
+import com.davidbonelo.persistance.StoredCredentials;
 import com.davidbonelo.persistance.UserDAO;
 
 import java.sql.SQLException;
 import java.util.List;
 
 public class UserService {
+    private static final Meter METER = Metrics.meter(UserService.class);
     private final UserDAO userDAO;
-    private User loggedUser;
+    private final SessionRegistry sessions;
+    private final PasswordHasher hasher;
 
-    public UserService(UserDAO userDAO) {
+    public UserService(UserDAO userDAO, SessionRegistry sessions, PasswordHasher hasher) {
         this.userDAO = userDAO;
+        this.sessions = sessions;
+        this.hasher = hasher;
     }
 
-    public User login(String email, String password) {
-        try {
-            loggedUser = userDAO.validateUserCredentials(email, password);
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return loggedUser;
+    /**
+     * @return the new session of the user, or null if the credentials are wrong
+     */
+    public Session login(String email, String password) {
+        return METER.call("login", () -> {
+            try {
+                User user = authenticate(email, password);
+                if (user != null) {
+                    return sessions.open(user);
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            return null;
+        });
     }
 
-    public User getLoggedUser() {
-        return loggedUser;
+    /**
+     * Checks the credentials without opening a session. Costs a password hash, so callers should
+     * keep the session token instead of authenticating on every request. Plain text passwords and
+     * hashes of another cost are rehashed.
+     *
+     * @return the user, or null if the credentials are wrong
+     */
+    public User authenticate(String email, String password) throws SQLException {
+        return METER.call("authenticate", () -> {
+            StoredCredentials credentials = userDAO.getCredentials(email);
+            if (credentials == null) {
+                hasher.verifyNothing(password);
+                return null;
+            }
+            if (!hasher.verify(password, credentials.getPassword())) {
+                return null;
+            }
+            User user = credentials.getUser();
+            if (hasher.needsRehash(credentials.getPassword())) {
+                userDAO.updatePassword(user.getId(), hasher.hash(password));
+            }
+            return user;
+        });
     }
 
-    public void logOut() {
-        loggedUser = null;
+    /**
+     * @return the open session with that id, or null if it doesn't exist or expired
+     */
+    public Session getSession(String sessionId) {
+        return sessions.get(sessionId);
+    }
+
+    public void logOut(Session session) {
+        METER.run("logOut", () -> sessions.close(session));
     }
 
     public void register(User user, String password) throws SQLException {
-        userDAO.createUser(user, password);
+        METER.run("register", () -> userDAO.createUser(user,
+                hasher.hash(password)));
     }
 
     public List<User> getAllUsers() {
-        try {
-            return userDAO.getAllUsers();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return null;
+        return METER.call("getAllUsers", () -> {
+            try {
+                return userDAO.getAllUsers();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            return null;
+        });
+    }
+
+    public List<User> getUsersPage(int afterId, int pageSize) {
+        return METER.call("getUsersPage", () -> {
+            try {
+                return userDAO.getUsersPage(afterId, pageSize);
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            return List.of();
+        });
     }
 
+    /**
+     * A new role closes the sessions of the user, they log in again to get it
+     */
     public void updateUser(User user) throws SQLException {
-        userDAO.updateUser(user);
+        METER.run("updateUser", () -> {
+            User stored = userDAO.getUserById(user.getId());
+            userDAO.updateUser(user);
+            if (stored.getRole() != user.getRole()) {
+                sessions.closeAll(user.getId());
+            }
+        });
     }
 
     public void deleteUser(int userId) throws SQLException {
-        userDAO.softDeleteUser(userId);
+        METER.run("deleteUser", () -> {
+            userDAO.softDeleteUser(userId);
+            sessions.closeAll(userId);
+        });
     }
 }
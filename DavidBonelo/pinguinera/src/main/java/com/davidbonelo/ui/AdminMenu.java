@@ -2,22 +2,44 @@ package com.davidbonelo.ui;
 
 import com.davidbonelo.models.User;
 import com.davidbonelo.models.UserRole;
+import com.davidbonelo.reports.CirculationGroup;
+import com.davidbonelo.reports.CirculationReport;
+import com.davidbonelo.services.CatalogExporter;
+import com.davidbonelo.services.CatalogImporter;
+import com.davidbonelo.services.ExportFormat;
+import com.davidbonelo.services.ImportOptions;
+import com.davidbonelo.services.ImportReport;
 import com.davidbonelo.services.UserService;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.SQLException;
+import java.util.Map;
 
 import static com.davidbonelo.Utils.askNumber;
 import static com.davidbonelo.Utils.askText;
+import static com.davidbonelo.Utils.printPages;
 import static com.davidbonelo.Utils.validMenuAccess;
 import static com.davidbonelo.Utils.validPermission;
 
 public class AdminMenu {
+    private static final int REPORT_ROWS = 10;
     private final UserService userService;
+    private final CatalogImporter catalogImporter;
+    private final CatalogExporter catalogExporter;
+    private final CirculationReport circulationReport;
     private final User user;
+    private final ConsoleWrites writes;
 
-    public AdminMenu(UserService userService, User user) {
+    public AdminMenu(UserService userService, CatalogImporter catalogImporter,
+                     CatalogExporter catalogExporter, CirculationReport circulationReport,
+                     User user, ConsoleWrites writes) {
         this.userService = userService;
+        this.catalogImporter = catalogImporter;
+        this.catalogExporter = catalogExporter;
+        this.circulationReport = circulationReport;
         this.user = user;
+        this.writes = writes;
     }
 
     public void menu() {
@@ -30,9 +52,13 @@ public class AdminMenu {
             int menuChoice = askNumber(menuMessage);
             switch (menuChoice) {
                 case 1 -> listUsers();
-                case 2 -> createEmployeeUser();
-                case 3 -> updateUser();
-                case 4 -> deleteUser();
+                case 2 -> writes.run(this::createEmployeeUser);
+                case 3 -> writes.run(this::updateUser);
+                case 4 -> writes.run(this::deleteUser);
+                case 5 -> writes.run(this::importCatalog);
+                case 6 -> exportTables();
+                case 7 -> showCirculation();
+                case 8 -> writes.run(this::rebuildCirculation);
                 case 0 -> {
                     return;
                 }
@@ -44,15 +70,76 @@ public class AdminMenu {
     private String buildMenuMessage(User user) {
         final StringBuilder menuMessage = new StringBuilder("\nAdmin menu:");
         if (validPermission(user, UserRole.ADMINISTRATOR)) {
-            menuMessage.append(" 1. List users | 2. Create employee user | 3. Update user | 4. " + "Delete user |");
+            menuMessage.append(" 1. List users | 2. Create employee user | 3. Update user | 4. " +
+                    "Delete user | 5. Import catalog | 6. Export tables |");
+            menuMessage.append("\n7. Circulation report | 8. Rebuild circulation statistics |");
         }
         menuMessage.append(" 0. Back");
         return menuMessage.toString();
     }
 
+    private void importCatalog() {
+        Path file = Path.of(askText("Path of the CSV or JSON lines file to import: "));
+        ImportOptions options = new ImportOptions();
+        if (askNumber("1. Continue the previous import of this file | 2. Import it from the " +
+                "start") == 2) {
+            options.setResume(false);
+        }
+        try {
+            ImportReport report = catalogImporter.importFile(file, options);
+            System.out.println("Import finished: " + report);
+            if (report.getRejected() > 0) {
+                System.out.println("Rejected rows are in " + options.getErrorFile(file));
+            }
+        } catch (IOException | SQLException e) {
+            System.out.println("Couldn't import the catalog, run it again to continue. " +
+                    e.getLocalizedMessage());
+        }
+    }
+
+    private void exportTables() {
+        Path directory = Path.of(askText("Directory where to write the files: "));
+        ExportFormat format = askNumber("1. CSV | 2. JSON lines") == 2 ? ExportFormat.JSON_LINES :
+                ExportFormat.CSV;
+        boolean gzip = askNumber("1. Compress with gzip | 2. Don't compress") == 1;
+        try {
+            long start = System.currentTimeMillis();
+            Map<String, Long> rows = catalogExporter.exportAll(directory, format, gzip);
+            System.out.println("Export finished in " + (System.currentTimeMillis() - start) +
+                    "ms, rows per table: " + rows);
+        } catch (IOException | SQLException e) {
+            System.out.println("Couldn't export the tables, " + e.getLocalizedMessage());
+        }
+    }
+
+    private void showCirculation() {
+        try {
+            System.out.println("Most borrowed titles:");
+            circulationReport.getTopTitles(REPORT_ROWS).forEach(System.out::println);
+            for (CirculationGroup group : CirculationGroup.values()) {
+                System.out.println("Items borrowed by " + group.name().toLowerCase() + ":");
+                circulationReport.getTopGroups(group, REPORT_ROWS).forEach(System.out::println);
+            }
+            System.out.printf("Average loan: %.1f days%n", circulationReport.getAverageLoanDays());
+        } catch (SQLException e) {
+            System.out.println("Couldn't read the circulation statistics, " +
+                    e.getLocalizedMessage());
+        }
+    }
+
+    private void rebuildCirculation() {
+        try {
+            circulationReport.rebuild();
+            System.out.println("Circulation statistics rebuilt");
+        } catch (SQLException e) {
+            System.out.println("Couldn't rebuild the circulation statistics, " +
+                    e.getLocalizedMessage());
+        }
+    }
+
     private void listUsers() {
         System.out.println("List of users: ");
-        userService.getAllUsers().forEach(System.out::println);
+        printPages(userService::getUsersPage, User::getId);
     }
 
     private void createEmployeeUser() {
@@ -5,24 +5,34 @@ import com.davidbonelo.models.User;
 import com.davidbonelo.models.UserRole;
 import com.davidbonelo.services.BorrowingsService;
 import com.davidbonelo.services.LibraryManager;
+import com.davidbonelo.services.Session;
 
 import java.sql.SQLException;
+import java.util.List;
 
 import static com.davidbonelo.Utils.askNumber;
 import static com.davidbonelo.Utils.askText;
+import static com.davidbonelo.Utils.printPages;
 import static com.davidbonelo.Utils.validMenuAccess;
 import static com.davidbonelo.Utils.validPermission;
 
 public class BooksMenu {
     private final LibraryManager libraryManager;
     private final BorrowingsService borrowingsService;
+    private final Session session;
+    private final ConsoleWrites writes;
     private final User user;
 
+    /**
+     * @param session of the logged user, null if nobody is
+     */
     public BooksMenu(LibraryManager libraryManager, BorrowingsService borrowingsService,
-                     User user) {
+                     Session session, ConsoleWrites writes) {
         this.libraryManager = libraryManager;
         this.borrowingsService = borrowingsService;
-        this.user = user;
+        this.session = session;
+        this.writes = writes;
+        this.user = session == null ? null : session.getUser();
     }
 
     public void menu() {
@@ -35,9 +45,9 @@ public class BooksMenu {
                 case 2 -> listAuthors();
                 case 3 -> searchByAuthor();
                 case 4 -> addToBorrowing();
-                case 5 -> registerBook();
-                case 6 -> updateBook();
-                case 7 -> deleteBook();
+                case 5 -> writes.run(this::registerBook);
+                case 6 -> writes.run(this::updateBook);
+                case 7 -> writes.run(this::deleteBook);
                 case 0 -> {
                     return;
                 }
@@ -48,15 +58,20 @@ public class BooksMenu {
 
     private void searchByAuthor() {
         String author = askText("Type the name of the author you want to search: ");
-        libraryManager.filterItemsByAuthor(libraryManager.getAllBooks(), author).forEach(System.out::println);
+        List<Book> books = libraryManager.filterBooksByAuthor(author);
+        if (books.isEmpty()) {
+            System.out.println("No books by " + author + ". Authors starting with it: " +
+                    libraryManager.getBookAuthorsStartingWith(author));
+        }
+        books.forEach(System.out::println);
     }
 
     private void listBooks() {
-        libraryManager.getAllBooks().forEach(System.out::println);
+        printPages(libraryManager::getBooksPage, Book::getId);
     }
 
     private void listAuthors() {
-        libraryManager.getAuthorsList(libraryManager.getAllBooks()).forEach(System.out::println);
+        libraryManager.getBookAuthors().forEach(System.out::println);
     }
 
     private void registerBook() {
@@ -91,7 +106,8 @@ public class BooksMenu {
         }
         int bookId = askNumber("Type the id of the book you want to borrow: ");
         try {
-            borrowingsService.addBorrowingBook(bookId);
+            borrowingsService.addBorrowingBook(session, bookId);
+            session.getCart().forEach(System.out::println);
             System.out.println("Book added, go to the Borrowings menu to complete the request");
         } catch (SQLException e) {
             System.out.println("Can't borrow this book. " + e.getLocalizedMessage());
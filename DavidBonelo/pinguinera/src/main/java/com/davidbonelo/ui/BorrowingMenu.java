@@ -1,15 +1,22 @@
 package com.davidbonelo.ui;
 
 import com.davidbonelo.models.Borrowing;
+import com.davidbonelo.models.Hold;
 import com.davidbonelo.models.LibraryItem;
 import com.davidbonelo.models.User;
 import com.davidbonelo.models.UserRole;
 import com.davidbonelo.services.BorrowingsService;
+import com.davidbonelo.services.HoldsService;
+import com.davidbonelo.services.LibraryManager;
+import com.davidbonelo.services.Session;
+import com.davidbonelo.services.TransitionResult;
 
 import java.sql.SQLException;
 import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
 import static com.davidbonelo.Utils.askDate;
 import static com.davidbonelo.Utils.askNumber;
@@ -18,12 +25,22 @@ import static com.davidbonelo.Utils.validMenuAccess;
 import static com.davidbonelo.Utils.validPermission;
 
 public class BorrowingMenu {
+    private final Session session;
     private final User user;
     private final BorrowingsService borrowingsService;
+    private final HoldsService holdsService;
+    private final LibraryManager libraryManager;
+    private final ConsoleWrites writes;
 
-    public BorrowingMenu(BorrowingsService borrowingsService, User user) {
+    public BorrowingMenu(BorrowingsService borrowingsService, HoldsService holdsService,
+                         LibraryManager libraryManager, Session session,
+                         ConsoleWrites writes) {
         this.borrowingsService = borrowingsService;
-        this.user = user;
+        this.holdsService = holdsService;
+        this.libraryManager = libraryManager;
+        this.session = session;
+        this.writes = writes;
+        this.user = session.getUser();
     }
 
 
@@ -36,11 +53,15 @@ public class BorrowingMenu {
                 case 1 -> listBorrowingItems();
                 case 2 -> listBorrowings();
                 case 3 -> showDetails();
-                case 4 -> createRequest();
+                case 4 -> writes.run(this::createRequest);
                 case 5 -> searchByEmail();
-                case 6 -> confirmBorrowing();
-                case 7 -> finalizeBorrowing();
-                case 8 -> deleteBorrowing();
+                case 6 -> writes.run(this::confirmBorrowing);
+                case 7 -> writes.run(this::finalizeBorrowing);
+                case 8 -> writes.run(this::deleteBorrowing);
+                case 9 -> listOverdue();
+                case 10 -> writes.run(this::placeHold);
+                case 11 -> listHolds();
+                case 12 -> writes.run(this::cancelHold);
                 case 0 -> {
                     return;
                 }
@@ -55,7 +76,7 @@ public class BorrowingMenu {
     }
 
     private void listBorrowingItems() {
-        Set<LibraryItem> items = borrowingsService.getItemsToBorrow();
+        List<LibraryItem> items = borrowingsService.getItemsToBorrow(session);
         System.out.println("Selected items pending to confirm request: " + items.size());
         items.forEach(System.out::println);
     }
@@ -75,13 +96,56 @@ public class BorrowingMenu {
         System.out.println("Requesting selected items");
         LocalDate returnDate = askDate("Type the due date before all the items must be returned:");
         try {
-            borrowingsService.createBorrowing(new Borrowing(returnDate, user));
+            borrowingsService.createBorrowing(session, new Borrowing(returnDate, user));
             System.out.println("Successful request, find an employee to borrow the items from");
-        } catch (SQLException e) {
+        } catch (SQLException | IllegalArgumentException e) {
             System.out.println("Couldn't request the borrowing, " + e.getLocalizedMessage());
         }
     }
 
+    private void placeHold() {
+        int type = askNumber("Hold a 1. Book | 2. Novel");
+        int itemId = askNumber("Type the id of the item without available copies");
+        try {
+            LibraryItem item = type == 1 ? libraryManager.getBook(itemId) :
+                    libraryManager.getNovel(itemId);
+            if (item == null) {
+                System.out.println("Item not found");
+                return;
+            }
+            Hold hold = holdsService.placeHold(user, item);
+            System.out.println("You are number " + holdsService.getPosition(hold) +
+                    " in the queue of " + item.getTitle());
+        } catch (SQLException | IllegalArgumentException e) {
+            System.out.println("Couldn't place the hold, " + e.getLocalizedMessage());
+        }
+    }
+
+    private void listHolds() {
+        List<Hold> holds = holdsService.getHolds(user);
+        if (holds.isEmpty()) {
+            System.out.println("You have no holds");
+        }
+        for (Hold hold : holds) {
+            int position = holdsService.getPosition(hold);
+            System.out.println(hold + (position > 0 ? ", number " + position + " in the queue" :
+                    ", ready to borrow"));
+        }
+    }
+
+    private void cancelHold() {
+        int holdId = askNumber("Type the id of the hold you want to cancel");
+        try {
+            if (holdsService.cancelHold(user, holdId)) {
+                System.out.println("Hold cancelled");
+            } else {
+                System.out.println("Hold not found");
+            }
+        } catch (SQLException e) {
+            System.out.println("Couldn't cancel the hold, " + e.getLocalizedMessage());
+        }
+    }
+
     private void searchByEmail() {
         if (!validMenuAccess(user, UserRole.EMPLOYEE)) {
             return;
@@ -96,13 +160,20 @@ public class BorrowingMenu {
         if (!validMenuAccess(user, UserRole.EMPLOYEE)) {
             return;
         }
-        int borrowingId = askNumber("Type the id of the borrowing you want to confirm as " +
-                "delivered");
+        List<Integer> ids = askIds("Type the ids of the borrowings you want to confirm as " +
+                "delivered, separated by commas");
+        if (ids.isEmpty()) {
+            return;
+        }
         try {
-            borrowingsService.confirmBorrowing(user, borrowingId);
-            System.out.println("Borrowing confirmed successfully");
-        } catch (SQLException e) {
-            System.out.println("Couldn't confirm this borrowing, " + e.getLocalizedMessage());
+            if (ids.size() == 1) {
+                borrowingsService.confirmBorrowing(user, ids.get(0));
+                System.out.println("Borrowing confirmed successfully");
+            } else {
+                printResults(borrowingsService.confirmBorrowings(user, ids));
+            }
+        } catch (SQLException | IllegalArgumentException e) {
+            System.out.println("Couldn't confirm the borrowings, " + e.getLocalizedMessage());
         }
     }
 
@@ -110,13 +181,48 @@ public class BorrowingMenu {
         if (!validMenuAccess(user, UserRole.EMPLOYEE)) {
             return;
         }
-        int borrowingId = askNumber("Type the id of the borrowing you want to finalize");
+        List<Integer> ids = askIds("Type the ids of the borrowings you want to finalize, " +
+                "separated by commas");
+        if (ids.isEmpty()) {
+            return;
+        }
         try {
-            borrowingsService.finalizeBorrowing(user, borrowingId);
-            System.out.println("Borrowing finalized successfully");
-        } catch (SQLException e) {
-            System.out.println("Couldn't finalize this borrowing, " + e.getLocalizedMessage());
+            if (ids.size() == 1) {
+                borrowingsService.finalizeBorrowing(user, ids.get(0));
+                System.out.println("Borrowing finalized successfully");
+            } else {
+                printResults(borrowingsService.finalizeBorrowings(user, ids));
+            }
+        } catch (SQLException | IllegalArgumentException e) {
+            System.out.println("Couldn't finalize the borrowings, " + e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * @return the ids typed, empty if one of them isn't a number
+     */
+    private static List<Integer> askIds(String message) {
+        List<Integer> ids = new ArrayList<>();
+        for (String id : askText(message).split(",")) {
+            try {
+                ids.add(Integer.parseInt(id.trim()));
+            } catch (NumberFormatException e) {
+                System.out.println("'" + id.trim() + "' is not an id");
+                return List.of();
+            }
         }
+        return ids;
+    }
+
+    private static void printResults(Map<Integer, TransitionResult> results) {
+        results.forEach((id, result) -> {
+            String message = switch (result) {
+                case UPDATED -> "done";
+                case NOT_FOUND -> "not found";
+                case WRONG_STATUS -> "not in a status that allows it";
+            };
+            System.out.println("Borrowing " + id + ": " + message);
+        });
     }
 
     private void deleteBorrowing() {
@@ -124,7 +230,27 @@ public class BorrowingMenu {
             return;
         }
         int borrowingId = askNumber("Type the id of the borrowing you want to delete");
-        borrowingsService.deleteBorrowing(borrowingId);
+        try {
+            borrowingsService.deleteBorrowing(user, borrowingId);
+            System.out.println("Borrowing deleted successfully");
+        } catch (SQLException | IllegalArgumentException e) {
+            System.out.println("Couldn't delete the borrowing, " + e.getLocalizedMessage());
+        }
+    }
+
+    private void listOverdue() {
+        if (!validMenuAccess(user, UserRole.EMPLOYEE)) {
+            return;
+        }
+        List<Borrowing> overdue = borrowingsService.getOverdueBorrowings(user);
+        if (overdue.isEmpty()) {
+            System.out.println("No overdue borrowings");
+        }
+        LocalDate today = LocalDate.now();
+        for (Borrowing borrowing : overdue) {
+            System.out.println(borrowing + " " +
+                    ChronoUnit.DAYS.between(borrowing.getReturnDate(), today) + " days late");
+        }
     }
 
     private String buildMenuMessage(User user) {
@@ -133,8 +259,10 @@ public class BorrowingMenu {
         if (user != null) {
             menuMessage.append(" 1. List selected items | 2. List all borrowings | 3. Show " +
                     "borrowing details | 4. Confirm request |");
+            menuMessage.append(" 10. Place a hold | 11. My holds | 12. Cancel a hold |");
             if (validPermission(user, UserRole.EMPLOYEE)) {
                 menuMessage.append("\n5. Search by email | 6. Confirm borrowing | 7. Finalize " + "borrowing | 8. Delete borrowing |");
+                menuMessage.append(" 9. Overdue borrowings |");
             }
         }
         menuMessage.append(" 0. Back");
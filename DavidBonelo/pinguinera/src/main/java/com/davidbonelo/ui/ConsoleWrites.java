@@ -0,0 +1,26 @@
+package com.davidbonelo.ui;
+
+import com.davidbonelo.persistance.RoutingDataSource;
+
+/**
+ * Read-your-writes for the console, like ReadYourWritesFilter for the API: the reads of a menu
+ * action that writes, and those for the staleness tolerance of the replica after it, go to the
+ * primary database. The other console reads can go to the replica.
+ */
+public class ConsoleWrites {
+    private final RoutingDataSource database;
+
+    public ConsoleWrites(RoutingDataSource database) {
+        this.database = database;
+    }
+
+    public void run(Runnable action) {
+        boolean before = database.setReadingOwnWrites(true);
+        try {
+            action.run();
+        } finally {
+            database.setReadingOwnWrites(before);
+            database.readOwnWritesUntil(System.currentTimeMillis() + database.getMaxStaleness());
+        }
+    }
+}
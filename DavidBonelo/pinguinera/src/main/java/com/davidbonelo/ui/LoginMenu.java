@@ -2,6 +2,7 @@ package com.davidbonelo.ui;
 
 import com.davidbonelo.models.User;
 import com.davidbonelo.models.UserRole;
+import com.davidbonelo.services.Session;
 import com.davidbonelo.services.UserService;
 
 import java.sql.SQLException;
@@ -11,35 +12,43 @@ import static com.davidbonelo.Utils.askText;
 
 public class LoginMenu {
     private final UserService userService;
+    private final ConsoleWrites writes;
 
-    public LoginMenu(UserService userService) {
+    public LoginMenu(UserService userService, ConsoleWrites writes) {
         this.userService = userService;
+        this.writes = writes;
     }
 
-    public void menu() {
-        while (userService.getLoggedUser() == null) {
+    /**
+     * @return the session of the user that logged in, null if they went back without login
+     */
+    public Session menu() {
+        Session session = null;
+        while (session == null) {
             int menuChoice = askNumber("Login menu: 1. Login with email | 2. Register");
             switch (menuChoice) {
-                case 1 -> login();
-                case 2 -> register();
+                case 1 -> session = login();
+                case 2 -> writes.run(this::register);
                 case 0 -> {
-                    return;
+                    return null;
                 }
                 default -> System.out.println("Unknown menu option");
             }
         }
+        return session;
     }
 
-    private void login() {
+    private Session login() {
         String email = askText("email: ");
         String password = askText("password: ");
 
-        User user = userService.login(email, password);
-        if (user == null) {
+        Session session = userService.login(email, password);
+        if (session == null) {
             System.out.println("Couldn't login, invalid email or password");
         } else {
-            System.out.println("Successful login as: " + user);
+            System.out.println("Successful login as: " + session.getUser());
         }
+        return session;
     }
 
     private void register() {
@@ -1,49 +1,65 @@
 package com.davidbonelo.ui;
 
+import com.davidbonelo.PinguServices;
+import com.davidbonelo.models.LibraryItem;
 import com.davidbonelo.models.User;
 import com.davidbonelo.models.UserRole;
-import com.davidbonelo.persistance.BookDAO;
-import com.davidbonelo.persistance.BorrowingDAO;
-import com.davidbonelo.persistance.NovelDAO;
-import com.davidbonelo.persistance.UserDAO;
+import com.davidbonelo.reports.CirculationReport;
 import com.davidbonelo.services.BorrowingsService;
+import com.davidbonelo.services.CatalogExporter;
+import com.davidbonelo.services.CatalogImporter;
+import com.davidbonelo.services.HoldsService;
 import com.davidbonelo.services.LibraryManager;
+import com.davidbonelo.services.Session;
 import com.davidbonelo.services.UserService;
 
-import java.sql.Connection;
+import java.util.List;
 
 import static com.davidbonelo.Utils.askNumber;
+import static com.davidbonelo.Utils.askText;
 import static com.davidbonelo.Utils.closeScanner;
 import static com.davidbonelo.Utils.validPermission;
 
 public class MainMenu {
+    private static final int SEARCH_RESULTS = 10;
     private final UserService userService;
     private final LibraryManager libraryManager;
     private final BorrowingsService borrowingsService;
+    private final HoldsService holdsService;
+    private final CatalogImporter catalogImporter;
+    private final CatalogExporter catalogExporter;
+    private final CirculationReport circulationReport;
+    private final ConsoleWrites writes;
+    private Session session;
 
-    public MainMenu(Connection connection) {
-        UserDAO userDAO = new UserDAO(connection);
-        BookDAO bookDAO = new BookDAO(connection);
-        NovelDAO novelDAO = new NovelDAO(connection);
-        BorrowingDAO borrowingDAO = new BorrowingDAO(connection);
-        this.userService = new UserService(userDAO);
-        this.libraryManager = new LibraryManager(bookDAO, novelDAO);
-        this.borrowingsService = new BorrowingsService(bookDAO, novelDAO, borrowingDAO, connection);
+    public MainMenu(PinguServices services) {
+        this.userService = services.getUserService();
+        this.libraryManager = services.getLibraryManager();
+        this.borrowingsService = services.getBorrowingsService();
+        this.holdsService = services.getHoldsService();
+        this.catalogImporter = services.getCatalogImporter();
+        this.catalogExporter = services.getCatalogExporter();
+        this.circulationReport = services.getCirculationReport();
+        this.writes = new ConsoleWrites(services.getDatabase());
     }
 
     public void menu() {
         System.out.println("Welcome to La Pingüinera library!!");
         while (true) {
-            User user = userService.getLoggedUser();
+            User user = currentUser();
             String menuMessage = buildMenuMessage(user);
 
             int menuChoice = askNumber(menuMessage);
             switch (menuChoice) {
-                case 1 -> new LoginMenu(userService).menu();
-                case 2 -> new BooksMenu(libraryManager, borrowingsService, user).menu();
-                case 3 -> new NovelsMenu(libraryManager, borrowingsService, user).menu();
-                case 4 -> new BorrowingMenu(borrowingsService, user).menu();
-                case 5 -> new AdminMenu(userService, user).menu();
+                case 1 -> login();
+                case 2 -> new BooksMenu(libraryManager, borrowingsService, session, writes)
+                        .menu();
+                case 3 -> new NovelsMenu(libraryManager, borrowingsService, session, writes)
+                        .menu();
+                case 4 -> borrowings();
+                case 5 -> new AdminMenu(userService, catalogImporter, catalogExporter,
+                        circulationReport, user, writes).menu();
+                case 6 -> search();
                 case 9 -> logout(user);
                 case 0 -> {
                     closeScanner();
@@ -54,17 +70,55 @@ public class MainMenu {
         }
     }
 
+    private void search() {
+        String query = askText("Type the words to search in titles, authors, fields and genres: ");
+        List<LibraryItem> items = libraryManager.search(query, SEARCH_RESULTS);
+        if (items.isEmpty()) {
+            System.out.println("Nothing found");
+        }
+        items.forEach(System.out::println);
+    }
+
+    /**
+     * @return the logged user, null if nobody is or the session expired
+     */
+    private User currentUser() {
+        if (session != null && userService.getSession(session.getId()) == null) {
+            System.out.println("Your session expired, please login again");
+            session = null;
+        }
+        return session == null ? null : session.getUser();
+    }
+
+    private void login() {
+        if (session == null) {
+            session = new LoginMenu(userService, writes).menu();
+        } else {
+            System.out.println("Unknown menu option");
+        }
+    }
+
+    private void borrowings() {
+        if (session == null) {
+            System.out.println("Unknown menu option");
+        } else {
+            new BorrowingMenu(borrowingsService, holdsService, libraryManager, session,
+                    writes).menu();
+        }
+    }
+
     private void logout(User user) {
         if (user == null) {
             System.out.println("Unknown menu option");
         } else {
-            userService.logOut();
+            userService.logOut(session);
+            session = null;
         }
     }
 
     private String buildMenuMessage(User user) {
         final StringBuilder menuMessage = new StringBuilder("Menu:");
-        menuMessage.append(" 2. Books | 3. Novels |");
+        menuMessage.append(" 2. Books | 3. Novels | 6. Search |");
 
         if (user == null) {
             menuMessage.insert(5, " 1. Login |");
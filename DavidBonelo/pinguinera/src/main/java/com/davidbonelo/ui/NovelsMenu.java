@@ -5,23 +5,33 @@ import com.davidbonelo.models.User;
 import com.davidbonelo.models.UserRole;
 import com.davidbonelo.services.BorrowingsService;
 import com.davidbonelo.services.LibraryManager;
+import com.davidbonelo.services.Session;
 
 import java.sql.SQLException;
+import java.util.List;
 
 import static com.davidbonelo.Utils.askNumber;
 import static com.davidbonelo.Utils.askText;
+import static com.davidbonelo.Utils.printPages;
 import static com.davidbonelo.Utils.validMenuAccess;
 import static com.davidbonelo.Utils.validPermission;
 
 public class NovelsMenu {
     private final LibraryManager libraryManager;
+    private final Session session;
+    private final ConsoleWrites writes;
     private final User user;
     private final BorrowingsService borrowingsService;
 
+    /**
+     * @param session of the logged user, null if nobody is
+     */
     public NovelsMenu(LibraryManager libraryManager, BorrowingsService borrowingsService,
-                      User user) {
+                      Session session, ConsoleWrites writes) {
         this.libraryManager = libraryManager;
-        this.user = user;
+        this.session = session;
+        this.writes = writes;
+        this.user = session == null ? null : session.getUser();
         this.borrowingsService = borrowingsService;
     }
 
@@ -35,9 +45,9 @@ public class NovelsMenu {
                 case 2 -> listAuthors();
                 case 3 -> searchByAuthor();
                 case 4 -> addToBorrowing();
-                case 5 -> registerNovel();
-                case 6 -> updateNovel();
-                case 7 -> deleteNovel();
+                case 5 -> writes.run(this::registerNovel);
+                case 6 -> writes.run(this::updateNovel);
+                case 7 -> writes.run(this::deleteNovel);
                 case 0 -> {
                     return;
                 }
@@ -48,15 +58,20 @@ public class NovelsMenu {
 
     private void searchByAuthor() {
         String author = askText("Type the name of the author you want to search: ");
-        libraryManager.filterItemsByAuthor(libraryManager.getAllNovels(), author).forEach(System.out::println);
+        List<Novel> novels = libraryManager.filterNovelsByAuthor(author);
+        if (novels.isEmpty()) {
+            System.out.println("No novels by " + author + ". Authors starting with it: " +
+                    libraryManager.getNovelAuthorsStartingWith(author));
+        }
+        novels.forEach(System.out::println);
     }
 
     private void listNovels() {
-        libraryManager.getAllNovels().forEach(System.out::println);
+        printPages(libraryManager::getNovelsPage, Novel::getId);
     }
 
     private void listAuthors() {
-        libraryManager.getAuthorsList(libraryManager.getAllNovels()).forEach(System.out::println);
+        libraryManager.getNovelAuthors().forEach(System.out::println);
     }
 
     private void registerNovel() {
@@ -91,7 +106,8 @@ public class NovelsMenu {
         }
         int novelId = askNumber("Type the id of the novel you want to borrow: ");
         try {
-            borrowingsService.addBorrowingNovel(novelId);
+            borrowingsService.addBorrowingNovel(session, novelId);
+            session.getCart().forEach(System.out::println);
             System.out.println("Novel added, go to the Borrowings menu to complete the request");
         } catch (SQLException e) {
             System.out.println("Can't borrow this novel. " + e.getLocalizedMessage());
@@ -0,0 +1,75 @@
+import com.davidbonelo.audit.AuditAction;
+import com.davidbonelo.audit.AuditEvent;
+import com.davidbonelo.audit.AuditLog;
+import com.davidbonelo.audit.AuditOptions;
+import com.davidbonelo.audit.OverflowPolicy;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+public class AuditLogTest {
+    private final List<AuditEvent> written = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch writing = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Test
+    public void closeWritesThePendingEvents() {
+        AuditLog log = new AuditLog(written::addAll, new AuditOptions().setBatchSize(3)
+                .setFlushInterval(Duration.ofHours(1)));
+        for (int i = 1; i <= 10; i++) {
+            Assertions.assertTrue(log.publish(new AuditEvent(AuditAction.REQUESTED, i, 2)));
+        }
+        log.close();
+
+        Assertions.assertEquals(10, written.size());
+        Assertions.assertEquals(10, log.getWritten());
+        Assertions.assertFalse(log.publish(new AuditEvent(AuditAction.DELETED, 1, 1)));
+        Assertions.assertEquals(1, log.getDropped());
+    }
+
+    @Test
+    public void fullQueueDrops() throws InterruptedException {
+        Assertions.assertTrue(overflow(OverflowPolicy.DROP) < 50);
+    }
+
+    @Test
+    public void fullQueueBlocksForAWhile() throws InterruptedException {
+        Assertions.assertTrue(overflow(OverflowPolicy.BLOCK) >= 50);
+    }
+
+    /**
+     * @return milliseconds taken by the publish that doesn't fit
+     */
+    private long overflow(OverflowPolicy policy) throws InterruptedException {
+        AuditLog log = new AuditLog(this::slowWrite, new AuditOptions().setCapacity(2)
+                .setOverflowPolicy(policy).setBlockTimeout(Duration.ofMillis(50)));
+        log.publish(new AuditEvent(AuditAction.REQUESTED, 1, 2));
+        writing.await(); // the writer holds the first event until released
+
+        Assertions.assertTrue(log.publish(new AuditEvent(AuditAction.CONFIRMED, 1, 1)));
+        long start = System.nanoTime();
+        Assertions.assertFalse(log.publish(new AuditEvent(AuditAction.FINALIZED, 1, 1)));
+        long waited = (System.nanoTime() - start) / 1_000_000;
+
+        release.countDown();
+        log.close();
+        Assertions.assertEquals(2, log.getWritten());
+        Assertions.assertEquals(1, log.getDropped());
+        return waited;
+    }
+
+    private void slowWrite(List<AuditEvent> events) {
+        writing.countDown();
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        written.addAll(events);
+    }
+}
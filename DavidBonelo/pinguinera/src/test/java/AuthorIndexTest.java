@@ -0,0 +1,67 @@
+import com.davidbonelo.services.AuthorIndex;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class AuthorIndexTest {
+    private final Map<Integer, String> table = catalog();
+    private int loads;
+    private final AuthorIndex index = new AuthorIndex(sink -> {
+        loads++;
+        table.forEach(sink);
+    });
+
+    /**
+     * Item id to author, the first spelling of an author is the one listed
+     */
+    private static Map<Integer, String> catalog() {
+        Map<Integer, String> catalog = new LinkedHashMap<>();
+        catalog.put(1, "Gabriel Garcia");
+        catalog.put(2, "Gabriela Mistral");
+        catalog.put(3, "gabriel garcia ");
+        catalog.put(4, "Isabel Allende");
+        return catalog;
+    }
+
+    @Test
+    public void prefixSearchIgnoresCase() throws Exception {
+        Assertions.assertEquals(List.of("Gabriel Garcia", "Gabriela Mistral"),
+                index.getAuthorsStartingWith("GABRIEL"));
+        Assertions.assertEquals(List.of("Isabel Allende"), index.getAuthorsStartingWith("is"));
+        Assertions.assertEquals(List.of(), index.getAuthorsStartingWith("Z"));
+        Assertions.assertEquals(List.of(1, 3), index.idsOf("gabriel GARCIA"));
+    }
+
+    @Test
+    public void renamedAndRemovedItemsMove() throws Exception {
+        index.getAuthors();
+        index.put(2, "Isabel Allende");
+        index.remove(4);
+
+        Assertions.assertEquals(List.of("Gabriel Garcia", "Isabel Allende"), index.getAuthors());
+        Assertions.assertEquals(List.of(2), index.idsOf("Isabel Allende"));
+        index.remove(1);
+        index.remove(3);
+        Assertions.assertEquals(List.of(), index.idsOf("Gabriel Garcia"));
+        Assertions.assertEquals(List.of("Isabel Allende"), index.getAuthors());
+    }
+
+    @Test
+    public void loadsOnFirstUseOnly() throws Exception {
+        index.put(5, "Before the load"); // ignored, the load reads the table
+        Assertions.assertEquals(0, loads);
+        table.put(5, "Jorge Isaacs");
+
+        index.getAuthors();
+        index.idsOf("Jorge Isaacs");
+        Assertions.assertEquals(1, loads);
+        Assertions.assertEquals(List.of(), index.getAuthorsStartingWith("Before"));
+
+        index.clear();
+        Assertions.assertEquals(List.of(5), index.idsOf("jorge isaacs"));
+        Assertions.assertEquals(2, loads);
+    }
+}
@@ -0,0 +1,80 @@
+import com.davidbonelo.models.Book;
+import com.davidbonelo.models.LibraryItem;
+import com.davidbonelo.models.Novel;
+import com.davidbonelo.services.AvailabilityLedger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class AvailabilityLedgerTest {
+    private final Book book = new Book(1, "Title 1", "Author", 2, 1, "Field", 100);
+    private final Novel novel = new Novel(1, "Title 2", "Author", 1, 0, "Genre", 12);
+    private int singleLoads;
+
+    private AvailabilityLedger newLedger() {
+        return new AvailabilityLedger(id -> {
+            singleLoads++;
+            return id == book.getId() ? book : null;
+        }, id -> {
+            singleLoads++;
+            return id == novel.getId() ? novel : null;
+        }, sink -> {
+            sink.accept(book);
+            sink.accept(novel);
+        });
+    }
+
+    @Test
+    public void reservesAllOrNothing() throws Exception {
+        AvailabilityLedger ledger = newLedger();
+        ledger.load();
+
+        Assertions.assertEquals(List.of(), ledger.reserve(List.of(book, novel)));
+        List<LibraryItem> unavailable = ledger.reserve(List.of(novel, book));
+
+        Assertions.assertEquals(List.of(novel, book), unavailable);
+        ledger.release(List.of(book));
+        Assertions.assertEquals(List.of(), ledger.reserve(List.of(book)));
+        Assertions.assertEquals(0, ledger.getAvailableCopies(book));
+        Assertions.assertEquals(0, singleLoads);
+    }
+
+    @Test
+    public void liveCopyLeavesTheSharedItemAlone() throws Exception {
+        AvailabilityLedger ledger = newLedger();
+        ledger.reserve(List.of(book));
+
+        Book live = ledger.live(book);
+
+        Assertions.assertEquals(1, singleLoads);
+        Assertions.assertEquals(2, live.getCopiesBorrowed());
+        Assertions.assertEquals(1, book.getCopiesBorrowed());
+        Assertions.assertSame(novel, ledger.live(novel));
+    }
+
+    @Test
+    public void lastCopyGoesToOneBorrower() throws Exception {
+        AvailabilityLedger ledger = newLedger();
+        ledger.load();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<List<LibraryItem>>> attempts = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            attempts.add(executor.submit(() -> ledger.reserve(List.of(book))));
+        }
+        int reserved = 0;
+        for (Future<List<LibraryItem>> attempt : attempts) {
+            reserved += attempt.get().isEmpty() ? 1 : 0;
+        }
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+
+        Assertions.assertEquals(1, reserved);
+        Assertions.assertEquals(0, ledger.getAvailableCopies(book));
+    }
+}
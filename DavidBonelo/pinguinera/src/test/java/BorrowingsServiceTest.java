@@ -0,0 +1,160 @@
+import com.davidbonelo.PinguServices;
+import com.davidbonelo.models.Book;
+import com.davidbonelo.models.Borrowing;
+import com.davidbonelo.models.LibraryItem;
+import com.davidbonelo.models.User;
+import com.davidbonelo.models.UserRole;
+import com.davidbonelo.persistance.BookDAO;
+import com.davidbonelo.persistance.ConnectionPool;
+import com.davidbonelo.persistance.UserDAO;
+import com.davidbonelo.services.BorrowingsService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class BorrowingsServiceTest {
+    private final ConnectionPool pool = TestDatabase.create();
+    private final PinguServices services = new PinguServices(pool);
+    private final BorrowingsService borrowingsService = services.getBorrowingsService();
+    private final User employee = user("Employee", UserRole.EMPLOYEE);
+    private final User reader = user("Reader", UserRole.READER);
+    private final Book book = book(3);
+
+    private User user(String name, UserRole role) {
+        String email = name.toLowerCase() + "@pingu.com.co";
+        try {
+            UserDAO userDAO = new UserDAO(pool);
+            userDAO.createUser(new User(name, email, role), "password");
+            return userDAO.getCredentials(email).getUser();
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Book book(int copies) {
+        Book book = new Book("Clean Code", "Robert Martin", copies, 0, "Software", 400);
+        try {
+            new BookDAO(pool).createBook(book);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+        return book;
+    }
+
+    private Borrowing borrow() throws SQLException {
+        Borrowing borrowing = new Borrowing(LocalDate.now().plusDays(7), reader);
+        borrowingsService.createBorrowing(borrowing, new ArrayList<>(List.<LibraryItem>of(book)));
+        return borrowing;
+    }
+
+    private long copiesBorrowed() {
+        return TestDatabase.queryLong(pool, "SELECT copies_borrowed FROM Books WHERE id = " +
+                book.getId());
+    }
+
+    @AfterEach
+    public void stop() {
+        services.stop();
+        pool.close();
+    }
+
+    @Test
+    public void repeatedTransitionsAreRejected() throws SQLException {
+        int id = borrow().getId();
+
+        borrowingsService.confirmBorrowing(employee, id);
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> borrowingsService.confirmBorrowing(employee, id));
+        borrowingsService.finalizeBorrowing(employee, id);
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> borrowingsService.finalizeBorrowing(employee, id));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> borrowingsService.confirmBorrowing(employee, id));
+
+        Assertions.assertEquals(0, copiesBorrowed());
+        SQLException missing = Assertions.assertThrows(SQLException.class,
+                () -> borrowingsService.finalizeBorrowing(employee, id + 1));
+        Assertions.assertEquals("02000", missing.getSQLState());
+    }
+
+    @Test
+    public void sameItemTwiceIsRejected() {
+        Borrowing borrowing = new Borrowing(LocalDate.now().plusDays(7), reader);
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> borrowingsService
+                .createBorrowing(borrowing, new ArrayList<>(List.<LibraryItem>of(book, book))));
+        Assertions.assertEquals(0, copiesBorrowed());
+    }
+
+    @Test
+    public void deletingAnOpenBorrowingGivesItsCopiesBack() throws SQLException {
+        int open = borrow().getId();
+        int finalized = borrow().getId();
+        borrowingsService.confirmBorrowing(employee, open);
+        borrowingsService.finalizeBorrowing(employee, finalized);
+
+        borrowingsService.deleteBorrowing(employee, open);
+        borrowingsService.deleteBorrowing(employee, finalized);
+
+        Assertions.assertEquals(0, copiesBorrowed());
+        Assertions.assertEquals(3, services.getLibraryManager().getAvailability()
+                .getAvailableCopies(book));
+        Assertions.assertEquals(0, TestDatabase.queryLong(pool,
+                "SELECT COUNT(*) FROM borrowings_books"));
+        SQLException missing = Assertions.assertThrows(SQLException.class,
+                () -> borrowingsService.deleteBorrowing(employee, open));
+        Assertions.assertEquals("02000", missing.getSQLState());
+        services.stop(); // writes the queued audit events
+        Assertions.assertEquals(1, TestDatabase.queryLong(pool, "SELECT COUNT(*) FROM " +
+                "borrowings_audit WHERE action = 'DELETED' AND borrowing_id = " + open));
+    }
+
+    @Test
+    public void readersCantMoveTheBorrowingsOfOthers() throws SQLException {
+        int id = borrow().getId();
+        User other = user("Other", UserRole.READER);
+
+        Assertions.assertThrows(SQLException.class,
+                () -> borrowingsService.finalizeBorrowing(other, id));
+        Assertions.assertEquals(1, copiesBorrowed());
+    }
+
+    @Test
+    public void concurrentFinalizesReturnTheCopiesOnce() throws Exception {
+        borrow();
+        int id = borrow().getId();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> attempts = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            attempts.add(executor.submit((Callable<Boolean>) () -> {
+                try {
+                    borrowingsService.finalizeBorrowing(employee, id);
+                    return true;
+                } catch (IllegalArgumentException e) {
+                    return false;
+                }
+            }));
+        }
+        executor.shutdown();
+        Assertions.assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        int finalized = 0;
+        for (Future<Boolean> attempt : attempts) {
+            finalized += attempt.get() ? 1 : 0;
+        }
+        Assertions.assertEquals(1, finalized);
+        Assertions.assertEquals(1, copiesBorrowed());
+        Assertions.assertEquals(2, services.getLibraryManager().getAvailability()
+                .getAvailableCopies(book));
+    }
+}
@@ -0,0 +1,125 @@
+import com.davidbonelo.metrics.Metrics;
+import com.davidbonelo.models.Book;
+import com.davidbonelo.services.CatalogCache;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class CatalogCacheTest {
+    private final Map<Integer, Book> table = new LinkedHashMap<>();
+    private final List<Integer> singleLoads = new ArrayList<>();
+    private int fullLoads;
+    // Runs in the middle of every single item load, to race with it
+    private Runnable duringLoad = () -> {
+    };
+
+    private CatalogCache<Book> newCache(int maxSize, long ttlMillis) {
+        for (int id = 1; id <= 3; id++) {
+            table.put(id, new Book(id, "Title " + id, "Author", 2, 0, "Field", 100));
+        }
+        return new CatalogCache<>("books", maxSize, ttlMillis, id -> {
+            singleLoads.add(id);
+            duringLoad.run();
+            return table.get(id);
+        }, () -> {
+            fullLoads++;
+            return new ArrayList<>(table.values());
+        });
+    }
+
+    @Test
+    public void secondListingIsAHit() throws Exception {
+        CatalogCache<Book> cache = newCache(10, 0);
+        cache.getAll();
+        cache.getAll();
+
+        Assertions.assertEquals(1, fullLoads);
+        Assertions.assertEquals(1, cache.getStats().getHits());
+        Assertions.assertEquals(1, cache.getStats().getMisses());
+    }
+
+    @Test
+    public void countersArePublishedOverJmx() throws Exception {
+        CatalogCache<Book> cache = newCache(10, 0);
+        Metrics.publish("Caches", "testBooks", cache);
+        cache.getAll();
+        cache.get(1);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("com.davidbonelo:type=Caches,name=testBooks");
+        Assertions.assertEquals(3, server.getAttribute(name, "Size"));
+        Assertions.assertEquals(1L, server.getAttribute(name, "Hits"));
+        Assertions.assertEquals(1L, server.getAttribute(name, "Misses"));
+        Assertions.assertEquals(0.5, server.getAttribute(name, "HitRatio"));
+
+        Metrics.publish("Caches", "testBooks", newCache(10, 0)); // replaces it
+        Assertions.assertEquals(0L, server.getAttribute(name, "Hits"));
+    }
+
+    @Test
+    public void invalidatedItemIsReloadedAlone() throws Exception {
+        CatalogCache<Book> cache = newCache(10, 0);
+        cache.getAll();
+        table.get(2).setCopiesBorrowed(1);
+        cache.invalidate(2);
+
+        List<Book> books = cache.getAll();
+
+        Assertions.assertEquals(1, fullLoads);
+        Assertions.assertEquals(List.of(2), singleLoads);
+        Assertions.assertEquals(3, books.size());
+    }
+
+    @Test
+    public void reloadRacingWithAWriteFallsBackToTheFullListing() throws Exception {
+        CatalogCache<Book> cache = newCache(10, 0);
+        cache.getAll();
+        cache.invalidate(2);
+        duringLoad = () -> cache.invalidate(2);
+
+        List<Book> books = cache.getAll();
+
+        Assertions.assertEquals(2, fullLoads);
+        Assertions.assertEquals(List.of(1, 2, 3), books.stream().map(Book::getId).toList());
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted() throws Exception {
+        CatalogCache<Book> cache = newCache(2, 0);
+        cache.get(1);
+        cache.get(2);
+        cache.get(1);
+        cache.get(3); // evicts 2
+        cache.get(1);
+        cache.get(2);
+
+        Assertions.assertEquals(List.of(1, 2, 3, 2), singleLoads);
+        Assertions.assertEquals(2, cache.getStats().getEvictions());
+    }
+
+    @Test
+    public void listingBiggerThanTheCacheIsNotCached() throws Exception {
+        CatalogCache<Book> cache = newCache(2, 0);
+        cache.getAll();
+        cache.getAll();
+
+        Assertions.assertEquals(2, fullLoads);
+    }
+
+    @Test
+    public void expiredItemIsReloaded() throws Exception {
+        CatalogCache<Book> cache = newCache(10, 1);
+        cache.get(1);
+        Thread.sleep(5);
+        cache.get(1);
+
+        Assertions.assertEquals(List.of(1, 1), singleLoads);
+    }
+}
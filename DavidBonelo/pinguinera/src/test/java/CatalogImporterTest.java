@@ -0,0 +1,107 @@
+import com.davidbonelo.PinguServices;
+import com.davidbonelo.persistance.ConnectionPool;
+import com.davidbonelo.services.CatalogImporter;
+import com.davidbonelo.services.ImportOptions;
+import com.davidbonelo.services.ImportReport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.List;
+
+public class CatalogImporterTest {
+    private final ConnectionPool pool = TestDatabase.create();
+    private final PinguServices services = new PinguServices(pool);
+    private final CatalogImporter importer = services.getCatalogImporter();
+    @TempDir
+    Path directory;
+
+    private Path file(String name, String... lines) throws IOException {
+        Path file = directory.resolve(name);
+        Files.write(file, List.of(lines), StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private long count(String table) {
+        return TestDatabase.queryLong(pool, "SELECT COUNT(*) FROM " + table);
+    }
+
+    private long checkpoint(Path file) {
+        return TestDatabase.queryLong(pool, "SELECT line_offset FROM import_checkpoints WHERE " +
+                "source = '" + file.toAbsolutePath().normalize() + "'");
+    }
+
+    private static String book(int n) {
+        return "{\"title\": \"Book " + n + "\", \"author\": \"Author\", \"copies\": 1, " +
+                "\"field\": \"Field\", \"pages\": 100}";
+    }
+
+    @AfterEach
+    public void stop() {
+        services.stop();
+        pool.close();
+    }
+
+    @Test
+    public void invalidRowsGoToTheErrorFile() throws IOException, SQLException {
+        Path file = file("feed.csv",
+                "type,title,author,copies,field,pages,genre,recommended_age",
+                "book,Clean Code,Robert Martin,2,Software,400,,",
+                "novel,\"Cien años, de soledad\",Gabriel Garcia,1,,,Realismo,16",
+                "book,,Nobody,1,Software,10,,",
+                "book,Refactoring,Martin Fowler,many,Software,300,,",
+                "",
+                "book,Patterns,Gang of Four,1,Software,395,,");
+
+        ImportReport report = importer.importFile(file, new ImportOptions().setCommitInterval(2)
+                .setBatchSize(1));
+
+        Assertions.assertEquals(3, report.getImported());
+        Assertions.assertEquals(2, report.getRejected());
+        Assertions.assertEquals(2, count("Books"));
+        Assertions.assertEquals(1, count("Novels"));
+        Assertions.assertEquals(7, checkpoint(file));
+        List<String> errors = Files.readAllLines(file.resolveSibling("feed.csv.errors"));
+        Assertions.assertEquals(2, errors.size());
+        Assertions.assertTrue(errors.get(0).startsWith("4\tMissing title\t"), errors.get(0));
+        Assertions.assertTrue(errors.get(1).startsWith("5\tcopies is not a whole number"),
+                errors.get(1));
+    }
+
+    @Test
+    public void failedImportResumesAfterTheLastCommit() throws IOException, SQLException {
+        Path file = file("feed.jsonl", book(1), book(2), book(3), book(4),
+                "{\"title\": \"Old novel\", \"author\": \"Author\", \"copies\": 1, " +
+                        "\"genre\": \"Genre\", \"recommended_age\": 120}",
+                book(5), "{\"title\": [1]}");
+        // Makes the commit of lines 5 and 6 fail, as a lost connection would
+        TestDatabase.execute(pool, "ALTER TABLE Novels ADD CONSTRAINT young CHECK " +
+                "(recommended_age < 100)");
+        ImportOptions options = new ImportOptions().setCommitInterval(2).setBatchSize(2);
+
+        Assertions.assertThrows(SQLException.class, () -> importer.importFile(file, options));
+        Assertions.assertEquals(4, count("Books"));
+        Assertions.assertEquals(4, checkpoint(file));
+
+        TestDatabase.execute(pool, "ALTER TABLE Novels DROP CONSTRAINT young");
+        ImportReport report = importer.importFile(file, options);
+
+        Assertions.assertEquals(4, report.getSkipped());
+        Assertions.assertEquals(2, report.getImported());
+        Assertions.assertEquals(1, report.getRejected());
+        Assertions.assertEquals(5, count("Books"));
+        Assertions.assertEquals(1, count("Novels"));
+        Assertions.assertEquals(7, checkpoint(file));
+        Assertions.assertEquals(1, Files.readAllLines(options.getErrorFile(file)).size());
+
+        ImportReport again = importer.importFile(file, options); // nothing new
+        Assertions.assertEquals(0, again.getImported());
+        Assertions.assertEquals(5, count("Books"));
+    }
+}
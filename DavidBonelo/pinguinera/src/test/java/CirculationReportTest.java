@@ -0,0 +1,85 @@
+import com.davidbonelo.PinguServices;
+import com.davidbonelo.models.Book;
+import com.davidbonelo.models.Borrowing;
+import com.davidbonelo.models.LibraryItem;
+import com.davidbonelo.models.Novel;
+import com.davidbonelo.models.User;
+import com.davidbonelo.models.UserRole;
+import com.davidbonelo.persistance.BookDAO;
+import com.davidbonelo.persistance.ConnectionPool;
+import com.davidbonelo.persistance.NovelDAO;
+import com.davidbonelo.persistance.UserDAO;
+import com.davidbonelo.reports.CirculationReport;
+import com.davidbonelo.services.BorrowingsService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CirculationReportTest {
+    private final ConnectionPool pool = TestDatabase.create();
+    private final PinguServices services = new PinguServices(pool);
+    private final BorrowingsService borrowingsService = services.getBorrowingsService();
+
+    @AfterEach
+    public void stop() {
+        services.stop();
+        pool.close();
+    }
+
+    private List<String> rollups() throws SQLException {
+        List<String> rows = new ArrayList<>();
+        try (Connection connection = pool.getConnection();
+             Statement statement = connection.createStatement()) {
+            for (String sql : List.of(
+                    "SELECT item_type, item_id, borrowings FROM circulation_titles ORDER BY 1, 2",
+                    "SELECT dimension, name, borrowings FROM circulation_groups ORDER BY 1, 2",
+                    "SELECT id, loans, loan_days FROM circulation_loans")) {
+                try (ResultSet rs = statement.executeQuery(sql)) {
+                    while (rs.next()) {
+                        rows.add(rs.getString(1) + "|" + rs.getString(2) + "|" + rs.getLong(3));
+                    }
+                }
+            }
+        }
+        return rows;
+    }
+
+    @Test
+    public void rebuiltRollupsMatchTheIncrementalOnes() throws SQLException {
+        UserDAO userDAO = new UserDAO(pool);
+        userDAO.createUser(new User("Reader", "reader@pingu.com.co", UserRole.READER), "password");
+        User reader = userDAO.getCredentials("reader@pingu.com.co").getUser();
+        User employee = new User(1, "John Doe", "administrador@pingu.com.co",
+                UserRole.ADMINISTRATOR);
+        Book book = new Book("Clean Code", "Robert Martin", 5, 0, "Software", 400);
+        new BookDAO(pool).createBook(book);
+        Novel novel = new Novel("Cien años de soledad", "Gabriel García Márquez", 5, 0,
+                "Realismo mágico", 16);
+        new NovelDAO(pool).createNovel(novel);
+
+        List<Integer> ids = new ArrayList<>();
+        for (List<LibraryItem> items : List.of(List.<LibraryItem>of(book, novel),
+                List.<LibraryItem>of(book), List.<LibraryItem>of(novel))) {
+            Borrowing borrowing = new Borrowing(LocalDate.now().plusDays(7), reader);
+            borrowingsService.createBorrowing(borrowing, new ArrayList<>(items));
+            ids.add(borrowing.getId());
+        }
+        TestDatabase.execute(pool, "UPDATE Borrowings SET requested_date = '" +
+                LocalDate.now().minusDays(4) + "' WHERE id = " + ids.get(0));
+        borrowingsService.finalizeBorrowings(employee, ids.subList(0, 2));
+
+        List<String> incremental = rollups();
+        services.getCirculationReport().rebuild();
+
+        Assertions.assertEquals(incremental, rollups());
+        Assertions.assertEquals(2.0, services.getCirculationReport().getAverageLoanDays());
+    }
+}
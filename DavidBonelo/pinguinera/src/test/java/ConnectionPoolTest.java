@@ -0,0 +1,173 @@
+import com.davidbonelo.persistance.ConnectionPool;
+import com.davidbonelo.persistance.PoolConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+
+public class ConnectionPoolTest {
+    private static int databases;
+    private final List<ConnectionPool> pools = new ArrayList<>();
+
+    /**
+     * A pool over an embedded database, without housekeeping or slow query log unless the test
+     * sets them
+     */
+    private ConnectionPool pool(PoolConfig config) {
+        String url = "jdbc:h2:mem:pool" + (++databases) + ";MODE=MySQL;" +
+                "DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+        ConnectionPool pool = new ConnectionPool(url, "sa", "", config);
+        pools.add(pool);
+        return pool;
+    }
+
+    private static PoolConfig config() {
+        return new PoolConfig().setMinIdle(0).setMaxSize(3).setHousekeepingInterval(0)
+                .setLeakDetectionThreshold(0).setSlowQueryThreshold(0);
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            Assertions.assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting");
+            Thread.sleep(10);
+        }
+    }
+
+    private static int count(ConnectionPool pool) throws SQLException {
+        try (Connection connection = pool.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM items")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private static void insert(ConnectionPool pool, int id) throws SQLException {
+        try (Connection connection = pool.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate("INSERT INTO items (id) VALUES (" + id + ")");
+        }
+    }
+
+    @AfterEach
+    public void close() {
+        pools.forEach(ConnectionPool::close);
+    }
+
+    @Test
+    public void reusesConnectionsAndReplacesBrokenOnes() throws SQLException {
+        ConnectionPool pool = pool(config());
+        Connection raw;
+        try (Connection connection = pool.getConnection()) {
+            raw = connection.unwrap(Connection.class);
+        }
+        try (Connection connection = pool.getConnection()) {
+            Assertions.assertSame(raw, connection.unwrap(Connection.class));
+        }
+        raw.close(); // e.g. the server dropped it while idle
+
+        try (Connection connection = pool.getConnection()) {
+            Assertions.assertNotSame(raw, connection.unwrap(Connection.class));
+            Assertions.assertTrue(connection.isValid(1));
+        }
+        Assertions.assertEquals(2, pool.getStats().getCreated());
+        Assertions.assertEquals(1, pool.getStats().getDestroyed());
+        Assertions.assertEquals(3, pool.getStats().getBorrowed());
+    }
+
+    @Test
+    public void waitsForAFreeConnectionUntilTheTimeout() throws Exception {
+        ConnectionPool pool = pool(config().setMaxSize(1).setConnectionTimeout(500));
+        Connection held = pool.getConnection();
+
+        Assertions.assertThrows(SQLTransientConnectionException.class, pool::getConnection);
+        Assertions.assertEquals(1, pool.getStats().getTimeouts());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<Boolean> waiting = executor.submit(() -> {
+            try (Connection connection = pool.getConnection()) {
+                return connection.isValid(1);
+            }
+        });
+        waitFor(() -> pool.getStats().getWaiting() == 1);
+        held.close();
+        Assertions.assertTrue(waiting.get());
+        executor.shutdown();
+        Assertions.assertEquals(1, pool.getStats().getTimeouts());
+        Assertions.assertEquals(1, pool.getStats().getCreated());
+    }
+
+    @Test
+    public void idleConnectionsAboveMinIdleAreClosed() throws Exception {
+        ConnectionPool pool = pool(config().setMinIdle(1).setIdleTimeout(50)
+                .setHousekeepingInterval(20));
+        List<Connection> connections = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            connections.add(pool.getConnection());
+        }
+        for (Connection connection : connections) {
+            connection.close();
+        }
+
+        waitFor(() -> pool.getStats().getIdle() == 1);
+        Assertions.assertEquals(2, pool.getStats().getDestroyed());
+    }
+
+    @Test
+    public void connectionsHeldTooLongAreReportedOnce() throws Exception {
+        ConnectionPool pool = pool(config().setLeakDetectionThreshold(50)
+                .setHousekeepingInterval(20));
+        Connection held = pool.getConnection();
+        waitFor(() -> pool.getStats().getLeaks() == 1);
+        Thread.sleep(100);
+        Assertions.assertEquals(1, pool.getStats().getLeaks());
+
+        held.close();
+        Assertions.assertEquals(1, pool.getStats().getIdle());
+    }
+
+    @Test
+    public void transactionsRollBackAndNestedOnesJoin() throws SQLException {
+        ConnectionPool pool = pool(config());
+        try (Connection connection = pool.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE items (id INT PRIMARY KEY)");
+        }
+
+        Assertions.assertThrows(IllegalStateException.class, () -> pool.inTransaction(() -> {
+            insert(pool, 1);
+            return pool.inTransaction(() -> {
+                insert(pool, 2);
+                throw new IllegalStateException("fails after both inserts");
+            });
+        }));
+        Assertions.assertEquals(0, count(pool));
+        Assertions.assertFalse(pool.isInTransaction());
+
+        pool.inTransaction(() -> {
+            insert(pool, 1);
+            pool.inTransaction(() -> {
+                insert(pool, 2);
+                return null;
+            });
+            Assertions.assertEquals(1, pool.getStats().getActive());
+            return null;
+        });
+        Assertions.assertEquals(2, count(pool));
+        try (Connection connection = pool.getConnection()) {
+            Assertions.assertTrue(connection.getAutoCommit());
+        }
+    }
+}
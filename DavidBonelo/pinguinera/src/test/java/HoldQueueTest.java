@@ -0,0 +1,96 @@
+import com.davidbonelo.models.Book;
+import com.davidbonelo.models.Hold;
+import com.davidbonelo.models.HoldStatus;
+import com.davidbonelo.models.Novel;
+import com.davidbonelo.services.HoldQueue;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class HoldQueueTest {
+    private static final Instant NOW = Instant.parse("2024-03-20T10:00:00Z");
+    private final Book book = new Book(1, "Title 1", "Author", 1, 1, "Field", 100);
+    private final Novel novel = new Novel(1, "Title 2", "Author", 1, 1, "Genre", 12);
+    private final HoldQueue queue = new HoldQueue();
+    private int ids;
+
+    private Hold hold(int userId, Book item) {
+        Hold hold = new Hold(item, userId, NOW);
+        hold.setId(++ids);
+        queue.add(hold);
+        return hold;
+    }
+
+    @Test
+    public void firstComeFirstServed() {
+        Hold first = hold(10, book);
+        Hold second = hold(11, book);
+        Hold third = hold(12, book);
+        queue.remove(second);
+
+        Hold next = queue.next(Hold.BOOK, 1, NOW.plusSeconds(60));
+
+        Assertions.assertSame(first, next);
+        Assertions.assertEquals(HoldStatus.READY, first.getStatus());
+        Assertions.assertEquals(0, queue.position(first));
+        Assertions.assertEquals(1, queue.position(third));
+        Assertions.assertEquals(-1, queue.position(second));
+        Assertions.assertNull(queue.next(Hold.NOVEL, novel.getId(), NOW));
+        Assertions.assertEquals(List.of(first, third), queue.getQueue(book));
+    }
+
+    @Test
+    public void rolledBackHoldIsFirstAgain() {
+        Hold first = hold(10, book);
+        Hold second = hold(11, book);
+        Hold next = queue.next(Hold.BOOK, 1, NOW.plusSeconds(60));
+
+        queue.unready(List.of(next));
+
+        Assertions.assertEquals(HoldStatus.WAITING, first.getStatus());
+        Assertions.assertNull(first.getReadyUntil());
+        Assertions.assertEquals(1, queue.position(first));
+        Assertions.assertEquals(2, queue.position(second));
+    }
+
+    @Test
+    public void expiredAndPickedUpHoldsLeaveTheQueue() {
+        Hold late = hold(10, book);
+        Hold onTime = hold(11, book);
+        queue.next(Hold.BOOK, 1, NOW.minusSeconds(1));
+        queue.next(Hold.BOOK, 1, NOW.plusSeconds(60));
+
+        Assertions.assertEquals(List.of(late), queue.takeExpired(NOW));
+        Assertions.assertEquals(List.of(), queue.takeReady(10, List.of(book)));
+        Assertions.assertEquals(List.of(onTime), queue.takeReady(11, List.of(book, novel)));
+        Assertions.assertNull(queue.find(11, book));
+        Assertions.assertEquals(List.of(), queue.getHolds(11));
+    }
+
+    @Test
+    public void concurrentPlacementsKeepOneHold() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Hold>> placed = new ArrayList<>();
+        for (int i = 1; i <= 8; i++) {
+            Hold hold = new Hold(book, 10, NOW);
+            hold.setId(i);
+            placed.add(executor.submit(() -> queue.addIfAbsent(hold)));
+        }
+        executor.shutdown();
+        Assertions.assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        Hold open = queue.find(10, book);
+        for (Future<Hold> hold : placed) {
+            Assertions.assertSame(open, hold.get());
+        }
+        Assertions.assertEquals(List.of(open), queue.getHolds(10));
+        Assertions.assertEquals(List.of(open), queue.getQueue(book));
+    }
+}
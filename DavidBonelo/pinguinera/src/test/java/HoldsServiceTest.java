@@ -0,0 +1,68 @@
+import com.davidbonelo.PinguServices;
+import com.davidbonelo.models.Book;
+import com.davidbonelo.models.Borrowing;
+import com.davidbonelo.models.Hold;
+import com.davidbonelo.models.LibraryItem;
+import com.davidbonelo.models.User;
+import com.davidbonelo.models.UserRole;
+import com.davidbonelo.persistance.BookDAO;
+import com.davidbonelo.persistance.ConnectionPool;
+import com.davidbonelo.persistance.UserDAO;
+import com.davidbonelo.services.HoldsService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class HoldsServiceTest {
+    private final ConnectionPool pool = TestDatabase.create();
+    private final PinguServices services = new PinguServices(pool);
+    private final HoldsService holdsService = services.getHoldsService();
+
+    @AfterEach
+    public void stop() {
+        services.stop();
+        pool.close();
+    }
+
+    private User user(String name) throws SQLException {
+        String email = name.toLowerCase() + "@pingu.com.co";
+        UserDAO userDAO = new UserDAO(pool);
+        userDAO.createUser(new User(name, email, UserRole.READER), "password");
+        return userDAO.getCredentials(email).getUser();
+    }
+
+    @Test
+    public void concurrentPlacementsOfTheSameHoldKeepOne() throws Exception {
+        Book book = new Book("Clean Code", "Robert Martin", 1, 0, "Software", 400);
+        new BookDAO(pool).createBook(book);
+        services.getBorrowingsService().createBorrowing(
+                new Borrowing(LocalDate.now().plusDays(7), user("Borrower")),
+                new ArrayList<>(List.<LibraryItem>of(book)));
+        User reader = user("Reader");
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Hold>> placed = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            placed.add(executor.submit(() -> holdsService.placeHold(reader, book)));
+        }
+        executor.shutdown();
+        Assertions.assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        Hold open = holdsService.getHolds(reader).get(0);
+        for (Future<Hold> hold : placed) {
+            Assertions.assertSame(open, hold.get());
+        }
+        Assertions.assertEquals(1, holdsService.getHolds(reader).size());
+        Assertions.assertEquals(1, holdsService.getPosition(open));
+        Assertions.assertEquals(1, TestDatabase.queryLong(pool, "SELECT COUNT(*) FROM holds"));
+    }
+}
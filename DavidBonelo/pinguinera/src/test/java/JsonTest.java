@@ -0,0 +1,33 @@
+import com.davidbonelo.Json;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class JsonTest {
+    @Test
+    public void parsesWhatItWrites() {
+        Map<String, Object> value = new LinkedHashMap<>();
+        value.put("title", "Cien años \"de\" soledad\n");
+        value.put("ids", List.of(new BigDecimal("1"), new BigDecimal("2.5")));
+        value.put("available", true);
+        value.put("borrower", null);
+
+        String json = Json.write(value);
+
+        Assertions.assertEquals(value, Json.parse(json));
+        Assertions.assertEquals(Arrays.asList(null, false), Json.parse(" [ null , false ] "));
+    }
+
+    @Test
+    public void rejectsInvalidJson() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Json.parse("{\"a\": }"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Json.parse("[1, 2"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Json.parse("{} extra"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Json.parse("\"open"));
+    }
+}
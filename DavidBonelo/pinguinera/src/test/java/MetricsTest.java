@@ -0,0 +1,48 @@
+import com.davidbonelo.metrics.Meter;
+import com.davidbonelo.metrics.MethodStats;
+import com.davidbonelo.metrics.Metrics;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.List;
+
+public class MetricsTest {
+    private final Meter meter = Metrics.meter(MetricsTest.class);
+
+    @Test
+    public void countsCallsErrorsAndRows() throws SQLException {
+        Assertions.assertEquals(List.of(1, 2, 3), meter.call("list", () -> List.of(1, 2, 3)));
+        meter.call("list", List::of);
+        Assertions.assertThrows(SQLException.class, () -> meter.run("list", () -> {
+            throw new SQLException("boom");
+        }));
+
+        MethodStats stats = stats("list");
+        Assertions.assertEquals(3, stats.getCalls());
+        Assertions.assertEquals(1, stats.getErrors());
+        Assertions.assertEquals(3, stats.getRows());
+        Assertions.assertTrue(Metrics.snapshot().contains("MetricsTest.list"));
+    }
+
+    @Test
+    public void percentilesFollowTheLatencies() throws InterruptedException {
+        for (int i = 0; i < 99; i++) {
+            meter.run("sleep", () -> {
+            });
+        }
+        meter.run("sleep", () -> Thread.sleep(20));
+
+        MethodStats stats = stats("sleep");
+        Assertions.assertTrue(stats.getP50Micros() < 1_000, "p50 " + stats.getP50Micros());
+        Assertions.assertTrue(stats.getP999Micros() >= 20_000, "p999 " + stats.getP999Micros());
+        // Buckets are at most 12.5% wide
+        Assertions.assertTrue(stats.getP999Micros() <= stats.getMaxMicros() * 1.125 + 1);
+    }
+
+    private static MethodStats stats(String method) {
+        return Metrics.getMethods().stream().filter(stats ->
+                stats.getClassName().equals("MetricsTest") &&
+                        stats.getMethodName().equals(method)).findFirst().orElseThrow();
+    }
+}
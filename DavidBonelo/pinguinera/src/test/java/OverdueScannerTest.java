@@ -0,0 +1,100 @@
+import com.davidbonelo.models.Borrowing;
+import com.davidbonelo.models.BorrowingStatus;
+import com.davidbonelo.models.User;
+import com.davidbonelo.models.UserRole;
+import com.davidbonelo.persistance.BorrowingDAO;
+import com.davidbonelo.persistance.BorrowingFilter;
+import com.davidbonelo.services.OverdueScanner;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+public class OverdueScannerTest {
+    private static final LocalDate TODAY = LocalDate.of(2024, 3, 20);
+    private final User reader = new User(2, "Reader", "reader@pingu.com.co", UserRole.READER);
+    private final List<Borrowing> table = new ArrayList<>();
+    private final List<BorrowingFilter> queries = new ArrayList<>();
+    // Answers only what the scanner asks: a status and a range of return dates
+    private final BorrowingDAO borrowingDAO = new BorrowingDAO(null) {
+        @Override
+        public List<Borrowing> findBorrowings(BorrowingFilter filter) {
+            queries.add(filter);
+            return table.stream().filter(b -> b.getStatus() == filter.getStatus() &&
+                    (filter.getReturnFrom() == null ||
+                            !b.getReturnDate().isBefore(filter.getReturnFrom())) &&
+                    !b.getReturnDate().isAfter(filter.getReturnTo())).toList();
+        }
+    };
+    private final MovableClock clock = new MovableClock();
+    private final OverdueScanner scanner = new OverdueScanner(borrowingDAO, clock);
+
+    @Test
+    public void scansOnlyTheDaysSinceTheLastScan() throws Exception {
+        table.add(borrowed(1, TODAY.minusDays(3)));
+        table.add(borrowed(2, TODAY));
+        Assertions.assertEquals(1, scanner.scan());
+        Assertions.assertNull(queries.get(0).getReturnFrom()); // the first one reads them all
+        Assertions.assertEquals(0, scanner.scan());
+        Assertions.assertEquals(1, queries.size()); // same day, no query
+
+        clock.advance(Duration.ofDays(1));
+        Assertions.assertEquals(1, scanner.scan());
+        Assertions.assertEquals(TODAY, queries.get(1).getReturnFrom());
+        Assertions.assertEquals(TODAY, queries.get(1).getReturnTo());
+        Assertions.assertEquals(List.of(1, 2), ids(scanner.getOverdue()));
+    }
+
+    @Test
+    public void lateConfirmationsAndReturnsUpdateTheView() throws Exception {
+        table.add(borrowed(1, TODAY.minusDays(3)));
+        scanner.scan();
+
+        Borrowing confirmedLate = borrowed(2, TODAY.minusDays(1));
+        scanner.borrowingConfirmed(confirmedLate);
+        scanner.borrowingConfirmed(borrowed(3, TODAY)); // due today, not late yet
+        Assertions.assertEquals(List.of(1, 2), ids(scanner.getOverdue()));
+
+        scanner.borrowingClosed(1);
+        Assertions.assertEquals(List.of(2), ids(scanner.getOverdue()));
+    }
+
+    private Borrowing borrowed(int id, LocalDate returnDate) {
+        return new Borrowing(id, returnDate, returnDate.minusDays(7), BorrowingStatus.BORROWED,
+                reader);
+    }
+
+    private static List<Integer> ids(List<Borrowing> borrowings) {
+        return borrowings.stream().map(Borrowing::getId).toList();
+    }
+
+    private static class MovableClock extends Clock {
+        private Instant now = TODAY.atTime(10, 0).toInstant(ZoneOffset.UTC);
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+import com.davidbonelo.services.PasswordHasher;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class PasswordHasherTest {
+    // Cheap on purpose, the cost doesn't change the results
+    private final PasswordHasher hasher = new PasswordHasher(1_000);
+
+    @Test
+    public void verifiesOnlyTheHashedPassword() {
+        String hash = hasher.hash("contraseniasegura123456");
+        Assertions.assertTrue(hash.startsWith("pbkdf2$1000$"));
+        Assertions.assertTrue(hash.length() <= 100); // Users.password column
+        Assertions.assertTrue(hasher.verify("contraseniasegura123456", hash));
+        Assertions.assertFalse(hasher.verify("contraseniasegura12345", hash));
+        Assertions.assertNotEquals(hash, hasher.hash("contraseniasegura123456")); // salted
+    }
+
+    @Test
+    public void plainTextAndOtherCostsNeedRehash() {
+        Assertions.assertTrue(hasher.verify("password1", "password1"));
+        Assertions.assertFalse(hasher.verify("password2", "password1"));
+        Assertions.assertTrue(hasher.needsRehash("password1"));
+
+        String cheaper = new PasswordHasher(10).hash("password1");
+        Assertions.assertTrue(hasher.verify("password1", cheaper));
+        Assertions.assertTrue(hasher.needsRehash(cheaper));
+        Assertions.assertFalse(hasher.needsRehash(hasher.hash("password1")));
+    }
+}
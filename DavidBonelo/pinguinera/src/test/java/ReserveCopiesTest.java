@@ -0,0 +1,144 @@
+import com.davidbonelo.persistance.BookDAO;
+import com.davidbonelo.persistance.ConnectionPool;
+import com.davidbonelo.persistance.PoolConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class ReserveCopiesTest {
+    private static final int THREADS = 8;
+    private static int databases;
+    private final ConnectionPool pool = new ConnectionPool("jdbc:h2:mem:copies" + (++databases) +
+            ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1", "sa", "",
+            new PoolConfig().setMaxSize(THREADS).setHousekeepingInterval(0)
+                    .setSlowQueryThreshold(0));
+    private final BookDAO bookDAO = new BookDAO(pool);
+
+    /**
+     * A book with the given copies, returns its id
+     */
+    private int book(int copies, int copiesBorrowed) throws SQLException {
+        try (Connection connection = pool.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS Books (id INT PRIMARY KEY " +
+                    "AUTO_INCREMENT, title VARCHAR(100), author VARCHAR(50), copies INT, " +
+                    "copies_borrowed INT, field VARCHAR(100), pages INT)");
+            statement.executeUpdate("INSERT INTO Books (title, author, copies, copies_borrowed, " +
+                    "field, pages) VALUES ('Title', 'Author', " + copies + ", " + copiesBorrowed +
+                    ", 'Field', 100)", Statement.RETURN_GENERATED_KEYS);
+            try (ResultSet keys = statement.getGeneratedKeys()) {
+                keys.next();
+                return keys.getInt(1);
+            }
+        }
+    }
+
+    private int copiesBorrowed(int bookId) throws SQLException {
+        try (Connection connection = pool.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT copies_borrowed FROM Books WHERE " +
+                     "id = " + bookId)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    /**
+     * Reserves the ids in a transaction, rolled back unless every copy was reserved
+     */
+    private boolean reserveAll(List<Integer> ids) throws SQLException {
+        try {
+            return pool.inTransaction(() -> {
+                if (bookDAO.reserveCopies(ids).containsValue(false)) {
+                    throw new IllegalStateException("not available");
+                }
+                return true;
+            });
+        } catch (IllegalStateException e) {
+            return false;
+        }
+    }
+
+    private static <T> List<T> race(Callable<T> attempt) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<T>> attempts = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            attempts.add(executor.submit(attempt));
+        }
+        executor.shutdown();
+        Assertions.assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        List<T> results = new ArrayList<>();
+        for (Future<T> future : attempts) {
+            results.add(future.get());
+        }
+        return results;
+    }
+
+    @AfterEach
+    public void close() {
+        pool.close();
+    }
+
+    @Test
+    public void lastCopyIsLentOnce() throws Exception {
+        int id = book(3, 2);
+
+        List<Boolean> reserved = race(() -> reserveAll(List.of(id)));
+
+        Assertions.assertEquals(1, reserved.stream().filter(Boolean::booleanValue).count());
+        Assertions.assertEquals(3, copiesBorrowed(id));
+    }
+
+    @Test
+    public void repeatedIdNeedsAllItsCopies() throws SQLException {
+        int id = book(3, 1);
+        int other = book(1, 0);
+
+        Map<Integer, Boolean> results = pool.inTransaction(() -> {
+            Map<Integer, Boolean> reserved = bookDAO.reserveCopies(List.of(id, other, id, id));
+            try (Connection connection = pool.getConnection()) {
+                connection.rollback(); // what a caller that can't use the partial result does
+            }
+            return reserved;
+        });
+
+        Assertions.assertEquals(Map.of(id, false, other, true), results);
+        Assertions.assertFalse(reserveAll(List.of(id, id, id)));
+        Assertions.assertEquals(1, copiesBorrowed(id));
+        Assertions.assertEquals(0, copiesBorrowed(other));
+        Assertions.assertTrue(reserveAll(List.of(id, id)));
+        Assertions.assertEquals(3, copiesBorrowed(id));
+    }
+
+    @Test
+    public void batchesInOppositeOrderDontDeadlock() throws Exception {
+        int first = book(1_000, 0);
+        int second = book(1_000, 0);
+
+        List<Integer> reserved = race(() -> {
+            int count = 0;
+            for (int i = 0; i < 50; i++) {
+                List<Integer> ids = i % 2 == 0 ? List.of(first, second) : List.of(second, first);
+                count += reserveAll(ids) ? 1 : 0;
+            }
+            return count;
+        });
+
+        Assertions.assertEquals(THREADS * 50, reserved.stream().mapToInt(Integer::intValue).sum());
+        Assertions.assertEquals(THREADS * 50, copiesBorrowed(first));
+        Assertions.assertEquals(THREADS * 50, copiesBorrowed(second));
+    }
+}
@@ -0,0 +1,105 @@
+import com.davidbonelo.models.Book;
+import com.davidbonelo.persistance.BookDAO;
+import com.davidbonelo.persistance.ConnectionPool;
+import com.davidbonelo.persistance.PoolConfig;
+import com.davidbonelo.persistance.ReplicaConfig;
+import com.davidbonelo.persistance.RoutingDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+public class RoutingDataSourceTest {
+    private static int databases;
+    private final ConnectionPool primary = database("Primary book");
+    private final ConnectionPool replica = database("Replica book");
+    private final RoutingDataSource routing = new RoutingDataSource(primary, replica,
+            new ReplicaConfig().setMaxStaleness(5_000).setHeartbeatInterval(0));
+    private final BookDAO bookDAO = new BookDAO(primary, routing.reads());
+
+    /**
+     * An embedded database with one book, the primary and the replica differ in its title
+     */
+    private static ConnectionPool database(String title) {
+        String url = "jdbc:h2:mem:routing" + (++databases) + ";MODE=MySQL;" +
+                "DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+        ConnectionPool pool = new ConnectionPool(url, "sa", "", new PoolConfig());
+        execute(pool, "CREATE TABLE Books (id INT PRIMARY KEY AUTO_INCREMENT, title " +
+                "VARCHAR(100), author VARCHAR(100), copies INT, copies_borrowed INT, field " +
+                "VARCHAR(100), pages INT)");
+        execute(pool, "CREATE TABLE replica_heartbeat (id INT PRIMARY KEY, beat BIGINT NOT NULL)");
+        execute(pool, "INSERT INTO Books (title, author, copies, copies_borrowed, field, pages) " +
+                "VALUES ('" + title + "', 'Author', 1, 0, 'Field', 100)");
+        return pool;
+    }
+
+    private static void execute(ConnectionPool pool, String sql) {
+        try (Connection connection = pool.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * What replication would do with the heartbeat the primary wrote some time ago
+     */
+    private void replicated(long millisAgo) {
+        execute(replica, "MERGE INTO replica_heartbeat (id, beat) KEY (id) VALUES (1, " +
+                (System.currentTimeMillis() - millisAgo) + ")");
+        routing.heartbeat();
+    }
+
+    private String title() throws SQLException {
+        List<Book> books = bookDAO.getBooksPage(0, 10);
+        return books.get(0).getTitle();
+    }
+
+    @AfterEach
+    public void close() {
+        routing.close();
+    }
+
+    @Test
+    public void replicaServesListingsOnlyWhileCaughtUp() throws SQLException {
+        Assertions.assertEquals("Primary book", title()); // no beat seen yet
+        replicated(100);
+        Assertions.assertEquals("Replica book", title());
+        // What the catalog cache keeps, read from the primary
+        Assertions.assertEquals("Primary book", bookDAO.getAllBooks().get(0).getTitle());
+        replicated(60_000);
+        Assertions.assertEquals("Primary book", title());
+        Assertions.assertEquals(2, routing.getPrimaryReads());
+        Assertions.assertEquals(1, routing.getReplicaReads());
+    }
+
+    @Test
+    public void transactionsReadThePrimary() throws SQLException {
+        replicated(0);
+        Assertions.assertEquals("Primary book", primary.inTransaction(this::title));
+        Assertions.assertEquals("Replica book", title());
+    }
+
+    @Test
+    public void sessionsCanReadTheirOwnWrites() throws SQLException {
+        replicated(0);
+        boolean before = routing.setReadingOwnWrites(true);
+        Assertions.assertEquals("Primary book", title());
+        routing.setReadingOwnWrites(before);
+        Assertions.assertEquals("Replica book", title());
+    }
+
+    @Test
+    public void threadsReadTheirOwnWritesUntilTheGivenTime() throws SQLException {
+        replicated(0);
+        routing.readOwnWritesUntil(System.currentTimeMillis() + 60_000);
+        Assertions.assertEquals("Primary book", title());
+        routing.readOwnWritesUntil(System.currentTimeMillis() - 1);
+        Assertions.assertEquals("Replica book", title());
+    }
+}
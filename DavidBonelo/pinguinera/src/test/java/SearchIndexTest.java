@@ -0,0 +1,58 @@
+import com.davidbonelo.models.Book;
+import com.davidbonelo.models.LibraryItem;
+import com.davidbonelo.models.Novel;
+import com.davidbonelo.services.SearchHit;
+import com.davidbonelo.services.SearchIndex;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SearchIndexTest {
+    private final List<LibraryItem> catalog = new ArrayList<>(List.of(
+            new Book(1, "Introducción a la programación", "Ana Pérez", 2, 0, "Informática", 300),
+            new Book(2, "Cálculo diferencial", "Luis Gómez", 1, 0, "Matemáticas", 500),
+            new Novel(1, "Cien años de soledad", "Gabriel García Márquez", 3, 0, "Realismo", 16),
+            new Novel(2, "El amor en los tiempos del cólera", "Gabriel García Márquez", 1, 0,
+                    "Romance", 16)));
+    private final SearchIndex index = new SearchIndex(sink -> catalog.forEach(sink));
+
+    @Test
+    public void accentsAndCaseAreIgnored() throws Exception {
+        List<SearchHit> hits = index.search("CALCULO", 10);
+
+        Assertions.assertEquals(1, hits.size());
+        Assertions.assertEquals(Book.class, hits.get(0).getType());
+        Assertions.assertEquals(2, hits.get(0).getId());
+    }
+
+    @Test
+    public void itemsMatchingMoreWordsRankFirst() throws Exception {
+        List<SearchHit> hits = index.search("garcia colera", 10);
+
+        Assertions.assertEquals(2, hits.size());
+        Assertions.assertEquals(Novel.class, hits.get(0).getType());
+        Assertions.assertEquals(2, hits.get(0).getId());
+    }
+
+    @Test
+    public void lastWordMatchesAsPrefix() throws Exception {
+        List<SearchHit> hits = index.search("progra", 10);
+
+        Assertions.assertEquals(1, hits.size());
+        Assertions.assertEquals(1, hits.get(0).getId());
+    }
+
+    @Test
+    public void updatesAndDeletesAreSeen() throws Exception {
+        index.load();
+        index.put(new Book(2, "Álgebra lineal", "Luis Gómez", 1, 0, "Matemáticas", 400));
+        index.removeNovel(1);
+
+        Assertions.assertTrue(index.search("calculo", 10).isEmpty());
+        Assertions.assertEquals(1, index.search("algebra", 10).size());
+        Assertions.assertTrue(index.search("soledad", 10).isEmpty());
+        Assertions.assertEquals(3, index.size());
+    }
+}
@@ -0,0 +1,135 @@
+import com.davidbonelo.models.Book;
+import com.davidbonelo.models.User;
+import com.davidbonelo.models.UserRole;
+import com.davidbonelo.services.Session;
+import com.davidbonelo.services.SessionRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SessionRegistryTest {
+    private final MovableClock clock = new MovableClock();
+    private final SessionRegistry registry = new SessionRegistry(2, Duration.ofMinutes(30),
+            Duration.ofHours(8), clock);
+
+    @Test
+    public void idleSessionsExpire() {
+        Session session = registry.open(reader(1));
+        clock.advance(Duration.ofMinutes(20));
+        Assertions.assertSame(session, registry.get(session.getId()));
+
+        clock.advance(Duration.ofMinutes(20)); // 20 since the last use
+        Assertions.assertSame(session, registry.get(session.getId()));
+
+        clock.advance(Duration.ofMinutes(31));
+        Assertions.assertNull(registry.get(session.getId()));
+        Assertions.assertEquals(0, registry.size());
+    }
+
+    @Test
+    public void sessionsInUseExpireAfterTheMaxLifetime() {
+        Session session = registry.open(reader(1));
+        for (int i = 0; i < 16; i++) {
+            clock.advance(Duration.ofMinutes(29));
+            Assertions.assertSame(session, registry.get(session.getId()));
+        }
+
+        clock.advance(Duration.ofMinutes(29)); // 8h13m since it was opened
+        Assertions.assertNull(registry.get(session.getId()));
+    }
+
+    @Test
+    public void closeAllClosesOnlyTheSessionsOfTheUser() {
+        SessionRegistry large = new SessionRegistry(100, Duration.ofMinutes(30),
+                Duration.ofHours(8), clock);
+        Session phone = large.open(reader(1));
+        Session laptop = large.open(reader(1));
+        Session other = large.open(reader(2));
+
+        Assertions.assertEquals(2, large.closeAll(1));
+
+        Assertions.assertNull(large.get(phone.getId()));
+        Assertions.assertNull(large.get(laptop.getId()));
+        Assertions.assertSame(other, large.get(other.getId()));
+        Assertions.assertEquals(0, large.closeAll(1));
+    }
+
+    @Test
+    public void fullRegistryDropsTheLeastRecentlyUsed() {
+        Session first = registry.open(reader(1));
+        clock.advance(Duration.ofMinutes(1));
+        Session second = registry.open(reader(2));
+        clock.advance(Duration.ofMinutes(1));
+        registry.get(first.getId());
+
+        Session third = registry.open(reader(3));
+
+        Assertions.assertEquals(2, registry.size());
+        Assertions.assertNull(registry.get(second.getId()));
+        Assertions.assertSame(first, registry.get(first.getId()));
+        Assertions.assertSame(third, registry.get(third.getId()));
+    }
+
+    @Test
+    public void everySessionHasItsOwnCart() throws InterruptedException {
+        SessionRegistry large = new SessionRegistry(100, Duration.ofMinutes(30),
+                Duration.ofHours(8), clock);
+        List<Session> sessions = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Session session = large.open(reader(i));
+            sessions.add(session);
+            threads.add(new Thread(() -> {
+                for (int id = 1; id <= 500; id++) {
+                    session.addToCart(new Book(id, "Book " + id, "Author", 1, 0, "Field", 10));
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (Session session : sessions) {
+            Assertions.assertEquals(500, session.getCart().size());
+        }
+        sessions.get(0).clearCart();
+        Assertions.assertEquals(500, sessions.get(1).getCart().size());
+    }
+
+    private static User reader(int id) {
+        return new User(id, "Reader " + id, "reader" + id + "@pingu.com.co", UserRole.READER);
+    }
+
+    private static class MovableClock extends Clock {
+        private Instant now = Instant.parse("2024-03-01T10:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+import com.davidbonelo.persistance.ConnectionPool;
+import com.davidbonelo.persistance.PoolConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+public class StatementCacheTest {
+    private static final String BY_ID = "SELECT name FROM items WHERE id = ?";
+    private static final String ALL = "SELECT name FROM items ORDER BY id";
+    private static int databases;
+    private final ConnectionPool pool = new ConnectionPool("jdbc:h2:mem:statements" +
+            (++databases) + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1", "sa", "",
+            new PoolConfig().setMinIdle(0).setMaxSize(1).setHousekeepingInterval(0)
+                    .setSlowQueryThreshold(0).setStatementCacheSize(1));
+    private Connection connection;
+
+    @BeforeEach
+    public void open() throws SQLException {
+        connection = pool.getConnection();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE items (id INT PRIMARY KEY, name VARCHAR(20))");
+            statement.execute("INSERT INTO items VALUES (1, 'one'), (2, 'two')");
+        }
+    }
+
+    @AfterEach
+    public void close() throws SQLException {
+        connection.close();
+        pool.close();
+    }
+
+    private static String name(PreparedStatement statement, int id) throws SQLException {
+        statement.setInt(1, id);
+        try (ResultSet rs = statement.executeQuery()) {
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+
+    private static PreparedStatement raw(PreparedStatement statement) throws SQLException {
+        return statement.unwrap(PreparedStatement.class);
+    }
+
+    @Test
+    public void closedStatementsAreReused() throws SQLException {
+        PreparedStatement first = connection.prepareStatement(BY_ID);
+        PreparedStatement raw = raw(first);
+        Assertions.assertEquals("one", name(first, 1));
+        first.close();
+
+        PreparedStatement second = connection.prepareStatement(BY_ID);
+        Assertions.assertSame(raw, raw(second));
+        Assertions.assertEquals("two", name(second, 2));
+        second.close();
+
+        Assertions.assertEquals(1, pool.getStats().getStatementHits());
+        Assertions.assertEquals(1, pool.getStats().getStatementMisses());
+    }
+
+    @Test
+    public void sameSqlStillOpenGetsAStatementOfItsOwn() throws SQLException {
+        PreparedStatement outer = connection.prepareStatement(BY_ID);
+        PreparedStatement inner = connection.prepareStatement(BY_ID);
+        PreparedStatement innerRaw = raw(inner);
+        Assertions.assertNotSame(raw(outer), innerRaw);
+        Assertions.assertEquals("two", name(inner, 2));
+        Assertions.assertEquals("one", name(outer, 1));
+
+        inner.close();
+        Assertions.assertTrue(innerRaw.isClosed()); // not cached, closed for real
+        PreparedStatement outerRaw = raw(outer);
+        outer.close();
+        Assertions.assertFalse(outerRaw.isClosed());
+        try (PreparedStatement again = connection.prepareStatement(BY_ID)) {
+            Assertions.assertSame(outerRaw, raw(again));
+        }
+    }
+
+    @Test
+    public void evictedStatementInUseIsClosedWhenGivenBack() throws SQLException {
+        PreparedStatement byId = connection.prepareStatement(BY_ID);
+        PreparedStatement byIdRaw = raw(byId);
+        PreparedStatement all = connection.prepareStatement(ALL); // evicts BY_ID, size 1
+
+        Assertions.assertFalse(byIdRaw.isClosed());
+        Assertions.assertEquals("one", name(byId, 1)); // still usable by its holder
+        byId.close();
+        Assertions.assertTrue(byIdRaw.isClosed());
+        all.close();
+
+        try (PreparedStatement again = connection.prepareStatement(BY_ID)) {
+            Assertions.assertNotSame(byIdRaw, raw(again));
+            Assertions.assertEquals("two", name(again, 2));
+        }
+        Assertions.assertEquals(3, pool.getStats().getStatementMisses());
+    }
+
+    @Test
+    public void givingBackClosesTheOpenResultSet() throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(ALL);
+        ResultSet rs = statement.executeQuery();
+        Assertions.assertTrue(rs.next());
+        statement.close();
+
+        Assertions.assertTrue(rs.isClosed());
+        Assertions.assertThrows(SQLException.class, () -> statement.executeQuery());
+        try (PreparedStatement again = connection.prepareStatement(ALL);
+             ResultSet rows = again.executeQuery()) {
+            Assertions.assertTrue(rows.next());
+            Assertions.assertEquals("one", rows.getString(1));
+        }
+        Assertions.assertEquals(1, pool.getStats().getStatementHits());
+    }
+}
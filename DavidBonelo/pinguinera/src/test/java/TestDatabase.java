@@ -0,0 +1,66 @@
+import com.davidbonelo.persistance.ConnectionPool;
+import com.davidbonelo.persistance.PoolConfig;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Embedded H2 databases (MySQL mode) with the tables of pingu_schema.sql, for the tests that go
+ * through the DAOs
+ */
+public class TestDatabase {
+    private static int databases;
+
+    private TestDatabase() {
+    }
+
+    public static synchronized ConnectionPool create() {
+        String url = "jdbc:h2:mem:test" + (++databases) + ";MODE=MySQL;" +
+                "DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+        ConnectionPool pool = new ConnectionPool(url, "sa", "", new PoolConfig()
+                .setHousekeepingInterval(0).setSlowQueryThreshold(0));
+        try (Connection connection = pool.getConnection();
+             Statement statement = connection.createStatement()) {
+            String schema = Files.readString(Path.of(System.getProperty("pingu.schema")));
+            for (String sql : schema.split(";")) {
+                sql = sql.trim();
+                // H2 has no DATABASE statements and uses single quoted strings
+                if (sql.isEmpty() || sql.matches("(?is)^(DROP DATABASE|CREATE DATABASE|USE) .*")) {
+                    continue;
+                }
+                statement.execute(sql.replace('"', '\'')
+                        .replaceAll("(?i)ENGINE\\s*=\\s*INNODB", ""));
+            }
+        } catch (SQLException | IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return pool;
+    }
+
+    public static void execute(ConnectionPool pool, String sql) {
+        try (Connection connection = pool.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the first column of the first row of the query
+     */
+    public static long queryLong(ConnectionPool pool, String sql) {
+        try (Connection connection = pool.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}